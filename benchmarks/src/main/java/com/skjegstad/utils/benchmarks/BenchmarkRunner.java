@@ -0,0 +1,63 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the complete suite with the GC profiler enabled, so the results show
+ * the bytes allocated per operation next to the throughput.
+ * BloomFilterBenchmark, IndexReductionBenchmark and BulkBenchmark are run with one thread,
+ * ConcurrentBenchmark once for each thread count. The results are written as
+ * JSON files to the working directory.
+ * <br /><br />
+ * Usage: BenchmarkRunner [thread counts...], e.g. "BenchmarkRunner 1 2 4 8 16".
+ * The default thread counts are 1, 2, 4 and 8.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        int[] threads = {1, 2, 4, 8};
+        if (args.length > 0) {
+            threads = new int[args.length];
+            for (int i = 0; i < args.length; i++)
+                threads[i] = Integer.parseInt(args[i]);
+        }
+
+        run(BloomFilterBenchmark.class.getSimpleName(), 1, "bloomfilter.json");
+        run(IndexReductionBenchmark.class.getSimpleName(), 1, "indexreduction.json");
+        run(BulkBenchmark.class.getSimpleName(), 1, "bulk.json");
+        for (int t : threads)
+            run(ConcurrentBenchmark.class.getSimpleName(), t, "concurrent-" + t + "threads.json");
+    }
+
+    private static void run(String benchmark, int threads, String result) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(benchmark)
+                .threads(threads)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+        new Runner(options).run();
+    }
+}
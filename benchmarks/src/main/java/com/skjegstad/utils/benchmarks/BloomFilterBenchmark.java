@@ -0,0 +1,145 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils.benchmarks;
+
+import com.skjegstad.utils.BloomFilter;
+import com.skjegstad.utils.HashStrategies;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Single-threaded add() and contains() on BloomFilter, for each hash strategy,
+ * key type and filter size.
+ * <br /><br />
+ * The sizes range from a filter that fits in the L1 cache to one far larger
+ * than the last level cache. Before each trial, half of the bits are set at
+ * random, which is the fill of a filter holding its expected number of
+ * elements, and the positive keys are added.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class BloomFilterBenchmark {
+    private static final int BATCH = 1024;
+
+    // 4 KB (L1), 256 KB (L2), 8 MB (last level cache), 128 MB (memory)
+    @Param({"32768", "2097152", "67108864", "1073741824"})
+    public int bits;
+
+    @Param({"MD5", "MURMUR3_128", "XXHASH64"})
+    public HashStrategies strategy;
+
+    private BloomFilter<String> filter;
+    private Keys positive;
+    private Keys negative;
+    private long[] batch;
+    private int next;
+
+    @Setup
+    public void setup() {
+        filter = new BloomFilter<String>(0.01, (int) (bits / 9.6), strategy);
+        Random r = new Random(bits);
+        int size = filter.size();
+        for (long i = 0, fill = Math.round(size * Math.log(2)); i < fill; i++)
+            filter.setBit(r.nextInt(size), true);
+
+        positive = new Keys(1);
+        negative = new Keys(2);
+        for (int i = 0; i < Keys.POOL_SIZE; i++) {
+            filter.add(positive.strings[i]);
+            filter.add(positive.bytes[i]);
+            filter.addLong(positive.longs[i]);
+        }
+        batch = new long[BATCH];
+        for (int i = 0; i < BATCH; i++)
+            batch[i] = (i & 1) == 0 ? positive.longs[i] : negative.longs[i];
+    }
+
+    private int next() {
+        return next = (next + 1) & Keys.MASK;
+    }
+
+    @Benchmark
+    public void addString() {
+        filter.add(negative.strings[next()]);
+    }
+
+    @Benchmark
+    public void addBytes() {
+        filter.add(negative.bytes[next()]);
+    }
+
+    @Benchmark
+    public void addLong() {
+        filter.addLong(negative.longs[next()]);
+    }
+
+    @Benchmark
+    public boolean containsPositiveString() {
+        return filter.contains(positive.strings[next()]);
+    }
+
+    @Benchmark
+    public boolean containsNegativeString() {
+        return filter.contains(negative.strings[next()]);
+    }
+
+    @Benchmark
+    public boolean containsPositiveBytes() {
+        return filter.contains(positive.bytes[next()]);
+    }
+
+    @Benchmark
+    public boolean containsNegativeBytes() {
+        return filter.contains(negative.bytes[next()]);
+    }
+
+    @Benchmark
+    public boolean containsPositiveLong() {
+        return filter.containsLong(positive.longs[next()]);
+    }
+
+    @Benchmark
+    public boolean containsNegativeLong() {
+        return filter.containsLong(negative.longs[next()]);
+    }
+
+    /**
+     * Half positive and half negative longs, checked as one batch.
+     * Compare with containsPositiveLong and containsNegativeLong.
+     */
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean[] containsEachLong() {
+        return filter.containsEach(batch);
+    }
+}
@@ -0,0 +1,84 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils.benchmarks;
+
+import com.skjegstad.utils.BitStorage;
+import com.skjegstad.utils.HashStrategies;
+import com.skjegstad.utils.HeapBitStorage;
+import com.skjegstad.utils.LargeBloomFilter;
+import com.skjegstad.utils.OffHeapBitStorage;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Operations on all the words of a filter: counting the bits set and
+ * counting the bits of a union. Heap storage is processed as
+ * an array, other storage through the BitStorage interface.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class BulkBenchmark {
+
+    // 256 KB (L2) and 128 MB (memory)
+    @Param({"2097152", "1073741824"})
+    public long bits;
+
+    @Param({"heap", "offheap"})
+    public String storage;
+
+    private LargeBloomFilter<String> a;
+    private LargeBloomFilter<String> b;
+
+    @Setup
+    public void setup() {
+        a = filter(1);
+        b = filter(2);
+    }
+
+    private LargeBloomFilter<String> filter(long seed) {
+        BitStorage bitStorage = storage.equals("heap") ? new HeapBitStorage(bits) : new OffHeapBitStorage(bits);
+        Random r = new Random(seed);
+        for (long i = 0, words = bitStorage.wordCount(); i < words; i++)
+            bitStorage.setWord(i, r.nextLong() & r.nextLong()); // a quarter of the bits set
+        return new LargeBloomFilter<String>(bitStorage, bits / 10, 7, HashStrategies.MURMUR3_128, null);
+    }
+
+    @Benchmark
+    public long bitCount() {
+        a.getStorage(); // drops the cached count
+        return a.bitCount();
+    }
+
+    @Benchmark
+    public long approximateUnionCount() {
+        return a.approximateUnionCount(b);
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils.benchmarks;
+
+import com.skjegstad.utils.ConcurrentBloomFilter;
+import com.skjegstad.utils.HashStrategies;
+import com.skjegstad.utils.ShardedBloomFilter;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * add() and contains() on a filter shared by all benchmark threads. Run with
+ * several thread counts, e.g. with BenchmarkRunner or "-t 4", to compare how
+ * ConcurrentBloomFilter and ShardedBloomFilter scale.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+public class ConcurrentBenchmark {
+
+    /**
+     * The filter shared by all threads.
+     */
+    @State(Scope.Benchmark)
+    public static class SharedFilter {
+        // 256 KB (L2), 128 MB (memory)
+        @Param({"2097152", "1073741824"})
+        public int bits;
+
+        @Param({"concurrent", "sharded"})
+        public String type;
+
+        Target target;
+
+        @Setup
+        public void setup() {
+            int n = (int) (bits / 9.6);
+            if (type.equals("sharded"))
+                target = new ShardedTarget(new ShardedBloomFilter<Long>(0.01, n));
+            else
+                target = new ConcurrentTarget(new ConcurrentBloomFilter<Long>(0.01, n, HashStrategies.MURMUR3_128));
+            Keys positive = new Keys(1);
+            for (long key : positive.longs)
+                target.add(key);
+        }
+    }
+
+    /**
+     * Keys of one thread. Each thread adds its own keys, as writers on
+     * different cores would.
+     */
+    @State(Scope.Thread)
+    public static class ThreadKeys {
+        Keys positive;
+        Keys negative;
+        int next;
+
+        @Setup
+        public void setup() {
+            positive = new Keys(1);
+            negative = new Keys(System.identityHashCode(this) + 3L);
+        }
+
+        int next() {
+            return next = (next + 1) & Keys.MASK;
+        }
+    }
+
+    @Benchmark
+    public void add(SharedFilter filter, ThreadKeys keys) {
+        filter.target.add(keys.negative.longs[keys.next()]);
+    }
+
+    @Benchmark
+    public boolean containsPositive(SharedFilter filter, ThreadKeys keys) {
+        return filter.target.contains(keys.positive.longs[keys.next()]);
+    }
+
+    @Benchmark
+    public boolean containsNegative(SharedFilter filter, ThreadKeys keys) {
+        return filter.target.contains(keys.negative.longs[keys.next()]);
+    }
+
+    /**
+     * The filter under test. Only one implementation is loaded in each fork,
+     * so the calls stay monomorphic.
+     */
+    abstract static class Target {
+        abstract void add(long key);
+        abstract boolean contains(long key);
+    }
+
+    static final class ConcurrentTarget extends Target {
+        private final ConcurrentBloomFilter<Long> filter;
+
+        ConcurrentTarget(ConcurrentBloomFilter<Long> filter) {
+            this.filter = filter;
+        }
+
+        void add(long key) {
+            filter.addLong(key);
+        }
+
+        boolean contains(long key) {
+            return filter.containsLong(key);
+        }
+    }
+
+    static final class ShardedTarget extends Target {
+        private final ShardedBloomFilter<Long> filter;
+
+        ShardedTarget(ShardedBloomFilter<Long> filter) {
+            this.filter = filter;
+        }
+
+        void add(long key) {
+            filter.addLong(key);
+        }
+
+        boolean contains(long key) {
+            return filter.containsLong(key);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils.benchmarks;
+
+import com.skjegstad.utils.BloomFilter;
+import com.skjegstad.utils.BloomFilterSpec;
+import com.skjegstad.utils.HashStrategies;
+import com.skjegstad.utils.IndexReduction;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * add() and contains() of long keys with each index reduction, using
+ * MURMUR3_128 and the sizes of BloomFilterBenchmark. The sizes are powers of
+ * two, so all reductions can be used; the filters differ only in how hash
+ * values are mapped to bits.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 2, jvmArgsAppend = {"-Xms2g", "-Xmx2g"})
+@State(Scope.Thread)
+public class IndexReductionBenchmark {
+
+    // 4 KB (L1), 256 KB (L2), 8 MB (last level cache), 128 MB (memory)
+    @Param({"32768", "2097152", "67108864", "1073741824"})
+    public int bits;
+
+    @Param({"MODULO", "MULTIPLY_SHIFT", "MASK"})
+    public IndexReduction reduction;
+
+    private BloomFilter<String> filter;
+    private Keys positive;
+    private Keys negative;
+    private int next;
+
+    @Setup
+    public void setup() {
+        filter = new BloomFilter<String>(BloomFilterSpec.of(bits, 7, (long) (bits / 9.6),
+                HashStrategies.MURMUR3_128, reduction), null);
+        Random r = new Random(bits);
+        for (long i = 0, fill = Math.round(bits * Math.log(2)); i < fill; i++)
+            filter.setBit(r.nextInt(bits), true);
+
+        positive = new Keys(1);
+        negative = new Keys(2);
+        for (int i = 0; i < Keys.POOL_SIZE; i++)
+            filter.addLong(positive.longs[i]);
+    }
+
+    private int next() {
+        return next = (next + 1) & Keys.MASK;
+    }
+
+    @Benchmark
+    public void addLong() {
+        filter.addLong(negative.longs[next()]);
+    }
+
+    @Benchmark
+    public boolean containsPositiveLong() {
+        return filter.containsLong(positive.longs[next()]);
+    }
+
+    @Benchmark
+    public boolean containsNegativeLong() {
+        return filter.containsLong(negative.longs[next()]);
+    }
+}
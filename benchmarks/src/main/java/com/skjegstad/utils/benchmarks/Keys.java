@@ -0,0 +1,50 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils.benchmarks;
+
+import java.util.Random;
+
+/**
+ * Pools of keys for the benchmarks. The keys are generated from a fixed seed,
+ * so every run measures the same keys. Keys from the positive pools are added
+ * to the filters, keys from the negative pools are not.
+ */
+final class Keys {
+    /** Number of keys in each pool, a power of two. */
+    static final int POOL_SIZE = 1 << 14;
+    static final int MASK = POOL_SIZE - 1;
+
+    final String[] strings = new String[POOL_SIZE];
+    final byte[][] bytes = new byte[POOL_SIZE][];
+    final long[] longs = new long[POOL_SIZE];
+
+    /**
+     * Generates the pools.
+     *
+     * @param seed seed of the pools. Positive and negative pools must use different seeds.
+     */
+    Keys(long seed) {
+        Random r = new Random(seed);
+        for (int i = 0; i < POOL_SIZE; i++) {
+            // typical identifiers, e.g. "user:5f1c9a3e77b0d412"
+            strings[i] = "user:" + Long.toHexString(r.nextLong());
+            bytes[i] = new byte[16];
+            r.nextBytes(bytes[i]);
+            longs[i] = r.nextLong();
+        }
+    }
+}
@@ -0,0 +1 @@
+memberSearchIndex = [{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"add(byte[])"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"add(byte[])"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"add(byte[])"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"add(byte[])"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"add(E)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"add(E)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"add(E)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"add(E)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"add(int)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"add(int)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"add(int)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"add(int)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"add(long)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"add(long)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"add(long)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"add(long)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"add(long, long)","u":"add(long,long)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"add(long, long)","u":"add(long,long)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"add(long, long)","u":"add(long,long)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"add(long, long)","u":"add(long,long)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"addAll(Collection<? extends E>)","u":"addAll(java.util.Collection)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"addAll(Collection<? extends E>)","u":"addAll(java.util.Collection)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"addAll(Collection<? extends E>)","u":"addAll(java.util.Collection)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"addAll(Collection<? extends E>)","u":"addAll(java.util.Collection)"},{"p":"com.skjegstad.utils","c":"BloomfilterBenchmark","l":"allocatedBytes()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"bitSetSize(double, long)","u":"bitSetSize(double,long)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"BLOCK_BITS"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"BlockedBloomFilter(double, int)","u":"%3Cinit%3E(double,int)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"BlockedBloomFilter(double, int, HashStrategy)","u":"%3Cinit%3E(double,int,com.skjegstad.utils.HashStrategy)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"BlockedBloomFilter(double, int, HashStrategy, Funnel<? super E>)","u":"%3Cinit%3E(double,int,com.skjegstad.utils.HashStrategy,com.skjegstad.utils.Funnel)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"BlockedBloomFilter(double, int, int, HashStrategy)","u":"%3Cinit%3E(double,int,int,com.skjegstad.utils.HashStrategy)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"BlockedBloomFilter(double, int, int, HashStrategy, Funnel<? super E>)","u":"%3Cinit%3E(double,int,int,com.skjegstad.utils.HashStrategy,com.skjegstad.utils.Funnel)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"BlockedBloomFilter(int, int, HashStrategy)","u":"%3Cinit%3E(int,int,com.skjegstad.utils.HashStrategy)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"BloomFilter(double, int)","u":"%3Cinit%3E(double,int)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"BloomFilter(double, int, HashStrategy)","u":"%3Cinit%3E(double,int,com.skjegstad.utils.HashStrategy)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"BloomFilter(double, int, HashStrategy, Funnel<? super E>)","u":"%3Cinit%3E(double,int,com.skjegstad.utils.HashStrategy,com.skjegstad.utils.Funnel)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"BloomFilter(double, int, int)","u":"%3Cinit%3E(double,int,int)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"BloomFilter(double, int, int, HashStrategy)","u":"%3Cinit%3E(double,int,int,com.skjegstad.utils.HashStrategy)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"BloomFilter(double, int, int, HashStrategy, Funnel<? super E>)","u":"%3Cinit%3E(double,int,int,com.skjegstad.utils.HashStrategy,com.skjegstad.utils.Funnel)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"BloomFilter(int, int)","u":"%3Cinit%3E(int,int)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"BloomFilter(int, int, HashStrategy)","u":"%3Cinit%3E(int,int,com.skjegstad.utils.HashStrategy)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"BloomFilter(int, int, int, BitSet)","u":"%3Cinit%3E(int,int,int,java.util.BitSet)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"BloomFilter(int, int, int, BitSet, HashStrategy)","u":"%3Cinit%3E(int,int,int,java.util.BitSet,com.skjegstad.utils.HashStrategy)"},{"p":"com.skjegstad.utils","c":"BloomfilterBenchmark","l":"BloomfilterBenchmark()","u":"%3Cinit%3E()"},{"p":"com.skjegstad.utils","c":"BitStorage","l":"clear()"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"clear()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"clear()"},{"p":"com.skjegstad.utils","c":"MappedBitStorage","l":"clear()"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"clear()"},{"p":"com.skjegstad.utils","c":"HeapBitStorage","l":"clear()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"clear()"},{"p":"com.skjegstad.utils","c":"BitStorage","l":"clear(long)"},{"p":"com.skjegstad.utils","c":"MappedBitStorage","l":"clear(long)"},{"p":"com.skjegstad.utils","c":"HeapBitStorage","l":"clear(long)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"ConcurrentBloomFilter(double, int)","u":"%3Cinit%3E(double,int)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"ConcurrentBloomFilter(double, int, HashStrategy)","u":"%3Cinit%3E(double,int,com.skjegstad.utils.HashStrategy)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"ConcurrentBloomFilter(double, int, HashStrategy, Funnel<? super E>)","u":"%3Cinit%3E(double,int,com.skjegstad.utils.HashStrategy,com.skjegstad.utils.Funnel)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"ConcurrentBloomFilter(double, int, int, HashStrategy)","u":"%3Cinit%3E(double,int,int,com.skjegstad.utils.HashStrategy)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"ConcurrentBloomFilter(double, int, int, HashStrategy, Funnel<? super E>)","u":"%3Cinit%3E(double,int,int,com.skjegstad.utils.HashStrategy,com.skjegstad.utils.Funnel)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"ConcurrentBloomFilter(int, int, HashStrategy)","u":"%3Cinit%3E(int,int,com.skjegstad.utils.HashStrategy)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"ConcurrentBloomFilter(int, int, int, BitSet, HashStrategy)","u":"%3Cinit%3E(int,int,int,java.util.BitSet,com.skjegstad.utils.HashStrategy)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"contains(byte[])"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"contains(byte[])"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"contains(byte[])"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"contains(byte[])"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"contains(E)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"contains(E)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"contains(E)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"contains(E)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"contains(int)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"contains(int)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"contains(int)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"contains(int)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"contains(long)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"contains(long)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"contains(long)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"contains(long)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"contains(long, long)","u":"contains(long,long)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"contains(long, long)","u":"contains(long,long)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"contains(long, long)","u":"contains(long,long)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"contains(long, long)","u":"contains(long,long)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"containsAll(Collection<? extends E>)","u":"containsAll(java.util.Collection)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"containsAll(Collection<? extends E>)","u":"containsAll(java.util.Collection)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"containsAll(Collection<? extends E>)","u":"containsAll(java.util.Collection)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"containsAll(Collection<? extends E>)","u":"containsAll(java.util.Collection)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"count()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"count()"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"count()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"count()"},{"p":"com.skjegstad.utils","c":"MappedBloomFilter","l":"create(File, double, long, HashStrategies, Funnel<? super E>)","u":"create(java.io.File,double,long,com.skjegstad.utils.HashStrategies,com.skjegstad.utils.Funnel)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"createHash(byte[])"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"createHash(String)","u":"createHash(java.lang.String)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"createHash(String, Charset)","u":"createHash(java.lang.String,java.nio.charset.Charset)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"createHashes(byte[], int)","u":"createHashes(byte[],int)"},{"p":"com.skjegstad.utils","c":"HashStrategy","l":"createHashes(byte[], int, int, long[], int)","u":"createHashes(byte[],int,int,long[],int)"},{"p":"com.skjegstad.utils","c":"HashStrategy","l":"createHashes(int, long[], int)","u":"createHashes(int,long[],int)"},{"p":"com.skjegstad.utils","c":"HashStrategy","l":"createHashes(long, long, long[], int)","u":"createHashes(long,long,long[],int)"},{"p":"com.skjegstad.utils","c":"HashStrategy","l":"createHashes(long, long[], int)","u":"createHashes(long,long[],int)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"equals(Object)","u":"equals(java.lang.Object)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"equals(Object)","u":"equals(java.lang.Object)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"expectedFalsePositiveProbability()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"expectedFalsePositiveProbability()"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"expectedFalsePositiveProbability()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"expectedFalsePositiveProbability()"},{"p":"com.skjegstad.utils","c":"MappedBitStorage","l":"force()"},{"p":"com.skjegstad.utils","c":"MappedBloomFilter","l":"force()"},{"p":"com.skjegstad.utils","c":"HashStrategies","l":"forId(int)"},{"p":"com.skjegstad.utils","c":"Funnel","l":"funnel(E, PrimitiveSink)","u":"funnel(E,com.skjegstad.utils.PrimitiveSink)"},{"p":"com.skjegstad.utils","c":"BitStorage","l":"get(long)"},{"p":"com.skjegstad.utils","c":"MappedBitStorage","l":"get(long)"},{"p":"com.skjegstad.utils","c":"HeapBitStorage","l":"get(long)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"getBit(int)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"getBit(int)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"getBit(int)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"getBit(long)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"getBitSet()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"getBitSet()"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"getBitSet()"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"getBitsPerElement()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"getBitsPerElement()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"getBitsPerElement()"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"getExpectedBitsPerElement()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"getExpectedBitsPerElement()"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"getExpectedBitsPerElement()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"getExpectedBitsPerElement()"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"getExpectedNumberOfElements()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"getExpectedNumberOfElements()"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"getExpectedNumberOfElements()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"getExpectedNumberOfElements()"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"getFalsePositiveProbability()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"getFalsePositiveProbability()"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"getFalsePositiveProbability()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"getFalsePositiveProbability()"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"getFalsePositiveProbability(double)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"getFalsePositiveProbability(double)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"getFalsePositiveProbability(double)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"getFalsePositiveProbability(double)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"getFunnel()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"getFunnel()"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"getFunnel()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"getFunnel()"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"getHashStrategy()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"getHashStrategy()"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"getHashStrategy()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"getHashStrategy()"},{"p":"com.skjegstad.utils","c":"HashStrategies","l":"getId()"},{"p":"com.skjegstad.utils","c":"HashStrategy","l":"getId()"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"getK()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"getK()"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"getK()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"getK()"},{"p":"com.skjegstad.utils","c":"MappedBloomFilter","l":"getMapMode()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"getStorage()"},{"p":"com.skjegstad.utils","c":"BitStorage","l":"getWord(long)"},{"p":"com.skjegstad.utils","c":"MappedBitStorage","l":"getWord(long)"},{"p":"com.skjegstad.utils","c":"HeapBitStorage","l":"getWord(long)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"hashCode()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"hashCode()"},{"p":"com.skjegstad.utils","c":"HeapBitStorage","l":"HeapBitStorage(long)","u":"%3Cinit%3E(long)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"LargeBloomFilter(BitStorage, long, int, HashStrategy, Funnel<? super E>)","u":"%3Cinit%3E(com.skjegstad.utils.BitStorage,long,int,com.skjegstad.utils.HashStrategy,com.skjegstad.utils.Funnel)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"LargeBloomFilter(BitStorage, long, int, HashStrategy, Funnel<? super E>, long)","u":"%3Cinit%3E(com.skjegstad.utils.BitStorage,long,int,com.skjegstad.utils.HashStrategy,com.skjegstad.utils.Funnel,long)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"LargeBloomFilter(double, long, HashStrategy)","u":"%3Cinit%3E(double,long,com.skjegstad.utils.HashStrategy)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"LargeBloomFilter(double, long, HashStrategy, Funnel<? super E>)","u":"%3Cinit%3E(double,long,com.skjegstad.utils.HashStrategy,com.skjegstad.utils.Funnel)"},{"p":"com.skjegstad.utils","c":"MappedBitStorage","l":"load()"},{"p":"com.skjegstad.utils","c":"MappedBloomFilter","l":"load()"},{"p":"com.skjegstad.utils","c":"BloomfilterBenchmark","l":"main(String[])","u":"main(java.lang.String[])"},{"p":"com.skjegstad.utils","c":"MappedBitStorage","l":"MappedBitStorage(FileChannel, FileChannel.MapMode, long, long)","u":"%3Cinit%3E(java.nio.channels.FileChannel,java.nio.channels.FileChannel.MapMode,long,long)"},{"p":"com.skjegstad.utils","c":"HashStrategies","l":"MD5"},{"p":"com.skjegstad.utils","c":"HashStrategies","l":"MURMUR3_128"},{"p":"com.skjegstad.utils","c":"OffHeapBitStorage","l":"OffHeapBitStorage(long)","u":"%3Cinit%3E(long)"},{"p":"com.skjegstad.utils","c":"MappedBloomFilter","l":"open(File, FileChannel.MapMode)","u":"open(java.io.File,java.nio.channels.FileChannel.MapMode)"},{"p":"com.skjegstad.utils","c":"MappedBloomFilter","l":"open(File, FileChannel.MapMode, Funnel<? super E>)","u":"open(java.io.File,java.nio.channels.FileChannel.MapMode,com.skjegstad.utils.Funnel)"},{"p":"com.skjegstad.utils","c":"BloomfilterBenchmark","l":"printStat(long, long, long, long)","u":"printStat(long,long,long,long)"},{"p":"com.skjegstad.utils","c":"PrimitiveSink","l":"putBoolean(boolean)"},{"p":"com.skjegstad.utils","c":"PrimitiveSink","l":"putByte(byte)"},{"p":"com.skjegstad.utils","c":"PrimitiveSink","l":"putBytes(byte[])"},{"p":"com.skjegstad.utils","c":"PrimitiveSink","l":"putBytes(byte[], int, int)","u":"putBytes(byte[],int,int)"},{"p":"com.skjegstad.utils","c":"PrimitiveSink","l":"putDouble(double)"},{"p":"com.skjegstad.utils","c":"PrimitiveSink","l":"putInt(int)"},{"p":"com.skjegstad.utils","c":"PrimitiveSink","l":"putLong(long)"},{"p":"com.skjegstad.utils","c":"PrimitiveSink","l":"putString(CharSequence)","u":"putString(java.lang.CharSequence)"},{"p":"com.skjegstad.utils","c":"BitStorage","l":"set(long)"},{"p":"com.skjegstad.utils","c":"MappedBitStorage","l":"set(long)"},{"p":"com.skjegstad.utils","c":"HeapBitStorage","l":"set(long)"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"setBit(int, boolean)","u":"setBit(int,boolean)"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"setBit(int, boolean)","u":"setBit(int,boolean)"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"setBit(int, boolean)","u":"setBit(int,boolean)"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"setBit(long, boolean)","u":"setBit(long,boolean)"},{"p":"com.skjegstad.utils","c":"BitStorage","l":"setWord(long, long)","u":"setWord(long,long)"},{"p":"com.skjegstad.utils","c":"MappedBitStorage","l":"setWord(long, long)","u":"setWord(long,long)"},{"p":"com.skjegstad.utils","c":"HeapBitStorage","l":"setWord(long, long)","u":"setWord(long,long)"},{"p":"com.skjegstad.utils","c":"BitStorage","l":"size()"},{"p":"com.skjegstad.utils","c":"BlockedBloomFilter","l":"size()"},{"p":"com.skjegstad.utils","c":"BloomFilter","l":"size()"},{"p":"com.skjegstad.utils","c":"MappedBitStorage","l":"size()"},{"p":"com.skjegstad.utils","c":"ConcurrentBloomFilter","l":"size()"},{"p":"com.skjegstad.utils","c":"HeapBitStorage","l":"size()"},{"p":"com.skjegstad.utils","c":"LargeBloomFilter","l":"size()"},{"p":"com.skjegstad.utils","c":"HashStrategies","l":"valueOf(String)","u":"valueOf(java.lang.String)"},{"p":"com.skjegstad.utils","c":"HashStrategies","l":"values()"},{"p":"com.skjegstad.utils","c":"BitStorage","l":"wordCount()"},{"p":"com.skjegstad.utils","c":"MappedBitStorage","l":"wordCount()"},{"p":"com.skjegstad.utils","c":"HeapBitStorage","l":"wordCount()"},{"p":"com.skjegstad.utils","c":"HashStrategies","l":"XXHASH64"}];updateSearchResults();
\ No newline at end of file
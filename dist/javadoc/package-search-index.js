@@ -0,0 +1 @@
+packageSearchIndex = [{"l":"All Packages","u":"allpackages-index.html"},{"l":"com.skjegstad.utils"}];updateSearchResults();
\ No newline at end of file
@@ -0,0 +1 @@
+typeSearchIndex = [{"l":"All Classes and Interfaces","u":"allclasses-index.html"},{"p":"com.skjegstad.utils","l":"BitStorage"},{"p":"com.skjegstad.utils","l":"BlockedBloomFilter"},{"p":"com.skjegstad.utils","l":"BloomFilter"},{"p":"com.skjegstad.utils","l":"BloomfilterBenchmark"},{"p":"com.skjegstad.utils","l":"ConcurrentBloomFilter"},{"p":"com.skjegstad.utils","l":"Funnel"},{"p":"com.skjegstad.utils","l":"HashStrategies"},{"p":"com.skjegstad.utils","l":"HashStrategy"},{"p":"com.skjegstad.utils","l":"HeapBitStorage"},{"p":"com.skjegstad.utils","l":"LargeBloomFilter"},{"p":"com.skjegstad.utils","l":"MappedBitStorage"},{"p":"com.skjegstad.utils","l":"MappedBloomFilter"},{"p":"com.skjegstad.utils","l":"OffHeapBitStorage"},{"p":"com.skjegstad.utils","l":"PrimitiveSink"}];updateSearchResults();
\ No newline at end of file
@@ -0,0 +1,582 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A static binary fuse filter, as described by Graf and Lemire in "Binary
+ * Fuse Filters: Fast and Smaller Than Xor Filters".
+ * <br /><br />
+ * The filter is built once from a set of elements and can not be changed
+ * afterwards. Each element is mapped to three slots of an array of 8-bit
+ * fingerprints, and the array is filled so that the three slots of every
+ * element XOR to the fingerprint of the element. A lookup therefore reads
+ * exactly three bytes, all within a small window of the array.
+ * <br /><br />
+ * The false positive probability is 1/256 (about 0.4%), and the filter uses
+ * about 9 bits per element for large sets. A {@link BloomFilter} with the same
+ * false positive probability uses about 11.5 bits per element, and reads up
+ * to 8 random bits.
+ * <br /><br />
+ * Elements are hashed with a {@link HashStrategy} as in {@link BloomFilter}.
+ * The filter is immutable, and can be shared between threads.
+ *
+ * @param <E> Object type that is in the filter, e.g. String or Integer.
+ */
+public class BinaryFuseFilter<E> implements Serializable {
+    private static final int MAX_ITERATIONS = 100; // attempts at building before giving up
+
+    private final byte[] fingerprints;
+    private final int segmentLength;
+    private final int segmentLengthMask;
+    private final int segmentCountLength;
+    private final long seed;
+    private final int numberOfElements; // number of distinct elements
+    private final HashStrategy hashStrategy; // hash function used to select slots and fingerprints
+    private final Funnel<? super E> funnel; // writes elements into the hash function, null to use toString()
+
+    /**
+     * Builds a filter containing the elements of a Collection. Duplicate elements are
+     * only stored once.
+     *
+     * @param elements elements in the filter.
+     * @param hashStrategy is the hash strategy used to hash elements.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     */
+    public BinaryFuseFilter(Collection<? extends E> elements, HashStrategy hashStrategy, Funnel<? super E> funnel) {
+        this(keys(elements, hashStrategy, funnel), hashStrategy, funnel);
+    }
+
+    /**
+     * Builds a filter containing the elements of a Collection, using {@link HashStrategies#MURMUR3_128}.
+     *
+     * @param elements elements in the filter.
+     */
+    public BinaryFuseFilter(Collection<? extends E> elements) {
+        this(elements, HashStrategies.MURMUR3_128, null);
+    }
+
+    /**
+     * Builds a filter containing an array of longs, to be checked with containsLong(long).
+     *
+     * @param values values in the filter.
+     * @param hashStrategy is the hash strategy used to hash values.
+     */
+    public BinaryFuseFilter(long[] values, HashStrategy hashStrategy) {
+        this(keys(values, hashStrategy), hashStrategy, null);
+    }
+
+    /**
+     * Builds a filter containing an array of longs, using {@link HashStrategies#MURMUR3_128}.
+     *
+     * @param values values in the filter.
+     */
+    public BinaryFuseFilter(long[] values) {
+        this(values, HashStrategies.MURMUR3_128);
+    }
+
+    /**
+     * Builds a filter from the 64-bit hashes of its elements.
+     *
+     * @param keys hashes of the elements, without duplicates.
+     * @param hashStrategy is the hash strategy used to hash elements.
+     * @param funnel writes elements into the hash function, or null.
+     */
+    private BinaryFuseFilter(long[] keys, HashStrategy hashStrategy, Funnel<? super E> funnel) {
+        if (hashStrategy == null)
+            throw new NullPointerException("hashStrategy");
+        this.hashStrategy = hashStrategy;
+        this.funnel = funnel;
+        this.numberOfElements = keys.length;
+
+        int size = keys.length;
+        int segmentLength = size == 0 ? 4 : Math.min(1 << (int) Math.floor(Math.log(size) / Math.log(3.33) + 2.25), 1 << 18);
+        double sizeFactor = size <= 1 ? 0 : Math.max(1.125, 0.875 + 0.25 * Math.log(1000000) / Math.log(size));
+        long capacity = Math.round(size * sizeFactor);
+        long segmentCount = (capacity + segmentLength - 1) / segmentLength - 2;
+        segmentCount = segmentCount <= 0 ? 1 : segmentCount;
+        long arrayLength = (segmentCount + 2) * segmentLength;
+        if (arrayLength > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Too many elements: " + size);
+
+        this.segmentLength = segmentLength;
+        this.segmentLengthMask = segmentLength - 1;
+        this.segmentCountLength = (int) (segmentCount * segmentLength);
+        this.fingerprints = new byte[(int) arrayLength];
+        this.seed = build(keys, (int) segmentCount);
+    }
+
+    private BinaryFuseFilter(FilterHeader header, byte[] fingerprints, Funnel<? super E> funnel) {
+        this.hashStrategy = HashStrategies.forId(header.hashStrategyId);
+        this.funnel = funnel;
+        this.numberOfElements = (int) header.count;
+        this.segmentLength = header.parameter;
+        this.segmentLengthMask = segmentLength - 1;
+        this.segmentCountLength = fingerprints.length - 2 * segmentLength;
+        this.fingerprints = fingerprints;
+        this.seed = header.seed;
+    }
+
+    private static <E> long[] keys(Collection<? extends E> elements, HashStrategy hashStrategy, Funnel<? super E> funnel) {
+        HashBuffer buffer = HashBuffer.get();
+        long[] hashes = buffer.hashes(2);
+        long[] keys = new long[elements.size()];
+        int n = 0;
+        for (E element : elements) {
+            ByteSink sink = buffer.sink(funnel, element);
+            hashStrategy.createHashes(sink.bytes, 0, sink.length, hashes, 2);
+            keys[n++] = key(hashes);
+        }
+        return unique(keys, n);
+    }
+
+    private static long[] keys(long[] values, HashStrategy hashStrategy) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        long[] keys = new long[values.length];
+        for (int i = 0; i < values.length; i++) {
+            hashStrategy.createHashes(values[i], hashes, 2);
+            keys[i] = key(hashes);
+        }
+        return unique(keys, keys.length);
+    }
+
+    private static long[] unique(long[] keys, int n) {
+        Arrays.sort(keys, 0, n);
+        int unique = 0;
+        for (int i = 0; i < n; i++)
+            if (i == 0 || keys[i] != keys[unique - 1])
+                keys[unique++] = keys[i];
+        return unique == keys.length ? keys : Arrays.copyOf(keys, unique);
+    }
+
+    /**
+     * Combines two hash values into the 64-bit key of an element. MD5 gives
+     * 32-bit hash values, so both are needed to fill 64 bits.
+     */
+    private static long key(long[] hashes) {
+        return hashes[0] ^ Long.rotateLeft(hashes[1], 32);
+    }
+
+    /**
+     * Fills the fingerprints. Keys are added to the three slots they map to,
+     * and then peeled off, starting with slots that hold a single key. If all
+     * keys can be peeled, the fingerprints are assigned in reverse order, so
+     * the slot of each key is set after the slots of the keys peeled after it.
+     *
+     * @return the seed that worked.
+     */
+    private long build(long[] keys, int segmentCount) {
+        int size = keys.length;
+        int capacity = fingerprints.length;
+        long[] reverseOrder = new long[size + 1];
+        byte[] reverseH = new byte[size];
+        int[] alone = new int[capacity];
+        byte[] t2count = new byte[capacity]; // 4 * keys in the slot, plus the XOR of their slot numbers
+        long[] t2hash = new long[capacity]; // XOR of the hashes of the keys in the slot
+        int[] h012 = new int[5];
+
+        int blockBits = 1;
+        while ((1 << blockBits) < segmentCount)
+            blockBits++;
+        int block = 1 << blockBits;
+        int[] startPos = new int[block];
+
+        long rng = 0x726b2b9d438b9d4dL;
+        long seed = 0;
+        int stackSize = 0;
+        reverseOrder[size] = 1;
+        for (int loop = 0; ; loop++) {
+            if (loop >= MAX_ITERATIONS)
+                throw new IllegalStateException("Could not build filter after " + MAX_ITERATIONS + " attempts");
+            rng += 0x9E3779B97F4A7C15L;
+            seed = Murmur3.fmix64(rng);
+            Arrays.fill(reverseOrder, 0, size, 0);
+            Arrays.fill(t2count, (byte) 0);
+            Arrays.fill(t2hash, 0);
+
+            // sort the hashes by segment, so the slots are visited roughly in order
+            for (int i = 0; i < block; i++)
+                startPos[i] = (int) (((long) i * size) >>> blockBits);
+            boolean error = false;
+            for (int i = 0; i < size; i++) {
+                long hash = Murmur3.fmix64(keys[i] + seed);
+                if (hash == 0) { // 0 marks a free position
+                    error = true;
+                    break;
+                }
+                int segment = (int) (hash >>> (64 - blockBits));
+                while (reverseOrder[startPos[segment]] != 0)
+                    segment = (segment + 1) & (block - 1);
+                reverseOrder[startPos[segment]] = hash;
+                startPos[segment]++;
+            }
+
+            for (int i = 0; i < size && !error; i++) {
+                long hash = reverseOrder[i];
+                for (int j = 0; j < 3; j++) {
+                    int h = slot(hash, j);
+                    t2count[h] += 4;
+                    t2count[h] ^= j;
+                    t2hash[h] ^= hash;
+                    error |= (t2count[h] & 0xFF) < 4; // more than 63 keys in a slot
+                }
+            }
+            if (error)
+                continue;
+
+            // peel slots holding a single key
+            int queueSize = 0;
+            for (int i = 0; i < capacity; i++) {
+                alone[queueSize] = i;
+                queueSize += (t2count[i] & 0xFF) >> 2 == 1 ? 1 : 0;
+            }
+            stackSize = 0;
+            while (queueSize > 0) {
+                int index = alone[--queueSize];
+                if ((t2count[index] & 0xFF) >> 2 != 1)
+                    continue;
+                long hash = t2hash[index];
+                int found = t2count[index] & 3;
+                h012[0] = slot(hash, 0);
+                h012[1] = slot(hash, 1);
+                h012[2] = slot(hash, 2);
+                h012[3] = h012[0];
+                h012[4] = h012[1];
+                reverseH[stackSize] = (byte) found;
+                reverseOrder[stackSize] = hash;
+                stackSize++;
+                for (int j = 1; j <= 2; j++) {
+                    int other = h012[found + j];
+                    alone[queueSize] = other;
+                    queueSize += (t2count[other] & 0xFF) >> 2 == 2 ? 1 : 0;
+                    t2count[other] -= 4;
+                    t2count[other] ^= (found + j) % 3;
+                    t2hash[other] ^= hash;
+                }
+            }
+            if (stackSize == size)
+                break;
+        }
+
+        for (int i = size - 1; i >= 0; i--) {
+            long hash = reverseOrder[i];
+            int found = reverseH[i];
+            h012[0] = slot(hash, 0);
+            h012[1] = slot(hash, 1);
+            h012[2] = slot(hash, 2);
+            h012[3] = h012[0];
+            h012[4] = h012[1];
+            fingerprints[h012[found]] = (byte) (fingerprint(hash)
+                    ^ fingerprints[h012[found + 1]] ^ fingerprints[h012[found + 2]]);
+        }
+        return seed;
+    }
+
+    /**
+     * Returns slot <code>index</code> (0, 1 or 2) of a hash. The three slots
+     * are in three consecutive segments, the first chosen by the high bits of
+     * the hash.
+     */
+    private int slot(long hash, int index) {
+        long h = multiplyHigh(hash, segmentCountLength) + (long) index * segmentLength;
+        long hh = hash & ((1L << 36) - 1);
+        h ^= (hh >>> (36 - 18 * index)) & segmentLengthMask;
+        return (int) h;
+    }
+
+    /**
+     * Returns the high 64 bits of the unsigned product of a and b, where b is below 2^32.
+     */
+    private static long multiplyHigh(long a, int b) {
+        long bl = b & 0xFFFFFFFFL;
+        return ((a >>> 32) * bl + (((a & 0xFFFFFFFFL) * bl) >>> 32)) >>> 32;
+    }
+
+    private static int fingerprint(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private boolean containsKey(long key) {
+        long hash = Murmur3.fmix64(key + seed);
+        int h0 = (int) multiplyHigh(hash, segmentCountLength);
+        int h1 = h0 + segmentLength;
+        int h2 = h1 + segmentLength;
+        h1 ^= (int) (hash >>> 18) & segmentLengthMask;
+        h2 ^= (int) hash & segmentLengthMask;
+        return (byte) (fingerprint(hash) ^ fingerprints[h0] ^ fingerprints[h1] ^ fingerprints[h2]) == 0;
+    }
+
+    /**
+     * Returns true if the element could be in the filter. Elements in the
+     * filter always return true. Other elements return true with a probability
+     * of 1/256.
+     *
+     * @param element element to check.
+     * @return true if the element could be in the filter.
+     */
+    public boolean contains(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return contains(buffer, sink.bytes, 0, sink.length);
+    }
+
+    /**
+     * Returns true if the array of bytes could be in the filter.
+     *
+     * @param bytes array of bytes to check.
+     * @return true if the array could be in the filter.
+     */
+    public boolean contains(byte[] bytes) {
+        return contains(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private boolean contains(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(2);
+        hashStrategy.createHashes(bytes, offset, length, hashes, 2);
+        return containsKey(key(hashes));
+    }
+
+    /**
+     * Returns true if the long could be in the filter. Matches the values of
+     * the long[] constructor, and elements hashing to the same bytes as in
+     * {@link BloomFilter#addLong(long)}.
+     *
+     * @param value value to check.
+     * @return true if the value could be in the filter.
+     */
+    public boolean containsLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        hashStrategy.createHashes(value, hashes, 2);
+        return containsKey(key(hashes));
+    }
+
+    /**
+     * Returns true if the int could be in the filter. See {@link BloomFilter#addInt(int)}.
+     *
+     * @param value value to check.
+     * @return true if the value could be in the filter.
+     */
+    public boolean containsInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        hashStrategy.createHashes(value, hashes, 2);
+        return containsKey(key(hashes));
+    }
+
+    /**
+     * Returns true if the 128-bit value could be in the filter. See {@link BloomFilter#add(long, long)}.
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value could be in the filter.
+     */
+    public boolean contains(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        hashStrategy.createHashes(first, second, hashes, 2);
+        return containsKey(key(hashes));
+    }
+
+    /**
+     * Returns true if all the elements of a Collection could be in the filter.
+     * @param c elements to check.
+     * @return true if all the elements in c could be in the filter.
+     */
+    public boolean containsAll(Collection<? extends E> c) {
+        for (E element : c)
+            if (!contains(element))
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the probability of a false positive, 1/256.
+     *
+     * @return probability of false positives.
+     */
+    public double getFalsePositiveProbability() {
+        return 1.0 / 256;
+    }
+
+    /**
+     * Returns the number of distinct elements in the filter.
+     *
+     * @return number of elements.
+     */
+    public int count() {
+        return numberOfElements;
+    }
+
+    /**
+     * Returns the number of bits used by the fingerprints.
+     *
+     * @return size of the filter in bits.
+     */
+    public long size() {
+        return (long) fingerprints.length * 8;
+    }
+
+    /**
+     * Returns the number of bits used per element.
+     *
+     * @return number of bits per element.
+     */
+    public double getBitsPerElement() {
+        return size() / (double) numberOfElements;
+    }
+
+    /**
+     * Returns the hash strategy used to hash elements.
+     *
+     * @return hash strategy.
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Returns the funnel used to hash elements, or null if the output of
+     * toString() is hashed.
+     *
+     * @return funnel or null.
+     */
+    public Funnel<? super E> getFunnel() {
+        return funnel;
+    }
+
+    /**
+     * Compares the contents of two instances to see if they are equal.
+     *
+     * @param obj is the object to compare to.
+     * @return True if the contents of the objects are equal.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final BinaryFuseFilter<E> other = (BinaryFuseFilter<E>) obj;
+        if (this.seed != other.seed || this.segmentLength != other.segmentLength) {
+            return false;
+        }
+        if (!this.hashStrategy.equals(other.hashStrategy)) {
+            return false;
+        }
+        return Arrays.equals(this.fingerprints, other.fingerprints);
+    }
+
+    /**
+     * Calculates a hash code for this class.
+     * @return hash code representing the contents of an instance of this class.
+     */
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 61 * hash + Arrays.hashCode(this.fingerprints);
+        hash = 61 * hash + (int) (this.seed ^ (this.seed >>> 32));
+        hash = 61 * hash + this.hashStrategy.getId();
+        return hash;
+    }
+
+    /**
+     * Writes the filter to a stream, in the format of BloomFilter.writeTo().
+     * The header holds filter type 1, and the fingerprints follow it packed
+     * 8 to a little-endian word. The stream is not closed.
+     *
+     * @param out stream to write to.
+     * @throws IOException if writing fails.
+     * @throws IllegalArgumentException if the hash strategy is not one of {@link HashStrategies}.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(Channels.newChannel(out));
+    }
+
+    /**
+     * Writes the filter to a channel. See writeTo(OutputStream).
+     *
+     * @param out channel to write to.
+     * @throws IOException if writing fails.
+     * @throws IllegalArgumentException if the hash strategy is not one of {@link HashStrategies}.
+     */
+    public void writeTo(WritableByteChannel out) throws IOException {
+        FilterHeader header = new FilterHeader();
+        header.type = FilterHeader.TYPE_BINARY_FUSE;
+        header.hashStrategyId = HashStrategies.forId(hashStrategy.getId()).getId();
+        header.k = 3;
+        header.bits = size();
+        header.expectedElements = numberOfElements;
+        header.count = numberOfElements;
+        header.parameter = segmentLength;
+        header.seed = seed;
+        long[] words = new long[(fingerprints.length + 7) >>> 3];
+        for (int i = 0; i < fingerprints.length; i++)
+            words[i >>> 3] |= (fingerprints[i] & 0xFFL) << ((i & 7) << 3);
+        FilterIO.write(header, words, out);
+    }
+
+    /**
+     * Reads a filter written by writeTo(). The stream is not closed.
+     *
+     * @param <E> Object type that is in the filter.
+     * @param in stream to read from.
+     * @param funnel writes elements into the hash function. Must be the same as for the filter
+     * that was written. If null, the output of toString() is hashed.
+     * @return the filter.
+     * @throws IOException if reading fails, or the data is not a binary fuse filter.
+     */
+    public static <E> BinaryFuseFilter<E> readFrom(InputStream in, Funnel<? super E> funnel) throws IOException {
+        return readFrom(Channels.newChannel(in), funnel);
+    }
+
+    /**
+     * Reads a filter written by writeTo(). The channel is not closed.
+     *
+     * @param <E> Object type that is in the filter.
+     * @param in channel to read from.
+     * @param funnel writes elements into the hash function. Must be the same as for the filter
+     * that was written. If null, the output of toString() is hashed.
+     * @return the filter.
+     * @throws IOException if reading fails, or the data is not a binary fuse filter.
+     */
+    public static <E> BinaryFuseFilter<E> readFrom(ReadableByteChannel in, Funnel<? super E> funnel) throws IOException {
+        FilterHeader header = FilterIO.readHeader(in);
+        if (header.type != FilterHeader.TYPE_BINARY_FUSE)
+            throw new IOException("Unsupported filter type: " + header.type);
+        long length = header.bits >>> 3;
+        int segmentLength = header.parameter;
+        if (header.k != 3 || (header.bits & 7) != 0 || length > Integer.MAX_VALUE - 8 || segmentLength <= 0
+                || Integer.bitCount(segmentLength) != 1 || length % segmentLength != 0 || length < 3L * segmentLength
+                || header.count > Integer.MAX_VALUE)
+            throw new IOException("Corrupt binary fuse filter header");
+        header.hashStrategy();
+        long[] words = FilterIO.readWords(header, in);
+        byte[] fingerprints = new byte[(int) length];
+        for (int i = 0; i < fingerprints.length; i++)
+            fingerprints[i] = (byte) (words[i >>> 3] >>> ((i & 7) << 3));
+        return new BinaryFuseFilter<E>(header, fingerprints, funnel);
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+/**
+ * Storage for the bits of a Bloom filter, addressed with long indices.
+ * <br /><br />
+ * The bits are grouped into 64-bit words. Bit i is stored in word i / 64 at
+ * position i % 64, the same layout as java.util.BitSet.toLongArray(). The
+ * last word may extend beyond size(); the extra bits are never set by a
+ * Bloom filter.
+ *
+ * @see HeapBitStorage
+ * @see OffHeapBitStorage
+ */
+public interface BitStorage {
+
+    /**
+     * Returns the number of bits in the storage.
+     *
+     * @return number of bits.
+     */
+    long size();
+
+    /**
+     * Read a single bit.
+     *
+     * @param bit the bit to read.
+     * @return true if the bit is set, false if it is not.
+     */
+    boolean get(long bit);
+
+    /**
+     * Set a single bit to true.
+     *
+     * @param bit the bit to set.
+     */
+    void set(long bit);
+
+    /**
+     * Set a single bit to false.
+     *
+     * @param bit the bit to clear.
+     */
+    void clear(long bit);
+
+    /**
+     * Sets all bits to false.
+     */
+    void clear();
+
+    /**
+     * Returns the number of 64-bit words in the storage, which is size() / 64 rounded up.
+     *
+     * @return number of words.
+     */
+    long wordCount();
+
+    /**
+     * Read a 64-bit word.
+     *
+     * @param index index of the word.
+     * @return the word.
+     */
+    long getWord(long index);
+
+    /**
+     * Replace a 64-bit word.
+     *
+     * @param index index of the word.
+     * @param word new value of the word.
+     */
+    void setWord(long index, long word);
+}
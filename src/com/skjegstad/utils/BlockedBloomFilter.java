@@ -0,0 +1,619 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * A cache-line blocked Bloom filter, as described by Putze, Sanders and
+ * Singler in "Cache-, Hash- and Space-Efficient Bloom Filters".
+ * <br /><br />
+ * The filter is divided into blocks of 512 bits, the size of a typical
+ * 64-byte cache line. The first hash value of an element selects a block, and
+ * all k bits of the element are set within that block. A lookup therefore
+ * reads a single block of 8 consecutive longs, instead of up to k random
+ * cache lines as in {@link BloomFilter}. The block is 64-byte aligned within
+ * the array, but the JVM does not align the array itself, so a block may
+ * span two adjacent cache lines. These are usually fetched together by the
+ * hardware prefetcher.
+ * <br /><br />
+ * The price is a somewhat higher false positive probability, since elements
+ * are not spread evenly between blocks. getFalsePositiveProbability() takes
+ * this into account.
+ * <br /><br />
+ * The public API is the same as for {@link BloomFilter}. The filter is not
+ * thread-safe.
+ *
+ * @param <E> Object type that is to be inserted into the Bloom filter, e.g. String or Integer.
+ */
+public class BlockedBloomFilter<E> implements Serializable {
+    /** Number of bits in a block. */
+    public static final int BLOCK_BITS = 512;
+    private static final int BLOCK_WORDS = BLOCK_BITS / 64;
+
+    private final long[] words;
+    private final int bitSetSize;
+    private final int blockCount;
+    private final double bitsPerElement;
+    private final int expectedNumberOfFilterElements; // expected (maximum) number of elements to be added
+    private int numberOfAddedElements; // number of elements actually added to the Bloom filter
+    private final int k; // number of hash functions
+    private final HashStrategy hashStrategy; // hash function used to select bits
+    private final Funnel<? super E> funnel; // writes elements into the hash function, null to use toString()
+
+    /**
+      * Constructs an empty Bloom filter. The total length of the Bloom filter will be
+      * c*n, rounded up to a whole number of blocks.
+      *
+      * @param c is the number of bits used per element.
+      * @param n is the expected number of elements the filter will contain.
+      * @param k is the number of hash functions used.
+      * @param hashStrategy is the hash strategy used to select bits.
+      * @throws IllegalArgumentException if the filter would have more than Integer.MAX_VALUE bits.
+      */
+    public BlockedBloomFilter(double c, int n, int k, HashStrategy hashStrategy) {
+        this(c, n, k, hashStrategy, null);
+    }
+
+    /**
+      * Constructs an empty Bloom filter that hashes elements with a funnel. The total length of the Bloom filter
+      * will be c*n, rounded up to a whole number of blocks.
+      *
+      * @param c is the number of bits used per element.
+      * @param n is the expected number of elements the filter will contain.
+      * @param k is the number of hash functions used.
+      * @param hashStrategy is the hash strategy used to select bits.
+      * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+      * @throws IllegalArgumentException if the filter would have more than Integer.MAX_VALUE bits.
+      */
+    public BlockedBloomFilter(double c, int n, int k, HashStrategy hashStrategy, Funnel<? super E> funnel) {
+        this(Math.max(1, (int)Math.ceil(Math.ceil(c * n) / BLOCK_BITS)), c, n, k, hashStrategy, funnel);
+    }
+
+    /**
+     * Constructs an empty Bloom filter with the size, number of hash functions and
+     * hash strategy chosen by a {@link BloomFilterSpec}. The size is rounded up to a
+     * whole number of blocks. Blocks are always selected with MODULO, whatever the
+     * index reduction of the spec.
+     *
+     * @param spec parameters of the filter, typically with variant BLOCKED.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     * @throws IllegalArgumentException if the spec has more than Integer.MAX_VALUE bits or expected elements.
+     */
+    public BlockedBloomFilter(BloomFilterSpec spec, Funnel<? super E> funnel) {
+        this(blockCount(spec), spec.getBits() / (double) spec.getExpectedElements(), (int) spec.getExpectedElements(),
+                spec.getK(), spec.getHashStrategy(), funnel);
+    }
+
+    private BlockedBloomFilter(int blockCount, double c, int n, int k, HashStrategy hashStrategy,
+            Funnel<? super E> funnel) {
+        if (hashStrategy == null)
+            throw new NullPointerException("hashStrategy");
+        if (blockCount > Integer.MAX_VALUE / BLOCK_BITS) // the int cast of a larger block count saturates here too
+            throw new IllegalArgumentException("Filter is too large for BlockedBloomFilter: "
+                    + (long) Math.ceil(c * n) + " bits");
+        this.expectedNumberOfFilterElements = n;
+        this.k = k;
+        this.bitsPerElement = c;
+        this.blockCount = blockCount;
+        this.bitSetSize = blockCount * BLOCK_BITS;
+        this.hashStrategy = hashStrategy;
+        this.funnel = funnel;
+        this.words = new long[blockCount * BLOCK_WORDS];
+    }
+
+    private static int blockCount(BloomFilterSpec spec) {
+        if (spec.getBits() > Integer.MAX_VALUE - BLOCK_BITS || spec.getExpectedElements() > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Spec is too large for BlockedBloomFilter: " + spec.getBits() + " bits");
+        return (int) Math.max(1, (spec.getBits() + BLOCK_BITS - 1) / BLOCK_BITS);
+    }
+
+    /**
+     * Constructs an empty Bloom filter. The optimal number of hash functions (k) is estimated from the total size of the Bloom
+     * and the number of expected elements.
+     *
+     * @param bitSetSize defines how many bits should be used in total for the filter. Rounded up to a whole number of blocks.
+     * @param expectedNumberOElements defines the maximum number of elements the filter is expected to contain.
+     * @param hashStrategy is the hash strategy used to select bits.
+     * @throws IllegalArgumentException if rounding up to whole blocks gives more than Integer.MAX_VALUE bits.
+     */
+    public BlockedBloomFilter(int bitSetSize, int expectedNumberOElements, HashStrategy hashStrategy) {
+        this(bitSetSize / (double)expectedNumberOElements,
+             expectedNumberOElements,
+             (int) Math.round((bitSetSize / (double)expectedNumberOElements) * Math.log(2.0)),
+             hashStrategy);
+    }
+
+    /**
+     * Constructs an empty Bloom filter with a given false positive probability. The number of bits per
+     * element and the number of hash functions is estimated as for a standard Bloom filter, so
+     * the actual false positive probability will be somewhat higher. See getFalsePositiveProbability().
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param hashStrategy is the hash strategy used to select bits.
+     */
+    public BlockedBloomFilter(double falsePositiveProbability, int expectedNumberOfElements, HashStrategy hashStrategy) {
+        this(falsePositiveProbability, expectedNumberOfElements, hashStrategy, null);
+    }
+
+    /**
+     * Constructs an empty Bloom filter with a given false positive probability that hashes elements
+     * with a funnel instead of their toString()-method. See {@link Funnel}.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param hashStrategy is the hash strategy used to select bits.
+     * @param funnel writes elements into the hash function.
+     */
+    public BlockedBloomFilter(double falsePositiveProbability, int expectedNumberOfElements, HashStrategy hashStrategy,
+            Funnel<? super E> funnel) {
+        this(Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))) / Math.log(2), // c = k / ln(2)
+             expectedNumberOfElements,
+             (int)Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))), // k = ceil(-log_2(false prob.))
+             hashStrategy,
+             funnel);
+    }
+
+    /**
+     * Constructs an empty Bloom filter with a given false positive probability, using
+     * {@link HashStrategies#MURMUR3_128}.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     */
+    public BlockedBloomFilter(double falsePositiveProbability, int expectedNumberOfElements) {
+        this(falsePositiveProbability, expectedNumberOfElements, HashStrategies.MURMUR3_128);
+    }
+
+    /**
+     * Compares the contents of two instances to see if they are equal.
+     *
+     * @param obj is the object to compare to.
+     * @return True if the contents of the objects are equal.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final BlockedBloomFilter<E> other = (BlockedBloomFilter<E>) obj;
+        if (this.expectedNumberOfFilterElements != other.expectedNumberOfFilterElements) {
+            return false;
+        }
+        if (this.k != other.k) {
+            return false;
+        }
+        if (this.bitSetSize != other.bitSetSize) {
+            return false;
+        }
+        if (!this.hashStrategy.equals(other.hashStrategy)) {
+            return false;
+        }
+        return Arrays.equals(this.words, other.words);
+    }
+
+    /**
+     * Calculates a hash code for this class.
+     * @return hash code representing the contents of an instance of this class.
+     */
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 61 * hash + Arrays.hashCode(this.words);
+        hash = 61 * hash + this.expectedNumberOfFilterElements;
+        hash = 61 * hash + this.bitSetSize;
+        hash = 61 * hash + this.k;
+        hash = 61 * hash + this.hashStrategy.getId();
+        return hash;
+    }
+
+    /**
+     * Calculates the expected probability of false positives based on
+     * the number of expected filter elements and the size of the Bloom filter.
+     *
+     * @return expected probability of false positives.
+     */
+    public double expectedFalsePositiveProbability() {
+        return getFalsePositiveProbability(expectedNumberOfFilterElements);
+    }
+
+    /**
+     * Calculate the probability of a false positive given the specified
+     * number of inserted elements.
+     * <br /><br />
+     * The number of elements in a block follows a Poisson distribution with
+     * mean lambda = B * n / m, where B is the number of bits in a block. The
+     * probability is the false positive probability of a standard Bloom filter
+     * of B bits holding i elements, weighted by the probability of i elements
+     * ending up in the block (Putze et al.):
+     * <br /><br />
+     * sum over i of (e^(-lambda) * lambda^i / i!) * (1 - (1 - 1/B)^(k * i))^k
+     * <br /><br />
+     * The result is always higher than for a standard Bloom filter of the same
+     * size, which is (1 - e^(-k * n / m)) ^ k.
+     *
+     * @param numberOfElements number of inserted elements.
+     * @return probability of a false positive.
+     */
+    public double getFalsePositiveProbability(double numberOfElements) {
+        return falsePositiveProbability(bitSetSize, k, numberOfElements);
+    }
+
+    /**
+     * Calculates the false positive probability of a blocked filter of the
+     * given size. See getFalsePositiveProbability(double).
+     */
+    static double falsePositiveProbability(long bitSetSize, int k, double numberOfElements) {
+        double lambda = BLOCK_BITS * numberOfElements / bitSetSize;
+        if (lambda <= 0)
+            return 0;
+
+        // Start at the mode of the distribution and sum outwards until the terms vanish
+        int mode = (int) lambda;
+        double logP = -lambda + mode * Math.log(lambda);
+        for (int i = 2; i <= mode; i++)
+            logP -= Math.log(i);
+        double pMode = Math.exp(logP);
+
+        double sum = pMode * blockFalsePositiveProbability(k, mode);
+        double p = pMode;
+        for (int i = mode + 1; p > 1e-15; i++) {
+            p *= lambda / i;
+            sum += p * blockFalsePositiveProbability(k, i);
+        }
+        p = pMode;
+        for (int i = mode; i > 0 && p > 1e-15; i--) {
+            p *= i / lambda;
+            sum += p * blockFalsePositiveProbability(k, i - 1);
+        }
+        return Math.min(1.0, sum);
+    }
+
+    private static double blockFalsePositiveProbability(int k, int elements) {
+        return Math.pow(1 - Math.pow(1 - 1.0 / BLOCK_BITS, (double) k * elements), k);
+    }
+
+    /**
+     * Get the current probability of a false positive. The probability is calculated from
+     * the size of the Bloom filter and the current number of elements added to it.
+     *
+     * @return probability of false positives.
+     */
+    public double getFalsePositiveProbability() {
+        return getFalsePositiveProbability(numberOfAddedElements);
+    }
+
+    /**
+     * Returns the number of hash functions used by the filter.
+     *
+     * @return k.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the hash strategy used to select bits in the Bloom filter.
+     *
+     * @return hash strategy.
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Returns the funnel used to hash elements, or null if the output of
+     * toString() is hashed.
+     *
+     * @return funnel or null.
+     */
+    public Funnel<? super E> getFunnel() {
+        return funnel;
+    }
+
+    /**
+     * Sets all bits to false in the Bloom filter.
+     */
+    public void clear() {
+        Arrays.fill(words, 0);
+        numberOfAddedElements = 0;
+    }
+
+    /**
+     * Adds an object to the Bloom filter. If the filter was created with a
+     * {@link Funnel}, the bytes written by the funnel are used as input to the
+     * hash functions. Otherwise the output from the object's toString() method
+     * is used.
+     *
+     * @param element is an element to register in the Bloom filter.
+     */
+    public void add(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        add(buffer, sink.bytes, 0, sink.length);
+    }
+
+    /**
+     * Adds an array of bytes to the Bloom filter.
+     *
+     * @param bytes array of bytes to add to the Bloom filter.
+     */
+    public void add(byte[] bytes) {
+        add(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private void add(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(k + 1);
+        hashStrategy.createHashes(bytes, offset, length, hashes, k + 1);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds a long to the Bloom filter. The value sets the same bits as adding
+     * its 8 bytes in little-endian order with add(byte[]).
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k + 1);
+        hashStrategy.createHashes(value, hashes, k + 1);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds an int to the Bloom filter. The value sets the same bits as adding
+     * its 4 bytes in little-endian order with add(byte[]).
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k + 1);
+        hashStrategy.createHashes(value, hashes, k + 1);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds a 128-bit value, such as a UUID, to the Bloom filter. The value sets
+     * the same bits as adding the 8 little-endian bytes of <code>first</code>
+     * followed by the 8 little-endian bytes of <code>second</code> with add(byte[]).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     */
+    public void add(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k + 1);
+        hashStrategy.createHashes(first, second, hashes, k + 1);
+        addHashes(hashes);
+    }
+
+    /**
+     * The first hash value selects the block. Each of the following k hash
+     * values selects a bit within the block. The hash values are mixed first,
+     * since double hashing only gives an arithmetic progression of positions,
+     * which repeats itself within 512 bits for some elements.
+     */
+    private void addHashes(long[] hashes) {
+        int block = blockOffset(hashes[0]);
+        for (int i = 1; i <= k; i++) {
+            int bit = bitInBlock(hashes[i]);
+            words[block + (bit >>> 6)] |= 1L << bit;
+        }
+        numberOfAddedElements ++;
+    }
+
+    private static int bitInBlock(long hash) {
+        return (int) (Murmur3.fmix64(hash) >>> 55);
+    }
+
+    private int blockOffset(long hash) {
+        return (int) Math.abs(hash % blockCount) * BLOCK_WORDS;
+    }
+
+    /**
+     * Adds all elements from a Collection to the Bloom filter.
+     * @param c Collection of elements.
+     */
+    public void addAll(Collection<? extends E> c) {
+        for (E element : c)
+            add(element);
+    }
+
+    /**
+     * Returns true if the element could have been inserted into the Bloom filter.
+     * Use getFalsePositiveProbability() to calculate the probability of this
+     * being correct.
+     *
+     * @param element element to check.
+     * @return true if the element could have been inserted into the Bloom filter.
+     */
+    public boolean contains(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return contains(buffer, sink.bytes, 0, sink.length);
+    }
+
+    /**
+     * Returns true if the array of bytes could have been inserted into the Bloom filter.
+     * Use getFalsePositiveProbability() to calculate the probability of this
+     * being correct.
+     *
+     * @param bytes array of bytes to check.
+     * @return true if the array could have been inserted into the Bloom filter.
+     */
+    public boolean contains(byte[] bytes) {
+        return contains(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private boolean contains(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(k + 1);
+        hashStrategy.createHashes(bytes, offset, length, hashes, k + 1);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the long could have been inserted into the Bloom filter
+     * with addLong(long).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k + 1);
+        hashStrategy.createHashes(value, hashes, k + 1);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the int could have been inserted into the Bloom filter
+     * with addInt(int).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k + 1);
+        hashStrategy.createHashes(value, hashes, k + 1);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the 128-bit value could have been inserted into the Bloom
+     * filter with add(long, long).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean contains(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k + 1);
+        hashStrategy.createHashes(first, second, hashes, k + 1);
+        return containsHashes(hashes);
+    }
+
+    private boolean containsHashes(long[] hashes) {
+        int block = blockOffset(hashes[0]);
+        for (int i = 1; i <= k; i++) {
+            int bit = bitInBlock(hashes[i]);
+            if ((words[block + (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if all the elements of a Collection could have been inserted
+     * into the Bloom filter. Use getFalsePositiveProbability() to calculate the
+     * probability of this being correct.
+     * @param c elements to check.
+     * @return true if all the elements in c could have been inserted into the Bloom filter.
+     */
+    public boolean containsAll(Collection<? extends E> c) {
+        for (E element : c)
+            if (!contains(element))
+                return false;
+        return true;
+    }
+
+    /**
+     * Read a single bit from the Bloom filter.
+     * @param bit the bit to read.
+     * @return true if the bit is set, false if it is not.
+     */
+    public boolean getBit(int bit) {
+        return (words[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Set a single bit in the Bloom filter.
+     * @param bit is the bit to set.
+     * @param value If true, the bit is set. If false, the bit is cleared.
+     */
+    public void setBit(int bit, boolean value) {
+        if (value)
+            words[bit >>> 6] |= 1L << bit;
+        else
+            words[bit >>> 6] &= ~(1L << bit);
+    }
+
+    /**
+     * Returns a copy of the bits in the Bloom filter. Bit i of block b is bit
+     * b * 512 + i of the bit set.
+     *
+     * @return bit set representing the Bloom filter.
+     */
+    public BitSet getBitSet() {
+        return BitSet.valueOf(words);
+    }
+
+    /**
+     * Returns the number of bits in the Bloom filter, which is always a
+     * multiple of the block size. Use count() to retrieve the number of
+     * inserted elements.
+     *
+     * @return the size of the bitset used by the Bloom filter.
+     */
+    public int size() {
+        return this.bitSetSize;
+    }
+
+    /**
+     * Returns the number of elements added to the Bloom filter after it
+     * was constructed or after clear() was called.
+     *
+     * @return number of elements added to the Bloom filter.
+     */
+    public int count() {
+        return this.numberOfAddedElements;
+    }
+
+    /**
+     * Returns the expected number of elements to be inserted into the filter.
+     * This value is the same value as the one passed to the constructor.
+     *
+     * @return expected number of elements.
+     */
+    public int getExpectedNumberOfElements() {
+        return expectedNumberOfFilterElements;
+    }
+
+    /**
+     * Get expected number of bits per element when the Bloom filter is full. This value is set by the constructor
+     * when the Bloom filter is created. See also getBitsPerElement().
+     *
+     * @return expected number of bits per element.
+     */
+    public double getExpectedBitsPerElement() {
+        return this.bitsPerElement;
+    }
+
+    /**
+     * Get actual number of bits per element based on the number of elements that have currently been inserted and the length
+     * of the Bloom filter. See also getExpectedBitsPerElement().
+     *
+     * @return number of bits per element.
+     */
+    public double getBitsPerElement() {
+        return this.bitSetSize / (double)numberOfAddedElements;
+    }
+}
@@ -15,12 +15,24 @@
 
 package com.skjegstad.utils;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.Collection;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
 
 /**
  * Implementation of a Bloom-filter, as described here:
@@ -34,31 +46,34 @@ import java.util.Collection;
  * were proposed in comments in his blog:
  * http://blog.locut.us/2008/01/12/a-decent-stand-alone-java-bloom-filter-implementation/
  *
+ * The hash function is selected with a {@link HashStrategy}. Filters use
+ * {@link HashStrategies#MD5} unless another strategy is given to the
+ * constructor, which keeps them compatible with filters created by earlier
+ * versions. {@link HashStrategies#MURMUR3_128} is considerably faster.
+ *
  * @param <E> Object type that is to be inserted into the Bloom filter, e.g. String or Integer.
  * @author Magnus Skjegstad <magnus@skjegstad.com>
  */
 public class BloomFilter<E> implements Serializable {
+    private static final long serialVersionUID = -3151614879614363047L; // computed from version 1.0, keeps its streams readable
+    static final int BATCH_SIZE = 256; // elements hashed before the bits are probed
+    static final int CHUNK_BITS = 1 << 16; // bits copied at a time when the words of the BitSet are needed
+
     private BitSet bitset;
     private int bitSetSize;
     private double bitsPerElement;
     private int expectedNumberOfFilterElements; // expected (maximum) number of elements to be added
     private int numberOfAddedElements; // number of elements actually added to the Bloom filter
+    private int bitsSet = -1; // number of bits set, or -1 if the bits have changed since they were counted
+    private transient boolean bitsetShared; // the BitSet is known outside the filter, so bitsSet can not be trusted
+    private ChangeTracker tracker; // records changed pages for exportDelta(), null unless tracking
     private int k; // number of hash functions
+    private HashStrategy hashStrategy; // hash function used to select bits
+    private IndexReduction indexReduction = IndexReduction.MODULO; // maps hash values to bit positions
+    private Funnel<? super E> funnel; // writes elements into the hash function, null to use toString()
 
     static final Charset charset = Charset.forName("UTF-8"); // encoding used for storing hash values as strings
 
-    static final String hashName = "MD5"; // MD5 gives good enough accuracy in most circumstances. Change to SHA1 if it's needed
-    static final MessageDigest digestFunction;
-    static { // The digest method is reused between instances
-        MessageDigest tmp;
-        try {
-            tmp = java.security.MessageDigest.getInstance(hashName);
-        } catch (NoSuchAlgorithmException e) {
-            tmp = null;
-        }
-        digestFunction = tmp;
-    }
-
     /**
       * Constructs an empty Bloom filter. The total length of the Bloom filter will be
       * c*n.
@@ -68,10 +83,41 @@ public class BloomFilter<E> implements Serializable {
       * @param k is the number of hash functions used.
       */
     public BloomFilter(double c, int n, int k) {
+      this(c, n, k, HashStrategies.MD5);
+    }
+
+    /**
+      * Constructs an empty Bloom filter using the given hash strategy. The total length of the Bloom filter will be
+      * c*n.
+      *
+      * @param c is the number of bits used per element.
+      * @param n is the expected number of elements the filter will contain.
+      * @param k is the number of hash functions used.
+      * @param hashStrategy is the hash strategy used to select bits.
+      */
+    public BloomFilter(double c, int n, int k, HashStrategy hashStrategy) {
+      this(c, n, k, hashStrategy, null);
+    }
+
+    /**
+      * Constructs an empty Bloom filter that hashes elements with a funnel. The total length of the Bloom filter
+      * will be c*n.
+      *
+      * @param c is the number of bits used per element.
+      * @param n is the expected number of elements the filter will contain.
+      * @param k is the number of hash functions used.
+      * @param hashStrategy is the hash strategy used to select bits.
+      * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+      */
+    public BloomFilter(double c, int n, int k, HashStrategy hashStrategy, Funnel<? super E> funnel) {
+      if (hashStrategy == null)
+          throw new NullPointerException("hashStrategy");
       this.expectedNumberOfFilterElements = n;
       this.k = k;
       this.bitsPerElement = c;
       this.bitSetSize = (int)Math.ceil(c * n);
+      this.hashStrategy = hashStrategy;
+      this.funnel = funnel;
       numberOfAddedElements = 0;
       this.bitset = new BitSet(bitSetSize);
     }
@@ -84,9 +130,22 @@ public class BloomFilter<E> implements Serializable {
      * @param expectedNumberOElements defines the maximum number of elements the filter is expected to contain.
      */
     public BloomFilter(int bitSetSize, int expectedNumberOElements) {
+        this(bitSetSize, expectedNumberOElements, HashStrategies.MD5);
+    }
+
+    /**
+     * Constructs an empty Bloom filter using the given hash strategy. The optimal number of hash functions (k) is
+     * estimated from the total size of the Bloom and the number of expected elements.
+     *
+     * @param bitSetSize defines how many bits should be used in total for the filter.
+     * @param expectedNumberOElements defines the maximum number of elements the filter is expected to contain.
+     * @param hashStrategy is the hash strategy used to select bits.
+     */
+    public BloomFilter(int bitSetSize, int expectedNumberOElements, HashStrategy hashStrategy) {
         this(bitSetSize / (double)expectedNumberOElements,
              expectedNumberOElements,
-             (int) Math.round((bitSetSize / (double)expectedNumberOElements) * Math.log(2.0)));
+             (int) Math.round((bitSetSize / (double)expectedNumberOElements) * Math.log(2.0)),
+             hashStrategy);
     }
 
     /**
@@ -98,9 +157,85 @@ public class BloomFilter<E> implements Serializable {
      * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
      */
     public BloomFilter(double falsePositiveProbability, int expectedNumberOfElements) {
+        this(falsePositiveProbability, expectedNumberOfElements, HashStrategies.MD5);
+    }
+
+    /**
+     * Constructs an empty Bloom filter with a given false positive probability and hash strategy. The number of
+     * bits per element and the number of hash functions is estimated
+     * to match the false positive probability.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param hashStrategy is the hash strategy used to select bits.
+     */
+    public BloomFilter(double falsePositiveProbability, int expectedNumberOfElements, HashStrategy hashStrategy) {
         this(Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))) / Math.log(2), // c = k / ln(2)
              expectedNumberOfElements,
-             (int)Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2)))); // k = ceil(-log_2(false prob.))
+             (int)Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))), // k = ceil(-log_2(false prob.))
+             hashStrategy);
+    }
+
+    /**
+     * Constructs an empty Bloom filter with a given false positive probability that hashes elements
+     * with a funnel instead of their toString()-method. See {@link Funnel}.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param hashStrategy is the hash strategy used to select bits.
+     * @param funnel writes elements into the hash function.
+     */
+    public BloomFilter(double falsePositiveProbability, int expectedNumberOfElements, HashStrategy hashStrategy,
+            Funnel<? super E> funnel) {
+        this(Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))) / Math.log(2), // c = k / ln(2)
+             expectedNumberOfElements,
+             (int)Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))), // k = ceil(-log_2(false prob.))
+             hashStrategy,
+             funnel);
+    }
+
+    /**
+     * Constructs an empty Bloom filter with the size, number of hash functions,
+     * hash strategy and index reduction chosen by a {@link BloomFilterSpec}.
+     *
+     * @param spec parameters of the filter.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     * @throws IllegalArgumentException if the spec has more than Integer.MAX_VALUE bits or expected elements.
+     */
+    public BloomFilter(BloomFilterSpec spec, Funnel<? super E> funnel) {
+        this(bitsPerElement(spec), (int) spec.getExpectedElements(), (int) spec.getBits(), spec.getK(),
+                spec.getHashStrategy(), indexReduction(spec), funnel, null);
+    }
+
+    /**
+     * Constructs a Bloom filter from its fields, without the rounding of the
+     * public constructors. Only the given bit set, or a new one if it is null,
+     * is allocated.
+     */
+    private BloomFilter(double c, int n, int bitSetSize, int k, HashStrategy hashStrategy,
+            IndexReduction indexReduction, Funnel<? super E> funnel, BitSet bitset) {
+        if (hashStrategy == null)
+            throw new NullPointerException("hashStrategy");
+        this.expectedNumberOfFilterElements = n;
+        this.k = k;
+        this.bitsPerElement = c;
+        this.bitSetSize = bitSetSize;
+        this.hashStrategy = hashStrategy;
+        this.indexReduction = indexReduction;
+        this.funnel = funnel;
+        this.bitset = bitset != null ? bitset : new BitSet(bitSetSize);
+    }
+
+    private static double bitsPerElement(BloomFilterSpec spec) {
+        if (spec.getBits() > Integer.MAX_VALUE || spec.getExpectedElements() > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Spec is too large for BloomFilter, use LargeBloomFilter: "
+                    + spec.getBits() + " bits");
+        return spec.getBits() / (double) spec.getExpectedElements();
+    }
+
+    private static IndexReduction indexReduction(BloomFilterSpec spec) {
+        IndexReduction.check(spec.getIndexReduction(), spec.getBits(), spec.getHashStrategy());
+        return spec.getIndexReduction();
     }
 
     /**
@@ -112,8 +247,24 @@ public class BloomFilter<E> implements Serializable {
      * @param filterData a BitSet representing an existing Bloom filter.
      */
     public BloomFilter(int bitSetSize, int expectedNumberOfFilterElements, int actualNumberOfFilterElements, BitSet filterData) {
-        this(bitSetSize, expectedNumberOfFilterElements);
+        this(bitSetSize, expectedNumberOfFilterElements, actualNumberOfFilterElements, filterData, HashStrategies.MD5);
+    }
+
+    /**
+     * Construct a new Bloom filter based on existing Bloom filter data. The hash strategy must be the
+     * same as the one used when the data was created.
+     *
+     * @param bitSetSize defines how many bits should be used for the filter.
+     * @param expectedNumberOfFilterElements defines the maximum number of elements the filter is expected to contain.
+     * @param actualNumberOfFilterElements specifies how many elements have been inserted into the <code>filterData</code> BitSet.
+     * @param filterData a BitSet representing an existing Bloom filter.
+     * @param hashStrategy the hash strategy used to create <code>filterData</code>.
+     */
+    public BloomFilter(int bitSetSize, int expectedNumberOfFilterElements, int actualNumberOfFilterElements, BitSet filterData,
+            HashStrategy hashStrategy) {
+        this(bitSetSize, expectedNumberOfFilterElements, hashStrategy);
         this.bitset = filterData;
+        this.bitsetShared = true;
         this.numberOfAddedElements = actualNumberOfFilterElements;
     }
 
@@ -152,34 +303,20 @@ public class BloomFilter<E> implements Serializable {
      * Generates digests based on the contents of an array of bytes and splits the result into 4-byte int's and store them in an array. The
      * digest function is called until the required number of int's are produced. For each call to digest a salt
      * is prepended to the data. The salt is increased by 1 for each call.
+     * <br /><br />
+     * These are the hash values of {@link HashStrategies#MD5}.
      *
      * @param data specifies input data.
      * @param hashes number of hashes/int's to produce.
      * @return array of int-sized hashes
      */
     public static int[] createHashes(byte[] data, int hashes) {
-        int[] result = new int[hashes];
+        long[] digests = new long[hashes];
+        HashStrategies.MD5.createHashes(data, 0, data.length, digests, hashes);
 
-        int k = 0;
-        byte salt = 0;
-        while (k < hashes) {
-            byte[] digest;
-            synchronized (digestFunction) {
-                digestFunction.update(salt);
-                salt++;
-                digest = digestFunction.digest(data);                
-            }
-        
-            for (int i = 0; i < digest.length/4 && k < hashes; i++) {
-                int h = 0;
-                for (int j = (i*4); j < (i*4)+4; j++) {
-                    h <<= 8;
-                    h |= ((int) digest[j]) & 0xFF;
-                }
-                result[k] = h;
-                k++;
-            }
-        }
+        int[] result = new int[hashes];
+        for (int i = 0; i < hashes; i++)
+            result[i] = (int) digests[i];
         return result;
     }
 
@@ -207,6 +344,12 @@ public class BloomFilter<E> implements Serializable {
         if (this.bitSetSize != other.bitSetSize) {
             return false;
         }
+        if (!this.hashStrategy.equals(other.hashStrategy)) {
+            return false;
+        }
+        if (this.indexReduction != other.indexReduction) {
+            return false;
+        }
         if (this.bitset != other.bitset && (this.bitset == null || !this.bitset.equals(other.bitset))) {
             return false;
         }
@@ -224,6 +367,8 @@ public class BloomFilter<E> implements Serializable {
         hash = 61 * hash + this.expectedNumberOfFilterElements;
         hash = 61 * hash + this.bitSetSize;
         hash = 61 * hash + this.k;
+        hash = 61 * hash + this.hashStrategy.getId();
+        hash = 61 * hash + this.indexReduction.getId();
         return hash;
     }
 
@@ -280,22 +425,60 @@ public class BloomFilter<E> implements Serializable {
         return k;
     }
 
+    /**
+     * Returns the hash strategy used to select bits in the Bloom filter.
+     *
+     * @return hash strategy.
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Returns the index reduction used to map hash values to bits. MODULO
+     * unless the filter was created from a {@link BloomFilterSpec}. The bits
+     * of getBitSet() only match other filters using the same reduction.
+     *
+     * @return index reduction.
+     */
+    public IndexReduction getIndexReduction() {
+        return indexReduction;
+    }
+
+    /**
+     * Returns the funnel used to hash elements, or null if the output of
+     * toString() is hashed.
+     *
+     * @return funnel or null.
+     */
+    public Funnel<? super E> getFunnel() {
+        return funnel;
+    }
+
     /**
      * Sets all bits to false in the Bloom filter.
      */
     public void clear() {
         bitset.clear();
         numberOfAddedElements = 0;
+        bitsSet = 0;
+        if (tracker != null)
+            tracker.reset();
     }
 
     /**
-     * Adds an object to the Bloom filter. The output from the object's
-     * toString() method is used as input to the hash functions.
+     * Adds an object to the Bloom filter. If the filter was created with a
+     * {@link Funnel}, the bytes written by the funnel are used as input to the
+     * hash functions. Otherwise the output from the object's toString() method
+     * is used. Either way the bytes are written into a per-thread buffer, so
+     * adding a String or a funnelled object does not allocate.
      *
      * @param element is an element to register in the Bloom filter.
      */
     public void add(E element) {
-       add(element.toString().getBytes(charset));
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        add(buffer, sink.bytes, 0, sink.length);
     }
 
     /**
@@ -304,19 +487,306 @@ public class BloomFilter<E> implements Serializable {
      * @param bytes array of bytes to add to the Bloom filter.
      */
     public void add(byte[] bytes) {
-       int[] hashes = createHashes(bytes, k);
-       for (int hash : hashes)
-           bitset.set(Math.abs(hash % bitSetSize), true);
-       numberOfAddedElements ++;
+        add(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private void add(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(bytes, offset, length, hashes, k);
+        addHashes(hashes);
     }
 
     /**
-     * Adds all elements from a Collection to the Bloom filter.
+     * Adds a long to the Bloom filter. The value is hashed directly, without
+     * boxing or string conversion, and sets the same bits as adding its 8 bytes
+     * in little-endian order with add(byte[]).
+     * <br /><br />
+     * Note that this is not the same as adding a boxed Long with add(), which
+     * is hashed using the output of toString(). Check the value with containsLong().
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds an int to the Bloom filter. The value is hashed directly, without
+     * boxing or string conversion, and sets the same bits as adding its 4 bytes
+     * in little-endian order with add(byte[]).
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds a 128-bit value, such as a UUID, to the Bloom filter. The value sets
+     * the same bits as adding the 8 little-endian bytes of <code>first</code>
+     * followed by the 8 little-endian bytes of <code>second</code> with add(byte[]).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     */
+    public void add(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Sets the bits selected by the first k hash values, and counts the element.
+     *
+     * @param hashes hash values from the hash strategy of this filter.
+     */
+    void addHashes(long[] hashes) {
+        for (int i = 0; i < k; i++) {
+            long hash = hashes[i];
+            int position = position(hash);
+            bitset.set(position, true);
+            if (tracker != null)
+                tracker.mark(position);
+        }
+        numberOfAddedElements ++;
+        bitsSet = -1;
+    }
+
+    /**
+     * Adds all elements from a Collection to the Bloom filter. The elements
+     * are hashed in batches, and the bits of a whole batch are set after it
+     * has been hashed.
      * @param c Collection of elements.
      */
     public void addAll(Collection<? extends E> c) {
-        for (E element : c)
-            add(element);
+        HashBuffer buffer = HashBuffer.get();
+        Iterator<? extends E> it = c.iterator();
+        while (it.hasNext()) {
+            int n = hashBatch(buffer, it);
+            setPositions(buffer.positions(BATCH_SIZE * k), n);
+        }
+    }
+
+    /**
+     * Adds all values in an array to the Bloom filter, as if each was added
+     * with addLong(long). The values are hashed in batches, and the bits of a
+     * whole batch are set after it has been hashed.
+     *
+     * @param values values to add to the Bloom filter.
+     */
+    public void addAll(long[] values) {
+        HashBuffer buffer = HashBuffer.get();
+        for (int start = 0; start < values.length; start += BATCH_SIZE) {
+            int n = hashBatch(buffer, values, start);
+            setPositions(buffer.positions(BATCH_SIZE * k), n);
+        }
+    }
+
+    /**
+     * Adds all elements from a Collection to the Bloom filter, using all the
+     * threads of the common ForkJoinPool. See addAllParallel(Spliterator, ForkJoinPool).
+     *
+     * @param c Collection of elements.
+     */
+    public void addAllParallel(Collection<? extends E> c) {
+        addAllParallel(c.spliterator(), ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Adds all elements from a Spliterator to the Bloom filter in parallel.
+     * Use stream.spliterator() to add the elements of a Stream.
+     * <br /><br />
+     * The elements are split into one part per thread of the pool. All parts
+     * are hashed into one shared array of bits, which is OR-ed into the filter
+     * at the end. Bits are set with compare-and-set, and bits that are already
+     * set are not written, so threads rarely wait for each other once the
+     * array fills up. Building therefore scales with the number of cores, as
+     * long as the Spliterator splits evenly, and needs memory for one extra
+     * copy of the filter whatever the number of threads.
+     * <br /><br />
+     * The funnel is called from several threads at once, and must not modify
+     * shared state. The Bloom filter itself is only modified after all elements
+     * have been hashed, so if hashing fails the filter is left unchanged.
+     *
+     * @param elements elements to add.
+     * @param pool pool running the hashing.
+     * @throws ArithmeticException if count() would exceed Integer.MAX_VALUE. The filter is left unchanged.
+     */
+    public void addAllParallel(Spliterator<? extends E> elements, ForkJoinPool pool) {
+        int depth = 32 - Integer.numberOfLeadingZeros(Math.max(pool.getParallelism() - 1, 0));
+        AtomicLongArray words = new AtomicLongArray((bitSetSize + 63) >>> 6);
+        long count = pool.invoke(new AddTask(elements, depth, words));
+        int total = Math.toIntExact(numberOfAddedElements + count);
+        for (int i = 0; i < words.length(); i++) {
+            long word = words.get(i);
+            if (word == 0)
+                continue;
+            if (tracker != null)
+                tracker.mark((long) i << 6);
+            for (; word != 0; word &= word - 1)
+                bitset.set((i << 6) + Long.numberOfTrailingZeros(word));
+        }
+        numberOfAddedElements = total;
+        bitsSet = -1;
+    }
+
+    /**
+     * Hashes a part of the elements into the shared array of bits. Splits
+     * the part in two until <code>depth</code> reaches 0.
+     *
+     * @return number of elements hashed by this task and its subtasks.
+     */
+    private final class AddTask extends RecursiveTask<Long> {
+        private final Spliterator<? extends E> elements;
+        private final int depth;
+        private final AtomicLongArray words;
+
+        AddTask(Spliterator<? extends E> elements, int depth, AtomicLongArray words) {
+            this.elements = elements;
+            this.depth = depth;
+            this.words = words;
+        }
+
+        @Override
+        protected Long compute() {
+            Spliterator<? extends E> split = depth > 0 ? elements.trySplit() : null;
+            if (split != null) {
+                AddTask left = new AddTask(split, depth - 1, words);
+                left.fork();
+                long count = new AddTask(elements, depth - 1, words).compute();
+                return count + left.join();
+            }
+
+            PartialFilter partial = new PartialFilter(words);
+            elements.forEachRemaining(partial);
+            partial.flush();
+            return partial.count;
+        }
+    }
+
+    /**
+     * Sets the bits of each element it accepts in the shared array of bits,
+     * a batch at a time.
+     */
+    private final class PartialFilter implements Consumer<E> {
+        final AtomicLongArray words;
+        final HashBuffer buffer = HashBuffer.get();
+        final int[] positions = buffer.positions(BATCH_SIZE * k);
+        int n; // number of positions in the batch
+        long count;
+
+        PartialFilter(AtomicLongArray words) {
+            this.words = words;
+        }
+
+        public void accept(E element) {
+            long[] hashes = buffer.hashes(k);
+            ByteSink sink = buffer.sink(funnel, element);
+            hashStrategy.createHashes(sink.bytes, 0, sink.length, hashes, k);
+            for (int i = 0; i < k; i++)
+                positions[n++] = position(hashes[i]);
+            count++;
+            if (n + k > positions.length)
+                flush();
+        }
+
+        /**
+         * Sets the bits of the batch. A compare-and-set waits for its cache
+         * miss before the next one starts, so the bits are first read without
+         * it, letting the misses overlap, and only the bits not yet set are
+         * written.
+         */
+        void flush() {
+            int unset = 0;
+            for (int i = 0; i < n; i++) {
+                int bit = positions[i];
+                if ((words.get(bit >>> 6) & (1L << bit)) == 0)
+                    positions[unset++] = bit;
+            }
+            for (int i = 0; i < unset; i++) {
+                int bit = positions[i];
+                long mask = 1L << bit;
+                long word;
+                do {
+                    word = words.get(bit >>> 6);
+                    if ((word & mask) != 0)
+                        break; // set by another thread meanwhile
+                } while (!words.compareAndSet(bit >>> 6, word, word | mask));
+            }
+            n = 0;
+        }
+    }
+
+    /**
+     * Hashes the next batch of elements into the positions array of the
+     * buffer. Hash j of element i is stored at j * BATCH_SIZE + i.
+     *
+     * @return number of elements in the batch.
+     */
+    private int hashBatch(HashBuffer buffer, Iterator<? extends E> it) {
+        int[] positions = buffer.positions(BATCH_SIZE * k);
+        long[] hashes = buffer.hashes(k);
+        int n = 0;
+        while (n < BATCH_SIZE && it.hasNext()) {
+            ByteSink sink = buffer.sink(funnel, it.next());
+            hashStrategy.createHashes(sink.bytes, 0, sink.length, hashes, k);
+            toPositions(hashes, positions, n++);
+        }
+        return n;
+    }
+
+    /**
+     * Hashes up to BATCH_SIZE values starting at <code>start</code> into the
+     * positions array of the buffer.
+     *
+     * @return number of values in the batch.
+     */
+    private int hashBatch(HashBuffer buffer, long[] values, int start) {
+        int[] positions = buffer.positions(BATCH_SIZE * k);
+        long[] hashes = buffer.hashes(k);
+        int n = Math.min(BATCH_SIZE, values.length - start);
+        for (int i = 0; i < n; i++) {
+            hashStrategy.createHashes(values[start + i], hashes, k);
+            toPositions(hashes, positions, i);
+        }
+        return n;
+    }
+
+    private void toPositions(long[] hashes, int[] positions, int element) {
+        for (int j = 0; j < k; j++)
+            positions[j * BATCH_SIZE + element] = position(hashes[j]);
+    }
+
+    private void setPositions(int[] positions, int n) {
+        for (int j = 0; j < k; j++) {
+            int base = j * BATCH_SIZE;
+            for (int i = 0; i < n; i++)
+                bitset.set(positions[base + i]);
+            if (tracker != null)
+                for (int i = 0; i < n; i++)
+                    tracker.mark(positions[base + i]);
+        }
+        numberOfAddedElements += n;
+        bitsSet = -1;
+    }
+
+    /**
+     * Probes the bits of a batch. The probes of different elements do not
+     * depend on each other, so the loads of a whole batch can be in flight
+     * at the same time.
+     */
+    private void probePositions(int[] positions, int n, boolean[] result, int offset) {
+        for (int i = 0; i < n; i++)
+            result[offset + i] = bitset.get(positions[i]);
+        for (int j = 1; j < k; j++) {
+            int base = j * BATCH_SIZE;
+            for (int i = 0; i < n; i++)
+                result[offset + i] &= bitset.get(positions[base + i]);
+        }
     }
         
     /**
@@ -328,7 +798,9 @@ public class BloomFilter<E> implements Serializable {
      * @return true if the element could have been inserted into the Bloom filter.
      */
     public boolean contains(E element) {
-        return contains(element.toString().getBytes(charset));
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return contains(buffer, sink.bytes, 0, sink.length);
     }
 
     /**
@@ -340,9 +812,75 @@ public class BloomFilter<E> implements Serializable {
      * @return true if the array could have been inserted into the Bloom filter.
      */
     public boolean contains(byte[] bytes) {
-        int[] hashes = createHashes(bytes, k);
-        for (int hash : hashes) {
-            if (!bitset.get(Math.abs(hash % bitSetSize))) {
+        return contains(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private boolean contains(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(bytes, offset, length, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the long could have been inserted into the Bloom filter
+     * with addLong(long).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the int could have been inserted into the Bloom filter
+     * with addInt(int).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the 128-bit value could have been inserted into the Bloom
+     * filter with add(long, long).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean contains(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Maps a hash value to a bit position. MODULO is tested first, so
+     * filters using it pay nothing for the other reductions.
+     */
+    private int position(long hash) {
+        if (indexReduction == IndexReduction.MODULO)
+            return (int) Math.abs(hash % bitSetSize);
+        return (int) indexReduction.reduce(hash, bitSetSize);
+    }
+
+    /**
+     * Checks the bits selected by the first k hash values.
+     *
+     * @param hashes hash values from the hash strategy of this filter.
+     * @return true if all the bits are set.
+     */
+    boolean containsHashes(long[] hashes) {
+        for (int i = 0; i < k; i++) {
+            long hash = hashes[i];
+            if (!bitset.get(position(hash))) {
                 return false;
             }
         }
@@ -357,12 +895,58 @@ public class BloomFilter<E> implements Serializable {
      * @return true if all the elements in c could have been inserted into the Bloom filter.
      */
     public boolean containsAll(Collection<? extends E> c) {
-        for (E element : c)
-            if (!contains(element))
-                return false;
+        HashBuffer buffer = HashBuffer.get();
+        boolean[] result = new boolean[BATCH_SIZE];
+        Iterator<? extends E> it = c.iterator();
+        while (it.hasNext()) {
+            int n = hashBatch(buffer, it);
+            probePositions(buffer.positions(BATCH_SIZE * k), n, result, 0);
+            for (int i = 0; i < n; i++)
+                if (!result[i])
+                    return false;
+        }
         return true;
     }
 
+    /**
+     * Checks each element of a Collection against the Bloom filter. The elements
+     * are hashed in batches, and the bits of a whole batch are probed after it
+     * has been hashed, which is considerably faster than calling contains() for
+     * each element of a large collection.
+     *
+     * @param c elements to check.
+     * @return array where element i is true if the i-th element returned by the
+     * iterator of c could have been inserted into the Bloom filter.
+     */
+    public boolean[] containsEach(Collection<? extends E> c) {
+        HashBuffer buffer = HashBuffer.get();
+        boolean[] result = new boolean[c.size()];
+        Iterator<? extends E> it = c.iterator();
+        for (int start = 0; start < result.length && it.hasNext(); start += BATCH_SIZE) {
+            int n = hashBatch(buffer, it);
+            probePositions(buffer.positions(BATCH_SIZE * k), Math.min(n, result.length - start), result, start);
+        }
+        return result;
+    }
+
+    /**
+     * Checks each value of an array against the Bloom filter, as if each was
+     * checked with containsLong(long). See containsEach(Collection).
+     *
+     * @param values values to check.
+     * @return array where element i is true if values[i] could have been
+     * inserted into the Bloom filter.
+     */
+    public boolean[] containsEach(long[] values) {
+        HashBuffer buffer = HashBuffer.get();
+        boolean[] result = new boolean[values.length];
+        for (int start = 0; start < values.length; start += BATCH_SIZE) {
+            int n = hashBatch(buffer, values, start);
+            probePositions(buffer.positions(BATCH_SIZE * k), n, result, start);
+        }
+        return result;
+    }
+
     /**
      * Read a single bit from the Bloom filter.
      * @param bit the bit to read.
@@ -379,16 +963,62 @@ public class BloomFilter<E> implements Serializable {
      */
     public void setBit(int bit, boolean value) {
         bitset.set(bit, value);
+        bitsSet = -1;
+        if (tracker != null) {
+            if (value)
+                tracker.mark(bit);
+            else
+                tracker.reset();
+        }
     }
 
     /**
-     * Return the bit set used to store the Bloom filter.
+     * Return the bit set used to store the Bloom filter. The bit set may be
+     * modified at any time by whoever holds it, so from then on the number
+     * of bits set is counted on every call to bitCount() instead of being
+     * cached. Changes made through the bit set are not seen by exportDelta().
      * @return bit set representing the Bloom filter.
      */
     public BitSet getBitSet() {
+        bitsetShared = true;
         return bitset;
     }
 
+    /**
+     * Returns the number of bits set in the Bloom filter. The bits are counted
+     * a 64-bit word at a time, and the result is kept until the filter is
+     * modified, so repeated calls on an unchanged filter are free. Once the
+     * bit set has been handed out by getBitSet() or passed to a constructor,
+     * the bits are counted on every call.
+     *
+     * @return number of bits set.
+     */
+    public int bitCount() {
+        if (bitsetShared)
+            return bitset.cardinality();
+        if (bitsSet < 0)
+            bitsSet = bitset.cardinality();
+        return bitsSet;
+    }
+
+    /**
+     * Returns a copy of the words of the filter, including the zero words at
+     * the end that BitSet.toLongArray() leaves out. Unlike getBitSet(), this
+     * does not stop bitCount() from caching.
+     */
+    long[] words() {
+        return Arrays.copyOf(bitset.toLongArray(), (bitSetSize + 63) >>> 6);
+    }
+
+    /**
+     * Counts the bits set without reading or updating the cached count, so it
+     * can be called from another thread than the one using the filter. The
+     * result may miss bits set during the count.
+     */
+    int countBits() {
+        return bitset.cardinality();
+    }
+
     /**
      * Returns the number of bits in the Bloom filter. Use count() to retrieve
      * the number of inserted elements.
@@ -401,7 +1031,10 @@ public class BloomFilter<E> implements Serializable {
 
     /**
      * Returns the number of elements added to the Bloom filter after it
-     * was constructed or after clear() was called.
+     * was constructed or after clear() was called. Elements added more than
+     * once are counted each time, and bits set directly or through the BitSet
+     * constructors are not counted. See approximateElementCount() for an
+     * estimate based on the bits themselves.
      *
      * @return number of elements added to the Bloom filter.
      */
@@ -438,4 +1071,468 @@ public class BloomFilter<E> implements Serializable {
     public double getBitsPerElement() {
         return this.bitSetSize / (double)numberOfAddedElements;
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns a copy of the Bloom filter, with its own bits.
+     *
+     * @return copy of the Bloom filter.
+     */
+    public BloomFilter<E> copy() {
+        BloomFilter<E> copy = new BloomFilter<E>(bitsPerElement, expectedNumberOfFilterElements, bitSetSize, k,
+                hashStrategy, indexReduction, funnel, (BitSet) bitset.clone());
+        copy.numberOfAddedElements = numberOfAddedElements;
+        copy.bitsSet = bitsetShared ? -1 : bitsSet;
+        return copy;
+    }
+
+    /**
+     * Adds all elements of another Bloom filter to this filter, by setting every
+     * bit that is set in either filter. Afterwards this filter contains exactly
+     * the elements that either filter contained, as if they had all been added
+     * to this filter.
+     * <br /><br />
+     * count() is updated to an estimate of the number of distinct elements,
+     * calculated from the number of bits set. Elements added to both filters
+     * are only counted once.
+     *
+     * @param other filter to merge into this filter. Must have the same size, k and hash strategy.
+     * @throws IllegalArgumentException if the filters are not compatible.
+     */
+    public void union(BloomFilter<? extends E> other) {
+        checkCompatible(other);
+        int count = numberOfAddedElements;
+        int otherCount = other.numberOfAddedElements;
+        bitset.or(other.bitset);
+        bitsSet = -1;
+        if (tracker != null)
+            tracker.markBits(other.bitset);
+        long estimate = Math.round(estimateCount(bitCount()));
+        numberOfAddedElements = (int) Math.max(Math.max(count, otherCount), Math.min(estimate, (long) count + otherCount));
+    }
+
+    /**
+     * Removes the bits that are not set in another Bloom filter. Afterwards
+     * contains() returns true for the elements that were added to both filters,
+     * but the false positive probability is higher than for a filter where only
+     * those elements had been added.
+     * <br /><br />
+     * count() is updated to an estimate of the number of elements in both
+     * filters: the sum of the two counts minus the estimated size of the union.
+     *
+     * @param other filter to intersect with this filter. Must have the same size, k and hash strategy.
+     * @throws IllegalArgumentException if the filters are not compatible.
+     */
+    public void intersect(BloomFilter<? extends E> other) {
+        checkCompatible(other);
+        int count = numberOfAddedElements;
+        int otherCount = other.numberOfAddedElements;
+        int bits = bitCount();
+        int otherBits = other.bitCount();
+        bitset.and(other.bitset);
+        bitsSet = -1;
+        if (tracker != null)
+            tracker.reset();
+        double estimate = count + otherCount - estimateCount(bits + otherBits - bitCount());
+        numberOfAddedElements = (int) Math.max(0, Math.min(Math.round(estimate), Math.min(count, otherCount)));
+    }
+
+    /**
+     * Returns a new Bloom filter holding the union of two filters. See union(BloomFilter).
+     *
+     * @param <E> Object type that is to be inserted into the Bloom filter.
+     * @param a first filter. The new filter gets its funnel and expected number of elements.
+     * @param b second filter.
+     * @return the union of a and b.
+     * @throws IllegalArgumentException if the filters are not compatible.
+     */
+    public static <E> BloomFilter<E> unionOf(BloomFilter<E> a, BloomFilter<? extends E> b) {
+        BloomFilter<E> result = a.copy();
+        result.union(b);
+        return result;
+    }
+
+    /**
+     * Returns a new Bloom filter holding the intersection of two filters. See intersect(BloomFilter).
+     *
+     * @param <E> Object type that is to be inserted into the Bloom filter.
+     * @param a first filter. The new filter gets its funnel and expected number of elements.
+     * @param b second filter.
+     * @return the intersection of a and b.
+     * @throws IllegalArgumentException if the filters are not compatible.
+     */
+    public static <E> BloomFilter<E> intersectionOf(BloomFilter<E> a, BloomFilter<? extends E> b) {
+        BloomFilter<E> result = a.copy();
+        result.intersect(b);
+        return result;
+    }
+
+    private void checkCompatible(BloomFilter<?> other) {
+        if (other.bitSetSize != bitSetSize)
+            throw new IllegalArgumentException("Filters have different sizes: " + bitSetSize + " and " + other.bitSetSize);
+        if (other.k != k)
+            throw new IllegalArgumentException("Filters have different k: " + k + " and " + other.k);
+        if (other.hashStrategy.getId() != hashStrategy.getId())
+            throw new IllegalArgumentException("Filters have different hash strategies: "
+                    + hashStrategy + " and " + other.hashStrategy);
+        if (other.indexReduction != indexReduction)
+            throw new IllegalArgumentException("Filters have different index reductions: "
+                    + indexReduction + " and " + other.indexReduction);
+    }
+
+    /**
+     * Estimates the number of distinct elements in the Bloom filter from the
+     * number of bits set, using the formula of Swamidass and Baldi:
+     * n = -(m / k) ln(1 - X / m), where X is the number of bits set.
+     * <br /><br />
+     * Unlike count(), the estimate stays correct after union(), after adding
+     * the same element several times and for filters created from a BitSet.
+     * The standard error is small as long as the filter is not much fuller
+     * than intended.
+     *
+     * @return estimated number of elements, or Long.MAX_VALUE if all bits are set.
+     */
+    public long approximateElementCount() {
+        return Math.round(estimateCount(bitCount()));
+    }
+
+    /**
+     * Estimates the number of distinct elements in the union of this filter
+     * and another, from the number of bits set in either filter.
+     *
+     * @param other filter to compare with. Must have the same size, k and hash strategy.
+     * @return estimated number of elements in either filter, or Long.MAX_VALUE if the union has all bits set.
+     * @throws IllegalArgumentException if the filters are not compatible.
+     */
+    public long approximateUnionCount(BloomFilter<?> other) {
+        checkCompatible(other);
+        return Math.round(estimateCount(unionBitCount(other)));
+    }
+
+    /**
+     * Estimates the number of distinct elements in both this filter and
+     * another, as the sum of the two estimated counts minus the estimated
+     * count of the union.
+     *
+     * @param other filter to compare with. Must have the same size, k and hash strategy.
+     * @return estimated number of elements in both filters.
+     * @throws IllegalArgumentException if the filters are not compatible.
+     */
+    public long approximateIntersectionCount(BloomFilter<?> other) {
+        checkCompatible(other);
+        return Math.round(estimateIntersection(other, unionBitCount(other)));
+    }
+
+    /**
+     * Estimates the Jaccard similarity of the sets added to this filter and
+     * another: the number of elements in both divided by the number of
+     * elements in either.
+     *
+     * @param other filter to compare with. Must have the same size, k and hash strategy.
+     * @return estimated similarity between 0 and 1, or 0 if both filters are empty.
+     * @throws IllegalArgumentException if the filters are not compatible.
+     */
+    public double approximateJaccardSimilarity(BloomFilter<?> other) {
+        checkCompatible(other);
+        int unionBits = unionBitCount(other);
+        double union = estimateCount(unionBits);
+        if (union == 0 || Double.isInfinite(union))
+            return 0;
+        return Math.min(1, estimateIntersection(other, unionBits) / union);
+    }
+
+    private double estimateIntersection(BloomFilter<?> other, int unionBits) {
+        double estimate = estimateCount(bitCount()) + estimateCount(other.bitCount())
+                - estimateCount(unionBits);
+        return Double.isNaN(estimate) ? 0 : Math.max(0, estimate);
+    }
+
+    /**
+     * Counts the bits set in either filter, as the bits set in each filter
+     * minus the bits set in both. BitSet does not expose its words, so the
+     * filters are AND-ed a chunk at a time, and no copy of a whole filter is
+     * made.
+     */
+    private int unionBitCount(BloomFilter<?> other) {
+        int both = 0;
+        for (long from = 0; from < bitSetSize; from += CHUNK_BITS) {
+            int to = (int) Math.min(bitSetSize, from + CHUNK_BITS);
+            BitSet chunk = bitset.get((int) from, to);
+            chunk.and(other.bitset.get((int) from, to));
+            both += chunk.cardinality();
+        }
+        return bitCount() + other.bitCount() - both;
+    }
+
+    /**
+     * Estimates the number of elements in a filter from the number of bits set,
+     * see approximateElementCount().
+     */
+    private double estimateCount(int bitsSet) {
+        if (bitsSet >= bitSetSize)
+            return Double.POSITIVE_INFINITY;
+        return -(double) bitSetSize / k * Math.log1p(-(double) bitsSet / bitSetSize);
+    }
+
+    /**
+     * Starts recording which parts of the Bloom filter change, so replicas of
+     * it can be kept up to date with exportDelta() and applyDelta() instead
+     * of copying the whole filter. The bits set so far belong to version 0.
+     * <br /><br />
+     * Changes are recorded per page of 1024 bits, using 8 bytes of memory per
+     * page, about 6% of the size of the filter. Calling this method again
+     * has no effect.
+     */
+    public void trackChanges() {
+        if (tracker == null)
+            tracker = new ChangeTracker(bitSetSize);
+    }
+
+    /**
+     * Returns true if trackChanges() has been called.
+     *
+     * @return true if changes are tracked.
+     */
+    public boolean isTrackingChanges() {
+        return tracker != null;
+    }
+
+    /**
+     * Closes the current version. Changes made after this call belong to
+     * later versions. Call it before copying the whole filter to a new
+     * replica, e.g. with writeTo(), and pass the returned version to the
+     * first exportDelta() for that replica.
+     *
+     * @return the version the filter is at.
+     * @throws IllegalStateException if changes are not tracked.
+     */
+    public long checkpoint() {
+        return tracker().checkpoint();
+    }
+
+    /**
+     * Returns the pages changed since a version, and closes the current
+     * version. Apply the delta to a replica with applyDelta(), and pass
+     * delta.getToVersion() to the next call for that replica.
+     * <br /><br />
+     * Deltas can only add bits. If bits have been cleared after
+     * <code>sinceVersion</code>, by clear(), intersect() or setBit(), the
+     * replica must be copied again.
+     *
+     * @param sinceVersion version returned by checkpoint() or by getToVersion() of the previous delta.
+     * @return the delta.
+     * @throws IllegalStateException if changes are not tracked, or bits have been cleared since the version.
+     * @throws IllegalArgumentException if the version has not been closed.
+     */
+    public FilterDelta exportDelta(long sinceVersion) {
+        ChangeTracker tracker = tracker();
+        int[] pages = tracker.changedPages(sinceVersion);
+        long[] words = new long[pages.length * ChangeTracker.PAGE_WORDS];
+        for (int i = 0; i < pages.length; i++) {
+            int from = pages[i] << ChangeTracker.PAGE_SHIFT;
+            int to = (int) Math.min(bitSetSize, (long) from + (1 << ChangeTracker.PAGE_SHIFT));
+            long[] page = bitset.get(from, to).toLongArray();
+            System.arraycopy(page, 0, words, i * ChangeTracker.PAGE_WORDS, page.length);
+        }
+        return new FilterDelta(hashStrategy.getId(), indexReduction.getId(), k, bitSetSize, sinceVersion,
+                tracker.checkpoint(), numberOfAddedElements, pages, words);
+    }
+
+    /**
+     * Merges a delta exported from another Bloom filter into this filter, by
+     * setting the bits that are set in the delta. count() becomes the count of
+     * the other filter, if it is larger. If changes are tracked, the pages
+     * of the delta are recorded as changed, so the delta can be passed on.
+     *
+     * @param delta delta from a filter with the same size, k and hash strategy.
+     * @throws IllegalArgumentException if the delta is for a different kind of filter.
+     */
+    public void applyDelta(FilterDelta delta) {
+        delta.checkCompatible(bitSetSize, k, hashStrategy, indexReduction);
+        for (int i = 0; i < delta.getNumberOfPages(); i++) {
+            int page = delta.page(i);
+            long base = (long) page << ChangeTracker.PAGE_SHIFT;
+            for (int j = 0; j < ChangeTracker.PAGE_WORDS; j++) {
+                long word = delta.word(i, j);
+                while (word != 0) {
+                    long bit = base + (j << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                    if (bit < bitSetSize)
+                        bitset.set((int) bit);
+                }
+            }
+            if (tracker != null)
+                tracker.markPage(page);
+        }
+        numberOfAddedElements = (int) Math.max(numberOfAddedElements, Math.min(Integer.MAX_VALUE, delta.getCount()));
+        bitsSet = -1;
+    }
+
+    private ChangeTracker tracker() {
+        if (tracker == null)
+            throw new IllegalStateException("Changes are not tracked, call trackChanges() first");
+        return tracker;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (hashStrategy == null)
+            hashStrategy = HashStrategies.MD5; // written by a version without hash strategies
+        if (indexReduction == null)
+            indexReduction = IndexReduction.MODULO; // field initializers do not run when deserializing
+        bitsSet = -1; // 0 in streams without the cached count
+    }
+
+    /**
+     * Writes the Bloom filter to a stream in a compact binary format: a 64-byte
+     * header holding the format version, hash strategy, k, the number of bits,
+     * the expected and the actual number of elements, followed by the bits as
+     * 64-bit little-endian words. The funnel is not written.
+     * <br /><br />
+     * The format is the same for all filters in this library with 64-bit words,
+     * so a file written by this method can be opened with MappedBloomFilter.
+     * The stream is not closed.
+     *
+     * @param out stream to write to.
+     * @throws IOException if writing fails.
+     * @throws IllegalArgumentException if the hash strategy is not one of {@link HashStrategies}.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(Channels.newChannel(out));
+    }
+
+    /**
+     * Writes the Bloom filter to a channel. See writeTo(OutputStream).
+     *
+     * @param out channel to write to.
+     * @throws IOException if writing fails.
+     * @throws IllegalArgumentException if the hash strategy is not one of {@link HashStrategies}.
+     */
+    public void writeTo(WritableByteChannel out) throws IOException {
+        FilterHeader header = header();
+        FilterIO.WordWriter writer = new FilterIO.WordWriter(out, header.wordCount());
+        header.write(writer.buffer);
+        for (long from = 0; from < bitSetSize; from += CHUNK_BITS) { // no copy of the whole BitSet
+            int to = (int) Math.min(bitSetSize, from + CHUNK_BITS);
+            long[] words = bitset.get((int) from, to).toLongArray();
+            for (int i = 0, n = (to - (int) from + 63) >>> 6; i < n; i++)
+                writer.put(i < words.length ? words[i] : 0);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the Bloom filter to a stream in a compressed form of the binary
+     * format. The bits are written as they are, run-length encoded or as
+     * Golomb coded distances between set bits, whichever is smallest. A
+     * filter holding far fewer elements than expected is written in a fraction
+     * of the space taken by writeTo(), a full filter in the same space.
+     * <br /><br />
+     * readFrom() reads both forms. Compressed filters can not be opened with
+     * MappedBloomFilter. The stream is not closed.
+     *
+     * @param out stream to write to.
+     * @throws IOException if writing fails.
+     * @throws IllegalArgumentException if the hash strategy is not one of {@link HashStrategies}.
+     */
+    public void writeCompressedTo(OutputStream out) throws IOException {
+        writeCompressedTo(Channels.newChannel(out));
+    }
+
+    /**
+     * Writes the Bloom filter to a channel in compressed form. See
+     * writeCompressedTo(OutputStream). The channel is not closed.
+     *
+     * @param out channel to write to.
+     * @throws IOException if writing fails.
+     * @throws IllegalArgumentException if the hash strategy is not one of {@link HashStrategies}.
+     */
+    public void writeCompressedTo(WritableByteChannel out) throws IOException {
+        FilterHeader header = header();
+        FilterIO.writeCompressed(header, new HeapBitStorage(words(), bitSetSize), out);
+    }
+
+    private FilterHeader header() {
+        FilterHeader header = new FilterHeader();
+        header.hashStrategyId = HashStrategies.forId(hashStrategy.getId()).getId();
+        header.k = k;
+        header.bits = bitSetSize;
+        header.expectedElements = expectedNumberOfFilterElements;
+        header.count = numberOfAddedElements;
+        header.parameter = indexReduction.getId();
+        return header;
+    }
+
+    /**
+     * Reads a Bloom filter written by writeTo() or writeCompressedTo(). The stream is not closed.
+     *
+     * @param <E> Object type that is to be inserted into the Bloom filter.
+     * @param in stream to read from.
+     * @param funnel writes elements into the hash function. Must be the same as for the filter
+     * that was written. If null, the output of toString() is hashed.
+     * @return the Bloom filter.
+     * @throws IOException if reading fails, or the data is not a Bloom filter.
+     */
+    public static <E> BloomFilter<E> readFrom(InputStream in, Funnel<? super E> funnel) throws IOException {
+        return readFrom(Channels.newChannel(in), funnel);
+    }
+
+    /**
+     * Reads a Bloom filter written by writeTo() or writeCompressedTo(). The stream is not closed.
+     *
+     * @param <E> Object type that is to be inserted into the Bloom filter.
+     * @param in stream to read from.
+     * @return the Bloom filter.
+     * @throws IOException if reading fails, or the data is not a Bloom filter.
+     */
+    public static <E> BloomFilter<E> readFrom(InputStream in) throws IOException {
+        return readFrom(Channels.newChannel(in), null);
+    }
+
+    /**
+     * Reads a Bloom filter written by writeTo() or writeCompressedTo(). The channel is not closed.
+     *
+     * @param <E> Object type that is to be inserted into the Bloom filter.
+     * @param in channel to read from.
+     * @param funnel writes elements into the hash function. Must be the same as for the filter
+     * that was written. If null, the output of toString() is hashed.
+     * @return the Bloom filter.
+     * @throws IOException if reading fails, or the data is not a Bloom filter.
+     */
+    public static <E> BloomFilter<E> readFrom(ReadableByteChannel in, Funnel<? super E> funnel) throws IOException {
+        FilterHeader header = FilterIO.readHeader(in);
+        checkHeader(header);
+        return fromWords(header, FilterIO.readWords(header, in), funnel);
+    }
+
+    /**
+     * Checks that a header describes a Bloom filter that fits in a BloomFilter.
+     *
+     * @param header the header that was read.
+     * @throws IOException if the header is for another type of filter, is corrupt, or the filter is too large.
+     */
+    static void checkHeader(FilterHeader header) throws IOException {
+        if (header.type != FilterHeader.TYPE_BLOOM)
+            throw new IOException("Unsupported filter type: " + header.type);
+        if (header.bits > Integer.MAX_VALUE || header.expectedElements > Integer.MAX_VALUE
+                || header.count > Integer.MAX_VALUE)
+            throw new IOException("Filter is too large for BloomFilter, use LargeBloomFilter: " + header.bits + " bits");
+        header.hashStrategy();
+        header.indexReduction();
+    }
+
+    /**
+     * Creates a Bloom filter from a header and the words of the filter.
+     *
+     * @param header header checked with checkHeader().
+     * @param words words of the filter.
+     * @param funnel funnel of the filter, or null.
+     * @return the Bloom filter.
+     */
+    static <E> BloomFilter<E> fromWords(FilterHeader header, long[] words, Funnel<? super E> funnel) {
+        BloomFilter<E> filter = new BloomFilter<E>(header.bits / (double) Math.max(1, header.expectedElements),
+                (int) header.expectedElements, (int) header.bits, header.k, HashStrategies.forId(header.hashStrategyId),
+                IndexReduction.forId(header.parameter), funnel, BitSet.valueOf(words));
+        filter.numberOfAddedElements = (int) header.count;
+        return filter;
+    }
+}
@@ -0,0 +1,340 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.io.Serializable;
+
+/**
+ * Parameters of a Bloom filter: the number of bits m, the number of hash
+ * functions k, the hash strategy, the index reduction and the filter type to
+ * use. plan() chooses them from a target false positive probability, the
+ * expected number of elements and an optional limit on the number of bits.
+ * <br /><br />
+ * The constructors taking a false positive probability use
+ * k = ceil(-log_2(p)) and m = n * k / ln(2), which is up to 44% larger than
+ * needed for some targets, and always map hash values to bits with MODULO.
+ * plan() instead finds the smallest m that meets the target for the best k.
+ * For 64-bit hash strategies it then rounds m up to a power of two if that
+ * costs at most 1/8 more bits, so bits can be selected with MASK, and uses
+ * MULTIPLY_SHIFT otherwise.
+ * <br /><br />
+ * The variant says which filter to create:
+ * <pre>
+ * BloomFilterSpec spec = BloomFilterSpec.plan(0.01, 1000000);
+ * BloomFilter&lt;String&gt; filter = new BloomFilter&lt;String&gt;(spec, null);
+ * </pre>
+ * LARGE specs need a LargeBloomFilter or MappedBloomFilter, BLOCKED specs are
+ * meant for a BlockedBloomFilter. All specs except LARGE can be used for a
+ * BloomFilter.
+ *
+ * @see IndexReduction
+ */
+public final class BloomFilterSpec implements Serializable {
+    /**
+     * The type of filter a spec is planned for.
+     */
+    public enum Variant {
+        /**
+         * A BloomFilter.
+         */
+        STANDARD,
+        /**
+         * A BlockedBloomFilter. Chosen when a standard filter would be too
+         * large for the CPU caches, if a blocked filter meets the target
+         * with at most 1/4 more bits.
+         */
+        BLOCKED,
+        /**
+         * A LargeBloomFilter, for more than Integer.MAX_VALUE bits or elements.
+         */
+        LARGE
+    }
+
+    // Standard filters larger than this (1 MB) are probed in main memory, so
+    // each of the k probes is a cache miss.
+    static final long BLOCKED_MIN_BITS = 1L << 23;
+    private static final int MAX_K = 100;
+
+    private final long bits; // m, number of bits
+    private final int k; // number of hash functions
+    private final long expectedElements; // n, expected number of elements
+    private final HashStrategy hashStrategy; // hash function used to select bits
+    private final IndexReduction indexReduction; // maps hash values to bit positions
+    private final Variant variant; // type of filter to create
+    private final double falsePositiveProbability; // expected false positive probability with n elements
+
+    private BloomFilterSpec(long bits, int k, long expectedElements, HashStrategy hashStrategy,
+            IndexReduction indexReduction, Variant variant, double falsePositiveProbability) {
+        this.bits = bits;
+        this.k = k;
+        this.expectedElements = expectedElements;
+        this.hashStrategy = hashStrategy;
+        this.indexReduction = indexReduction;
+        this.variant = variant;
+        this.falsePositiveProbability = falsePositiveProbability;
+    }
+
+    /**
+     * Plans a filter using MURMUR3_128, with no limit on the number of bits.
+     *
+     * @param falsePositiveProbability target false positive probability, between 0 and 1.
+     * @param expectedElements expected number of elements.
+     * @return the planned parameters.
+     */
+    public static BloomFilterSpec plan(double falsePositiveProbability, long expectedElements) {
+        return plan(falsePositiveProbability, expectedElements, Long.MAX_VALUE, HashStrategies.MURMUR3_128);
+    }
+
+    /**
+     * Plans a filter using MURMUR3_128 with at most maxBits bits.
+     *
+     * @param falsePositiveProbability target false positive probability, between 0 and 1.
+     * @param expectedElements expected number of elements.
+     * @param maxBits largest number of bits to use.
+     * @return the planned parameters.
+     */
+    public static BloomFilterSpec plan(double falsePositiveProbability, long expectedElements, long maxBits) {
+        return plan(falsePositiveProbability, expectedElements, maxBits, HashStrategies.MURMUR3_128);
+    }
+
+    /**
+     * Plans a filter with at most maxBits bits. If the target can not be met
+     * within maxBits, the spec uses maxBits and the best k for them, and
+     * getFalsePositiveProbability() is higher than the target.
+     * <br /><br />
+     * MD5 and hash strategies not in {@link HashStrategies} always get
+     * MODULO, and MD5 is limited to Integer.MAX_VALUE bits.
+     *
+     * @param falsePositiveProbability target false positive probability, between 0 and 1.
+     * @param expectedElements expected number of elements.
+     * @param maxBits largest number of bits to use.
+     * @param hashStrategy hash strategy of the filter.
+     * @return the planned parameters.
+     * @throws IllegalArgumentException if a parameter is out of range.
+     */
+    public static BloomFilterSpec plan(double falsePositiveProbability, long expectedElements, long maxBits,
+            HashStrategy hashStrategy) {
+        if (hashStrategy == null)
+            throw new NullPointerException("hashStrategy");
+        if (!(falsePositiveProbability > 0 && falsePositiveProbability < 1))
+            throw new IllegalArgumentException("False positive probability must be between 0 and 1: "
+                    + falsePositiveProbability);
+        if (expectedElements <= 0)
+            throw new IllegalArgumentException("Expected elements must be positive: " + expectedElements);
+        if (maxBits <= 0)
+            throw new IllegalArgumentException("maxBits must be positive: " + maxBits);
+
+        boolean wideHashes = hashStrategy != HashStrategies.MD5 && hashStrategy instanceof HashStrategies;
+        if (hashStrategy == HashStrategies.MD5)
+            maxBits = Math.min(maxBits, Integer.MAX_VALUE);
+
+        // Smallest m meeting the target for each k: (1 - e^(-kn/m))^k <= p  <=>  m >= -kn / ln(1 - p^(1/k))
+        long bits = Long.MAX_VALUE;
+        int k = 1;
+        for (int i = 1; i <= MAX_K; i++) {
+            double m = Math.ceil(-i * (double) expectedElements / Math.log1p(-Math.pow(falsePositiveProbability, 1.0 / i)));
+            if (m < bits) {
+                bits = (long) Math.min(m, Long.MAX_VALUE);
+                k = i;
+            }
+        }
+
+        if (bits > maxBits) {
+            bits = maxBits;
+            k = bestK(bits, expectedElements);
+        }
+
+        if (wideHashes && bits > BLOCKED_MIN_BITS && bits < maxBits && expectedElements <= Integer.MAX_VALUE) {
+            BloomFilterSpec blocked = planBlocked(falsePositiveProbability, expectedElements, bits,
+                    Math.min(Math.min(maxBits, bits + bits / 4), Integer.MAX_VALUE - BlockedBloomFilter.BLOCK_BITS),
+                    hashStrategy);
+            if (blocked != null)
+                return blocked;
+        }
+
+        IndexReduction reduction = IndexReduction.MODULO;
+        if (wideHashes) {
+            long powerOfTwo = Long.highestOneBit(bits);
+            if (powerOfTwo != bits && powerOfTwo < (1L << 62))
+                powerOfTwo <<= 1;
+            if (powerOfTwo == bits) {
+                reduction = IndexReduction.MASK;
+            } else if (powerOfTwo > bits && powerOfTwo - bits <= bits / 8 && powerOfTwo <= maxBits) {
+                bits = powerOfTwo;
+                reduction = IndexReduction.MASK;
+            } else {
+                reduction = IndexReduction.MULTIPLY_SHIFT;
+            }
+        }
+
+        Variant variant = bits > Integer.MAX_VALUE || expectedElements > Integer.MAX_VALUE
+                ? Variant.LARGE : Variant.STANDARD;
+        return new BloomFilterSpec(bits, k, expectedElements, hashStrategy, reduction, variant,
+                falsePositiveProbability(bits, k, expectedElements));
+    }
+
+    /**
+     * Creates a spec with the given parameters, for example to build a
+     * filter compatible with an existing one.
+     *
+     * @param bits number of bits.
+     * @param k number of hash functions.
+     * @param expectedElements expected number of elements.
+     * @param hashStrategy hash strategy of the filter.
+     * @param indexReduction index reduction of the filter.
+     * @return the spec. The variant is LARGE if it has more than Integer.MAX_VALUE bits or elements.
+     * @throws IllegalArgumentException if a parameter is out of range, or the index reduction
+     * can not be used with the number of bits or the hash strategy.
+     */
+    public static BloomFilterSpec of(long bits, int k, long expectedElements, HashStrategy hashStrategy,
+            IndexReduction indexReduction) {
+        if (hashStrategy == null)
+            throw new NullPointerException("hashStrategy");
+        if (indexReduction == null)
+            throw new NullPointerException("indexReduction");
+        if (bits <= 0 || k <= 0 || expectedElements <= 0)
+            throw new IllegalArgumentException("bits, k and expected elements must be positive");
+        IndexReduction.check(indexReduction, bits, hashStrategy);
+        Variant variant = bits > Integer.MAX_VALUE || expectedElements > Integer.MAX_VALUE
+                ? Variant.LARGE : Variant.STANDARD;
+        return new BloomFilterSpec(bits, k, expectedElements, hashStrategy, indexReduction, variant,
+                falsePositiveProbability(bits, k, expectedElements));
+    }
+
+    /**
+     * Plans a blocked filter with minBits to maxBits bits, or returns null if
+     * none meets the target.
+     */
+    private static BloomFilterSpec planBlocked(double falsePositiveProbability, long expectedElements, long minBits,
+            long maxBits, HashStrategy hashStrategy) {
+        long maxBlocks = maxBits / BlockedBloomFilter.BLOCK_BITS;
+        long bestBlocks = Long.MAX_VALUE;
+        int bestK = 0;
+        for (int i = 1; i <= MAX_K; i++) {
+            if (BlockedBloomFilter.falsePositiveProbability(maxBlocks * BlockedBloomFilter.BLOCK_BITS, i,
+                    expectedElements) > falsePositiveProbability)
+                continue;
+            // The false positive probability falls with the number of blocks, so search for the smallest.
+            // A blocked filter never beats a standard filter of the same size, which bounds the search.
+            long low = Math.min(minBits / BlockedBloomFilter.BLOCK_BITS, maxBlocks), high = maxBlocks;
+            while (low < high) {
+                long mid = (low + high) >>> 1;
+                if (BlockedBloomFilter.falsePositiveProbability(mid * BlockedBloomFilter.BLOCK_BITS, i,
+                        expectedElements) <= falsePositiveProbability)
+                    high = mid;
+                else
+                    low = mid + 1;
+            }
+            if (low < bestBlocks) {
+                bestBlocks = low;
+                bestK = i;
+            }
+        }
+        if (bestK == 0)
+            return null;
+        long bits = bestBlocks * BlockedBloomFilter.BLOCK_BITS;
+        return new BloomFilterSpec(bits, bestK, expectedElements, hashStrategy, IndexReduction.MODULO,
+                Variant.BLOCKED, BlockedBloomFilter.falsePositiveProbability(bits, bestK, expectedElements));
+    }
+
+    /**
+     * Returns the k giving the lowest false positive probability for m bits
+     * and n elements, the integer next to (m / n) * ln(2).
+     */
+    private static int bestK(long bits, long expectedElements) {
+        double optimal = bits / (double) expectedElements * Math.log(2);
+        int low = (int) Math.max(1, Math.min(MAX_K, Math.floor(optimal)));
+        int high = (int) Math.max(1, Math.min(MAX_K, Math.ceil(optimal)));
+        return falsePositiveProbability(bits, low, expectedElements)
+                <= falsePositiveProbability(bits, high, expectedElements) ? low : high;
+    }
+
+    private static double falsePositiveProbability(long bits, int k, long expectedElements) {
+        return Math.pow(-Math.expm1(-(double) k * expectedElements / bits), k);
+    }
+
+    /**
+     * Returns the number of bits, m.
+     *
+     * @return number of bits.
+     */
+    public long getBits() {
+        return bits;
+    }
+
+    /**
+     * Returns the number of hash functions, k.
+     *
+     * @return number of hash functions.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the expected number of elements, n.
+     *
+     * @return expected number of elements.
+     */
+    public long getExpectedElements() {
+        return expectedElements;
+    }
+
+    /**
+     * Returns the hash strategy used to select bits.
+     *
+     * @return hash strategy.
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Returns the index reduction used to map hash values to bits.
+     *
+     * @return index reduction.
+     */
+    public IndexReduction getIndexReduction() {
+        return indexReduction;
+    }
+
+    /**
+     * Returns the type of filter the spec is planned for.
+     *
+     * @return variant.
+     */
+    public Variant getVariant() {
+        return variant;
+    }
+
+    /**
+     * Returns the expected false positive probability of the filter when it
+     * holds the expected number of elements. It is higher than the target
+     * if the limit on the number of bits was reached.
+     *
+     * @return expected probability of false positives.
+     */
+    public double getFalsePositiveProbability() {
+        return falsePositiveProbability;
+    }
+
+    @Override
+    public String toString() {
+        return "BloomFilterSpec[" + variant + ", m=" + bits + ", k=" + k + ", n=" + expectedElements + ", "
+                + hashStrategy + ", " + indexReduction + ", p=" + falsePositiveProbability + "]";
+    }
+}
@@ -0,0 +1,109 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Bit storage in a sequence of ByteBuffers. A single ByteBuffer holds at most
+ * 2 GB, so the words are spread over chunks of 2^chunkShift words each. Words
+ * are stored in little-endian order.
+ */
+abstract class ByteBufferBitStorage implements BitStorage {
+    private final ByteBuffer[] chunks;
+    private final long size;
+    private final long wordCount;
+    private final int chunkShift;
+    private final long chunkMask;
+
+    /**
+     * @param chunks buffers holding the words. All but the last must hold exactly 2^chunkShift words.
+     * @param size number of bits.
+     * @param chunkShift log2 of the number of words per chunk.
+     */
+    ByteBufferBitStorage(ByteBuffer[] chunks, long size, int chunkShift) {
+        this.chunks = chunks;
+        this.size = size;
+        this.wordCount = (size + 63) >>> 6;
+        this.chunkShift = chunkShift;
+        this.chunkMask = (1L << chunkShift) - 1;
+        for (ByteBuffer chunk : chunks)
+            chunk.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Returns the number of chunks needed for the given number of bits.
+     */
+    static int chunkCount(long size, int chunkShift) {
+        long words = (size + 63) >>> 6;
+        long chunks = (words + (1L << chunkShift) - 1) >>> chunkShift;
+        if (chunks > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Invalid size: " + size);
+        return (int) chunks;
+    }
+
+    /**
+     * Returns the number of bytes in the given chunk.
+     */
+    static int chunkBytes(long size, int chunkShift, int chunk) {
+        long words = (size + 63) >>> 6;
+        long first = (long) chunk << chunkShift;
+        return (int) (Math.min(1L << chunkShift, words - first) << 3);
+    }
+
+    final ByteBuffer[] chunks() {
+        return chunks;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean get(long bit) {
+        return (getWord(bit >>> 6) & (1L << bit)) != 0;
+    }
+
+    public void set(long bit) {
+        long index = bit >>> 6;
+        setWord(index, getWord(index) | (1L << bit));
+    }
+
+    public void clear(long bit) {
+        long index = bit >>> 6;
+        setWord(index, getWord(index) & ~(1L << bit));
+    }
+
+    public void clear() {
+        for (ByteBuffer chunk : chunks) {
+            int limit = chunk.limit();
+            for (int pos = 0; pos < limit; pos += 8)
+                chunk.putLong(pos, 0);
+        }
+    }
+
+    public long wordCount() {
+        return wordCount;
+    }
+
+    public long getWord(long index) {
+        return chunks[(int) (index >>> chunkShift)].getLong((int) (index & chunkMask) << 3);
+    }
+
+    public void setWord(long index, long word) {
+        chunks[(int) (index >>> chunkShift)].putLong((int) (index & chunkMask) << 3, word);
+    }
+}
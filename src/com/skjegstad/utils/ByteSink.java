@@ -0,0 +1,126 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+/**
+ * A PrimitiveSink that writes into a growable array. One instance is kept
+ * per thread in {@link HashBuffer} and reset before every element, so
+ * funnelling an element does not allocate once the array has grown.
+ */
+final class ByteSink implements PrimitiveSink {
+    byte[] bytes = new byte[64];
+    int length;
+
+    /**
+     * Discards the contents of the sink.
+     *
+     * @return this sink.
+     */
+    ByteSink reset() {
+        length = 0;
+        return this;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            byte[] tmp = new byte[Math.max(length + extra, bytes.length * 2)];
+            System.arraycopy(bytes, 0, tmp, 0, length);
+            bytes = tmp;
+        }
+    }
+
+    public PrimitiveSink putByte(byte b) {
+        ensure(1);
+        bytes[length++] = b;
+        return this;
+    }
+
+    public PrimitiveSink putBytes(byte[] b) {
+        return putBytes(b, 0, b.length);
+    }
+
+    public PrimitiveSink putBytes(byte[] b, int offset, int len) {
+        ensure(len);
+        System.arraycopy(b, offset, bytes, length, len);
+        length += len;
+        return this;
+    }
+
+    public PrimitiveSink putBoolean(boolean b) {
+        return putByte(b ? (byte) 1 : (byte) 0);
+    }
+
+    public PrimitiveSink putInt(int i) {
+        ensure(4);
+        HashBuffer.putInt(bytes, length, i);
+        length += 4;
+        return this;
+    }
+
+    public PrimitiveSink putLong(long l) {
+        ensure(8);
+        HashBuffer.putLong(bytes, length, l);
+        length += 8;
+        return this;
+    }
+
+    public PrimitiveSink putDouble(double d) {
+        return putLong(Double.doubleToLongBits(d));
+    }
+
+    /**
+     * Writes a string encoded as UTF-8. The output is identical to
+     * <code>s.getBytes("UTF-8")</code>, including the '?' written for unpaired
+     * surrogates.
+     *
+     * @param s string to write.
+     * @return this sink.
+     */
+    public PrimitiveSink putString(CharSequence s) {
+        int len = s.length();
+        ensure(len * 3);
+        byte[] b = bytes;
+        int pos = length;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                b[pos++] = (byte) c;
+            } else if (c < 0x800) {
+                b[pos++] = (byte) (0xc0 | (c >> 6));
+                b[pos++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                char low;
+                if (Character.isHighSurrogate(c) && i + 1 < len
+                        && Character.isLowSurrogate(low = s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, low);
+                    b[pos++] = (byte) (0xf0 | (cp >> 18));
+                    b[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                    b[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                    b[pos++] = (byte) (0x80 | (cp & 0x3f));
+                    i++;
+                } else {
+                    b[pos++] = (byte) '?';
+                }
+            } else {
+                b[pos++] = (byte) (0xe0 | (c >> 12));
+                b[pos++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[pos++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        length = pos;
+        return this;
+    }
+}
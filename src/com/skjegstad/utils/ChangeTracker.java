@@ -0,0 +1,137 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.io.Serializable;
+import java.util.BitSet;
+
+/**
+ * Records which pages of a filter have changed, for exporting deltas.
+ * <br /><br />
+ * A page is 16 words, 1024 bits. Each page holds the version it was last
+ * changed in, so deltas can be exported from any earlier version, at a cost
+ * of 8 bytes per 128 bytes of filter. The current version stays open until
+ * checkpoint() closes it; all changes until then are stamped with it, so
+ * marking a page is a single store.
+ * <br /><br />
+ * Bits that are cleared can not be sent as a delta, as deltas are merged with
+ * OR. Clearing bits therefore resets the tracker, and deltas can only be
+ * exported from versions closed after the reset.
+ */
+final class ChangeTracker implements Serializable {
+    static final int PAGE_SHIFT = 10; // bits per page as a power of two
+    static final int PAGE_WORDS = 1 << (PAGE_SHIFT - 6);
+
+    private final long[] pageVersions; // version each page was last changed in
+    private long version = 1; // open version, stamped on changed pages
+    private long resetVersion; // bits were cleared in this version
+
+    /**
+     * Starts tracking a filter. Existing bits belong to version 0.
+     *
+     * @param bits number of bits in the filter.
+     */
+    ChangeTracker(long bits) {
+        long pages = (bits + (1L << PAGE_SHIFT) - 1) >>> PAGE_SHIFT;
+        if (pages > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Filter is too large for change tracking: " + bits + " bits");
+        pageVersions = new long[(int) pages];
+    }
+
+    /**
+     * Marks the page holding a bit as changed.
+     */
+    void mark(long bit) {
+        pageVersions[(int) (bit >>> PAGE_SHIFT)] = version;
+    }
+
+    /**
+     * Marks the pages where any of the bits are set as changed. Only the
+     * first set bit of each page is looked up, and the bits are not copied.
+     *
+     * @param bits bits that were OR-ed into the filter.
+     */
+    void markBits(BitSet bits) {
+        for (int bit = bits.nextSetBit(0); bit >= 0; ) {
+            int page = bit >>> PAGE_SHIFT;
+            pageVersions[page] = version;
+            long next = (long) (page + 1) << PAGE_SHIFT;
+            bit = next < Integer.MAX_VALUE ? bits.nextSetBit((int) next) : -1;
+        }
+    }
+
+    /**
+     * Marks a page as changed.
+     */
+    void markPage(int page) {
+        pageVersions[page] = version;
+    }
+
+    /**
+     * Records that bits have been cleared.
+     */
+    void reset() {
+        resetVersion = version;
+    }
+
+    /**
+     * Closes the open version.
+     *
+     * @return the version closed.
+     */
+    long checkpoint() {
+        return version++;
+    }
+
+    /**
+     * Returns the pages changed after a version, and closes the open version.
+     *
+     * @param sinceVersion version returned by an earlier checkpoint() or delta.
+     * @return indices of the changed pages.
+     * @throws IllegalStateException if bits have been cleared after sinceVersion.
+     */
+    int[] changedPages(long sinceVersion) {
+        if (sinceVersion < resetVersion)
+            throw new IllegalStateException("Bits were cleared in version " + resetVersion
+                    + ", a delta from version " + sinceVersion + " can not be created");
+        if (sinceVersion >= version)
+            throw new IllegalArgumentException("Version " + sinceVersion + " has not been closed yet");
+        int n = 0;
+        for (long v : pageVersions)
+            if (v > sinceVersion)
+                n++;
+        int[] pages = new int[n];
+        for (int i = 0, j = 0; j < n; i++)
+            if (pageVersions[i] > sinceVersion)
+                pages[j++] = i;
+        return pages;
+    }
+
+    /**
+     * Returns the number of pages.
+     */
+    int pageCount() {
+        return pageVersions.length;
+    }
+
+    /**
+     * Returns the open version.
+     */
+    long version() {
+        return version;
+    }
+}
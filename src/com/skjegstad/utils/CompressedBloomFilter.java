@@ -0,0 +1,393 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A read-only Bloom filter kept in the Golomb coded form written by
+ * BloomFilter.writeCompressedTo(). It answers the same contains() queries as
+ * the {@link BloomFilter} it was made from, without decoding the bits.
+ * <br /><br />
+ * A filter holding far fewer elements than it was sized for takes a fraction
+ * of the memory of the BloomFilter, and reading it from a stream is little
+ * more than copying the compressed words. Lookups are slower: each bit is
+ * found by a binary search over every 64th set bit followed by decoding at
+ * most 63 distances. Use it for filters that are received, kept and queried
+ * now and then, and toBloomFilter() for filters that are queried heavily or
+ * need to change.
+ * <br /><br />
+ * The filter can not be modified, and may be shared between threads.
+ *
+ * @param <E> Object type that was inserted into the Bloom filter, e.g. String or Integer.
+ */
+public class CompressedBloomFilter<E> {
+    static final int SAMPLE = 64; // every SAMPLE-th set bit is indexed
+
+    private final long[] stream; // Golomb coded distances between set bits
+    private final int riceBits; // Golomb parameter b
+    private final int setBits; // number of bits set
+    private final int[] samplePositions; // position of set bit i * SAMPLE
+    private final long[] sampleOffsets; // position in the stream after the code of set bit i * SAMPLE
+    private final int bitSetSize;
+    private final int expectedNumberOfFilterElements; // expected (maximum) number of elements to be added
+    private final int numberOfAddedElements; // number of elements added to the filter it was made from
+    private final int k; // number of hash functions
+    private final HashStrategy hashStrategy; // hash function used to select bits
+    private final IndexReduction indexReduction; // maps hash values to bit positions
+    private final Funnel<? super E> funnel; // writes elements into the hash function, null to use toString()
+
+    /**
+     * Compresses a Bloom filter. The two filters share nothing afterwards.
+     *
+     * @param filter filter to compress.
+     */
+    public CompressedBloomFilter(BloomFilter<E> filter) {
+        this(filter.size(), filter.getExpectedNumberOfElements(), filter.count(), filter.getK(),
+                filter.getHashStrategy(), filter.getIndexReduction(), filter.getFunnel(), FilterCompression.encodeGolomb(
+                        new HeapBitStorage(filter.words(), filter.size())));
+    }
+
+    private CompressedBloomFilter(int bitSetSize, int expectedNumberOfElements, int count, int k,
+            HashStrategy hashStrategy, IndexReduction indexReduction, Funnel<? super E> funnel,
+            FilterCompression.GolombData data) {
+        this.bitSetSize = bitSetSize;
+        this.expectedNumberOfFilterElements = expectedNumberOfElements;
+        this.numberOfAddedElements = count;
+        this.k = k;
+        this.hashStrategy = hashStrategy;
+        this.indexReduction = indexReduction;
+        this.funnel = funnel;
+        this.stream = data.words;
+        this.riceBits = data.riceBits;
+        this.setBits = (int) data.setBits;
+
+        int samples = (setBits + SAMPLE - 1) / SAMPLE;
+        samplePositions = new int[samples];
+        sampleOffsets = new long[samples];
+        FilterCompression.GolombReader reader = new FilterCompression.GolombReader(stream, riceBits, 0);
+        long position = -1;
+        try {
+            for (int i = 0; i < setBits; i++) {
+                position += reader.next() + 1;
+                if (position >= bitSetSize)
+                    throw new IOException("Corrupt Bloom filter data: bit " + position + " out of range");
+                if (i % SAMPLE == 0) {
+                    samplePositions[i / SAMPLE] = (int) position;
+                    sampleOffsets[i / SAMPLE] = reader.position();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Returns true if the element could have been inserted into the Bloom filter.
+     * See {@link BloomFilter#contains(Object)}.
+     *
+     * @param element element to check.
+     * @return true if the element could have been inserted into the Bloom filter.
+     */
+    public boolean contains(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(sink.bytes, 0, sink.length, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the array of bytes could have been inserted into the Bloom filter.
+     *
+     * @param bytes array of bytes to check.
+     * @return true if the array could have been inserted into the Bloom filter.
+     */
+    public boolean contains(byte[] bytes) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(bytes, 0, bytes.length, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the long could have been inserted into the Bloom filter
+     * with addLong(long).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the int could have been inserted into the Bloom filter
+     * with addInt(int).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the 128-bit value could have been inserted into the Bloom
+     * filter with add(long, long).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean contains(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    private boolean containsHashes(long[] hashes) {
+        for (int i = 0; i < k; i++) {
+            long hash = hashes[i];
+            int position = indexReduction == IndexReduction.MODULO
+                    ? (int) Math.abs(hash % bitSetSize) : (int) indexReduction.reduce(hash, bitSetSize);
+            if (!getBit(position)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read a single bit from the Bloom filter.
+     * @param bit the bit to read.
+     * @return true if the bit is set, false if it is not.
+     */
+    public boolean getBit(int bit) {
+        int sample = Arrays.binarySearch(samplePositions, bit);
+        if (sample >= 0)
+            return true;
+        sample = -sample - 2; // the last indexed bit before the one we look for
+        if (sample < 0)
+            return false;
+        long position = samplePositions[sample];
+        long offset = sampleOffsets[sample];
+        for (int i = sample * SAMPLE + 1, end = Math.min(setBits, i + SAMPLE - 1); i < end && position < bit; i++) {
+            long zeros = FilterCompression.zeros(stream, offset);
+            offset += zeros + 1;
+            long distance = zeros << riceBits | FilterCompression.bits(stream, offset, riceBits);
+            offset += riceBits;
+            position += distance + 1;
+        }
+        return position == bit;
+    }
+
+    /**
+     * Returns a BloomFilter with the same bits, which can be modified.
+     *
+     * @return the decompressed Bloom filter.
+     */
+    public BloomFilter<E> toBloomFilter() {
+        long[] words = new long[(bitSetSize + 63) >>> 6];
+        FilterCompression.GolombReader reader = new FilterCompression.GolombReader(stream, riceBits, 0);
+        long position = -1;
+        try {
+            for (int i = 0; i < setBits; i++) {
+                position += reader.next() + 1;
+                words[(int) (position >>> 6)] |= 1L << position;
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // the stream was checked when the filter was created
+        }
+        return BloomFilter.fromWords(header(), words, funnel);
+    }
+
+    /**
+     * Returns the number of bits in the Bloom filter.
+     *
+     * @return the size of the Bloom filter in bits.
+     */
+    public int size() {
+        return bitSetSize;
+    }
+
+    /**
+     * Returns the number of elements added to the Bloom filter this filter was made from.
+     *
+     * @return number of elements added to the Bloom filter.
+     */
+    public int count() {
+        return numberOfAddedElements;
+    }
+
+    /**
+     * Returns the number of bits set.
+     *
+     * @return number of bits set.
+     */
+    public int bitCount() {
+        return setBits;
+    }
+
+    /**
+     * Returns the expected number of elements to be inserted into the filter.
+     *
+     * @return expected number of elements.
+     */
+    public int getExpectedNumberOfElements() {
+        return expectedNumberOfFilterElements;
+    }
+
+    /**
+     * Returns the number of hash functions.
+     *
+     * @return k.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the hash strategy used to select bits in the Bloom filter.
+     *
+     * @return hash strategy.
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Returns the index reduction used to map hash values to bits.
+     *
+     * @return index reduction.
+     */
+    public IndexReduction getIndexReduction() {
+        return indexReduction;
+    }
+
+    /**
+     * Returns the funnel used to hash elements, or null if the output of
+     * toString() is hashed.
+     *
+     * @return funnel or null.
+     */
+    public Funnel<? super E> getFunnel() {
+        return funnel;
+    }
+
+    /**
+     * Returns the number of bytes used by the compressed bits and their index.
+     *
+     * @return size of the compressed filter in bytes.
+     */
+    public long getCompressedSize() {
+        return 8L * stream.length + 12L * samplePositions.length;
+    }
+
+    /**
+     * Writes the filter to a stream in the Golomb coded form of
+     * BloomFilter.writeCompressedTo(). It can be read by
+     * BloomFilter.readFrom(), LargeBloomFilter.readFrom() and readFrom().
+     * The stream is not closed.
+     *
+     * @param out stream to write to.
+     * @throws IOException if writing fails.
+     * @throws IllegalArgumentException if the hash strategy is not one of {@link HashStrategies}.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(Channels.newChannel(out));
+    }
+
+    /**
+     * Writes the filter to a channel. See writeTo(OutputStream).
+     *
+     * @param out channel to write to.
+     * @throws IOException if writing fails.
+     * @throws IllegalArgumentException if the hash strategy is not one of {@link HashStrategies}.
+     */
+    public void writeTo(WritableByteChannel out) throws IOException {
+        FilterCompression.GolombData data = new FilterCompression.GolombData();
+        data.setBits = setBits;
+        data.riceBits = riceBits;
+        data.words = stream;
+        FilterCompression.writeGolomb(header(), data, out);
+    }
+
+    private FilterHeader header() {
+        FilterHeader header = new FilterHeader();
+        header.hashStrategyId = HashStrategies.forId(hashStrategy.getId()).getId();
+        header.k = k;
+        header.bits = bitSetSize;
+        header.expectedElements = expectedNumberOfFilterElements;
+        header.count = numberOfAddedElements;
+        header.parameter = indexReduction.getId();
+        return header;
+    }
+
+    /**
+     * Reads a filter written by writeTo(), BloomFilter.writeTo() or
+     * BloomFilter.writeCompressedTo(). A Golomb coded filter is used as it is,
+     * others are compressed after reading. The stream is not closed.
+     *
+     * @param <E> Object type that is in the filter.
+     * @param in stream to read from.
+     * @param funnel writes elements into the hash function. Must be the same as for the filter
+     * that was written. If null, the output of toString() is hashed.
+     * @return the filter.
+     * @throws IOException if reading fails, or the data is not a Bloom filter.
+     */
+    public static <E> CompressedBloomFilter<E> readFrom(InputStream in, Funnel<? super E> funnel) throws IOException {
+        return readFrom(Channels.newChannel(in), funnel);
+    }
+
+    /**
+     * Reads a filter from a channel. See readFrom(InputStream, Funnel). The
+     * channel is not closed.
+     *
+     * @param <E> Object type that is in the filter.
+     * @param in channel to read from.
+     * @param funnel writes elements into the hash function. Must be the same as for the filter
+     * that was written. If null, the output of toString() is hashed.
+     * @return the filter.
+     * @throws IOException if reading fails, or the data is not a Bloom filter.
+     */
+    public static <E> CompressedBloomFilter<E> readFrom(ReadableByteChannel in, Funnel<? super E> funnel) throws IOException {
+        FilterHeader header = FilterIO.readHeader(in);
+        BloomFilter.checkHeader(header);
+        FilterCompression.GolombData data;
+        if (header.encoding == FilterHeader.ENCODING_GOLOMB)
+            data = FilterCompression.readGolomb(header, in);
+        else
+            data = FilterCompression.encodeGolomb(new HeapBitStorage(FilterIO.readWords(header, in), header.bits));
+        try {
+            return new CompressedBloomFilter<E>((int) header.bits, (int) header.expectedElements, (int) header.count,
+                    header.k, header.hashStrategy(), header.indexReduction(), funnel, data);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+}
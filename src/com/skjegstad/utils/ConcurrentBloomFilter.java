@@ -0,0 +1,512 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.Serializable;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A thread-safe Bloom filter. Any number of threads may call add() and
+ * contains() concurrently without external locking.
+ * <br /><br />
+ * The bits are stored in an AtomicLongArray and set with compare-and-set, so
+ * no locks are taken on the add() and contains() paths. A bit that is already
+ * set is never written again, which keeps cache lines shared between cores
+ * once the filter has warmed up. The number of added elements is kept in a
+ * LongAdder. The hash strategies keep per-thread state, so hashing does not
+ * contend either.
+ * <br /><br />
+ * The filter sets the same bits as a {@link BloomFilter} with the same
+ * parameters and hash strategy, and the two can be converted with
+ * getBitSet() and the BitSet constructors.
+ *
+ * @param <E> Object type that is to be inserted into the Bloom filter, e.g. String or Integer.
+ */
+public class ConcurrentBloomFilter<E> implements Serializable {
+    private final AtomicLongArray words;
+    private final int bitSetSize;
+    private final double bitsPerElement;
+    private final int expectedNumberOfFilterElements; // expected (maximum) number of elements to be added
+    private final LongAdder numberOfAddedElements = new LongAdder(); // number of elements actually added to the Bloom filter
+    private final int k; // number of hash functions
+    private final HashStrategy hashStrategy; // hash function used to select bits
+    private final Funnel<? super E> funnel; // writes elements into the hash function, null to use toString()
+
+    /**
+      * Constructs an empty Bloom filter. The total length of the Bloom filter will be
+      * c*n.
+      *
+      * @param c is the number of bits used per element.
+      * @param n is the expected number of elements the filter will contain.
+      * @param k is the number of hash functions used.
+      * @param hashStrategy is the hash strategy used to select bits.
+      */
+    public ConcurrentBloomFilter(double c, int n, int k, HashStrategy hashStrategy) {
+        this(c, n, k, hashStrategy, null);
+    }
+
+    /**
+      * Constructs an empty Bloom filter that hashes elements with a funnel. The total length of the Bloom filter
+      * will be c*n.
+      *
+      * @param c is the number of bits used per element.
+      * @param n is the expected number of elements the filter will contain.
+      * @param k is the number of hash functions used.
+      * @param hashStrategy is the hash strategy used to select bits.
+      * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+      */
+    public ConcurrentBloomFilter(double c, int n, int k, HashStrategy hashStrategy, Funnel<? super E> funnel) {
+        if (hashStrategy == null)
+            throw new NullPointerException("hashStrategy");
+        this.expectedNumberOfFilterElements = n;
+        this.k = k;
+        this.bitsPerElement = c;
+        this.bitSetSize = (int)Math.ceil(c * n);
+        this.hashStrategy = hashStrategy;
+        this.funnel = funnel;
+        this.words = new AtomicLongArray((bitSetSize + 63) >>> 6);
+    }
+
+    /**
+     * Constructs an empty Bloom filter. The optimal number of hash functions (k) is estimated from the total size of the Bloom
+     * and the number of expected elements.
+     *
+     * @param bitSetSize defines how many bits should be used in total for the filter.
+     * @param expectedNumberOElements defines the maximum number of elements the filter is expected to contain.
+     * @param hashStrategy is the hash strategy used to select bits.
+     */
+    public ConcurrentBloomFilter(int bitSetSize, int expectedNumberOElements, HashStrategy hashStrategy) {
+        this(bitSetSize / (double)expectedNumberOElements,
+             expectedNumberOElements,
+             (int) Math.round((bitSetSize / (double)expectedNumberOElements) * Math.log(2.0)),
+             hashStrategy);
+    }
+
+    /**
+     * Constructs an empty Bloom filter with a given false positive probability. The number of bits per
+     * element and the number of hash functions is estimated
+     * to match the false positive probability.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param hashStrategy is the hash strategy used to select bits.
+     */
+    public ConcurrentBloomFilter(double falsePositiveProbability, int expectedNumberOfElements, HashStrategy hashStrategy) {
+        this(Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))) / Math.log(2), // c = k / ln(2)
+             expectedNumberOfElements,
+             (int)Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))), // k = ceil(-log_2(false prob.))
+             hashStrategy);
+    }
+
+    /**
+     * Constructs an empty Bloom filter with a given false positive probability that hashes elements
+     * with a funnel instead of their toString()-method. See {@link Funnel}.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param hashStrategy is the hash strategy used to select bits.
+     * @param funnel writes elements into the hash function.
+     */
+    public ConcurrentBloomFilter(double falsePositiveProbability, int expectedNumberOfElements, HashStrategy hashStrategy,
+            Funnel<? super E> funnel) {
+        this(Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))) / Math.log(2), // c = k / ln(2)
+             expectedNumberOfElements,
+             (int)Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))), // k = ceil(-log_2(false prob.))
+             hashStrategy,
+             funnel);
+    }
+
+    /**
+     * Constructs an empty Bloom filter with a given false positive probability, using
+     * {@link HashStrategies#MURMUR3_128}.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     */
+    public ConcurrentBloomFilter(double falsePositiveProbability, int expectedNumberOfElements) {
+        this(falsePositiveProbability, expectedNumberOfElements, HashStrategies.MURMUR3_128);
+    }
+
+    /**
+     * Construct a new Bloom filter based on existing Bloom filter data.
+     *
+     * @param bitSetSize defines how many bits should be used for the filter.
+     * @param expectedNumberOfFilterElements defines the maximum number of elements the filter is expected to contain.
+     * @param actualNumberOfFilterElements specifies how many elements have been inserted into the <code>filterData</code> BitSet.
+     * @param filterData a BitSet representing an existing Bloom filter. The BitSet is copied.
+     * @param hashStrategy the hash strategy used to create <code>filterData</code>.
+     */
+    public ConcurrentBloomFilter(int bitSetSize, int expectedNumberOfFilterElements, int actualNumberOfFilterElements,
+            BitSet filterData, HashStrategy hashStrategy) {
+        this(bitSetSize, expectedNumberOfFilterElements, hashStrategy);
+        long[] data = filterData.toLongArray();
+        for (int i = 0; i < data.length && i < words.length(); i++)
+            words.set(i, data[i]);
+        numberOfAddedElements.add(actualNumberOfFilterElements);
+    }
+
+    /**
+     * Calculates the expected probability of false positives based on
+     * the number of expected filter elements and the size of the Bloom filter.
+     *
+     * @return expected probability of false positives.
+     */
+    public double expectedFalsePositiveProbability() {
+        return getFalsePositiveProbability(expectedNumberOfFilterElements);
+    }
+
+    /**
+     * Calculate the probability of a false positive given the specified
+     * number of inserted elements.
+     *
+     * @param numberOfElements number of inserted elements.
+     * @return probability of a false positive.
+     */
+    public double getFalsePositiveProbability(double numberOfElements) {
+        // (1 - e^(-k * n / m)) ^ k
+        return Math.pow((1 - Math.exp(-k * (double) numberOfElements
+                        / (double) bitSetSize)), k);
+    }
+
+    /**
+     * Get the current probability of a false positive. The probability is calculated from
+     * the size of the Bloom filter and the current number of elements added to it.
+     *
+     * @return probability of false positives.
+     */
+    public double getFalsePositiveProbability() {
+        return getFalsePositiveProbability(count());
+    }
+
+    /**
+     * Returns the number of hash functions used by the filter.
+     *
+     * @return k.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the hash strategy used to select bits in the Bloom filter.
+     *
+     * @return hash strategy.
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Returns the funnel used to hash elements, or null if the output of
+     * toString() is hashed.
+     *
+     * @return funnel or null.
+     */
+    public Funnel<? super E> getFunnel() {
+        return funnel;
+    }
+
+    /**
+     * Sets all bits to false in the Bloom filter. Elements added by other threads
+     * while the filter is being cleared may be partially removed.
+     */
+    public void clear() {
+        for (int i = 0; i < words.length(); i++)
+            words.set(i, 0);
+        numberOfAddedElements.reset();
+    }
+
+    /**
+     * Adds an object to the Bloom filter. If the filter was created with a
+     * {@link Funnel}, the bytes written by the funnel are used as input to the
+     * hash functions. Otherwise the output from the object's toString() method
+     * is used. Either way the bytes are written into a per-thread buffer, so
+     * adding a String or a funnelled object does not allocate.
+     *
+     * @param element is an element to register in the Bloom filter.
+     */
+    public void add(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        add(buffer, sink.bytes, 0, sink.length);
+    }
+
+    /**
+     * Adds an array of bytes to the Bloom filter.
+     *
+     * @param bytes array of bytes to add to the Bloom filter.
+     */
+    public void add(byte[] bytes) {
+        add(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private void add(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(bytes, offset, length, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds a long to the Bloom filter. The value is hashed directly, without
+     * boxing or string conversion, and sets the same bits as adding its 8 bytes
+     * in little-endian order with add(byte[]).
+     * <br /><br />
+     * Note that this is not the same as adding a boxed Long with add(), which
+     * is hashed using the output of toString(). Check the value with containsLong().
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds an int to the Bloom filter. The value is hashed directly, without
+     * boxing or string conversion, and sets the same bits as adding its 4 bytes
+     * in little-endian order with add(byte[]).
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds a 128-bit value, such as a UUID, to the Bloom filter. The value sets
+     * the same bits as adding the 8 little-endian bytes of <code>first</code>
+     * followed by the 8 little-endian bytes of <code>second</code> with add(byte[]).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     */
+    public void add(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        addHashes(hashes);
+    }
+
+    private void addHashes(long[] hashes) {
+        for (int i = 0; i < k; i++) {
+            long hash = hashes[i];
+            setBit((int) Math.abs(hash % bitSetSize));
+        }
+        numberOfAddedElements.increment();
+    }
+
+    /**
+     * Adds all elements from a Collection to the Bloom filter.
+     * @param c Collection of elements.
+     */
+    public void addAll(Collection<? extends E> c) {
+        for (E element : c)
+            add(element);
+    }
+
+    /**
+     * Returns true if the element could have been inserted into the Bloom filter.
+     * Use getFalsePositiveProbability() to calculate the probability of this
+     * being correct.
+     *
+     * @param element element to check.
+     * @return true if the element could have been inserted into the Bloom filter.
+     */
+    public boolean contains(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return contains(buffer, sink.bytes, 0, sink.length);
+    }
+
+    /**
+     * Returns true if the array of bytes could have been inserted into the Bloom filter.
+     * Use getFalsePositiveProbability() to calculate the probability of this
+     * being correct.
+     *
+     * @param bytes array of bytes to check.
+     * @return true if the array could have been inserted into the Bloom filter.
+     */
+    public boolean contains(byte[] bytes) {
+        return contains(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private boolean contains(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(bytes, offset, length, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the long could have been inserted into the Bloom filter
+     * with addLong(long).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the int could have been inserted into the Bloom filter
+     * with addInt(int).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the 128-bit value could have been inserted into the Bloom
+     * filter with add(long, long).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean contains(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    private boolean containsHashes(long[] hashes) {
+        for (int i = 0; i < k; i++) {
+            long hash = hashes[i];
+            if (!getBit((int) Math.abs(hash % bitSetSize))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if all the elements of a Collection could have been inserted
+     * into the Bloom filter.
+     * @param c elements to check.
+     * @return true if all the elements in c could have been inserted into the Bloom filter.
+     */
+    public boolean containsAll(Collection<? extends E> c) {
+        for (E element : c)
+            if (!contains(element))
+                return false;
+        return true;
+    }
+
+    /**
+     * Read a single bit from the Bloom filter.
+     * @param bit the bit to read.
+     * @return true if the bit is set, false if it is not.
+     */
+    public boolean getBit(int bit) {
+        return (words.get(bit >>> 6) & (1L << bit)) != 0;
+    }
+
+    /**
+     * Set a single bit in the Bloom filter.
+     * @param bit is the bit to set.
+     * @param value If true, the bit is set. If false, the bit is cleared.
+     */
+    public void setBit(int bit, boolean value) {
+        if (value) {
+            setBit(bit);
+        } else {
+            int i = bit >>> 6;
+            long mask = 1L << bit;
+            long word;
+            do {
+                word = words.get(i);
+                if ((word & mask) == 0)
+                    return;
+            } while (!words.compareAndSet(i, word, word & ~mask));
+        }
+    }
+
+    private void setBit(int bit) {
+        int i = bit >>> 6;
+        long mask = 1L << bit;
+        long word;
+        do {
+            word = words.get(i);
+            if ((word & mask) != 0)
+                return; // already set, avoid writing to a shared cache line
+        } while (!words.compareAndSet(i, word, word | mask));
+    }
+
+    /**
+     * Returns a copy of the bits in the Bloom filter. The copy is not atomic
+     * with respect to concurrent calls to add().
+     *
+     * @return bit set representing the Bloom filter.
+     */
+    public BitSet getBitSet() {
+        long[] data = new long[words.length()];
+        for (int i = 0; i < data.length; i++)
+            data[i] = words.get(i);
+        return BitSet.valueOf(data);
+    }
+
+    /**
+     * Returns the number of bits in the Bloom filter. Use count() to retrieve
+     * the number of inserted elements.
+     *
+     * @return the size of the bitset used by the Bloom filter.
+     */
+    public int size() {
+        return this.bitSetSize;
+    }
+
+    /**
+     * Returns the number of elements added to the Bloom filter after it
+     * was constructed or after clear() was called.
+     *
+     * @return number of elements added to the Bloom filter.
+     */
+    public int count() {
+        return numberOfAddedElements.intValue();
+    }
+
+    /**
+     * Returns the expected number of elements to be inserted into the filter.
+     * This value is the same value as the one passed to the constructor.
+     *
+     * @return expected number of elements.
+     */
+    public int getExpectedNumberOfElements() {
+        return expectedNumberOfFilterElements;
+    }
+
+    /**
+     * Get expected number of bits per element when the Bloom filter is full. This value is set by the constructor
+     * when the Bloom filter is created.
+     *
+     * @return expected number of bits per element.
+     */
+    public double getExpectedBitsPerElement() {
+        return this.bitsPerElement;
+    }
+}
@@ -0,0 +1,587 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+
+/**
+ * A counting Bloom filter, which supports removing elements.
+ * <br /><br />
+ * Each bit of a standard Bloom filter is replaced by a 4-bit counter. add()
+ * increments the k counters of an element, remove() decrements them, and
+ * contains() checks that they are all non-zero. The counters are packed 16
+ * to a long, so the filter uses size() / 2 bytes, four times the memory of a
+ * {@link BloomFilter} with the same number of bits and the same false
+ * positive probability.
+ * <br /><br />
+ * A counter saturates at 15. A saturated counter is never decremented again,
+ * since it is no longer known how many elements share it; this may leave a
+ * removed element looking present, but never causes a false negative. The
+ * number of increments lost this way is returned by getOverflowCount(). With
+ * the optimal k, a counter reaches 16 with a probability of about
+ * 1.37e-15 * size() (Fan et al., "Summary Cache").
+ * <br /><br />
+ * Elements are hashed in the same way as by {@link BloomFilter}. The filter is
+ * not thread-safe.
+ *
+ * @param <E> Object type that is to be inserted into the Bloom filter, e.g. String or Integer.
+ */
+public class CountingBloomFilter<E> implements Serializable {
+    /** Largest value of a counter. */
+    public static final int MAX_COUNT = 15;
+
+    private final long[] counters; // 16 4-bit counters per word
+    private final int size; // number of counters
+    private final double bitsPerElement;
+    private final int expectedNumberOfFilterElements; // expected (maximum) number of elements to be added
+    private int numberOfAddedElements; // number of elements added and not removed
+    private long overflowCount; // number of increments of saturated counters
+    private final int k; // number of hash functions
+    private final HashStrategy hashStrategy; // hash function used to select counters
+    private final Funnel<? super E> funnel; // writes elements into the hash function, null to use toString()
+
+    /**
+      * Constructs an empty counting Bloom filter with c*n counters.
+      *
+      * @param c is the number of counters used per element.
+      * @param n is the expected number of elements the filter will contain.
+      * @param k is the number of hash functions used.
+      * @param hashStrategy is the hash strategy used to select counters.
+      */
+    public CountingBloomFilter(double c, int n, int k, HashStrategy hashStrategy) {
+        this(c, n, k, hashStrategy, null);
+    }
+
+    /**
+      * Constructs an empty counting Bloom filter with c*n counters that hashes elements with a funnel.
+      *
+      * @param c is the number of counters used per element.
+      * @param n is the expected number of elements the filter will contain.
+      * @param k is the number of hash functions used.
+      * @param hashStrategy is the hash strategy used to select counters.
+      * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+      */
+    public CountingBloomFilter(double c, int n, int k, HashStrategy hashStrategy, Funnel<? super E> funnel) {
+        if (hashStrategy == null)
+            throw new NullPointerException("hashStrategy");
+        this.expectedNumberOfFilterElements = n;
+        this.k = k;
+        this.bitsPerElement = c;
+        this.size = Math.max(1, (int)Math.ceil(c * n));
+        this.hashStrategy = hashStrategy;
+        this.funnel = funnel;
+        this.counters = new long[(size + 15) >>> 4];
+    }
+
+    /**
+     * Constructs an empty counting Bloom filter with a given false positive probability. The number
+     * of counters and hash functions is chosen as for a {@link BloomFilter}.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param hashStrategy is the hash strategy used to select counters.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     */
+    public CountingBloomFilter(double falsePositiveProbability, int expectedNumberOfElements, HashStrategy hashStrategy,
+            Funnel<? super E> funnel) {
+        this(Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))) / Math.log(2), // c = k / ln(2)
+             expectedNumberOfElements,
+             (int)Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))), // k = ceil(-log_2(false prob.))
+             hashStrategy,
+             funnel);
+    }
+
+    /**
+     * Constructs an empty counting Bloom filter with a given false positive probability.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param hashStrategy is the hash strategy used to select counters.
+     */
+    public CountingBloomFilter(double falsePositiveProbability, int expectedNumberOfElements, HashStrategy hashStrategy) {
+        this(falsePositiveProbability, expectedNumberOfElements, hashStrategy, null);
+    }
+
+    /**
+     * Constructs an empty counting Bloom filter with a given false positive probability, using
+     * {@link HashStrategies#MURMUR3_128}.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     */
+    public CountingBloomFilter(double falsePositiveProbability, int expectedNumberOfElements) {
+        this(falsePositiveProbability, expectedNumberOfElements, HashStrategies.MURMUR3_128);
+    }
+
+    /**
+     * Compares the contents of two instances to see if they are equal.
+     *
+     * @param obj is the object to compare to.
+     * @return True if the contents of the objects are equal.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final CountingBloomFilter<E> other = (CountingBloomFilter<E>) obj;
+        if (this.expectedNumberOfFilterElements != other.expectedNumberOfFilterElements) {
+            return false;
+        }
+        if (this.k != other.k) {
+            return false;
+        }
+        if (this.size != other.size) {
+            return false;
+        }
+        if (!this.hashStrategy.equals(other.hashStrategy)) {
+            return false;
+        }
+        return Arrays.equals(this.counters, other.counters);
+    }
+
+    /**
+     * Calculates a hash code for this class.
+     * @return hash code representing the contents of an instance of this class.
+     */
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 61 * hash + Arrays.hashCode(this.counters);
+        hash = 61 * hash + this.expectedNumberOfFilterElements;
+        hash = 61 * hash + this.size;
+        hash = 61 * hash + this.k;
+        hash = 61 * hash + this.hashStrategy.getId();
+        return hash;
+    }
+
+    /**
+     * Calculates the expected probability of false positives based on
+     * the number of expected filter elements and the size of the Bloom filter.
+     *
+     * @return expected probability of false positives.
+     */
+    public double expectedFalsePositiveProbability() {
+        return getFalsePositiveProbability(expectedNumberOfFilterElements);
+    }
+
+    /**
+     * Calculate the probability of a false positive given the specified
+     * number of inserted elements.
+     *
+     * @param numberOfElements number of inserted elements.
+     * @return probability of a false positive.
+     */
+    public double getFalsePositiveProbability(double numberOfElements) {
+        // (1 - e^(-k * n / m)) ^ k
+        return Math.pow((1 - Math.exp(-k * (double) numberOfElements
+                        / (double) size)), k);
+    }
+
+    /**
+     * Get the current probability of a false positive. The probability is calculated from
+     * the size of the Bloom filter and the current number of elements in it.
+     *
+     * @return probability of false positives.
+     */
+    public double getFalsePositiveProbability() {
+        return getFalsePositiveProbability(numberOfAddedElements);
+    }
+
+    /**
+     * Returns the number of hash functions used by the filter.
+     *
+     * @return k.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the hash strategy used to select counters in the Bloom filter.
+     *
+     * @return hash strategy.
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Returns the funnel used to hash elements, or null if the output of
+     * toString() is hashed.
+     *
+     * @return funnel or null.
+     */
+    public Funnel<? super E> getFunnel() {
+        return funnel;
+    }
+
+    /**
+     * Sets all counters to zero.
+     */
+    public void clear() {
+        Arrays.fill(counters, 0);
+        numberOfAddedElements = 0;
+        overflowCount = 0;
+    }
+
+    /**
+     * Adds an object to the Bloom filter. If the filter was created with a
+     * {@link Funnel}, the bytes written by the funnel are used as input to the
+     * hash functions. Otherwise the output from the object's toString() method
+     * is used.
+     *
+     * @param element is an element to register in the Bloom filter.
+     */
+    public void add(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        addHashes(hash(buffer, sink.bytes, 0, sink.length));
+    }
+
+    private long[] hash(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(bytes, offset, length, hashes, k);
+        return hashes;
+    }
+
+    /**
+     * Adds an array of bytes to the Bloom filter.
+     *
+     * @param bytes array of bytes to add to the Bloom filter.
+     */
+    public void add(byte[] bytes) {
+        addHashes(hash(HashBuffer.get(), bytes, 0, bytes.length));
+    }
+
+    /**
+     * Adds a long to the Bloom filter. See {@link BloomFilter#addLong(long)}.
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds an int to the Bloom filter. See {@link BloomFilter#addInt(int)}.
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds a 128-bit value, such as a UUID, to the Bloom filter. See {@link BloomFilter#add(long, long)}.
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     */
+    public void add(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        addHashes(hashes);
+    }
+
+    private void addHashes(long[] hashes) {
+        for (int i = 0; i < k; i++) {
+            int position = (int) Math.abs(hashes[i] % size);
+            int word = position >>> 4;
+            int shift = (position & 15) << 2;
+            if (((counters[word] >>> shift) & 0xF) == MAX_COUNT)
+                overflowCount++;
+            else
+                counters[word] += 1L << shift;
+        }
+        numberOfAddedElements ++;
+    }
+
+    /**
+     * Adds all elements from a Collection to the Bloom filter.
+     * @param c Collection of elements.
+     */
+    public void addAll(Collection<? extends E> c) {
+        for (E element : c)
+            add(element);
+    }
+
+    /**
+     * Removes an object from the Bloom filter. The object should have been
+     * added before; removing an object that was never added may remove
+     * other elements. If contains() returns false for the object, the filter
+     * is not changed.
+     *
+     * @param element element to remove.
+     * @return true if the counters of the element were decremented, false if the element was not in the filter.
+     */
+    public boolean remove(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return removeHashes(hash(buffer, sink.bytes, 0, sink.length));
+    }
+
+    /**
+     * Removes an array of bytes from the Bloom filter. See remove(Object).
+     *
+     * @param bytes array of bytes to remove.
+     * @return true if the counters of the array were decremented, false if the array was not in the filter.
+     */
+    public boolean remove(byte[] bytes) {
+        return removeHashes(hash(HashBuffer.get(), bytes, 0, bytes.length));
+    }
+
+    /**
+     * Removes a long added with addLong(long). See remove(Object).
+     *
+     * @param value value to remove.
+     * @return true if the counters of the value were decremented, false if the value was not in the filter.
+     */
+    public boolean removeLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return removeHashes(hashes);
+    }
+
+    /**
+     * Removes an int added with addInt(int). See remove(Object).
+     *
+     * @param value value to remove.
+     * @return true if the counters of the value were decremented, false if the value was not in the filter.
+     */
+    public boolean removeInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return removeHashes(hashes);
+    }
+
+    /**
+     * Removes a 128-bit value added with add(long, long). See remove(Object).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the counters of the value were decremented, false if the value was not in the filter.
+     */
+    public boolean remove(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        return removeHashes(hashes);
+    }
+
+    private boolean removeHashes(long[] hashes) {
+        if (!containsHashes(hashes))
+            return false;
+        for (int i = 0; i < k; i++) {
+            int position = (int) Math.abs(hashes[i] % size);
+            int word = position >>> 4;
+            int shift = (position & 15) << 2;
+            long counter = (counters[word] >>> shift) & 0xF;
+            // a saturated counter may count more elements than it can hold, so it is never decremented.
+            // A counter can only be 0 here if elements that were never added have been removed.
+            if (counter != MAX_COUNT && counter != 0)
+                counters[word] -= 1L << shift;
+        }
+        numberOfAddedElements --;
+        return true;
+    }
+
+    /**
+     * Removes all elements in a Collection from the Bloom filter. See remove(Object).
+     *
+     * @param c elements to remove.
+     * @return true if the counters of any element were decremented.
+     */
+    public boolean removeAll(Collection<? extends E> c) {
+        boolean changed = false;
+        for (E element : c)
+            changed |= remove(element);
+        return changed;
+    }
+
+    /**
+     * Returns true if the element could have been inserted into the Bloom filter,
+     * and has not been removed.
+     *
+     * @param element element to check.
+     * @return true if the element could have been inserted into the Bloom filter.
+     */
+    public boolean contains(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return containsHashes(hash(buffer, sink.bytes, 0, sink.length));
+    }
+
+    /**
+     * Returns true if the array of bytes could have been inserted into the Bloom filter.
+     *
+     * @param bytes array of bytes to check.
+     * @return true if the array could have been inserted into the Bloom filter.
+     */
+    public boolean contains(byte[] bytes) {
+        return containsHashes(hash(HashBuffer.get(), bytes, 0, bytes.length));
+    }
+
+    /**
+     * Returns true if the long could have been inserted into the Bloom filter
+     * with addLong(long).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the int could have been inserted into the Bloom filter
+     * with addInt(int).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the 128-bit value could have been inserted into the Bloom
+     * filter with add(long, long).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean contains(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    private boolean containsHashes(long[] hashes) {
+        for (int i = 0; i < k; i++) {
+            int position = (int) Math.abs(hashes[i] % size);
+            if (((counters[position >>> 4] >>> ((position & 15) << 2)) & 0xF) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if all the elements of a Collection could have been inserted
+     * into the Bloom filter.
+     * @param c elements to check.
+     * @return true if all the elements in c could have been inserted into the Bloom filter.
+     */
+    public boolean containsAll(Collection<? extends E> c) {
+        for (E element : c)
+            if (!contains(element))
+                return false;
+        return true;
+    }
+
+    /**
+     * Reads a single counter.
+     * @param position the counter to read.
+     * @return value of the counter, between 0 and MAX_COUNT.
+     */
+    public int getCount(int position) {
+        if (position < 0 || position >= size)
+            throw new IndexOutOfBoundsException("position: " + position);
+        return (int) ((counters[position >>> 4] >>> ((position & 15) << 2)) & 0xF);
+    }
+
+    /**
+     * Returns the number of increments that were lost because a counter was
+     * saturated, since the filter was constructed or clear() was called.
+     * Any value above 0 means that removed elements may still be reported as
+     * present.
+     *
+     * @return number of lost increments.
+     */
+    public long getOverflowCount() {
+        return overflowCount;
+    }
+
+    /**
+     * Returns the filter as bits: bit i is set if counter i is non-zero. A
+     * BloomFilter with the same size, k and hash strategy using these bits
+     * contains the same elements.
+     *
+     * @return bit set representing the Bloom filter.
+     */
+    public BitSet getBitSet() {
+        BitSet bits = new BitSet(size);
+        for (int position = 0; position < size; position++)
+            if (((counters[position >>> 4] >>> ((position & 15) << 2)) & 0xF) != 0)
+                bits.set(position);
+        return bits;
+    }
+
+    /**
+     * Returns the number of counters in the Bloom filter. The counters use
+     * size() / 2 bytes. Use count() to retrieve the number of inserted elements.
+     *
+     * @return the number of counters.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Returns the number of elements added to the Bloom filter and not
+     * removed, after it was constructed or after clear() was called.
+     *
+     * @return number of elements in the Bloom filter.
+     */
+    public int count() {
+        return this.numberOfAddedElements;
+    }
+
+    /**
+     * Returns the expected number of elements to be inserted into the filter.
+     * This value is the same value as the one passed to the constructor.
+     *
+     * @return expected number of elements.
+     */
+    public int getExpectedNumberOfElements() {
+        return expectedNumberOfFilterElements;
+    }
+
+    /**
+     * Get expected number of counters per element when the Bloom filter is full. This value is set by the
+     * constructor when the Bloom filter is created.
+     *
+     * @return expected number of counters per element.
+     */
+    public double getExpectedBitsPerElement() {
+        return this.bitsPerElement;
+    }
+}
@@ -0,0 +1,651 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * A cuckoo filter, as described by Fan, Andersen, Kaminsky and Mitzenmacher
+ * in "Cuckoo Filter: Practically Better Than Bloom".
+ * <br /><br />
+ * Instead of bits, the filter stores a short fingerprint of each element in
+ * one of two buckets of 4 slots. A lookup reads only these two buckets. When
+ * both buckets are full, add() moves existing fingerprints to their other
+ * bucket, up to MAX_KICKS times. If that fails, the filter is full, and
+ * add() returns false for any further elements until one is removed.
+ * <br /><br />
+ * With f-bit fingerprints the false positive probability is about 8 / 2^f,
+ * independent of the number of elements, and each element uses f / 0.95 bits
+ * when the filter is full. For probabilities below about 0.3% this is less
+ * than a {@link BloomFilter}, which uses 1.44 * log2(1 / p) bits per element.
+ * Unlike a Bloom filter, elements can be removed, but an element must not be
+ * added more than 8 times, since only the two buckets can hold its fingerprint.
+ * <br /><br />
+ * Elements are hashed in the same way as by {@link BloomFilter}. The filter is
+ * not thread-safe.
+ *
+ * @param <E> Object type that is to be inserted into the filter, e.g. String or Integer.
+ */
+public class CuckooFilter<E> implements Serializable {
+    /** Number of fingerprints in a bucket. */
+    public static final int BUCKET_SIZE = 4;
+    /** Maximum number of fingerprints moved by add() before the filter is considered full. */
+    public static final int MAX_KICKS = 500;
+    private static final double LOAD_FACTOR = 0.95; // highest expected load with 4-slot buckets
+
+    private final long[] slots; // fingerprints, packed
+    private final int bucketCount; // power of two
+    private final int fingerprintBits;
+    private final int expectedNumberOfFilterElements; // expected (maximum) number of elements to be added
+    private int numberOfAddedElements; // number of fingerprints stored, including the victim
+    private boolean hasVictim; // a fingerprint that could not be placed when the filter became full
+    private int victimIndex;
+    private int victimFingerprint;
+    private long random = 0x9E3779B97F4A7C15L; // xorshift state used to choose fingerprints to move
+    private final HashStrategy hashStrategy; // hash function used to select buckets and fingerprints
+    private final Funnel<? super E> funnel; // writes elements into the hash function, null to use toString()
+
+    /**
+     * Constructs an empty cuckoo filter.
+     *
+     * @param expectedNumberOfElements is the expected number of elements in the filter.
+     * @param fingerprintBits is the number of bits in a fingerprint, between 4 and 16.
+     * @param hashStrategy is the hash strategy used to select buckets and fingerprints.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     */
+    public CuckooFilter(int expectedNumberOfElements, int fingerprintBits, HashStrategy hashStrategy,
+            Funnel<? super E> funnel) {
+        if (fingerprintBits < 4 || fingerprintBits > 16)
+            throw new IllegalArgumentException("fingerprintBits must be between 4 and 16: " + fingerprintBits);
+        if (hashStrategy == null)
+            throw new NullPointerException("hashStrategy");
+        long buckets = Math.max(1, (long) Math.ceil(expectedNumberOfElements / (BUCKET_SIZE * LOAD_FACTOR)));
+        if (buckets > 1 << 30)
+            throw new IllegalArgumentException("Too many elements: " + expectedNumberOfElements);
+        int power = Integer.highestOneBit((int) buckets);
+        this.bucketCount = power < buckets ? power << 1 : power;
+        this.fingerprintBits = fingerprintBits;
+        this.expectedNumberOfFilterElements = expectedNumberOfElements;
+        this.hashStrategy = hashStrategy;
+        this.funnel = funnel;
+        // one extra word, so a fingerprint crossing the last word boundary can always read two words
+        this.slots = new long[(int) (((long) bucketCount * BUCKET_SIZE * fingerprintBits + 63) >>> 6) + 1];
+    }
+
+    /**
+     * Constructs an empty cuckoo filter with a given false positive probability. The
+     * fingerprint size is log2(8 / p) rounded up, between 4 and 16 bits.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the filter.
+     * @param hashStrategy is the hash strategy used to select buckets and fingerprints.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     */
+    public CuckooFilter(double falsePositiveProbability, int expectedNumberOfElements, HashStrategy hashStrategy,
+            Funnel<? super E> funnel) {
+        this(expectedNumberOfElements,
+             (int) Math.max(4, Math.min(16, Math.ceil(Math.log(2 * BUCKET_SIZE / falsePositiveProbability) / Math.log(2)))),
+             hashStrategy,
+             funnel);
+    }
+
+    /**
+     * Constructs an empty cuckoo filter with a given false positive probability.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the filter.
+     * @param hashStrategy is the hash strategy used to select buckets and fingerprints.
+     */
+    public CuckooFilter(double falsePositiveProbability, int expectedNumberOfElements, HashStrategy hashStrategy) {
+        this(falsePositiveProbability, expectedNumberOfElements, hashStrategy, null);
+    }
+
+    /**
+     * Constructs an empty cuckoo filter with a given false positive probability, using
+     * {@link HashStrategies#MURMUR3_128}.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the filter.
+     */
+    public CuckooFilter(double falsePositiveProbability, int expectedNumberOfElements) {
+        this(falsePositiveProbability, expectedNumberOfElements, HashStrategies.MURMUR3_128);
+    }
+
+    /**
+     * Compares the contents of two instances to see if they are equal.
+     *
+     * @param obj is the object to compare to.
+     * @return True if the contents of the objects are equal.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == null) {
+            return false;
+        }
+        if (getClass() != obj.getClass()) {
+            return false;
+        }
+        final CuckooFilter<E> other = (CuckooFilter<E>) obj;
+        if (this.bucketCount != other.bucketCount) {
+            return false;
+        }
+        if (this.fingerprintBits != other.fingerprintBits) {
+            return false;
+        }
+        if (!this.hashStrategy.equals(other.hashStrategy)) {
+            return false;
+        }
+        if (this.hasVictim != other.hasVictim
+                || (hasVictim && (victimIndex != other.victimIndex || victimFingerprint != other.victimFingerprint))) {
+            return false;
+        }
+        return Arrays.equals(this.slots, other.slots);
+    }
+
+    /**
+     * Calculates a hash code for this class.
+     * @return hash code representing the contents of an instance of this class.
+     */
+    @Override
+    public int hashCode() {
+        int hash = 7;
+        hash = 61 * hash + Arrays.hashCode(this.slots);
+        hash = 61 * hash + this.bucketCount;
+        hash = 61 * hash + this.fingerprintBits;
+        hash = 61 * hash + this.hashStrategy.getId();
+        return hash;
+    }
+
+    /**
+     * Calculates the expected probability of false positives when the filter
+     * holds the expected number of elements.
+     *
+     * @return expected probability of false positives.
+     */
+    public double expectedFalsePositiveProbability() {
+        return getFalsePositiveProbability(expectedNumberOfFilterElements);
+    }
+
+    /**
+     * Calculate the probability of a false positive given the specified
+     * number of inserted elements. A lookup compares the fingerprint with the
+     * fingerprints in two buckets, on average 2 * n / buckets fingerprints, and
+     * each comparison matches with probability 1 / (2^f - 1).
+     *
+     * @param numberOfElements number of inserted elements.
+     * @return probability of a false positive.
+     */
+    public double getFalsePositiveProbability(double numberOfElements) {
+        double compared = Math.min(2.0 * BUCKET_SIZE, 2.0 * numberOfElements / bucketCount);
+        return 1 - Math.pow(1 - 1.0 / ((1 << fingerprintBits) - 1), compared);
+    }
+
+    /**
+     * Get the current probability of a false positive, calculated from the
+     * number of elements in the filter.
+     *
+     * @return probability of false positives.
+     */
+    public double getFalsePositiveProbability() {
+        return getFalsePositiveProbability(numberOfAddedElements);
+    }
+
+    /**
+     * Returns the hash strategy used to select buckets and fingerprints.
+     *
+     * @return hash strategy.
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Returns the funnel used to hash elements, or null if the output of
+     * toString() is hashed.
+     *
+     * @return funnel or null.
+     */
+    public Funnel<? super E> getFunnel() {
+        return funnel;
+    }
+
+    /**
+     * Removes all elements from the filter.
+     */
+    public void clear() {
+        Arrays.fill(slots, 0);
+        numberOfAddedElements = 0;
+        hasVictim = false;
+    }
+
+    /**
+     * Adds an object to the filter. If the filter was created with a
+     * {@link Funnel}, the bytes written by the funnel are used as input to the
+     * hash function. Otherwise the output from the object's toString() method
+     * is used.
+     *
+     * @param element is an element to register in the filter.
+     * @return true if the element was added, false if the filter is full.
+     */
+    public boolean add(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return addHashes(hash(buffer, sink.bytes, 0, sink.length));
+    }
+
+    private long[] hash(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(2);
+        hashStrategy.createHashes(bytes, offset, length, hashes, 2);
+        return hashes;
+    }
+
+    /**
+     * Adds an array of bytes to the filter.
+     *
+     * @param bytes array of bytes to add to the filter.
+     * @return true if the array was added, false if the filter is full.
+     */
+    public boolean add(byte[] bytes) {
+        return addHashes(hash(HashBuffer.get(), bytes, 0, bytes.length));
+    }
+
+    /**
+     * Adds a long to the filter. See {@link BloomFilter#addLong(long)}.
+     *
+     * @param value value to add to the filter.
+     * @return true if the value was added, false if the filter is full.
+     */
+    public boolean addLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        hashStrategy.createHashes(value, hashes, 2);
+        return addHashes(hashes);
+    }
+
+    /**
+     * Adds an int to the filter. See {@link BloomFilter#addInt(int)}.
+     *
+     * @param value value to add to the filter.
+     * @return true if the value was added, false if the filter is full.
+     */
+    public boolean addInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        hashStrategy.createHashes(value, hashes, 2);
+        return addHashes(hashes);
+    }
+
+    /**
+     * Adds a 128-bit value, such as a UUID, to the filter. See {@link BloomFilter#add(long, long)}.
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value was added, false if the filter is full.
+     */
+    public boolean add(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        hashStrategy.createHashes(first, second, hashes, 2);
+        return addHashes(hashes);
+    }
+
+    private boolean addHashes(long[] hashes) {
+        if (hasVictim)
+            return false;
+        place((int) hashes[0] & (bucketCount - 1), fingerprint(hashes[1]));
+        numberOfAddedElements ++;
+        return true;
+    }
+
+    /**
+     * Stores a fingerprint in one of its two buckets. If both are full,
+     * fingerprints are moved to their other bucket until one has room. If
+     * there is still no room after MAX_KICKS moves, the last fingerprint that
+     * was moved out becomes the victim, and the filter is full.
+     */
+    private void place(int index, int fingerprint) {
+        if (insert(index, fingerprint) || insert(alternateIndex(index, fingerprint), fingerprint))
+            return;
+
+        if ((nextRandom() & 1) != 0)
+            index = alternateIndex(index, fingerprint);
+        for (int kicks = 0; kicks < MAX_KICKS; kicks++) {
+            int slot = index * BUCKET_SIZE + (int) (nextRandom() & (BUCKET_SIZE - 1));
+            int evicted = getSlot(slot);
+            setSlot(slot, fingerprint);
+            fingerprint = evicted;
+            index = alternateIndex(index, fingerprint);
+            if (insert(index, fingerprint))
+                return;
+        }
+        hasVictim = true;
+        victimIndex = index;
+        victimFingerprint = fingerprint;
+    }
+
+    /**
+     * Adds all elements from a Collection to the filter.
+     * @param c Collection of elements.
+     * @return true if all the elements were added, false if the filter became full.
+     */
+    public boolean addAll(Collection<? extends E> c) {
+        for (E element : c)
+            if (!add(element))
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns true if the element could have been inserted into the filter,
+     * and has not been removed.
+     *
+     * @param element element to check.
+     * @return true if the element could have been inserted into the filter.
+     */
+    public boolean contains(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return containsHashes(hash(buffer, sink.bytes, 0, sink.length));
+    }
+
+    /**
+     * Returns true if the array of bytes could have been inserted into the filter.
+     *
+     * @param bytes array of bytes to check.
+     * @return true if the array could have been inserted into the filter.
+     */
+    public boolean contains(byte[] bytes) {
+        return containsHashes(hash(HashBuffer.get(), bytes, 0, bytes.length));
+    }
+
+    /**
+     * Returns true if the long could have been inserted into the filter
+     * with addLong(long).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the filter.
+     */
+    public boolean containsLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        hashStrategy.createHashes(value, hashes, 2);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the int could have been inserted into the filter
+     * with addInt(int).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the filter.
+     */
+    public boolean containsInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        hashStrategy.createHashes(value, hashes, 2);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the 128-bit value could have been inserted into the
+     * filter with add(long, long).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value could have been inserted into the filter.
+     */
+    public boolean contains(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        hashStrategy.createHashes(first, second, hashes, 2);
+        return containsHashes(hashes);
+    }
+
+    private boolean containsHashes(long[] hashes) {
+        int fingerprint = fingerprint(hashes[1]);
+        int index = (int) hashes[0] & (bucketCount - 1);
+        int alternate = alternateIndex(index, fingerprint);
+        if (hasVictim && victimFingerprint == fingerprint && (victimIndex == index || victimIndex == alternate))
+            return true;
+        return find(index, fingerprint) >= 0 || find(alternate, fingerprint) >= 0;
+    }
+
+    /**
+     * Returns true if all the elements of a Collection could have been inserted
+     * into the filter.
+     * @param c elements to check.
+     * @return true if all the elements in c could have been inserted into the filter.
+     */
+    public boolean containsAll(Collection<? extends E> c) {
+        for (E element : c)
+            if (!contains(element))
+                return false;
+        return true;
+    }
+
+    /**
+     * Removes an object from the filter. The object must have been added
+     * before; removing an object that was never added may remove another
+     * element with the same fingerprint.
+     *
+     * @param element element to remove.
+     * @return true if a fingerprint of the element was removed.
+     */
+    public boolean remove(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return removeHashes(hash(buffer, sink.bytes, 0, sink.length));
+    }
+
+    /**
+     * Removes an array of bytes from the filter. See remove(Object).
+     *
+     * @param bytes array of bytes to remove.
+     * @return true if a fingerprint of the array was removed.
+     */
+    public boolean remove(byte[] bytes) {
+        return removeHashes(hash(HashBuffer.get(), bytes, 0, bytes.length));
+    }
+
+    /**
+     * Removes a long added with addLong(long). See remove(Object).
+     *
+     * @param value value to remove.
+     * @return true if a fingerprint of the value was removed.
+     */
+    public boolean removeLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        hashStrategy.createHashes(value, hashes, 2);
+        return removeHashes(hashes);
+    }
+
+    /**
+     * Removes an int added with addInt(int). See remove(Object).
+     *
+     * @param value value to remove.
+     * @return true if a fingerprint of the value was removed.
+     */
+    public boolean removeInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        hashStrategy.createHashes(value, hashes, 2);
+        return removeHashes(hashes);
+    }
+
+    /**
+     * Removes a 128-bit value added with add(long, long). See remove(Object).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if a fingerprint of the value was removed.
+     */
+    public boolean remove(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(2);
+        hashStrategy.createHashes(first, second, hashes, 2);
+        return removeHashes(hashes);
+    }
+
+    private boolean removeHashes(long[] hashes) {
+        int fingerprint = fingerprint(hashes[1]);
+        int index = (int) hashes[0] & (bucketCount - 1);
+        int alternate = alternateIndex(index, fingerprint);
+        if (hasVictim && victimFingerprint == fingerprint && (victimIndex == index || victimIndex == alternate)) {
+            hasVictim = false;
+            numberOfAddedElements --;
+            return true;
+        }
+        int slot = find(index, fingerprint);
+        if (slot < 0)
+            slot = find(alternate, fingerprint);
+        if (slot < 0)
+            return false;
+        setSlot(slot, 0);
+        numberOfAddedElements --;
+
+        // there is room now, so try to store the victim again
+        if (hasVictim) {
+            hasVictim = false;
+            place(victimIndex, victimFingerprint);
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the filter is full. A full filter has failed to place a
+     * fingerprint, and add() returns false until an element is removed.
+     *
+     * @return true if the filter is full.
+     */
+    public boolean isFull() {
+        return hasVictim;
+    }
+
+    /**
+     * Returns the fingerprint of a hash value, between 1 and 2^f - 1. 0 marks an empty slot.
+     */
+    private int fingerprint(long hash) {
+        int fingerprint = (int) (hash & ((1 << fingerprintBits) - 1));
+        return fingerprint == 0 ? 1 : fingerprint;
+    }
+
+    /**
+     * Returns the other bucket of a fingerprint. Applying this twice gives the
+     * original bucket, so a fingerprint can be moved without knowing its element.
+     */
+    private int alternateIndex(int index, int fingerprint) {
+        return (index ^ (int) Murmur3.fmix64(fingerprint)) & (bucketCount - 1);
+    }
+
+    /**
+     * Stores a fingerprint in an empty slot of a bucket.
+     *
+     * @return true if the bucket had an empty slot.
+     */
+    private boolean insert(int index, int fingerprint) {
+        int slot = index * BUCKET_SIZE;
+        for (int i = 0; i < BUCKET_SIZE; i++, slot++) {
+            if (getSlot(slot) == 0) {
+                setSlot(slot, fingerprint);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the slot holding a fingerprint in a bucket, or -1.
+     */
+    private int find(int index, int fingerprint) {
+        int slot = index * BUCKET_SIZE;
+        for (int i = 0; i < BUCKET_SIZE; i++, slot++)
+            if (getSlot(slot) == fingerprint)
+                return slot;
+        return -1;
+    }
+
+    private int getSlot(int slot) {
+        long bit = (long) slot * fingerprintBits;
+        int word = (int) (bit >>> 6);
+        int shift = (int) bit & 63;
+        long value = slots[word] >>> shift;
+        if (shift + fingerprintBits > 64)
+            value |= slots[word + 1] << (64 - shift);
+        return (int) value & ((1 << fingerprintBits) - 1);
+    }
+
+    private void setSlot(int slot, int fingerprint) {
+        long bit = (long) slot * fingerprintBits;
+        int word = (int) (bit >>> 6);
+        int shift = (int) bit & 63;
+        long mask = (1L << fingerprintBits) - 1;
+        slots[word] = (slots[word] & ~(mask << shift)) | ((long) fingerprint << shift);
+        if (shift + fingerprintBits > 64) {
+            int high = 64 - shift; // number of bits stored in the first word
+            slots[word + 1] = (slots[word + 1] & ~(mask >>> high)) | ((long) fingerprint >>> high);
+        }
+    }
+
+    private long nextRandom() {
+        random ^= random << 13;
+        random ^= random >>> 7;
+        random ^= random << 17;
+        return random;
+    }
+
+    /**
+     * Returns the number of fingerprint bits in the filter. The filter uses
+     * size() / 8 bytes.
+     *
+     * @return the number of bits used by the filter.
+     */
+    public long size() {
+        return (long) bucketCount * BUCKET_SIZE * fingerprintBits;
+    }
+
+    /**
+     * Returns the number of buckets in the filter, always a power of two.
+     *
+     * @return number of buckets.
+     */
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * Returns the number of bits in a fingerprint.
+     *
+     * @return fingerprint size in bits.
+     */
+    public int getFingerprintBits() {
+        return fingerprintBits;
+    }
+
+    /**
+     * Returns the number of elements in the filter: the number added and not
+     * removed, after it was constructed or after clear() was called.
+     *
+     * @return number of elements in the filter.
+     */
+    public int count() {
+        return this.numberOfAddedElements;
+    }
+
+    /**
+     * Returns the expected number of elements to be inserted into the filter.
+     * This value is the same value as the one passed to the constructor.
+     *
+     * @return expected number of elements.
+     */
+    public int getExpectedNumberOfElements() {
+        return expectedNumberOfFilterElements;
+    }
+}
@@ -0,0 +1,494 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Compressed encodings of the words of a Bloom filter, used by
+ * writeCompressedTo() and understood by every readFrom().
+ * <br /><br />
+ * A compressed payload is a sequence of little-endian 64-bit words. The first
+ * word is the number of words that follow, so a reader never reads past the
+ * end of the filter. The rest depends on the encoding:
+ * <ul>
+ * <li>Run-length: groups of one word holding the number of zero words in
+ * its upper 32 bits and the number of literal words in its lower 32 bits,
+ * followed by the literal words. Zero words are skipped when decoding, so
+ * filters where most words are empty decode at the speed of a memory copy.</li>
+ * <li>Golomb: the number of bits set, the Rice parameter b, and a bit stream
+ * holding the distance from one set bit to the next, minus one. Each distance
+ * d is written as d &gt;&gt; b zero bits, a one bit, and the low b bits of d,
+ * starting from the least significant bit of the first word. The bits of a
+ * Bloom filter are spread at random, so this is close to the smallest
+ * possible encoding of a sparse filter: about log2(m / n) + 2 bits for each
+ * bit set.</li>
+ * </ul>
+ * The encoding is chosen by comparing the exact sizes. For a Bloom filter the
+ * outcome depends on the fill ratio: below about 20% of the bits set Golomb
+ * coding is smallest, above that the raw words are written.
+ */
+final class FilterCompression {
+    static final long MAX_RUN = 0xFFFFFFFFL; // longest run in one run-length group
+
+    private FilterCompression() {
+    }
+
+    /**
+     * The encoding chosen for a filter, and what is needed to write it.
+     */
+    static final class Plan {
+        int encoding;
+        long words; // number of payload words after the length word
+        int riceBits; // Golomb parameter b
+        long setBits; // number of bits set
+        long golombBits; // length of the Golomb bit stream
+    }
+
+    /**
+     * Chooses the encoding giving the smallest output.
+     *
+     * @param storage words of the filter.
+     * @return the plan.
+     * @throws IOException never, the sizes are only counted.
+     */
+    static Plan plan(BitStorage storage) throws IOException {
+        Plan plan = new Plan();
+        plan.encoding = FilterHeader.ENCODING_RAW;
+        plan.words = storage.wordCount();
+        long best = plan.words;
+
+        long runWords = runs(storage, null);
+        if (runWords + 1 < best) {
+            best = runWords + 1;
+            plan.encoding = FilterHeader.ENCODING_RUNS;
+            plan.words = runWords;
+        }
+
+        long setBits = WordOps.bitCount(storage);
+        int b = riceBits(storage.size(), setBits);
+        // each bit set needs at least b + 1 bits, skip the exact count if that is already too much
+        if (setBits * (b + 1) / 64 + 3 < best) {
+            long golombBits = golomb(storage, b, null);
+            long golombWords = 2 + ((golombBits + 63) >>> 6);
+            if (golombWords + 1 < best && golombWords < Integer.MAX_VALUE - 8) {
+                plan.encoding = FilterHeader.ENCODING_GOLOMB;
+                plan.words = golombWords;
+                plan.riceBits = b;
+                plan.setBits = setBits;
+                plan.golombBits = golombBits;
+            }
+        }
+        return plan;
+    }
+
+    /**
+     * Writes the payload of a plan, after the length word.
+     *
+     * @param plan plan returned by plan().
+     * @param storage words of the filter.
+     * @param out writer receiving the payload.
+     * @throws IOException if writing fails.
+     */
+    static void write(Plan plan, BitStorage storage, final FilterIO.WordWriter out) throws IOException {
+        if (plan.encoding == FilterHeader.ENCODING_RUNS) {
+            runs(storage, out);
+        } else {
+            out.put(plan.setBits);
+            out.put(plan.riceBits);
+            BitWriter bits = new BitWriter() {
+                void emit(long word) throws IOException {
+                    out.put(word);
+                }
+            };
+            golomb(storage, plan.riceBits, bits);
+            bits.finish();
+        }
+    }
+
+    /**
+     * Returns the Rice parameter for a Golomb code of the distances between
+     * set bits: log2 of the average distance times ln(2), rounded down.
+     *
+     * @param size number of bits.
+     * @param setBits number of bits set.
+     * @return Rice parameter b, between 0 and 62.
+     */
+    static int riceBits(long size, long setBits) {
+        long mean = (long) (size / (double) Math.max(1, setBits) * Math.log(2));
+        return Math.min(62, Math.max(0, 63 - Long.numberOfLeadingZeros(mean)));
+    }
+
+    /**
+     * Run-length encodes the words of a filter.
+     *
+     * @param storage words of the filter.
+     * @param out writer receiving the groups, or null to only count the words.
+     * @return number of words written.
+     * @throws IOException if writing fails.
+     */
+    private static long runs(BitStorage storage, FilterIO.WordWriter out) throws IOException {
+        long wordCount = storage.wordCount();
+        long written = 0;
+        for (long i = 0; i < wordCount; ) {
+            long zeros = 0;
+            while (i + zeros < wordCount && zeros < MAX_RUN && storage.getWord(i + zeros) == 0)
+                zeros++;
+            i += zeros;
+            long literals = 0;
+            while (i + literals < wordCount && literals < MAX_RUN && storage.getWord(i + literals) != 0)
+                literals++;
+            written += 1 + literals;
+            if (out != null) {
+                out.put(zeros << 32 | literals);
+                for (long j = 0; j < literals; j++)
+                    out.put(storage.getWord(i + j));
+            }
+            i += literals;
+        }
+        return written;
+    }
+
+    /**
+     * Golomb-Rice codes the distances between the set bits of a filter.
+     *
+     * @param storage words of the filter.
+     * @param b Rice parameter.
+     * @param out writer receiving the bit stream, or null to only count the bits.
+     * @return number of bits written.
+     * @throws IOException if writing fails.
+     */
+    static long golomb(BitStorage storage, int b, BitWriter out) throws IOException {
+        long bits = 0;
+        long previous = -1;
+        for (long i = 0, n = storage.wordCount(); i < n; i++) {
+            long word = storage.getWord(i);
+            while (word != 0) {
+                long position = (i << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                long distance = position - previous - 1;
+                previous = position;
+                bits += (distance >>> b) + 1 + b;
+                if (out != null) {
+                    out.unary(distance >>> b);
+                    out.bits(distance, b);
+                }
+            }
+        }
+        return bits;
+    }
+
+    /**
+     * Reads a compressed payload into storage.
+     *
+     * @param header the header that was read. header.encoding must not be raw.
+     * @param in channel positioned after the header.
+     * @param storage storage receiving the words. Must hold header.wordCount() words, all 0.
+     * @throws IOException if reading fails or the data is corrupt.
+     */
+    static void read(FilterHeader header, ReadableByteChannel in, BitStorage storage) throws IOException {
+        if (header.encoding == FilterHeader.ENCODING_GOLOMB) {
+            GolombData data = readGolomb(header, in);
+            GolombReader reader = new GolombReader(data.words, data.riceBits, 0);
+            long position = -1;
+            long index = -1;
+            long word = 0;
+            for (long i = 0; i < data.setBits; i++) {
+                position += reader.next() + 1;
+                if (position >= header.bits)
+                    throw new IOException("Corrupt Bloom filter data: bit " + position + " out of range");
+                if (position >>> 6 != index) {
+                    if (index >= 0)
+                        storage.setWord(index, word);
+                    index = position >>> 6;
+                    word = 0;
+                }
+                word |= 1L << position;
+            }
+            if (index >= 0)
+                storage.setWord(index, word);
+        } else {
+            long wordCount = header.wordCount();
+            FilterIO.WordReader reader = new FilterIO.WordReader(in, readLength(in));
+            for (long i = 0; i < wordCount; ) {
+                long group = reader.next();
+                long zeros = group >>> 32;
+                long literals = group & MAX_RUN;
+                if (zeros + literals == 0 || i + zeros + literals > wordCount)
+                    throw new IOException("Corrupt Bloom filter data: run past the end of the filter");
+                i += zeros;
+                for (long end = i + literals; i < end; i++)
+                    storage.setWord(i, reader.next());
+            }
+        }
+    }
+
+    /**
+     * The Golomb payload of a filter, still encoded.
+     */
+    static final class GolombData {
+        long setBits;
+        int riceBits;
+        long[] words;
+    }
+
+    /**
+     * Reads a Golomb payload without decoding it.
+     *
+     * @param header the header that was read. header.encoding must be Golomb.
+     * @param in channel positioned after the header.
+     * @return the payload.
+     * @throws IOException if reading fails or the data is corrupt.
+     */
+    static GolombData readGolomb(FilterHeader header, ReadableByteChannel in) throws IOException {
+        long length = readLength(in);
+        if (length < 2 || length - 2 > Integer.MAX_VALUE - 8)
+            throw new IOException("Corrupt Bloom filter data: length " + length);
+        FilterIO.WordReader reader = new FilterIO.WordReader(in, length);
+        GolombData data = new GolombData();
+        data.setBits = reader.next();
+        long b = reader.next();
+        data.words = new long[(int) (length - 2)];
+        for (int i = 0; i < data.words.length; i++)
+            data.words[i] = reader.next();
+        if (data.setBits < 0 || data.setBits > header.bits || b < 0 || b > 62
+                || (data.setBits * (b + 1) + 63) >>> 6 > data.words.length)
+            throw new IOException("Corrupt Bloom filter data: " + data.setBits + " bits set, b=" + b);
+        data.riceBits = (int) b;
+        return data;
+    }
+
+    private static long readLength(ReadableByteChannel in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+        FilterIO.readFully(in, buffer);
+        buffer.flip();
+        long length = buffer.getLong();
+        if (length < 0)
+            throw new IOException("Corrupt Bloom filter data: length " + length);
+        return length;
+    }
+
+    /**
+     * Writes a bit stream a word at a time, starting from the least
+     * significant bit of each word.
+     */
+    abstract static class BitWriter {
+        private long word; // bits not yet emitted
+        private int used; // number of bits used in word
+
+        /**
+         * Receives a full word of the stream.
+         *
+         * @param word the next word.
+         * @throws IOException if writing fails.
+         */
+        abstract void emit(long word) throws IOException;
+
+        /**
+         * Writes q zero bits followed by a one bit.
+         */
+        void unary(long q) throws IOException {
+            while (q >= 64 - used) {
+                q -= 64 - used;
+                emit(word);
+                word = 0;
+                used = 0;
+            }
+            used += (int) q;
+            word |= 1L << used;
+            used++;
+            if (used == 64) {
+                emit(word);
+                word = 0;
+                used = 0;
+            }
+        }
+
+        /**
+         * Writes the low n bits of a value, n &lt; 64.
+         */
+        void bits(long value, int n) throws IOException {
+            if (n == 0)
+                return;
+            value &= (1L << n) - 1;
+            word |= value << used;
+            if (used + n >= 64) {
+                int spill = used + n - 64;
+                emit(word);
+                word = spill == 0 ? 0 : value >>> (n - spill);
+                used = spill;
+            } else {
+                used += n;
+            }
+        }
+
+        /**
+         * Emits the last, partly used word.
+         */
+        void finish() throws IOException {
+            if (used > 0)
+                emit(word);
+            word = 0;
+            used = 0;
+        }
+    }
+
+    /**
+     * Writes a Golomb payload that is already encoded, after a header.
+     *
+     * @param header header to write. The encoding is set to Golomb.
+     * @param data the payload.
+     * @param out channel to write to.
+     * @throws IOException if writing fails.
+     */
+    static void writeGolomb(FilterHeader header, GolombData data, WritableByteChannel out) throws IOException {
+        header.encoding = FilterHeader.ENCODING_GOLOMB;
+        FilterIO.WordWriter writer = new FilterIO.WordWriter(out, data.words.length + 3);
+        header.write(writer.buffer);
+        writer.put(data.words.length + 2);
+        writer.put(data.setBits);
+        writer.put(data.riceBits);
+        for (long word : data.words)
+            writer.put(word);
+        writer.flush();
+    }
+
+    /**
+     * Golomb codes the words of a filter into an array.
+     *
+     * @param storage words of the filter.
+     * @return the encoded filter.
+     */
+    static GolombData encodeGolomb(BitStorage storage) {
+        long setBits = WordOps.bitCount(storage);
+        final GolombData data = new GolombData();
+        data.setBits = setBits;
+        data.riceBits = riceBits(storage.size(), setBits);
+        try {
+            long bits = golomb(storage, data.riceBits, null);
+            if ((bits + 63) >>> 6 > Integer.MAX_VALUE - 8)
+                throw new IllegalArgumentException("Filter is too large to be Golomb coded in memory");
+            data.words = new long[(int) ((bits + 63) >>> 6)];
+            BitWriter writer = new BitWriter() {
+                private int index;
+
+                void emit(long word) {
+                    data.words[index++] = word;
+                }
+            };
+            golomb(storage, data.riceBits, writer);
+            writer.finish();
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // not thrown when writing to an array
+        }
+        return data;
+    }
+
+    /**
+     * Counts the zero bits of a bit stream, starting at a position and ending
+     * at the next one bit.
+     *
+     * @param words the bit stream.
+     * @param position bit to start at.
+     * @return number of zero bits, or -1 if the stream ends before a one bit.
+     */
+    static long zeros(long[] words, long position) {
+        int index = (int) (position >>> 6);
+        if (index >= words.length)
+            return -1;
+        long bits = words[index] >>> position;
+        if (bits != 0)
+            return Long.numberOfTrailingZeros(bits);
+        long zeros = 64 - (position & 63);
+        while (++index < words.length) {
+            if (words[index] != 0)
+                return zeros + Long.numberOfTrailingZeros(words[index]);
+            zeros += 64;
+        }
+        return -1;
+    }
+
+    /**
+     * Reads n bits of a bit stream.
+     *
+     * @param words the bit stream.
+     * @param position first bit to read.
+     * @param n number of bits, at most 62.
+     * @return the bits, or -1 if the stream ends.
+     */
+    static long bits(long[] words, long position, int n) {
+        if (n == 0)
+            return 0;
+        int index = (int) (position >>> 6);
+        int offset = (int) (position & 63);
+        if (index >= words.length || (offset + n > 64 && index + 1 >= words.length))
+            return -1;
+        long value = words[index] >>> offset;
+        if (offset + n > 64)
+            value |= words[index + 1] << (64 - offset);
+        return value & ((1L << n) - 1);
+    }
+
+    /**
+     * Reads the distances of a Golomb bit stream held in an array.
+     */
+    static final class GolombReader {
+        private final long[] words;
+        private final int b;
+        private long position; // next bit to read
+
+        /**
+         * @param words the bit stream.
+         * @param b Rice parameter.
+         * @param position bit to start reading from.
+         */
+        GolombReader(long[] words, int b, long position) {
+            this.words = words;
+            this.b = b;
+            this.position = position;
+        }
+
+        /**
+         * Returns the position of the next bit to read.
+         */
+        long position() {
+            return position;
+        }
+
+        /**
+         * Reads the next distance.
+         *
+         * @return distance to the next set bit, minus one.
+         * @throws IOException if the stream ends.
+         */
+        long next() throws IOException {
+            long q = zeros(words, position);
+            if (q < 0)
+                throw new IOException("Corrupt Bloom filter data: Golomb stream ends early");
+            position += q + 1;
+            long low = bits(words, position, b);
+            if (low < 0)
+                throw new IOException("Corrupt Bloom filter data: Golomb stream ends early");
+            position += b;
+            return q << b | low;
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * The pages of a Bloom filter that changed between two versions, created by
+ * exportDelta() and merged into a replica of the filter with applyDelta().
+ * <br /><br />
+ * Deltas are merged with OR, so applying a delta twice, or applying several
+ * deltas in any order, gives the same result as applying each once in order.
+ * <br /><br />
+ * The binary format starts with a 64-byte header, in little-endian order:
+ * <pre>
+ * offset  size  field
+ *      0     4  magic, the bytes "BLMD"
+ *      4     4  format version, 1
+ *      8     4  hash strategy id
+ *     12     4  k, number of hash functions
+ *     16     8  m, number of bits
+ *     24     8  version the delta starts from
+ *     32     8  version the delta brings a replica up to
+ *     40     8  count, number of added elements at the end version
+ *     48     8  number of pages
+ *     56     4  index reduction id, see IndexReduction.getId()
+ *     60     4  reserved, 0
+ * </pre>
+ * followed by each page: its index as a little-endian long and its 16 words.
+ */
+public final class FilterDelta implements Serializable {
+    static final int MAGIC = 0x444d4c42; // "BLMD" read as a little-endian int
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+
+    private final int hashStrategyId;
+    private final int indexReductionId;
+    private final int k;
+    private final long bits;
+    private final long fromVersion;
+    private final long toVersion;
+    private final long count;
+    private final int[] pages; // indices of the changed pages
+    private final long[] words; // ChangeTracker.PAGE_WORDS words for each page
+
+    FilterDelta(int hashStrategyId, int indexReductionId, int k, long bits, long fromVersion, long toVersion,
+            long count, int[] pages, long[] words) {
+        this.hashStrategyId = hashStrategyId;
+        this.indexReductionId = indexReductionId;
+        this.k = k;
+        this.bits = bits;
+        this.fromVersion = fromVersion;
+        this.toVersion = toVersion;
+        this.count = count;
+        this.pages = pages;
+        this.words = words;
+    }
+
+    /**
+     * Returns the version the delta starts from, as passed to exportDelta().
+     *
+     * @return start version.
+     */
+    public long getFromVersion() {
+        return fromVersion;
+    }
+
+    /**
+     * Returns the version a replica is at after applying the delta. Pass it
+     * to the next call of exportDelta().
+     *
+     * @return end version.
+     */
+    public long getToVersion() {
+        return toVersion;
+    }
+
+    /**
+     * Returns the number of elements added to the filter at the end version.
+     *
+     * @return number of added elements.
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of changed pages in the delta. Each page holds 1024 bits.
+     *
+     * @return number of pages.
+     */
+    public int getNumberOfPages() {
+        return pages.length;
+    }
+
+    /**
+     * Returns the number of bytes written by writeTo().
+     *
+     * @return size of the delta in bytes.
+     */
+    public long getSerializedSize() {
+        return HEADER_SIZE + (long) pages.length * (8 + 8 * ChangeTracker.PAGE_WORDS);
+    }
+
+    int page(int i) {
+        return pages[i];
+    }
+
+    long word(int page, int word) {
+        return words[page * ChangeTracker.PAGE_WORDS + word];
+    }
+
+    /**
+     * Returns the words of all pages, ChangeTracker.PAGE_WORDS for each page,
+     * for bulk operations.
+     */
+    long[] words() {
+        return words;
+    }
+
+    /**
+     * Checks that the delta was exported from a filter with the given parameters.
+     *
+     * @throws IllegalArgumentException if the filters are not compatible.
+     */
+    void checkCompatible(long bits, int k, HashStrategy hashStrategy, IndexReduction indexReduction) {
+        if (this.bits != bits)
+            throw new IllegalArgumentException("Delta is for a filter of " + this.bits + " bits, not " + bits);
+        if (this.k != k)
+            throw new IllegalArgumentException("Delta is for a filter with k=" + this.k + ", not " + k);
+        if (hashStrategyId != hashStrategy.getId())
+            throw new IllegalArgumentException("Delta is for hash strategy id " + hashStrategyId
+                    + ", not " + hashStrategy.getId());
+        if (indexReductionId != indexReduction.getId())
+            throw new IllegalArgumentException("Delta is for index reduction id " + indexReductionId
+                    + ", not " + indexReduction.getId());
+    }
+
+    /**
+     * Writes the delta to a stream. The stream is not closed.
+     *
+     * @param out stream to write to.
+     * @throws IOException if writing fails.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(Channels.newChannel(out));
+    }
+
+    /**
+     * Writes the delta to a channel. The channel is not closed.
+     *
+     * @param out channel to write to.
+     * @throws IOException if writing fails.
+     */
+    public void writeTo(WritableByteChannel out) throws IOException {
+        FilterIO.WordWriter writer = new FilterIO.WordWriter(out, (getSerializedSize() >>> 3));
+        ByteBuffer header = writer.buffer;
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(hashStrategyId);
+        header.putInt(k);
+        header.putLong(bits);
+        header.putLong(fromVersion);
+        header.putLong(toVersion);
+        header.putLong(count);
+        header.putLong(pages.length);
+        header.putInt(indexReductionId);
+        header.putInt(0);
+        for (int i = 0; i < pages.length; i++) {
+            writer.put(pages[i]);
+            for (int j = 0; j < ChangeTracker.PAGE_WORDS; j++)
+                writer.put(words[i * ChangeTracker.PAGE_WORDS + j]);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Reads a delta written by writeTo(). The stream is not closed.
+     *
+     * @param in stream to read from.
+     * @return the delta.
+     * @throws IOException if reading fails, or the data is not a delta.
+     */
+    public static FilterDelta readFrom(InputStream in) throws IOException {
+        return readFrom(Channels.newChannel(in));
+    }
+
+    /**
+     * Reads a delta written by writeTo(). The channel is not closed.
+     *
+     * @param in channel to read from.
+     * @return the delta.
+     * @throws IOException if reading fails, or the data is not a delta.
+     */
+    public static FilterDelta readFrom(ReadableByteChannel in) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            FilterIO.readFully(in, header);
+        } catch (EOFException e) {
+            throw new IOException("Not a Bloom filter delta");
+        }
+        header.flip();
+        if (header.getInt() != MAGIC)
+            throw new IOException("Not a Bloom filter delta");
+        int version = header.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported delta version: " + version);
+        int hashStrategyId = header.getInt();
+        int k = header.getInt();
+        long bits = header.getLong();
+        long fromVersion = header.getLong();
+        long toVersion = header.getLong();
+        long count = header.getLong();
+        long pageCount = header.getLong();
+        int indexReductionId = header.getInt();
+        long maxPages = (bits + (1L << ChangeTracker.PAGE_SHIFT) - 1) >>> ChangeTracker.PAGE_SHIFT;
+        if (k <= 0 || bits <= 0 || pageCount < 0 || pageCount > maxPages
+                || pageCount * ChangeTracker.PAGE_WORDS > Integer.MAX_VALUE - 8)
+            throw new IOException("Corrupt delta header: k=" + k + ", m=" + bits + ", pages=" + pageCount);
+
+        int[] pages = new int[(int) pageCount];
+        long[] words = new long[pages.length * ChangeTracker.PAGE_WORDS];
+        FilterIO.WordReader reader = new FilterIO.WordReader(in, pageCount * (1 + ChangeTracker.PAGE_WORDS));
+        for (int i = 0; i < pages.length; i++) {
+            long page = reader.next();
+            if (page < 0 || page >= maxPages)
+                throw new IOException("Corrupt delta: page " + page + " out of range");
+            pages[i] = (int) page;
+            for (int j = 0; j < ChangeTracker.PAGE_WORDS; j++)
+                words[i * ChangeTracker.PAGE_WORDS + j] = reader.next();
+        }
+        return new FilterDelta(hashStrategyId, indexReductionId, k, bits, fromVersion, toVersion, count, pages, words);
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The fixed-size header written in front of the bits of a stored Bloom filter.
+ * <br /><br />
+ * The header is 64 bytes, in little-endian order:
+ * <pre>
+ * offset  size  field
+ *      0     4  magic, the bytes "BLMF"
+ *      4     4  format version, see below
+ *      8     4  filter type, 0 for a standard Bloom filter, 1 for a binary fuse filter
+ *     12     4  hash strategy id, see HashStrategy.getId()
+ *     16     4  k, number of hash functions, 1 to 1024
+ *     20     4  type-specific parameter, the index reduction id for Bloom filters
+ *     24     8  m, number of bits
+ *     32     8  n, expected number of elements
+ *     40     8  count, number of added elements
+ *     48     8  type-specific seed, 0 for Bloom filters
+ *     56     4  encoding of the words, 0 in version 1
+ *     60     4  reserved, 0
+ * </pre>
+ * With the raw encoding, the header is followed by the ceil(m / 64) words of
+ * the filter, each in little-endian order, so the words start at a 64-byte
+ * boundary and can be memory-mapped directly. The same layout is used for
+ * streams and files, see {@link FilterIO}. Raw filters are written as
+ * version 1, so they can be read by earlier versions of the library.
+ * <br /><br />
+ * Compressed filters are written as version 2 and may use the run-length or
+ * the Golomb encoding described in {@link FilterCompression}. Bloom filters
+ * using an {@link IndexReduction} other than MODULO are written as version 3,
+ * so earlier versions, which always use MODULO, refuse to read them.
+ */
+final class FilterHeader {
+    static final int SIZE = 64;
+    static final int MAGIC = 0x464d4c42; // "BLMF" read as a little-endian int
+    static final int VERSION = 1;
+    static final int VERSION_ENCODED = 2;
+    static final int VERSION_INDEX_REDUCTION = 3;
+    static final int TYPE_BLOOM = 0;
+    static final int TYPE_BINARY_FUSE = 1;
+    static final int COUNT_OFFSET = 40;
+    static final int MAX_K = 1024; // far beyond any useful k, a larger k is a corrupt header
+    static final int ENCODING_RAW = 0; // the words as they are
+    static final int ENCODING_RUNS = 1; // runs of zero words and literal words
+    static final int ENCODING_GOLOMB = 2; // Golomb-Rice coded distances between set bits
+
+    int type = TYPE_BLOOM;
+    int hashStrategyId;
+    int k;
+    long bits;
+    long expectedElements;
+    long count;
+    int parameter;
+    long seed;
+    int encoding = ENCODING_RAW;
+
+    /**
+     * Returns the number of 64-bit words that follow the header.
+     *
+     * @return number of words.
+     */
+    long wordCount() {
+        return (bits + 63) >>> 6;
+    }
+
+    /**
+     * Returns the hash strategy of the filter.
+     *
+     * @return the hash strategy.
+     * @throws IOException if the hash strategy id is unknown.
+     */
+    HashStrategies hashStrategy() throws IOException {
+        try {
+            return HashStrategies.forId(hashStrategyId);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt header: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the index reduction of a Bloom filter.
+     *
+     * @return the index reduction.
+     * @throws IOException if the reduction is unknown or can not be used with the filter.
+     */
+    IndexReduction indexReduction() throws IOException {
+        try {
+            IndexReduction reduction = IndexReduction.forId(parameter);
+            IndexReduction.check(reduction, bits, hashStrategy());
+            return reduction;
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt header: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes the header at the current position of a buffer.
+     *
+     * @param buffer buffer with at least SIZE bytes remaining.
+     */
+    void write(ByteBuffer buffer) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(type == TYPE_BLOOM && parameter != IndexReduction.MODULO.getId() ? VERSION_INDEX_REDUCTION
+                : encoding == ENCODING_RAW ? VERSION : VERSION_ENCODED);
+        buffer.putInt(type);
+        buffer.putInt(hashStrategyId);
+        buffer.putInt(k);
+        buffer.putInt(parameter);
+        buffer.putLong(bits);
+        buffer.putLong(expectedElements);
+        buffer.putLong(count);
+        buffer.putLong(seed);
+        buffer.putInt(encoding);
+        buffer.putInt(0);
+        buffer.order(order);
+    }
+
+    /**
+     * Reads a header from the current position of a buffer.
+     *
+     * @param buffer buffer with at least SIZE bytes remaining.
+     * @return the header.
+     * @throws IOException if the buffer does not contain a valid header.
+     */
+    static FilterHeader read(ByteBuffer buffer) throws IOException {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC)
+                throw new IOException("Not a Bloom filter");
+            int version = buffer.getInt();
+            if (version < VERSION || version > VERSION_INDEX_REDUCTION)
+                throw new IOException("Unsupported format version: " + version);
+            FilterHeader header = new FilterHeader();
+            header.type = buffer.getInt();
+            header.hashStrategyId = buffer.getInt();
+            header.k = buffer.getInt();
+            header.parameter = buffer.getInt();
+            header.bits = buffer.getLong();
+            header.expectedElements = buffer.getLong();
+            header.count = buffer.getLong();
+            header.seed = buffer.getLong();
+            int encoding = buffer.getInt();
+            buffer.getInt();
+            header.encoding = version == VERSION ? ENCODING_RAW : encoding;
+            if (header.k <= 0 || header.k > MAX_K || header.bits <= 0)
+                throw new IOException("Corrupt header: k=" + header.k + ", m=" + header.bits);
+            if (header.encoding < ENCODING_RAW || header.encoding > ENCODING_GOLOMB)
+                throw new IOException("Unsupported encoding: " + header.encoding);
+            return header;
+        } finally {
+            buffer.order(order);
+        }
+    }
+}
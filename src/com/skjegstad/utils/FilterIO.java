@@ -0,0 +1,248 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Streams Bloom filters in the binary format described in {@link FilterHeader}.
+ * The words are copied through a 1 MB buffer, so reading and writing is
+ * limited by the speed of the channel rather than by the number of calls.
+ * Compressed words are encoded and decoded by {@link FilterCompression}.
+ */
+final class FilterIO {
+    static final int BUFFER_SIZE = 1 << 20;
+
+    private FilterIO() {
+    }
+
+    /**
+     * Writes a header followed by the words of a filter.
+     *
+     * @param header header to write. header.wordCount() words are written.
+     * @param words words of the filter. Missing words at the end are written as 0.
+     * @param out channel to write to.
+     * @throws IOException if writing fails.
+     */
+    static void write(FilterHeader header, long[] words, WritableByteChannel out) throws IOException {
+        ByteBuffer buffer = buffer(header.wordCount());
+        header.write(buffer);
+        long wordCount = header.wordCount();
+        for (long i = 0; i < wordCount; i++) {
+            if (!buffer.hasRemaining())
+                flush(buffer, out);
+            buffer.putLong(i < words.length ? words[(int) i] : 0);
+        }
+        flush(buffer, out);
+    }
+
+    /**
+     * Writes a header followed by the words of a filter.
+     *
+     * @param header header to write. header.wordCount() words are written.
+     * @param storage storage holding the words of the filter.
+     * @param out channel to write to.
+     * @throws IOException if writing fails.
+     */
+    static void write(FilterHeader header, BitStorage storage, WritableByteChannel out) throws IOException {
+        ByteBuffer buffer = buffer(header.wordCount());
+        header.write(buffer);
+        long wordCount = header.wordCount();
+        for (long i = 0; i < wordCount; i++) {
+            if (!buffer.hasRemaining())
+                flush(buffer, out);
+            buffer.putLong(storage.getWord(i));
+        }
+        flush(buffer, out);
+    }
+
+    /**
+     * Writes a header followed by the words of a filter, in the encoding that
+     * gives the smallest output. Sets header.encoding to the encoding used.
+     *
+     * @param header header to write. header.wordCount() words are written.
+     * @param storage storage holding the words of the filter.
+     * @param out channel to write to.
+     * @throws IOException if writing fails.
+     */
+    static void writeCompressed(FilterHeader header, BitStorage storage, WritableByteChannel out) throws IOException {
+        FilterCompression.Plan plan = FilterCompression.plan(storage);
+        header.encoding = plan.encoding;
+        if (plan.encoding == FilterHeader.ENCODING_RAW) {
+            write(header, storage, out);
+            return;
+        }
+        WordWriter writer = new WordWriter(out, plan.words + 1);
+        header.write(writer.buffer);
+        writer.put(plan.words);
+        FilterCompression.write(plan, storage, writer);
+        writer.flush();
+    }
+
+    /**
+     * Reads a header.
+     *
+     * @param in channel to read from.
+     * @return the header.
+     * @throws IOException if reading fails, or the data is not a Bloom filter.
+     */
+    static FilterHeader readHeader(ReadableByteChannel in) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(FilterHeader.SIZE);
+        readFully(in, buffer);
+        buffer.flip();
+        return FilterHeader.read(buffer);
+    }
+
+    /**
+     * Reads the words following a header into an array.
+     *
+     * @param header the header that was read.
+     * @param in channel to read from.
+     * @return the words.
+     * @throws IOException if reading fails.
+     */
+    static long[] readWords(FilterHeader header, ReadableByteChannel in) throws IOException {
+        if (header.wordCount() > Integer.MAX_VALUE - 8)
+            throw new IOException("Filter is too large: " + header.bits + " bits");
+        long[] words = new long[(int) header.wordCount()];
+        if (header.encoding != FilterHeader.ENCODING_RAW) {
+            FilterCompression.read(header, in, new HeapBitStorage(words, header.bits));
+            return words;
+        }
+        ByteBuffer buffer = buffer(words.length);
+        for (int i = 0; i < words.length; ) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), (long) (words.length - i) << 3));
+            readFully(in, buffer);
+            buffer.flip();
+            LongBuffer longs = buffer.asLongBuffer();
+            int n = longs.remaining();
+            longs.get(words, i, n);
+            i += n;
+        }
+        return words;
+    }
+
+    /**
+     * Reads the words following a header into storage.
+     *
+     * @param header the header that was read.
+     * @param in channel to read from.
+     * @param storage storage receiving the words. Must hold header.wordCount() words, all 0.
+     * @throws IOException if reading fails.
+     */
+    static void readWords(FilterHeader header, ReadableByteChannel in, BitStorage storage) throws IOException {
+        if (header.encoding != FilterHeader.ENCODING_RAW) {
+            FilterCompression.read(header, in, storage);
+            return;
+        }
+        long wordCount = header.wordCount();
+        ByteBuffer buffer = buffer(wordCount);
+        for (long i = 0; i < wordCount; ) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), (wordCount - i) << 3));
+            readFully(in, buffer);
+            buffer.flip();
+            while (buffer.hasRemaining())
+                storage.setWord(i++, buffer.getLong());
+        }
+    }
+
+    private static ByteBuffer buffer(long wordCount) {
+        long size = Math.max(FilterHeader.SIZE, Math.min(BUFFER_SIZE, wordCount << 3));
+        return ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void flush(ByteBuffer buffer, WritableByteChannel out) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining())
+            out.write(buffer);
+        buffer.clear();
+    }
+
+    static void readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            if (in.read(buffer) < 0)
+                throw new EOFException("Unexpected end of Bloom filter data");
+    }
+
+    /**
+     * Writes little-endian words to a channel through a buffer.
+     */
+    static final class WordWriter {
+        private final WritableByteChannel out;
+        final ByteBuffer buffer;
+
+        /**
+         * @param out channel to write to.
+         * @param wordCount number of words that will be written, used to size the buffer.
+         */
+        WordWriter(WritableByteChannel out, long wordCount) {
+            this.out = out;
+            this.buffer = buffer(wordCount);
+        }
+
+        void put(long word) throws IOException {
+            if (!buffer.hasRemaining())
+                FilterIO.flush(buffer, out);
+            buffer.putLong(word);
+        }
+
+        void flush() throws IOException {
+            FilterIO.flush(buffer, out);
+        }
+    }
+
+    /**
+     * Reads a known number of little-endian words from a channel through a
+     * buffer. Nothing beyond the last word is read from the channel.
+     */
+    static final class WordReader {
+        private final ReadableByteChannel in;
+        private final ByteBuffer buffer;
+        private long remaining; // words not yet read into the buffer
+
+        /**
+         * @param in channel to read from.
+         * @param wordCount number of words to read.
+         */
+        WordReader(ReadableByteChannel in, long wordCount) {
+            this.in = in;
+            this.buffer = buffer(wordCount);
+            this.remaining = wordCount;
+            buffer.limit(0);
+        }
+
+        long next() throws IOException {
+            if (!buffer.hasRemaining()) {
+                if (remaining == 0)
+                    throw new IOException("Corrupt Bloom filter data: read past the end of the words");
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining << 3));
+                readFully(in, buffer);
+                buffer.flip();
+                remaining -= buffer.limit() >>> 3;
+            }
+            return buffer.getLong();
+        }
+    }
+}
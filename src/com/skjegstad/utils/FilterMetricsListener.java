@@ -0,0 +1,41 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+/**
+ * Receives metrics from an {@link InstrumentedBloomFilter}. Listeners are
+ * called on the thread that triggered the event, and should return quickly.
+ */
+public interface FilterMetricsListener {
+
+    /**
+     * Called by InstrumentedBloomFilter.publish(), e.g. from a scheduled task.
+     *
+     * @param snapshot current metrics of the filter.
+     */
+    void metricsPublished(FilterMetricsSnapshot snapshot);
+
+    /**
+     * Called once when the number of elements in the filter first exceeds
+     * the expected number of elements, and again after clear() if the filter
+     * fills up again. The default implementation does nothing.
+     *
+     * @param snapshot metrics of the filter when the capacity was exceeded.
+     */
+    default void capacityExceeded(FilterMetricsSnapshot snapshot) {
+    }
+}
@@ -0,0 +1,38 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+/**
+ * JMX view of the metrics of an {@link InstrumentedBloomFilter}. Register it
+ * with InstrumentedBloomFilter.registerMBean(). Attributes are computed when
+ * they are read, see {@link FilterMetricsSnapshot} for their meaning.
+ */
+public interface FilterMetricsMXBean {
+    long getAdds();
+    long getQueries();
+    long getPositives();
+    double getPositiveRate();
+    double getAverageHashNanos();
+    int getCount();
+    int getExpectedNumberOfElements();
+    boolean isOverCapacity();
+    int getBitsSet();
+    int getSize();
+    double getFillRatio();
+    double getConfiguredFalsePositiveProbability();
+    double getEstimatedFalsePositiveProbability();
+}
@@ -0,0 +1,200 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.io.Serializable;
+
+/**
+ * The metrics of an {@link InstrumentedBloomFilter} at one point in time.
+ * Snapshots are immutable and may be passed between threads.
+ */
+public final class FilterMetricsSnapshot implements Serializable {
+    private final long time; // when the snapshot was taken, in milliseconds since the epoch
+    private final long adds;
+    private final long queries;
+    private final long positives;
+    private final long hashNanos; // time spent hashing the sampled operations
+    private final long hashSamples; // number of sampled operations
+    private final int count;
+    private final int expectedNumberOfElements;
+    private final int bitsSet;
+    private final int size;
+    private final int k;
+    private final double configuredFalsePositiveProbability;
+
+    FilterMetricsSnapshot(long time, long adds, long queries, long positives, long hashNanos, long hashSamples,
+            int count, int expectedNumberOfElements, int bitsSet, int size, int k,
+            double configuredFalsePositiveProbability) {
+        this.time = time;
+        this.adds = adds;
+        this.queries = queries;
+        this.positives = positives;
+        this.hashNanos = hashNanos;
+        this.hashSamples = hashSamples;
+        this.count = count;
+        this.expectedNumberOfElements = expectedNumberOfElements;
+        this.bitsSet = bitsSet;
+        this.size = size;
+        this.k = k;
+        this.configuredFalsePositiveProbability = configuredFalsePositiveProbability;
+    }
+
+    /**
+     * Returns the time the snapshot was taken.
+     *
+     * @return time in milliseconds since the epoch.
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the number of add operations since the instrumented filter was
+     * created. Each element of a bulk operation counts as one operation.
+     *
+     * @return number of add operations.
+     */
+    public long getAdds() {
+        return adds;
+    }
+
+    /**
+     * Returns the number of contains operations since the instrumented filter
+     * was created. Each element of a bulk operation counts as one operation.
+     *
+     * @return number of contains operations.
+     */
+    public long getQueries() {
+        return queries;
+    }
+
+    /**
+     * Returns the number of contains operations that returned true.
+     *
+     * @return number of positive answers.
+     */
+    public long getPositives() {
+        return positives;
+    }
+
+    /**
+     * Returns the fraction of contains operations that returned true.
+     *
+     * @return positive answers divided by queries, or 0 if there were no queries.
+     */
+    public double getPositiveRate() {
+        return queries == 0 ? 0 : (double) positives / queries;
+    }
+
+    /**
+     * Returns the average time spent turning an element into hash values,
+     * including the funnel. The time is measured on a sample of the single
+     * element operations.
+     *
+     * @return average hashing time in nanoseconds, or 0 if nothing was sampled.
+     */
+    public double getAverageHashNanos() {
+        return hashSamples == 0 ? 0 : (double) hashNanos / hashSamples;
+    }
+
+    /**
+     * Returns the number of elements in the filter, as returned by count().
+     *
+     * @return number of elements.
+     */
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the number of elements the filter was created for.
+     *
+     * @return expected number of elements.
+     */
+    public int getExpectedNumberOfElements() {
+        return expectedNumberOfElements;
+    }
+
+    /**
+     * Returns true if more elements have been added than the filter was
+     * created for. The false positive probability is then higher than configured.
+     *
+     * @return true if the filter is over capacity.
+     */
+    public boolean isOverCapacity() {
+        return count > expectedNumberOfElements;
+    }
+
+    /**
+     * Returns the number of bits set in the filter.
+     *
+     * @return number of bits set.
+     */
+    public int getBitsSet() {
+        return bitsSet;
+    }
+
+    /**
+     * Returns the number of bits in the filter.
+     *
+     * @return size of the filter in bits.
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Returns the fraction of bits set. A filter holding its expected number
+     * of elements with an optimal k has about half of its bits set.
+     *
+     * @return bits set divided by size.
+     */
+    public double getFillRatio() {
+        return (double) bitsSet / size;
+    }
+
+    /**
+     * Returns the false positive probability the filter was created for,
+     * reached when it holds its expected number of elements.
+     *
+     * @return configured false positive probability.
+     */
+    public double getConfiguredFalsePositiveProbability() {
+        return configuredFalsePositiveProbability;
+    }
+
+    /**
+     * Returns the false positive probability estimated from the bits actually
+     * set, (bits set / size)^k. Unlike getFalsePositiveProbability() on the
+     * filter, this also holds if elements were added more than once or bits
+     * were set directly.
+     *
+     * @return estimated false positive probability.
+     */
+    public double getEstimatedFalsePositiveProbability() {
+        return Math.pow(getFillRatio(), k);
+    }
+
+    @Override
+    public String toString() {
+        return "adds=" + adds + ", queries=" + queries + ", positives=" + positives
+                + ", count=" + count + "/" + expectedNumberOfElements
+                + ", fill=" + getFillRatio()
+                + ", fpp=" + getEstimatedFalsePositiveProbability() + " (configured " + configuredFalsePositiveProbability + ")"
+                + ", hashNanos=" + getAverageHashNanos();
+    }
+}
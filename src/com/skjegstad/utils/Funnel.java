@@ -0,0 +1,52 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.Serializable;
+
+/**
+ * Describes how to turn an object into bytes for hashing. A funnel writes the
+ * fields of an object directly into a {@link PrimitiveSink}, so objects can be
+ * added to a Bloom filter without calling toString() and without allocating
+ * intermediate strings or arrays.
+ * <br /><br />
+ * A funnel must write the same bytes for objects that are equal, and should
+ * write different bytes for objects that are not. Example for a composite key:
+ *
+ * <pre>
+ * Funnel&lt;Visit&gt; visitFunnel = new Funnel&lt;Visit&gt;() {
+ *     public void funnel(Visit from, PrimitiveSink into) {
+ *         into.putLong(from.tenantId).putLong(from.userId).putInt(from.day);
+ *     }
+ * };
+ * BloomFilter&lt;Visit&gt; visits = new BloomFilter&lt;Visit&gt;(0.01, 1000000, HashStrategies.MURMUR3_128, visitFunnel);
+ * </pre>
+ *
+ * Funnels are serialized together with the Bloom filter, and should be
+ * stateless.
+ *
+ * @param <E> type of object the funnel accepts.
+ */
+public interface Funnel<E> extends Serializable {
+
+    /**
+     * Writes the contents of an object into a sink.
+     *
+     * @param from object to write.
+     * @param into sink receiving the bytes.
+     */
+    void funnel(E from, PrimitiveSink into);
+}
@@ -0,0 +1,154 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Per-thread scratch space for hashing. Each thread reuses the same arrays on
+ * every call to add() and contains(), so the hot path does not allocate once
+ * the arrays have grown to the size needed by the filter.
+ * <br /><br />
+ * A buffer is only valid on the thread that obtained it, and only until the
+ * next call that uses the same array.
+ */
+final class HashBuffer {
+    private static final ThreadLocal<HashBuffer> buffers = new ThreadLocal<HashBuffer>() {
+        @Override
+        protected HashBuffer initialValue() {
+            return new HashBuffer();
+        }
+    };
+
+    private long[] hashes = new long[16];
+    private int[] positions = new int[0]; // bit positions of a batch of elements
+    final byte[] bytes = new byte[16]; // encoded primitives
+    private final ByteSink sink = new ByteSink(); // encoded elements
+    final long[] pair = new long[2]; // 128-bit hashes when the result array is too short
+    final byte[] digest = new byte[16]; // MD5 output
+    private MessageDigest md5;
+
+    private HashBuffer() {
+    }
+
+    /**
+     * Returns the buffer of the current thread.
+     *
+     * @return scratch buffer.
+     */
+    static HashBuffer get() {
+        return buffers.get();
+    }
+
+    /**
+     * Returns an array that can hold at least <code>k</code> hash values.
+     *
+     * @param k number of hash values.
+     * @return array of length k or more.
+     */
+    long[] hashes(int k) {
+        if (hashes.length < k)
+            hashes = new long[k];
+        return hashes;
+    }
+
+    /**
+     * Returns an array that can hold at least <code>n</code> bit positions.
+     *
+     * @param n number of positions.
+     * @return array of length n or more.
+     */
+    int[] positions(int n) {
+        if (positions.length < n)
+            positions = new int[n];
+        return positions;
+    }
+
+    /**
+     * Returns an empty sink for encoding an element.
+     *
+     * @return empty sink.
+     */
+    ByteSink sink() {
+        return sink.reset();
+    }
+
+    /**
+     * Returns the sink holding an encoded element. This is how every filter
+     * turns an element into bytes before hashing it.
+     *
+     * @param funnel writes the element into the sink. If null, the output of toString() is encoded.
+     * @param element element to encode.
+     * @return sink holding the element.
+     */
+    <E> ByteSink sink(Funnel<? super E> funnel, E element) {
+        ByteSink sink = this.sink.reset();
+        if (funnel != null)
+            funnel.funnel(element, sink);
+        else
+            sink.putString(element.toString());
+        return sink;
+    }
+
+    /**
+     * Returns the MD5 digest of the current thread.
+     *
+     * @return MD5 digest.
+     */
+    MessageDigest md5() {
+        if (md5 == null) {
+            try {
+                md5 = MessageDigest.getInstance("MD5");
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("MD5 is not available", e);
+            }
+        }
+        return md5;
+    }
+
+    /**
+     * Writes a long in little-endian order.
+     *
+     * @param b destination array.
+     * @param pos position of the first byte.
+     * @param v value to write.
+     */
+    static void putLong(byte[] b, int pos, long v) {
+        b[pos] = (byte) v;
+        b[pos + 1] = (byte) (v >>> 8);
+        b[pos + 2] = (byte) (v >>> 16);
+        b[pos + 3] = (byte) (v >>> 24);
+        b[pos + 4] = (byte) (v >>> 32);
+        b[pos + 5] = (byte) (v >>> 40);
+        b[pos + 6] = (byte) (v >>> 48);
+        b[pos + 7] = (byte) (v >>> 56);
+    }
+
+    /**
+     * Writes an int in little-endian order.
+     *
+     * @param b destination array.
+     * @param pos position of the first byte.
+     * @param v value to write.
+     */
+    static void putInt(byte[] b, int pos, int v) {
+        b[pos] = (byte) v;
+        b[pos + 1] = (byte) (v >>> 8);
+        b[pos + 2] = (byte) (v >>> 16);
+        b[pos + 3] = (byte) (v >>> 24);
+    }
+}
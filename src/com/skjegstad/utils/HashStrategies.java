@@ -0,0 +1,168 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+
+/**
+ * The hash strategies shipped with the Bloom filter.
+ * <br /><br />
+ * {@link #MD5} is the original hash function of this library. It computes one
+ * salted MD5 digest for every four hash values, and is kept so that existing
+ * filters remain readable. {@link #MURMUR3_128} and {@link #XXHASH64} are
+ * much faster non-cryptographic hash functions. They hash the input once and
+ * derive all k hash values from two 64-bit values h1 and h2 using the double
+ * hashing scheme described by Kirsch and Mitzenmacher in "Less Hashing, Same
+ * Performance: Building a Better Bloom Filter": g_i = h1 + i * h2.
+ */
+public enum HashStrategies implements HashStrategy {
+    /**
+     * Salted MD5 digests. Compatible with filters created by earlier versions.
+     */
+    MD5(0) {
+        @Override
+        public void createHashes(byte[] data, int offset, int length, long[] result, int hashes) {
+            HashBuffer buffer = HashBuffer.get();
+            MessageDigest digestFunction = buffer.md5();
+            byte[] digest = buffer.digest;
+            int k = 0;
+            byte salt = 0;
+            while (k < hashes) {
+                digestFunction.update(salt);
+                salt++;
+                digestFunction.update(data, offset, length);
+                try {
+                    digestFunction.digest(digest, 0, digest.length);
+                } catch (DigestException e) {
+                    throw new IllegalStateException(e);
+                }
+
+                for (int i = 0; i < digest.length/4 && k < hashes; i++) {
+                    int h = 0;
+                    for (int j = (i*4); j < (i*4)+4; j++) {
+                        h <<= 8;
+                        h |= ((int) digest[j]) & 0xFF;
+                    }
+                    result[k] = h;
+                    k++;
+                }
+            }
+        }
+    },
+
+    /**
+     * 128-bit MurmurHash3 (x64 variant), split into h1 and h2.
+     */
+    MURMUR3_128(1) {
+        @Override
+        public void createHashes(byte[] data, int offset, int length, long[] result, int hashes) {
+            long[] h = hashes >= 2 ? result : HashBuffer.get().pair; // h1 and h2 are read before result is written
+            Murmur3.hash128(data, offset, length, 0, h);
+            doubleHash(h[0], h[1], result, hashes);
+        }
+
+        @Override
+        public void createHashes(long value, long[] result, int hashes) {
+            long[] h = hashes >= 2 ? result : HashBuffer.get().pair;
+            Murmur3.hash128(value, 0, h);
+            doubleHash(h[0], h[1], result, hashes);
+        }
+
+        @Override
+        public void createHashes(int value, long[] result, int hashes) {
+            long[] h = hashes >= 2 ? result : HashBuffer.get().pair;
+            Murmur3.hash128(value, 0, h);
+            doubleHash(h[0], h[1], result, hashes);
+        }
+
+        @Override
+        public void createHashes(long first, long second, long[] result, int hashes) {
+            long[] h = hashes >= 2 ? result : HashBuffer.get().pair;
+            Murmur3.hash128(first, second, 0, h);
+            doubleHash(h[0], h[1], result, hashes);
+        }
+    },
+
+    /**
+     * 64-bit xxHash. h1 is the xxHash value and h2 is derived from h1 with
+     * the MurmurHash3 finalizer, so the input is only hashed once.
+     */
+    XXHASH64(2) {
+        @Override
+        public void createHashes(byte[] data, int offset, int length, long[] result, int hashes) {
+            doubleHash(XxHash64.hash(data, offset, length, 0), result, hashes);
+        }
+
+        @Override
+        public void createHashes(long value, long[] result, int hashes) {
+            doubleHash(XxHash64.hash(value, 0), result, hashes);
+        }
+
+        @Override
+        public void createHashes(int value, long[] result, int hashes) {
+            doubleHash(XxHash64.hash(value, 0), result, hashes);
+        }
+
+        @Override
+        public void createHashes(long first, long second, long[] result, int hashes) {
+            doubleHash(XxHash64.hash(first, second, 0), result, hashes);
+        }
+    };
+
+    private final int id;
+
+    private HashStrategies(int id) {
+        this.id = id;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Returns the built-in strategy with the given identifier.
+     *
+     * @param id identifier returned by getId().
+     * @return the strategy.
+     * @throws IllegalArgumentException if no built-in strategy has this identifier.
+     */
+    public static HashStrategies forId(int id) {
+        for (HashStrategies s : values())
+            if (s.id == id)
+                return s;
+        throw new IllegalArgumentException("Unknown hash strategy id: " + id);
+    }
+
+    /**
+     * Derives k hash values from a single 64-bit hash. h2 is derived from h1
+     * with the MurmurHash3 finalizer.
+     */
+    static void doubleHash(long h1, long[] result, int hashes) {
+        doubleHash(h1, Murmur3.fmix64(h1 ^ 0x9E3779B97F4A7C15L), result, hashes);
+    }
+
+    /**
+     * Derives k hash values from two 64-bit hashes (Kirsch-Mitzenmacher).
+     */
+    static void doubleHash(long h1, long h2, long[] result, int hashes) {
+        long combined = h1;
+        for (int i = 0; i < hashes; i++) {
+            result[i] = combined;
+            combined += h2;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.Serializable;
+
+/**
+ * A hash strategy turns an array of bytes into the k hash values used to
+ * select bits in a Bloom filter. The built-in strategies are found in
+ * {@link HashStrategies}.
+ * <br /><br />
+ * Implementations must be deterministic: the same input must always give
+ * the same hash values, also across JVMs, or stored filters will no longer
+ * match the elements that were added to them. Asking for fewer hash values
+ * must give a prefix of the longer result, so filters with different k can
+ * share one call.
+ * <br /><br />
+ * Primitive values are hashed as their little-endian byte representation.
+ * For example, hashing the long 1 gives the same hash values as hashing the
+ * bytes {1, 0, 0, 0, 0, 0, 0, 0}. The default methods encode the value into
+ * a per-thread buffer. Strategies may override them with specialized code,
+ * as long as the result stays the same.
+ *
+ * @see HashStrategies
+ */
+public interface HashStrategy extends Serializable {
+
+    /**
+     * Returns a number identifying this strategy. The identifier is used
+     * when filters are stored, and must never change once assigned.
+     *
+     * @return identifier of the strategy.
+     */
+    int getId();
+
+    /**
+     * Generates hash values based on a range of an array of bytes. The values
+     * may use all 64 bits and may be negative; the Bloom filter reduces them
+     * to bit positions.
+     *
+     * @param data specifies input data.
+     * @param offset offset of the first byte to hash.
+     * @param length number of bytes to hash.
+     * @param result array receiving the hash values. Must hold at least <code>hashes</code> values.
+     * @param hashes number of hash values to produce.
+     */
+    void createHashes(byte[] data, int offset, int length, long[] result, int hashes);
+
+    /**
+     * Generates hash values based on a long. The result is the same as hashing
+     * the 8 bytes of the value in little-endian order.
+     *
+     * @param value value to hash.
+     * @param result array receiving the hash values. Must hold at least <code>hashes</code> values.
+     * @param hashes number of hash values to produce.
+     */
+    default void createHashes(long value, long[] result, int hashes) {
+        byte[] bytes = HashBuffer.get().bytes;
+        HashBuffer.putLong(bytes, 0, value);
+        createHashes(bytes, 0, 8, result, hashes);
+    }
+
+    /**
+     * Generates hash values based on an int. The result is the same as hashing
+     * the 4 bytes of the value in little-endian order.
+     *
+     * @param value value to hash.
+     * @param result array receiving the hash values. Must hold at least <code>hashes</code> values.
+     * @param hashes number of hash values to produce.
+     */
+    default void createHashes(int value, long[] result, int hashes) {
+        byte[] bytes = HashBuffer.get().bytes;
+        HashBuffer.putInt(bytes, 0, value);
+        createHashes(bytes, 0, 4, result, hashes);
+    }
+
+    /**
+     * Generates hash values based on two longs, such as the two halves of a UUID.
+     * The result is the same as hashing the 8 little-endian bytes of
+     * <code>first</code> followed by the 8 little-endian bytes of <code>second</code>.
+     *
+     * @param first first value to hash, e.g. UUID.getMostSignificantBits().
+     * @param second second value to hash, e.g. UUID.getLeastSignificantBits().
+     * @param result array receiving the hash values. Must hold at least <code>hashes</code> values.
+     * @param hashes number of hash values to produce.
+     */
+    default void createHashes(long first, long second, long[] result, int hashes) {
+        byte[] bytes = HashBuffer.get().bytes;
+        HashBuffer.putLong(bytes, 0, first);
+        HashBuffer.putLong(bytes, 8, second);
+        createHashes(bytes, 0, 16, result, hashes);
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Bit storage in a long array on the Java heap. Holds up to about 2^37 bits.
+ */
+public class HeapBitStorage implements BitStorage, Serializable {
+    private final long[] words;
+    private final long size;
+
+    /**
+     * Creates storage with all bits set to false.
+     *
+     * @param size number of bits.
+     */
+    public HeapBitStorage(long size) {
+        if (size <= 0 || ((size + 63) >>> 6) > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Invalid size: " + size);
+        this.size = size;
+        this.words = new long[(int) ((size + 63) >>> 6)];
+    }
+
+    /**
+     * Wraps an existing array of words.
+     *
+     * @param words words holding the bits, ceil(size / 64) of them.
+     * @param size number of bits.
+     */
+    HeapBitStorage(long[] words, long size) {
+        this.size = size;
+        this.words = words;
+    }
+
+    /**
+     * Returns the array holding the words, for bulk operations.
+     */
+    long[] words() {
+        return words;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public boolean get(long bit) {
+        return (words[(int) (bit >>> 6)] & (1L << bit)) != 0;
+    }
+
+    public void set(long bit) {
+        words[(int) (bit >>> 6)] |= 1L << bit;
+    }
+
+    public void clear(long bit) {
+        words[(int) (bit >>> 6)] &= ~(1L << bit);
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    public long wordCount() {
+        return words.length;
+    }
+
+    public long getWord(long index) {
+        return words[(int) index];
+    }
+
+    public void setWord(long index, long word) {
+        words[(int) index] = word;
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+/**
+ * Maps the 64-bit hash values of a {@link HashStrategy} to bit positions in a
+ * filter of m bits.
+ * <br /><br />
+ * Filters use MODULO unless they are created from a {@link BloomFilterSpec},
+ * which keeps them compatible with stored filters and with
+ * {@link HashStrategies#MD5}, whose hash values only use 32 bits. MODULO
+ * needs a 64-bit division for every bit probed. MULTIPLY_SHIFT and MASK
+ * replace it with a few multiplications or a single AND, and need hash values
+ * where all 64 bits are random, as from {@link HashStrategies#MURMUR3_128} and
+ * {@link HashStrategies#XXHASH64}.
+ * <br /><br />
+ * The identifier of the reduction is stored with the filter, and filters
+ * using different reductions are not compatible.
+ */
+public enum IndexReduction {
+    /**
+     * |hash % m|, as used by earlier versions.
+     */
+    MODULO(0) {
+        @Override
+        public long reduce(long hash, long m) {
+            return Math.abs(hash % m);
+        }
+    },
+
+    /**
+     * The upper 64 bits of the 128-bit product hash * m, treating the hash as
+     * unsigned (Lemire, "A fast alternative to the modulo reduction"). The
+     * position is taken from the upper bits of the hash.
+     */
+    MULTIPLY_SHIFT(1) {
+        @Override
+        public long reduce(long hash, long m) {
+            return multiplyShift(hash, m);
+        }
+    },
+
+    /**
+     * hash &amp; (m - 1). m must be a power of two. The position is taken from the
+     * lower bits of the hash.
+     */
+    MASK(2) {
+        @Override
+        public long reduce(long hash, long m) {
+            return hash & (m - 1);
+        }
+
+        @Override
+        public boolean supports(long m) {
+            return m > 0 && (m & (m - 1)) == 0;
+        }
+    };
+
+    private final int id;
+
+    private IndexReduction(int id) {
+        this.id = id;
+    }
+
+    /**
+     * Returns a number identifying this reduction. The identifier is stored
+     * with filters, and never changes.
+     *
+     * @return identifier of the reduction.
+     */
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Maps a hash value to a position.
+     *
+     * @param hash hash value from a hash strategy.
+     * @param m number of positions, e.g. the number of bits in a filter.
+     * @return position between 0 and m - 1.
+     */
+    public abstract long reduce(long hash, long m);
+
+    /**
+     * Returns true if the reduction can be used for m positions.
+     *
+     * @param m number of positions.
+     * @return true if m is supported.
+     */
+    public boolean supports(long m) {
+        return m > 0;
+    }
+
+    /**
+     * Returns the reduction with the given identifier.
+     *
+     * @param id identifier returned by getId().
+     * @return the reduction.
+     * @throws IllegalArgumentException if no reduction has this identifier.
+     */
+    public static IndexReduction forId(int id) {
+        for (IndexReduction r : values())
+            if (r.id == id)
+                return r;
+        throw new IllegalArgumentException("Unknown index reduction id: " + id);
+    }
+
+    /**
+     * Checks that a reduction can be used for a filter.
+     *
+     * @throws IllegalArgumentException if the combination is not supported.
+     */
+    static void check(IndexReduction reduction, long m, HashStrategy hashStrategy) {
+        if (!reduction.supports(m))
+            throw new IllegalArgumentException(reduction + " can not be used for " + m + " bits");
+        if (reduction != MODULO && hashStrategy == HashStrategies.MD5)
+            throw new IllegalArgumentException("MD5 hash values only use 32 bits, use MODULO");
+    }
+
+    /**
+     * Returns the upper 64 bits of the unsigned 128-bit product hash * m.
+     */
+    static long multiplyShift(long hash, long m) {
+        if (m <= 0xFFFFFFFFL) // (hash_hi * m + (hash_lo * m >>> 32)) can not overflow
+            return ((hash >>> 32) * m + ((hash & 0xFFFFFFFFL) * m >>> 32)) >>> 32;
+        long x0 = hash & 0xFFFFFFFFL;
+        long x1 = hash >>> 32;
+        long y0 = m & 0xFFFFFFFFL;
+        long y1 = m >>> 32;
+        long t = x1 * y0 + (x0 * y0 >>> 32);
+        long w = (t & 0xFFFFFFFFL) + x0 * y1;
+        return x1 * y1 + (t >>> 32) + (w >>> 32);
+    }
+}
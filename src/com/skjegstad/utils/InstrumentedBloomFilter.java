@@ -0,0 +1,472 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * A {@link BloomFilter} that keeps runtime metrics: the number of adds,
+ * queries and positive answers, and the time spent hashing. Together with the
+ * fill ratio and the configured and estimated false positive probability of
+ * the filter, they are available as a {@link FilterMetricsSnapshot}, through
+ * {@link FilterMetricsListener}s and through JMX.
+ * <br /><br />
+ * The metrics live in this wrapper only, so a BloomFilter used directly pays
+ * nothing for them. The counters are LongAdders, which keeps them cheap when
+ * the filter is used under a lock shared by many threads, and lets snapshots
+ * be taken from any thread. Hashing time is measured on one in 64 single
+ * element operations, as reading the clock costs as much as hashing a short
+ * key.
+ * <br /><br />
+ * Like BloomFilter, the filter is not thread-safe. Operations on the
+ * underlying filter through getFilter() are not counted.
+ *
+ * @param <E> Object type that is to be inserted into the Bloom filter, e.g. String or Integer.
+ */
+public class InstrumentedBloomFilter<E> {
+    private static final int SAMPLE_MASK = 63; // hashing time is measured when (operations & SAMPLE_MASK) == 0
+    private static final long MBEAN_SNAPSHOT_MILLIS = 1000; // MBean attributes read within this time share a snapshot
+
+    private final BloomFilter<E> filter;
+    private final int k; // number of hash functions
+    private final HashStrategy hashStrategy; // hash function used to select bits
+    private final LongAdder adds = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder positives = new LongAdder();
+    private final LongAdder hashNanos = new LongAdder();
+    private final LongAdder hashSamples = new LongAdder();
+    private final List<FilterMetricsListener> listeners = new CopyOnWriteArrayList<FilterMetricsListener>();
+    private int operations; // only used to pick samples, so lost updates do not matter
+    private boolean overCapacity; // true after capacityExceeded() has been sent
+
+    /**
+     * Instruments a Bloom filter. The filter should not be used directly
+     * afterwards, or the metrics will be incomplete.
+     *
+     * @param filter filter to instrument.
+     */
+    public InstrumentedBloomFilter(BloomFilter<E> filter) {
+        this.filter = filter;
+        this.k = filter.getK();
+        this.hashStrategy = filter.getHashStrategy();
+        this.overCapacity = filter.count() > filter.getExpectedNumberOfElements();
+    }
+
+    /**
+     * Returns the instrumented filter.
+     *
+     * @return the underlying Bloom filter.
+     */
+    public BloomFilter<E> getFilter() {
+        return filter;
+    }
+
+    /**
+     * Adds a listener. The listener receives the snapshots passed on by
+     * publish(), and is told when the filter exceeds its capacity.
+     *
+     * @param listener listener to add.
+     */
+    public void addListener(FilterMetricsListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener listener to remove.
+     */
+    public void removeListener(FilterMetricsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Takes a snapshot of the metrics. Counting the bits set reads the
+     * whole filter, so snapshots should be taken at intervals rather than for
+     * every operation. The count does not touch the cache of
+     * BloomFilter.bitCount(), so snapshots may be taken from any thread; bits
+     * set during the count may be missed.
+     *
+     * @return current metrics.
+     */
+    public FilterMetricsSnapshot snapshot() {
+        return new FilterMetricsSnapshot(System.currentTimeMillis(), adds.sum(), queries.sum(), positives.sum(),
+                hashNanos.sum(), hashSamples.sum(), filter.count(), filter.getExpectedNumberOfElements(),
+                filter.countBits(), filter.size(), k, filter.expectedFalsePositiveProbability());
+    }
+
+    /**
+     * Takes a snapshot and passes it to all listeners. Call this from a
+     * scheduled task to report the metrics at a fixed interval.
+     *
+     * @return the snapshot passed to the listeners.
+     */
+    public FilterMetricsSnapshot publish() {
+        FilterMetricsSnapshot snapshot = snapshot();
+        for (FilterMetricsListener listener : listeners)
+            listener.metricsPublished(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, as
+     * "com.skjegstad.utils:type=BloomFilter,name=<i>name</i>".
+     *
+     * @param name name of the filter.
+     * @return the name the MBean was registered under, to be used for unregistering it.
+     * @throws JMException if the MBean could not be registered, e.g. because the name is taken.
+     */
+    public ObjectName registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName("com.skjegstad.utils:type=BloomFilter,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MXBean(), objectName);
+        return objectName;
+    }
+
+    /**
+     * Sets all bits to false in the Bloom filter. The counters are kept.
+     */
+    public void clear() {
+        filter.clear();
+        overCapacity = false;
+    }
+
+    /**
+     * Adds an object to the Bloom filter. See {@link BloomFilter#add(Object)}.
+     *
+     * @param element is an element to register in the Bloom filter.
+     */
+    public void add(E element) {
+        boolean sample = sample();
+        long start = sample ? System.nanoTime() : 0;
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(filter.getFunnel(), element);
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(sink.bytes, 0, sink.length, hashes, k);
+        if (sample)
+            recordHashTime(start);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds an array of bytes to the Bloom filter. See {@link BloomFilter#add(byte[])}.
+     *
+     * @param bytes array of bytes to add to the Bloom filter.
+     */
+    public void add(byte[] bytes) {
+        boolean sample = sample();
+        long start = sample ? System.nanoTime() : 0;
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(bytes, 0, bytes.length, hashes, k);
+        if (sample)
+            recordHashTime(start);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds a long to the Bloom filter. See {@link BloomFilter#addLong(long)}.
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addLong(long value) {
+        boolean sample = sample();
+        long start = sample ? System.nanoTime() : 0;
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        if (sample)
+            recordHashTime(start);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds an int to the Bloom filter. See {@link BloomFilter#addInt(int)}.
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addInt(int value) {
+        boolean sample = sample();
+        long start = sample ? System.nanoTime() : 0;
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        if (sample)
+            recordHashTime(start);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds a 128-bit value, such as a UUID, to the Bloom filter. See {@link BloomFilter#add(long, long)}.
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     */
+    public void add(long first, long second) {
+        boolean sample = sample();
+        long start = sample ? System.nanoTime() : 0;
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        if (sample)
+            recordHashTime(start);
+        addHashes(hashes);
+    }
+
+    private void addHashes(long[] hashes) {
+        filter.addHashes(hashes);
+        adds.increment();
+        checkCapacity();
+    }
+
+    /**
+     * Adds all elements from a Collection to the Bloom filter. See {@link BloomFilter#addAll(Collection)}.
+     *
+     * @param c Collection of elements.
+     */
+    public void addAll(Collection<? extends E> c) {
+        filter.addAll(c);
+        adds.add(c.size());
+        checkCapacity();
+    }
+
+    /**
+     * Adds all values of an array to the Bloom filter. See {@link BloomFilter#addAll(long[])}.
+     *
+     * @param values values to add.
+     */
+    public void addAll(long[] values) {
+        filter.addAll(values);
+        adds.add(values.length);
+        checkCapacity();
+    }
+
+    /**
+     * Returns true if the element could have been inserted into the Bloom filter.
+     * See {@link BloomFilter#contains(Object)}.
+     *
+     * @param element element to check.
+     * @return true if the element could have been inserted into the Bloom filter.
+     */
+    public boolean contains(E element) {
+        boolean sample = sample();
+        long start = sample ? System.nanoTime() : 0;
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(filter.getFunnel(), element);
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(sink.bytes, 0, sink.length, hashes, k);
+        if (sample)
+            recordHashTime(start);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the array of bytes could have been inserted into the Bloom filter.
+     * See {@link BloomFilter#contains(byte[])}.
+     *
+     * @param bytes array of bytes to check.
+     * @return true if the array could have been inserted into the Bloom filter.
+     */
+    public boolean contains(byte[] bytes) {
+        boolean sample = sample();
+        long start = sample ? System.nanoTime() : 0;
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(bytes, 0, bytes.length, hashes, k);
+        if (sample)
+            recordHashTime(start);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the long could have been inserted into the Bloom filter
+     * with addLong(long).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsLong(long value) {
+        boolean sample = sample();
+        long start = sample ? System.nanoTime() : 0;
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        if (sample)
+            recordHashTime(start);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the int could have been inserted into the Bloom filter
+     * with addInt(int).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsInt(int value) {
+        boolean sample = sample();
+        long start = sample ? System.nanoTime() : 0;
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        if (sample)
+            recordHashTime(start);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the 128-bit value could have been inserted into the Bloom
+     * filter with add(long, long).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean contains(long first, long second) {
+        boolean sample = sample();
+        long start = sample ? System.nanoTime() : 0;
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        if (sample)
+            recordHashTime(start);
+        return containsHashes(hashes);
+    }
+
+    private boolean containsHashes(long[] hashes) {
+        boolean result = filter.containsHashes(hashes);
+        queries.increment();
+        if (result)
+            positives.increment();
+        return result;
+    }
+
+    /**
+     * Checks each element of a Collection. See {@link BloomFilter#containsEach(Collection)}.
+     *
+     * @param c elements to check.
+     * @return for each element in iteration order, true if it could have been inserted into the Bloom filter.
+     */
+    public boolean[] containsEach(Collection<? extends E> c) {
+        return count(filter.containsEach(c));
+    }
+
+    /**
+     * Checks each value of an array. See {@link BloomFilter#containsEach(long[])}.
+     *
+     * @param values values to check.
+     * @return for each value, true if it could have been inserted into the Bloom filter.
+     */
+    public boolean[] containsEach(long[] values) {
+        return count(filter.containsEach(values));
+    }
+
+    private boolean[] count(boolean[] result) {
+        int n = 0;
+        for (boolean b : result)
+            if (b)
+                n++;
+        queries.add(result.length);
+        positives.add(n);
+        return result;
+    }
+
+    private boolean sample() {
+        return (operations++ & SAMPLE_MASK) == 0;
+    }
+
+    private void recordHashTime(long start) {
+        hashNanos.add(System.nanoTime() - start);
+        hashSamples.increment();
+    }
+
+    private void checkCapacity() {
+        if (!overCapacity && filter.count() > filter.getExpectedNumberOfElements()) {
+            overCapacity = true;
+            if (!listeners.isEmpty()) {
+                FilterMetricsSnapshot snapshot = snapshot();
+                for (FilterMetricsListener listener : listeners)
+                    listener.capacityExceeded(snapshot);
+            }
+        }
+    }
+
+    /**
+     * The registered MBean. The attributes derived from the bits set come
+     * from one snapshot, which is reused for MBEAN_SNAPSHOT_MILLIS, so a
+     * client reading all attributes only reads the filter once.
+     */
+    private final class MXBean implements FilterMetricsMXBean {
+        private volatile FilterMetricsSnapshot last;
+
+        private FilterMetricsSnapshot current() {
+            FilterMetricsSnapshot snapshot = last;
+            if (snapshot == null || System.currentTimeMillis() - snapshot.getTime() >= MBEAN_SNAPSHOT_MILLIS)
+                last = snapshot = snapshot();
+            return snapshot;
+        }
+
+        public long getAdds() {
+            return adds.sum();
+        }
+
+        public long getQueries() {
+            return queries.sum();
+        }
+
+        public long getPositives() {
+            return positives.sum();
+        }
+
+        public double getPositiveRate() {
+            return current().getPositiveRate();
+        }
+
+        public double getAverageHashNanos() {
+            return current().getAverageHashNanos();
+        }
+
+        public int getCount() {
+            return filter.count();
+        }
+
+        public int getExpectedNumberOfElements() {
+            return filter.getExpectedNumberOfElements();
+        }
+
+        public boolean isOverCapacity() {
+            return current().isOverCapacity();
+        }
+
+        public int getBitsSet() {
+            return current().getBitsSet();
+        }
+
+        public int getSize() {
+            return filter.size();
+        }
+
+        public double getFillRatio() {
+            return current().getFillRatio();
+        }
+
+        public double getConfiguredFalsePositiveProbability() {
+            return filter.expectedFalsePositiveProbability();
+        }
+
+        public double getEstimatedFalsePositiveProbability() {
+            return current().getEstimatedFalsePositiveProbability();
+        }
+    }
+}
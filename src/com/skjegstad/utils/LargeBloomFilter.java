@@ -0,0 +1,853 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collection;
+
+/**
+ * A Bloom filter with 64-bit addressing, stored in a {@link BitStorage}.
+ * <br /><br />
+ * {@link BloomFilter} keeps its bits in a java.util.BitSet on the heap and is
+ * limited to 2^31 bits. This filter uses long bit indices and a long element
+ * count, and can be backed by storage outside the Java heap, such as
+ * {@link OffHeapBitStorage}. It is intended for filters of many gigabytes.
+ * <br /><br />
+ * Bit positions are calculated from 64-bit hash values, so
+ * {@link HashStrategies#MD5}, which produces 32-bit values, can not be used
+ * for filters of more than 2^31 bits. The filter is not thread-safe.
+ *
+ * @param <E> Object type that is to be inserted into the Bloom filter, e.g. String or Integer.
+ */
+public class LargeBloomFilter<E> {
+    private final BitStorage storage;
+    private final long bitSetSize;
+    private final long expectedNumberOfFilterElements; // expected (maximum) number of elements to be added
+    private long numberOfAddedElements; // number of elements actually added to the Bloom filter
+    private long bitsSet = -1; // number of bits set, or -1 if the bits have changed since they were counted
+    private ChangeTracker tracker; // records changed pages for exportDelta(), null unless tracking
+    private final int k; // number of hash functions
+    private final HashStrategy hashStrategy; // hash function used to select bits
+    private final IndexReduction indexReduction; // maps hash values to bit positions
+    private final Funnel<? super E> funnel; // writes elements into the hash function, null to use toString()
+
+    /**
+     * Constructs a Bloom filter on existing storage. The size of the filter is the size of the storage.
+     *
+     * @param storage storage holding the bits of the filter.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param k is the number of hash functions used.
+     * @param hashStrategy is the hash strategy used to select bits.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     */
+    public LargeBloomFilter(BitStorage storage, long expectedNumberOfElements, int k, HashStrategy hashStrategy,
+            Funnel<? super E> funnel) {
+        this(storage, expectedNumberOfElements, k, hashStrategy, funnel, 0);
+    }
+
+    /**
+     * Constructs a Bloom filter on storage that already holds elements.
+     *
+     * @param storage storage holding the bits of the filter.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param k is the number of hash functions used.
+     * @param hashStrategy is the hash strategy used to select bits.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     * @param actualNumberOfElements specifies how many elements have been inserted into <code>storage</code>.
+     */
+    public LargeBloomFilter(BitStorage storage, long expectedNumberOfElements, int k, HashStrategy hashStrategy,
+            Funnel<? super E> funnel, long actualNumberOfElements) {
+        this(storage, expectedNumberOfElements, k, hashStrategy, IndexReduction.MODULO, funnel, actualNumberOfElements);
+    }
+
+    /**
+     * Constructs an empty Bloom filter on existing storage, with the number of
+     * hash functions, hash strategy and index reduction chosen by a
+     * {@link BloomFilterSpec}.
+     *
+     * @param spec parameters of the filter.
+     * @param storage storage holding the bits of the filter. Must hold spec.getBits() bits.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     * @throws IllegalArgumentException if the storage has another size than the spec.
+     */
+    public LargeBloomFilter(BloomFilterSpec spec, BitStorage storage, Funnel<? super E> funnel) {
+        this(checkSize(spec, storage), spec.getExpectedElements(), spec.getK(), spec.getHashStrategy(),
+                spec.getIndexReduction(), funnel, 0);
+    }
+
+    /**
+     * Constructs an empty Bloom filter stored off-heap in an {@link OffHeapBitStorage}, with the
+     * size, number of hash functions, hash strategy and index reduction chosen by a {@link BloomFilterSpec}.
+     *
+     * @param spec parameters of the filter.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     */
+    public LargeBloomFilter(BloomFilterSpec spec, Funnel<? super E> funnel) {
+        this(spec, new OffHeapBitStorage(spec.getBits()), funnel);
+    }
+
+    LargeBloomFilter(BitStorage storage, long expectedNumberOfElements, int k, HashStrategy hashStrategy,
+            IndexReduction indexReduction, Funnel<? super E> funnel, long actualNumberOfElements) {
+        if (hashStrategy == null)
+            throw new NullPointerException("hashStrategy");
+        if (hashStrategy == HashStrategies.MD5 && storage.size() > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("MD5 can not address more than 2^31 bits");
+        IndexReduction.check(indexReduction, storage.size(), hashStrategy);
+        this.indexReduction = indexReduction;
+        this.storage = storage;
+        this.bitSetSize = storage.size();
+        this.expectedNumberOfFilterElements = expectedNumberOfElements;
+        this.k = k;
+        this.hashStrategy = hashStrategy;
+        this.funnel = funnel;
+        this.numberOfAddedElements = actualNumberOfElements;
+    }
+
+    private static BitStorage checkSize(BloomFilterSpec spec, BitStorage storage) {
+        if (storage.size() != spec.getBits())
+            throw new IllegalArgumentException("Storage holds " + storage.size() + " bits, the spec needs "
+                    + spec.getBits());
+        return storage;
+    }
+
+    /**
+     * Constructs an empty Bloom filter with a given false positive probability, stored off-heap
+     * in an {@link OffHeapBitStorage}. The number of bits per element and the number of hash
+     * functions is estimated to match the false positive probability.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param hashStrategy is the hash strategy used to select bits.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     */
+    public LargeBloomFilter(double falsePositiveProbability, long expectedNumberOfElements, HashStrategy hashStrategy,
+            Funnel<? super E> funnel) {
+        this(new OffHeapBitStorage(bitSetSize(falsePositiveProbability, expectedNumberOfElements)),
+             expectedNumberOfElements,
+             (int)Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))), // k = ceil(-log_2(false prob.))
+             hashStrategy,
+             funnel);
+    }
+
+    /**
+     * Constructs an empty Bloom filter with a given false positive probability, stored off-heap
+     * in an {@link OffHeapBitStorage}.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param hashStrategy is the hash strategy used to select bits.
+     */
+    public LargeBloomFilter(double falsePositiveProbability, long expectedNumberOfElements, HashStrategy hashStrategy) {
+        this(falsePositiveProbability, expectedNumberOfElements, hashStrategy, null);
+    }
+
+    /**
+     * Returns the number of bits needed for a given false positive probability
+     * and number of elements, as chosen by BloomFilter(double, int).
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @return number of bits.
+     */
+    public static long bitSetSize(double falsePositiveProbability, long expectedNumberOfElements) {
+        double c = Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))) / Math.log(2); // c = k / ln(2)
+        return (long)Math.ceil(c * expectedNumberOfElements);
+    }
+
+    /**
+     * Calculates the expected probability of false positives based on
+     * the number of expected filter elements and the size of the Bloom filter.
+     *
+     * @return expected probability of false positives.
+     */
+    public double expectedFalsePositiveProbability() {
+        return getFalsePositiveProbability(expectedNumberOfFilterElements);
+    }
+
+    /**
+     * Calculate the probability of a false positive given the specified
+     * number of inserted elements.
+     *
+     * @param numberOfElements number of inserted elements.
+     * @return probability of a false positive.
+     */
+    public double getFalsePositiveProbability(double numberOfElements) {
+        // (1 - e^(-k * n / m)) ^ k
+        return Math.pow((1 - Math.exp(-k * (double) numberOfElements
+                        / (double) bitSetSize)), k);
+    }
+
+    /**
+     * Get the current probability of a false positive. The probability is calculated from
+     * the size of the Bloom filter and the current number of elements added to it.
+     *
+     * @return probability of false positives.
+     */
+    public double getFalsePositiveProbability() {
+        return getFalsePositiveProbability(numberOfAddedElements);
+    }
+
+    /**
+     * Returns the number of hash functions used by the filter.
+     *
+     * @return k.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the hash strategy used to select bits in the Bloom filter.
+     *
+     * @return hash strategy.
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Returns the index reduction used to map hash values to bits. MODULO
+     * unless the filter was created from a {@link BloomFilterSpec}.
+     *
+     * @return index reduction.
+     */
+    public IndexReduction getIndexReduction() {
+        return indexReduction;
+    }
+
+    /**
+     * Returns the funnel used to hash elements, or null if the output of
+     * toString() is hashed.
+     *
+     * @return funnel or null.
+     */
+    public Funnel<? super E> getFunnel() {
+        return funnel;
+    }
+
+    /**
+     * Returns the storage holding the bits of the Bloom filter. The storage
+     * may be modified, so the number of bits set is counted again afterwards.
+     * Changes made through the storage are not seen by exportDelta().
+     *
+     * @return bit storage.
+     */
+    public BitStorage getStorage() {
+        bitsSet = -1;
+        return storage;
+    }
+
+    /**
+     * Sets all bits to false in the Bloom filter.
+     */
+    public void clear() {
+        storage.clear();
+        numberOfAddedElements = 0;
+        bitsSet = 0;
+        if (tracker != null)
+            tracker.reset();
+    }
+
+    /**
+     * Adds an object to the Bloom filter. If the filter was created with a
+     * {@link Funnel}, the bytes written by the funnel are used as input to the
+     * hash functions. Otherwise the output from the object's toString() method
+     * is used.
+     *
+     * @param element is an element to register in the Bloom filter.
+     */
+    public void add(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        add(buffer, sink.bytes, 0, sink.length);
+    }
+
+    /**
+     * Adds an array of bytes to the Bloom filter.
+     *
+     * @param bytes array of bytes to add to the Bloom filter.
+     */
+    public void add(byte[] bytes) {
+        add(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private void add(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(bytes, offset, length, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds a long to the Bloom filter. The value sets the same bits as adding
+     * its 8 bytes in little-endian order with add(byte[]).
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds an int to the Bloom filter. The value sets the same bits as adding
+     * its 4 bytes in little-endian order with add(byte[]).
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds a 128-bit value, such as a UUID, to the Bloom filter. The value sets
+     * the same bits as adding the 8 little-endian bytes of <code>first</code>
+     * followed by the 8 little-endian bytes of <code>second</code> with add(byte[]).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     */
+    public void add(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Maps a hash value to a bit position. MODULO is tested first, so
+     * filters using it pay nothing for the other reductions.
+     */
+    private long position(long hash) {
+        if (indexReduction == IndexReduction.MODULO)
+            return Math.abs(hash % bitSetSize);
+        return indexReduction.reduce(hash, bitSetSize);
+    }
+
+    private void addHashes(long[] hashes) {
+        for (int i = 0; i < k; i++) {
+            long hash = hashes[i];
+            long position = position(hash);
+            storage.set(position);
+            if (tracker != null)
+                tracker.mark(position);
+        }
+        numberOfAddedElements ++;
+        bitsSet = -1;
+    }
+
+    /**
+     * Adds all elements from a Collection to the Bloom filter.
+     * @param c Collection of elements.
+     */
+    public void addAll(Collection<? extends E> c) {
+        for (E element : c)
+            add(element);
+    }
+
+    /**
+     * Returns true if the element could have been inserted into the Bloom filter.
+     * Use getFalsePositiveProbability() to calculate the probability of this
+     * being correct.
+     *
+     * @param element element to check.
+     * @return true if the element could have been inserted into the Bloom filter.
+     */
+    public boolean contains(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return contains(buffer, sink.bytes, 0, sink.length);
+    }
+
+    /**
+     * Returns true if the array of bytes could have been inserted into the Bloom filter.
+     * Use getFalsePositiveProbability() to calculate the probability of this
+     * being correct.
+     *
+     * @param bytes array of bytes to check.
+     * @return true if the array could have been inserted into the Bloom filter.
+     */
+    public boolean contains(byte[] bytes) {
+        return contains(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private boolean contains(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(bytes, offset, length, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the long could have been inserted into the Bloom filter
+     * with addLong(long).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the int could have been inserted into the Bloom filter
+     * with addInt(int).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the 128-bit value could have been inserted into the Bloom
+     * filter with add(long, long).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean contains(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    private boolean containsHashes(long[] hashes) {
+        for (int i = 0; i < k; i++) {
+            long hash = hashes[i];
+            if (!storage.get(position(hash))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if all the elements of a Collection could have been inserted
+     * into the Bloom filter. Use getFalsePositiveProbability() to calculate the
+     * probability of this being correct.
+     * @param c elements to check.
+     * @return true if all the elements in c could have been inserted into the Bloom filter.
+     */
+    public boolean containsAll(Collection<? extends E> c) {
+        for (E element : c)
+            if (!contains(element))
+                return false;
+        return true;
+    }
+
+    /**
+     * Read a single bit from the Bloom filter.
+     * @param bit the bit to read.
+     * @return true if the bit is set, false if it is not.
+     */
+    public boolean getBit(long bit) {
+        return storage.get(bit);
+    }
+
+    /**
+     * Set a single bit in the Bloom filter.
+     * @param bit is the bit to set.
+     * @param value If true, the bit is set. If false, the bit is cleared.
+     */
+    public void setBit(long bit, boolean value) {
+        if (value)
+            storage.set(bit);
+        else
+            storage.clear(bit);
+        bitsSet = -1;
+        if (tracker != null) {
+            if (value)
+                tracker.mark(bit);
+            else
+                tracker.reset();
+        }
+    }
+
+    /**
+     * Returns the number of bits set in the Bloom filter. The bits are counted
+     * a 64-bit word at a time, and the result is kept until the filter is
+     * modified, so repeated calls on an unchanged filter are free. Changes
+     * made to the storage by others, such as another process mapping the same
+     * file, are only seen after getStorage() has been called.
+     *
+     * @return number of bits set.
+     */
+    public long bitCount() {
+        if (bitsSet < 0)
+            bitsSet = WordOps.bitCount(storage);
+        return bitsSet;
+    }
+
+    /**
+     * Estimates the number of distinct elements in the Bloom filter from the
+     * number of bits set. See {@link BloomFilter#approximateElementCount()}.
+     *
+     * @return estimated number of elements, or Long.MAX_VALUE if all bits are set.
+     */
+    public long approximateElementCount() {
+        return Math.round(estimateCount(bitCount()));
+    }
+
+    /**
+     * Estimates the number of distinct elements in the union of this filter
+     * and another. See {@link BloomFilter#approximateUnionCount(BloomFilter)}.
+     *
+     * @param other filter to compare with. Must have the same size, k and hash strategy.
+     * @return estimated number of elements in either filter, or Long.MAX_VALUE if the union has all bits set.
+     * @throws IllegalArgumentException if the filters are not compatible.
+     */
+    public long approximateUnionCount(LargeBloomFilter<?> other) {
+        checkCompatible(other);
+        return Math.round(estimateCount(unionBitCount(other)));
+    }
+
+    /**
+     * Estimates the number of distinct elements in both this filter and
+     * another. See {@link BloomFilter#approximateIntersectionCount(BloomFilter)}.
+     *
+     * @param other filter to compare with. Must have the same size, k and hash strategy.
+     * @return estimated number of elements in both filters.
+     * @throws IllegalArgumentException if the filters are not compatible.
+     */
+    public long approximateIntersectionCount(LargeBloomFilter<?> other) {
+        checkCompatible(other);
+        return Math.round(estimateIntersection(other, unionBitCount(other)));
+    }
+
+    /**
+     * Estimates the Jaccard similarity of the sets added to this filter and
+     * another. See {@link BloomFilter#approximateJaccardSimilarity(BloomFilter)}.
+     *
+     * @param other filter to compare with. Must have the same size, k and hash strategy.
+     * @return estimated similarity between 0 and 1, or 0 if both filters are empty.
+     * @throws IllegalArgumentException if the filters are not compatible.
+     */
+    public double approximateJaccardSimilarity(LargeBloomFilter<?> other) {
+        checkCompatible(other);
+        long unionBits = unionBitCount(other);
+        double union = estimateCount(unionBits);
+        if (union == 0 || Double.isInfinite(union))
+            return 0;
+        return Math.min(1, estimateIntersection(other, unionBits) / union);
+    }
+
+    private double estimateIntersection(LargeBloomFilter<?> other, long unionBits) {
+        double estimate = estimateCount(bitCount()) + estimateCount(other.bitCount())
+                - estimateCount(unionBits);
+        return Double.isNaN(estimate) ? 0 : Math.max(0, estimate);
+    }
+
+    /**
+     * Counts the bits set in either filter, a word at a time, without copying either filter.
+     */
+    private long unionBitCount(LargeBloomFilter<?> other) {
+        return WordOps.orBitCount(storage, other.storage);
+    }
+
+    private void checkCompatible(LargeBloomFilter<?> other) {
+        if (other.bitSetSize != bitSetSize)
+            throw new IllegalArgumentException("Filters have different sizes: " + bitSetSize + " and " + other.bitSetSize);
+        if (other.k != k)
+            throw new IllegalArgumentException("Filters have different k: " + k + " and " + other.k);
+        if (other.hashStrategy.getId() != hashStrategy.getId())
+            throw new IllegalArgumentException("Filters have different hash strategies: "
+                    + hashStrategy + " and " + other.hashStrategy);
+        if (other.indexReduction != indexReduction)
+            throw new IllegalArgumentException("Filters have different index reductions: "
+                    + indexReduction + " and " + other.indexReduction);
+    }
+
+    /**
+     * Estimates the number of elements in a filter from the number of bits set,
+     * using the formula of Swamidass and Baldi: n = -(m / k) ln(1 - X / m).
+     */
+    private double estimateCount(long bitsSet) {
+        if (bitsSet >= bitSetSize)
+            return Double.POSITIVE_INFINITY;
+        return -(double) bitSetSize / k * Math.log1p(-(double) bitsSet / bitSetSize);
+    }
+
+    /**
+     * Returns the number of bits in the Bloom filter. Use count() to retrieve
+     * the number of inserted elements.
+     *
+     * @return the number of bits used by the Bloom filter.
+     */
+    public long size() {
+        return this.bitSetSize;
+    }
+
+    /**
+     * Returns the number of elements added to the Bloom filter after it
+     * was constructed or after clear() was called. Elements added more than
+     * once are counted each time. See approximateElementCount() for an
+     * estimate based on the bits themselves.
+     *
+     * @return number of elements added to the Bloom filter.
+     */
+    public long count() {
+        return this.numberOfAddedElements;
+    }
+
+    /**
+     * Returns the expected number of elements to be inserted into the filter.
+     * This value is the same value as the one passed to the constructor.
+     *
+     * @return expected number of elements.
+     */
+    public long getExpectedNumberOfElements() {
+        return expectedNumberOfFilterElements;
+    }
+
+    /**
+     * Get expected number of bits per element when the Bloom filter is full.
+     *
+     * @return expected number of bits per element.
+     */
+    public double getExpectedBitsPerElement() {
+        return this.bitSetSize / (double)expectedNumberOfFilterElements;
+    }
+
+    /**
+     * Get actual number of bits per element based on the number of elements that have currently been inserted and the length
+     * of the Bloom filter. See also getExpectedBitsPerElement().
+     *
+     * @return number of bits per element.
+     */
+    public double getBitsPerElement() {
+        return this.bitSetSize / (double)numberOfAddedElements;
+    }
+
+    /**
+     * Starts recording which parts of the Bloom filter change, so replicas of
+     * it can be kept up to date with exportDelta() and applyDelta(). See
+     * BloomFilter.trackChanges(). Calling this method again has no effect.
+     *
+     * @throws IllegalArgumentException if the filter has more than 2^41 bits.
+     */
+    public void trackChanges() {
+        if (tracker == null)
+            tracker = new ChangeTracker(bitSetSize);
+    }
+
+    /**
+     * Returns true if trackChanges() has been called.
+     *
+     * @return true if changes are tracked.
+     */
+    public boolean isTrackingChanges() {
+        return tracker != null;
+    }
+
+    /**
+     * Closes the current version. See BloomFilter.checkpoint().
+     *
+     * @return the version the filter is at.
+     * @throws IllegalStateException if changes are not tracked.
+     */
+    public long checkpoint() {
+        return tracker().checkpoint();
+    }
+
+    /**
+     * Returns the pages changed since a version, and closes the current
+     * version. See BloomFilter.exportDelta(). Deltas from a LargeBloomFilter
+     * can be applied to a BloomFilter of the same size, and the other way
+     * around.
+     *
+     * @param sinceVersion version returned by checkpoint() or by getToVersion() of the previous delta.
+     * @return the delta.
+     * @throws IllegalStateException if changes are not tracked, or bits have been cleared since the version.
+     * @throws IllegalArgumentException if the version has not been closed.
+     */
+    public FilterDelta exportDelta(long sinceVersion) {
+        ChangeTracker tracker = tracker();
+        int[] pages = tracker.changedPages(sinceVersion);
+        long[] words = new long[pages.length * ChangeTracker.PAGE_WORDS];
+        long wordCount = storage.wordCount();
+        for (int i = 0; i < pages.length; i++) {
+            long first = (long) pages[i] * ChangeTracker.PAGE_WORDS;
+            for (int j = 0; j < ChangeTracker.PAGE_WORDS && first + j < wordCount; j++)
+                words[i * ChangeTracker.PAGE_WORDS + j] = storage.getWord(first + j);
+        }
+        return new FilterDelta(hashStrategy.getId(), indexReduction.getId(), k, bitSetSize, sinceVersion,
+                tracker.checkpoint(), numberOfAddedElements, pages, words);
+    }
+
+    /**
+     * Merges a delta exported from another Bloom filter into this filter.
+     * See BloomFilter.applyDelta().
+     *
+     * @param delta delta from a filter with the same size, k and hash strategy.
+     * @throws IllegalArgumentException if the delta is for a different kind of filter.
+     */
+    public void applyDelta(FilterDelta delta) {
+        delta.checkCompatible(bitSetSize, k, hashStrategy, indexReduction);
+        long wordCount = storage.wordCount();
+        long lastMask = (bitSetSize & 63) == 0 ? -1L : (1L << bitSetSize) - 1; // bits of the last word inside the filter
+        for (int i = 0; i < delta.getNumberOfPages(); i++) {
+            int page = delta.page(i);
+            long first = (long) page * ChangeTracker.PAGE_WORDS;
+            WordOps.or(storage, first, delta.words(), i * ChangeTracker.PAGE_WORDS,
+                    (int) Math.min(ChangeTracker.PAGE_WORDS, wordCount - first));
+            if (tracker != null)
+                tracker.markPage(page);
+        }
+        if (lastMask != -1L) // drop bits of the delta past the end of the filter
+            storage.setWord(wordCount - 1, storage.getWord(wordCount - 1) & lastMask);
+        numberOfAddedElements = Math.max(numberOfAddedElements, delta.getCount());
+        bitsSet = -1;
+    }
+
+    private ChangeTracker tracker() {
+        if (tracker == null)
+            throw new IllegalStateException("Changes are not tracked, call trackChanges() first");
+        return tracker;
+    }
+
+    /**
+     * Writes the Bloom filter to a stream in the binary format of
+     * BloomFilter.writeTo(). The stream is not closed.
+     *
+     * @param out stream to write to.
+     * @throws IOException if writing fails.
+     * @throws IllegalArgumentException if the hash strategy is not one of {@link HashStrategies}.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        writeTo(Channels.newChannel(out));
+    }
+
+    /**
+     * Writes the Bloom filter to a channel in the binary format of
+     * BloomFilter.writeTo(). The channel is not closed.
+     *
+     * @param out channel to write to.
+     * @throws IOException if writing fails.
+     * @throws IllegalArgumentException if the hash strategy is not one of {@link HashStrategies}.
+     */
+    public void writeTo(WritableByteChannel out) throws IOException {
+        FilterIO.write(header(), storage, out);
+    }
+
+    /**
+     * Writes the Bloom filter to a stream in a compressed form of the binary
+     * format. The bits are written as they are, run-length encoded or as
+     * Golomb coded distances between set bits, whichever is smallest. A
+     * filter holding far fewer elements than expected is written in a fraction
+     * of the space taken by writeTo(), a full filter in the same space.
+     * <br /><br />
+     * readFrom() reads both forms. Compressed filters can not be opened with
+     * MappedBloomFilter. The stream is not closed.
+     *
+     * @param out stream to write to.
+     * @throws IOException if writing fails.
+     * @throws IllegalArgumentException if the hash strategy is not one of {@link HashStrategies}.
+     */
+    public void writeCompressedTo(OutputStream out) throws IOException {
+        writeCompressedTo(Channels.newChannel(out));
+    }
+
+    /**
+     * Writes the Bloom filter to a channel in compressed form. See
+     * writeCompressedTo(OutputStream). The channel is not closed.
+     *
+     * @param out channel to write to.
+     * @throws IOException if writing fails.
+     * @throws IllegalArgumentException if the hash strategy is not one of {@link HashStrategies}.
+     */
+    public void writeCompressedTo(WritableByteChannel out) throws IOException {
+        FilterIO.writeCompressed(header(), storage, out);
+    }
+
+    private FilterHeader header() {
+        FilterHeader header = new FilterHeader();
+        header.hashStrategyId = HashStrategies.forId(hashStrategy.getId()).getId();
+        header.k = k;
+        header.bits = bitSetSize;
+        header.expectedElements = expectedNumberOfFilterElements;
+        header.count = numberOfAddedElements;
+        header.parameter = indexReduction.getId();
+        return header;
+    }
+
+    /**
+     * Reads a Bloom filter written by writeTo() or writeCompressedTo() into off-heap storage. The
+     * stream is not closed.
+     *
+     * @param <E> Object type that is to be inserted into the Bloom filter.
+     * @param in stream to read from.
+     * @param funnel writes elements into the hash function. Must be the same as for the filter
+     * that was written. If null, the output of toString() is hashed.
+     * @return the Bloom filter.
+     * @throws IOException if reading fails, the data is not a Bloom filter, or there is not enough direct
+     * memory for it.
+     */
+    public static <E> LargeBloomFilter<E> readFrom(InputStream in, Funnel<? super E> funnel) throws IOException {
+        return readFrom(Channels.newChannel(in), funnel);
+    }
+
+    /**
+     * Reads a Bloom filter written by writeTo() or writeCompressedTo() into off-heap storage. The
+     * channel is not closed.
+     *
+     * @param <E> Object type that is to be inserted into the Bloom filter.
+     * @param in channel to read from.
+     * @param funnel writes elements into the hash function. Must be the same as for the filter
+     * that was written. If null, the output of toString() is hashed.
+     * @return the Bloom filter.
+     * @throws IOException if reading fails, the data is not a Bloom filter, or there is not enough direct
+     * memory for it.
+     */
+    public static <E> LargeBloomFilter<E> readFrom(ReadableByteChannel in, Funnel<? super E> funnel) throws IOException {
+        FilterHeader header = FilterIO.readHeader(in);
+        if (header.type != FilterHeader.TYPE_BLOOM)
+            throw new IOException("Unsupported filter type: " + header.type);
+        HashStrategy hashStrategy = header.hashStrategy();
+        if (hashStrategy == HashStrategies.MD5 && header.bits > Integer.MAX_VALUE)
+            throw new IOException("Corrupt header: MD5 can not address more than 2^31 bits, m=" + header.bits);
+        IndexReduction indexReduction = header.indexReduction();
+        BitStorage storage = allocate(header.bits);
+        FilterIO.readWords(header, in, storage);
+        return new LargeBloomFilter<E>(storage, header.expectedElements, header.k,
+                hashStrategy, indexReduction, funnel, header.count);
+    }
+
+    /**
+     * Allocates off-heap storage for a filter that is read, so that a header
+     * asking for more memory than there is fails like other bad input.
+     */
+    private static BitStorage allocate(long bits) throws IOException {
+        try {
+            return new OffHeapBitStorage(bits);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt header: " + e.getMessage());
+        } catch (OutOfMemoryError e) {
+            throw new IOException("Not enough direct memory for a filter of " + bits + " bits", e);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * Bit storage in a memory-mapped region of a file. Mapping is instant and
+ * copies nothing; pages are read from disk by the operating system the first
+ * time they are accessed, and are shared with every other process that maps
+ * the same file.
+ * <br /><br />
+ * The mode decides what happens to writes:
+ * <ul>
+ * <li>MapMode.READ_ONLY: the storage can not be changed.</li>
+ * <li>MapMode.READ_WRITE: changes are written through to the file, and are
+ * visible to other processes mapping it. Use force() to make sure they have
+ * reached the disk.</li>
+ * <li>MapMode.PRIVATE: changes are only visible to this storage, and are never
+ * written to the file.</li>
+ * </ul>
+ * The mapping stays valid after the channel is closed, and is released when
+ * the storage is garbage collected.
+ */
+public class MappedBitStorage extends ByteBufferBitStorage {
+
+    /**
+     * Maps a region of a file as bit storage. The region must already exist in
+     * the file.
+     *
+     * @param channel channel of the file to map.
+     * @param mode how the file is mapped.
+     * @param offset position of the first word in the file.
+     * @param size number of bits.
+     * @throws IOException if the file can not be mapped.
+     */
+    public MappedBitStorage(FileChannel channel, MapMode mode, long offset, long size) throws IOException {
+        this(channel, mode, offset, size, OffHeapBitStorage.DEFAULT_CHUNK_SHIFT);
+    }
+
+    MappedBitStorage(FileChannel channel, MapMode mode, long offset, long size, int chunkShift) throws IOException {
+        super(map(channel, mode, offset, size, chunkShift), size, chunkShift);
+    }
+
+    private static ByteBuffer[] map(FileChannel channel, MapMode mode, long offset, long size, int chunkShift)
+            throws IOException {
+        if (size <= 0)
+            throw new IllegalArgumentException("Invalid size: " + size);
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(size, chunkShift)];
+        long position = offset;
+        for (int i = 0; i < chunks.length; i++) {
+            int bytes = chunkBytes(size, chunkShift, i);
+            chunks[i] = channel.map(mode, position, bytes);
+            position += bytes;
+        }
+        return chunks;
+    }
+
+    /**
+     * Writes any changes to the storage device. Has no effect unless the
+     * storage was mapped with MapMode.READ_WRITE.
+     */
+    public void force() {
+        for (ByteBuffer chunk : chunks())
+            ((MappedByteBuffer) chunk).force();
+    }
+
+    /**
+     * Asks the operating system to read the whole storage into memory, so
+     * that later lookups do not wait for the disk.
+     */
+    public void load() {
+        for (ByteBuffer chunk : chunks())
+            ((MappedByteBuffer) chunk).load();
+    }
+}
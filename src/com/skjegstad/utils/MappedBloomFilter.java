@@ -0,0 +1,207 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A Bloom filter backed by a memory-mapped file.
+ * <br /><br />
+ * Opening a filter maps the file and reads only the 64-byte header, so it
+ * takes the same time regardless of the size of the filter. Nothing is copied
+ * to the heap; pages are read from disk the first time a lookup touches them.
+ * Any number of processes may map the same file, and share the pages in the
+ * operating system's page cache.
+ * <br /><br />
+ * With MapMode.READ_WRITE, add() writes directly to the mapped file and is
+ * immediately visible to other processes that have mapped it. force() writes
+ * the element count to the header and flushes everything to disk. With
+ * MapMode.PRIVATE, changes stay in this process and the file is not modified.
+ * <br /><br />
+ * The file starts with a 64-byte header holding the parameters of the
+ * filter, followed by the 64-bit words of the filter in little-endian order.
+ * This is the format written by BloomFilter.writeTo() and
+ * LargeBloomFilter.writeTo(), so a filter built on the heap can be written
+ * to a file and then mapped.
+ *
+ * @param <E> Object type that is to be inserted into the Bloom filter, e.g. String or Integer.
+ */
+public class MappedBloomFilter<E> extends LargeBloomFilter<E> {
+    private final MappedBitStorage storage;
+    private final MappedByteBuffer header;
+    private final MapMode mode;
+
+    private MappedBloomFilter(MappedBitStorage storage, MappedByteBuffer header, MapMode mode, FilterHeader h,
+            HashStrategy hashStrategy, IndexReduction indexReduction, Funnel<? super E> funnel) {
+        super(storage, h.expectedElements, h.k, hashStrategy, indexReduction, funnel, h.count);
+        this.storage = storage;
+        this.header = header;
+        this.mode = mode;
+        header.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Creates a file holding an empty Bloom filter with a given false positive probability, and
+     * maps it with MapMode.READ_WRITE. An existing file is overwritten.
+     *
+     * @param <E> Object type that is to be inserted into the Bloom filter.
+     * @param file file to create.
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param hashStrategy is the hash strategy used to select bits. Must be one of {@link HashStrategies}.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     * @return the mapped filter.
+     * @throws IOException if the file can not be created.
+     */
+    public static <E> MappedBloomFilter<E> create(File file, double falsePositiveProbability,
+            long expectedNumberOfElements, HashStrategies hashStrategy, Funnel<? super E> funnel) throws IOException {
+        FilterHeader h = new FilterHeader();
+        h.hashStrategyId = hashStrategy.getId();
+        h.k = (int)Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))); // k = ceil(-log_2(false prob.))
+        h.bits = bitSetSize(falsePositiveProbability, expectedNumberOfElements);
+        h.expectedElements = expectedNumberOfElements;
+        return create(file, h, funnel);
+    }
+
+    /**
+     * Creates a file holding an empty Bloom filter with the parameters chosen by a
+     * {@link BloomFilterSpec}, and maps it with MapMode.READ_WRITE. An existing file is overwritten.
+     *
+     * @param <E> Object type that is to be inserted into the Bloom filter.
+     * @param file file to create.
+     * @param spec parameters of the filter. The hash strategy must be one of {@link HashStrategies}.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     * @return the mapped filter.
+     * @throws IOException if the file can not be created.
+     */
+    public static <E> MappedBloomFilter<E> create(File file, BloomFilterSpec spec, Funnel<? super E> funnel)
+            throws IOException {
+        FilterHeader h = new FilterHeader();
+        h.hashStrategyId = HashStrategies.forId(spec.getHashStrategy().getId()).getId();
+        h.k = spec.getK();
+        h.bits = spec.getBits();
+        h.expectedElements = spec.getExpectedElements();
+        h.parameter = spec.getIndexReduction().getId();
+        return create(file, h, funnel);
+    }
+
+    private static <E> MappedBloomFilter<E> create(File file, FilterHeader h, Funnel<? super E> funnel)
+            throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(0);
+            raf.setLength(FilterHeader.SIZE + (h.wordCount() << 3));
+            ByteBuffer buffer = ByteBuffer.allocate(FilterHeader.SIZE);
+            h.write(buffer);
+            buffer.flip();
+            raf.getChannel().write(buffer, 0);
+            return map(raf.getChannel(), MapMode.READ_WRITE, h, funnel);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Maps an existing Bloom filter file.
+     *
+     * @param <E> Object type that is to be inserted into the Bloom filter.
+     * @param file file to map.
+     * @param mode MapMode.READ_ONLY, MapMode.READ_WRITE or MapMode.PRIVATE.
+     * @param funnel writes elements into the hash function. Must be the same as when the filter was created.
+     * @return the mapped filter.
+     * @throws IOException if the file can not be mapped or is not a Bloom filter.
+     */
+    public static <E> MappedBloomFilter<E> open(File file, MapMode mode, Funnel<? super E> funnel) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, mode == MapMode.READ_ONLY ? "r" : "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocate(FilterHeader.SIZE);
+            while (buffer.hasRemaining())
+                if (channel.read(buffer, buffer.position()) < 0)
+                    throw new IOException("Not a Bloom filter: " + file);
+            buffer.flip();
+            FilterHeader h = FilterHeader.read(buffer);
+            if (h.type != FilterHeader.TYPE_BLOOM)
+                throw new IOException("Unsupported filter type: " + h.type);
+            if (h.encoding != FilterHeader.ENCODING_RAW)
+                throw new IOException("Compressed filters can not be mapped, use LargeBloomFilter.readFrom(): " + file);
+            if (channel.size() < FilterHeader.SIZE + (h.wordCount() << 3))
+                throw new IOException("File is truncated: " + file);
+            return map(channel, mode, h, funnel);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Maps an existing Bloom filter file that hashes the output of toString().
+     *
+     * @param <E> Object type that is to be inserted into the Bloom filter.
+     * @param file file to map.
+     * @param mode MapMode.READ_ONLY, MapMode.READ_WRITE or MapMode.PRIVATE.
+     * @return the mapped filter.
+     * @throws IOException if the file can not be mapped or is not a Bloom filter.
+     */
+    public static <E> MappedBloomFilter<E> open(File file, MapMode mode) throws IOException {
+        return open(file, mode, null);
+    }
+
+    private static <E> MappedBloomFilter<E> map(FileChannel channel, MapMode mode, FilterHeader h,
+            Funnel<? super E> funnel) throws IOException {
+        HashStrategy hashStrategy = h.hashStrategy();
+        IndexReduction indexReduction = h.indexReduction();
+        MappedByteBuffer header = channel.map(mode, 0, FilterHeader.SIZE);
+        MappedBitStorage storage = new MappedBitStorage(channel, mode, FilterHeader.SIZE, h.bits);
+        return new MappedBloomFilter<E>(storage, header, mode, h, hashStrategy, indexReduction, funnel);
+    }
+
+    /**
+     * Returns the mode the file was mapped with.
+     *
+     * @return map mode.
+     */
+    public MapMode getMapMode() {
+        return mode;
+    }
+
+    /**
+     * Writes the element count to the header and flushes all changes to the
+     * storage device. Only has an effect if the file was mapped with
+     * MapMode.READ_WRITE.
+     */
+    public void force() {
+        if (mode != MapMode.READ_WRITE)
+            return;
+        header.putLong(FilterHeader.COUNT_OFFSET, count());
+        storage.force();
+        header.force();
+    }
+
+    /**
+     * Asks the operating system to read the whole filter into memory, so that
+     * later lookups do not wait for the disk.
+     */
+    public void load() {
+        storage.load();
+    }
+}
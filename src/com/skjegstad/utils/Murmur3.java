@@ -0,0 +1,190 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+/**
+ * The 128-bit x64 variant of Austin Appleby's MurmurHash3, as described here:
+ * http://code.google.com/p/smhasher/wiki/MurmurHash3
+ *
+ * The output is identical to the reference implementation, so hashes can be
+ * reproduced in other languages.
+ */
+final class Murmur3 {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private Murmur3() {
+    }
+
+    /**
+     * Hashes a range of an array of bytes.
+     *
+     * @param data input data.
+     * @param offset offset of the first byte to hash.
+     * @param length number of bytes to hash.
+     * @param seed hash seed.
+     * @param out array receiving the two 64-bit halves of the hash in out[0] and out[1].
+     */
+    static void hash128(byte[] data, int offset, int length, long seed, long[] out) {
+        long h1 = seed;
+        long h2 = seed;
+
+        int blocks = length >>> 4;
+        for (int i = 0; i < blocks; i++) {
+            int pos = offset + (i << 4);
+            long k1 = getLong(data, pos);
+            long k2 = getLong(data, pos + 8);
+
+            h1 ^= mixK1(k1);
+            h1 = Long.rotateLeft(h1, 27);
+            h1 += h2;
+            h1 = h1 * 5 + 0x52dce729;
+
+            h2 ^= mixK2(k2);
+            h2 = Long.rotateLeft(h2, 31);
+            h2 += h1;
+            h2 = h2 * 5 + 0x38495ab5;
+        }
+
+        long k1 = 0;
+        long k2 = 0;
+        int tail = offset + (blocks << 4);
+        switch (length & 15) {
+            case 15: k2 ^= ((long) data[tail + 14] & 0xff) << 48;
+            case 14: k2 ^= ((long) data[tail + 13] & 0xff) << 40;
+            case 13: k2 ^= ((long) data[tail + 12] & 0xff) << 32;
+            case 12: k2 ^= ((long) data[tail + 11] & 0xff) << 24;
+            case 11: k2 ^= ((long) data[tail + 10] & 0xff) << 16;
+            case 10: k2 ^= ((long) data[tail + 9] & 0xff) << 8;
+            case 9:  k2 ^= ((long) data[tail + 8] & 0xff);
+                     h2 ^= mixK2(k2);
+            case 8:  k1 ^= ((long) data[tail + 7] & 0xff) << 56;
+            case 7:  k1 ^= ((long) data[tail + 6] & 0xff) << 48;
+            case 6:  k1 ^= ((long) data[tail + 5] & 0xff) << 40;
+            case 5:  k1 ^= ((long) data[tail + 4] & 0xff) << 32;
+            case 4:  k1 ^= ((long) data[tail + 3] & 0xff) << 24;
+            case 3:  k1 ^= ((long) data[tail + 2] & 0xff) << 16;
+            case 2:  k1 ^= ((long) data[tail + 1] & 0xff) << 8;
+            case 1:  k1 ^= ((long) data[tail] & 0xff);
+                     h1 ^= mixK1(k1);
+            default:
+        }
+
+        finish(h1, h2, length, out);
+    }
+
+    /**
+     * Hashes a long. Same result as hash128() of its 8 little-endian bytes.
+     *
+     * @param value value to hash.
+     * @param seed hash seed.
+     * @param out array receiving the two 64-bit halves of the hash in out[0] and out[1].
+     */
+    static void hash128(long value, long seed, long[] out) {
+        finish(seed ^ mixK1(value), seed, 8, out);
+    }
+
+    /**
+     * Hashes an int. Same result as hash128() of its 4 little-endian bytes.
+     *
+     * @param value value to hash.
+     * @param seed hash seed.
+     * @param out array receiving the two 64-bit halves of the hash in out[0] and out[1].
+     */
+    static void hash128(int value, long seed, long[] out) {
+        finish(seed ^ mixK1(value & 0xffffffffL), seed, 4, out);
+    }
+
+    /**
+     * Hashes two longs. Same result as hash128() of the 8 little-endian bytes
+     * of <code>first</code> followed by those of <code>second</code>.
+     *
+     * @param first first value to hash.
+     * @param second second value to hash.
+     * @param seed hash seed.
+     * @param out array receiving the two 64-bit halves of the hash in out[0] and out[1].
+     */
+    static void hash128(long first, long second, long seed, long[] out) {
+        long h1 = seed ^ mixK1(first);
+        h1 = Long.rotateLeft(h1, 27);
+        h1 += seed;
+        h1 = h1 * 5 + 0x52dce729;
+
+        long h2 = seed ^ mixK2(second);
+        h2 = Long.rotateLeft(h2, 31);
+        h2 += h1;
+        h2 = h2 * 5 + 0x38495ab5;
+
+        finish(h1, h2, 16, out);
+    }
+
+    private static void finish(long h1, long h2, int length, long[] out) {
+        h1 ^= length;
+        h2 ^= length;
+
+        h1 += h2;
+        h2 += h1;
+
+        h1 = fmix64(h1);
+        h2 = fmix64(h2);
+
+        h1 += h2;
+        h2 += h1;
+
+        out[0] = h1;
+        out[1] = h2;
+    }
+
+    private static long mixK1(long k1) {
+        k1 *= C1;
+        k1 = Long.rotateLeft(k1, 31);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static long mixK2(long k2) {
+        k2 *= C2;
+        k2 = Long.rotateLeft(k2, 33);
+        k2 *= C1;
+        return k2;
+    }
+
+    /**
+     * The MurmurHash3 finalization mix. Forces all bits of a hash block to avalanche.
+     *
+     * @param k value to mix.
+     * @return mixed value.
+     */
+    static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+    private static long getLong(byte[] data, int pos) {
+        return ((long) data[pos] & 0xff)
+                | (((long) data[pos + 1] & 0xff) << 8)
+                | (((long) data[pos + 2] & 0xff) << 16)
+                | (((long) data[pos + 3] & 0xff) << 24)
+                | (((long) data[pos + 4] & 0xff) << 32)
+                | (((long) data[pos + 5] & 0xff) << 40)
+                | (((long) data[pos + 6] & 0xff) << 48)
+                | (((long) data[pos + 7] & 0xff) << 56);
+    }
+}
@@ -0,0 +1,54 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bit storage in direct ByteBuffers, outside the Java heap. The storage is
+ * split into chunks of 1 GB, so the size is only limited by available memory.
+ * Off-heap storage is not scanned or copied by the garbage collector, which
+ * keeps large filters from affecting GC pauses.
+ * <br /><br />
+ * Direct memory is limited by the -XX:MaxDirectMemorySize JVM option, which
+ * defaults to the maximum heap size. The memory is released when the storage
+ * is garbage collected.
+ */
+public class OffHeapBitStorage extends ByteBufferBitStorage {
+    static final int DEFAULT_CHUNK_SHIFT = 27; // 2^27 words = 1 GB per chunk
+
+    /**
+     * Allocates storage with all bits set to false.
+     *
+     * @param size number of bits.
+     */
+    public OffHeapBitStorage(long size) {
+        this(size, DEFAULT_CHUNK_SHIFT);
+    }
+
+    OffHeapBitStorage(long size, int chunkShift) {
+        super(allocate(size, chunkShift), size, chunkShift);
+    }
+
+    private static ByteBuffer[] allocate(long size, int chunkShift) {
+        if (size <= 0)
+            throw new IllegalArgumentException("Invalid size: " + size);
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(size, chunkShift)];
+        for (int i = 0; i < chunks.length; i++)
+            chunks[i] = ByteBuffer.allocateDirect(chunkBytes(size, chunkShift, i));
+        return chunks;
+    }
+}
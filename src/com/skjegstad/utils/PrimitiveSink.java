@@ -0,0 +1,94 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+/**
+ * Receives the bytes written by a {@link Funnel}. Numbers are written in
+ * little-endian order, and strings are written as UTF-8, so writing a long
+ * gives the same bytes as the input hashed by BloomFilter.addLong(long).
+ * <br /><br />
+ * Variable-length values are written without a length prefix. When a key
+ * contains more than one of them, write the length as well, or "ab" + "c"
+ * and "a" + "bc" will hash to the same value.
+ */
+public interface PrimitiveSink {
+
+    /**
+     * Writes a single byte.
+     *
+     * @param b byte to write.
+     * @return this sink.
+     */
+    PrimitiveSink putByte(byte b);
+
+    /**
+     * Writes an array of bytes.
+     *
+     * @param bytes bytes to write.
+     * @return this sink.
+     */
+    PrimitiveSink putBytes(byte[] bytes);
+
+    /**
+     * Writes a range of an array of bytes.
+     *
+     * @param bytes array of bytes.
+     * @param offset offset of the first byte to write.
+     * @param length number of bytes to write.
+     * @return this sink.
+     */
+    PrimitiveSink putBytes(byte[] bytes, int offset, int length);
+
+    /**
+     * Writes a boolean as one byte, 1 for true and 0 for false.
+     *
+     * @param b value to write.
+     * @return this sink.
+     */
+    PrimitiveSink putBoolean(boolean b);
+
+    /**
+     * Writes an int as 4 bytes in little-endian order.
+     *
+     * @param i value to write.
+     * @return this sink.
+     */
+    PrimitiveSink putInt(int i);
+
+    /**
+     * Writes a long as 8 bytes in little-endian order.
+     *
+     * @param l value to write.
+     * @return this sink.
+     */
+    PrimitiveSink putLong(long l);
+
+    /**
+     * Writes a double as the 8 bytes of Double.doubleToLongBits() in little-endian order.
+     *
+     * @param d value to write.
+     * @return this sink.
+     */
+    PrimitiveSink putDouble(double d);
+
+    /**
+     * Writes a string encoded as UTF-8.
+     *
+     * @param s string to write.
+     * @return this sink.
+     */
+    PrimitiveSink putString(CharSequence s);
+}
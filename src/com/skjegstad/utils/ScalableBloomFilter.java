@@ -0,0 +1,435 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A Bloom filter that grows when more elements are added than expected, as
+ * described by Almeida, Baquero, Preguiça and Hutchison in "Scalable Bloom
+ * Filters".
+ * <br /><br />
+ * The filter is a chain of {@link BloomFilter}s. Elements are added to the
+ * newest filter until it holds its expected number of elements. Then a new
+ * filter is added, <code>growthFactor</code> times larger than the previous
+ * one, with a false positive probability that is <code>tighteningRatio</code>
+ * times lower. Filter i therefore has the false positive probability
+ * P * (1 - r) * r^i, and the total false positive probability stays below P
+ * no matter how many elements are added.
+ * <br /><br />
+ * Each element is hashed once. A lookup checks the filters from the newest
+ * to the oldest, since the newest filter is the largest and holds the most
+ * elements. The filter is not thread-safe.
+ *
+ * @param <E> Object type that is to be inserted into the Bloom filter, e.g. String or Integer.
+ */
+public class ScalableBloomFilter<E> implements Serializable {
+    /** Default factor by which each new filter is larger than the previous one. */
+    public static final int DEFAULT_GROWTH_FACTOR = 2;
+    /** Default factor by which the false positive probability of each new filter is lower than the previous one. */
+    public static final double DEFAULT_TIGHTENING_RATIO = 0.85;
+
+    private final List<BloomFilter<E>> filters = new ArrayList<BloomFilter<E>>(); // oldest first
+    private final double falsePositiveProbability;
+    private final int initialCapacity;
+    private final int growthFactor;
+    private final double tighteningRatio;
+    private final HashStrategy hashStrategy; // hash function used to select bits
+    private final Funnel<? super E> funnel; // writes elements into the hash function, null to use toString()
+
+    /**
+     * Constructs an empty scalable Bloom filter.
+     *
+     * @param falsePositiveProbability is the upper bound of the false positive probability.
+     * @param initialCapacity is the expected number of elements in the first filter.
+     * @param growthFactor is the factor by which each new filter is larger than the previous one.
+     * @param tighteningRatio is the factor by which the false positive probability of each new filter
+     * is lower than the previous one. Must be between 0 and 1.
+     * @param hashStrategy is the hash strategy used to select bits.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     */
+    public ScalableBloomFilter(double falsePositiveProbability, int initialCapacity, int growthFactor,
+            double tighteningRatio, HashStrategy hashStrategy, Funnel<? super E> funnel) {
+        if (!(falsePositiveProbability > 0 && falsePositiveProbability < 1))
+            throw new IllegalArgumentException("falsePositiveProbability must be between 0 and 1: " + falsePositiveProbability);
+        if (initialCapacity < 1)
+            throw new IllegalArgumentException("initialCapacity must be positive: " + initialCapacity);
+        if (growthFactor < 1)
+            throw new IllegalArgumentException("growthFactor must be positive: " + growthFactor);
+        if (!(tighteningRatio > 0 && tighteningRatio < 1))
+            throw new IllegalArgumentException("tighteningRatio must be between 0 and 1: " + tighteningRatio);
+        if (hashStrategy == null)
+            throw new NullPointerException("hashStrategy");
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.initialCapacity = initialCapacity;
+        this.growthFactor = growthFactor;
+        this.tighteningRatio = tighteningRatio;
+        this.hashStrategy = hashStrategy;
+        this.funnel = funnel;
+        grow();
+    }
+
+    /**
+     * Constructs an empty scalable Bloom filter with the default growth factor and tightening ratio.
+     *
+     * @param falsePositiveProbability is the upper bound of the false positive probability.
+     * @param initialCapacity is the expected number of elements in the first filter.
+     * @param hashStrategy is the hash strategy used to select bits.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     */
+    public ScalableBloomFilter(double falsePositiveProbability, int initialCapacity, HashStrategy hashStrategy,
+            Funnel<? super E> funnel) {
+        this(falsePositiveProbability, initialCapacity, DEFAULT_GROWTH_FACTOR, DEFAULT_TIGHTENING_RATIO,
+                hashStrategy, funnel);
+    }
+
+    /**
+     * Constructs an empty scalable Bloom filter with the default growth factor and tightening ratio.
+     *
+     * @param falsePositiveProbability is the upper bound of the false positive probability.
+     * @param initialCapacity is the expected number of elements in the first filter.
+     * @param hashStrategy is the hash strategy used to select bits.
+     */
+    public ScalableBloomFilter(double falsePositiveProbability, int initialCapacity, HashStrategy hashStrategy) {
+        this(falsePositiveProbability, initialCapacity, hashStrategy, null);
+    }
+
+    /**
+     * Constructs an empty scalable Bloom filter using {@link HashStrategies#MURMUR3_128}.
+     *
+     * @param falsePositiveProbability is the upper bound of the false positive probability.
+     * @param initialCapacity is the expected number of elements in the first filter.
+     */
+    public ScalableBloomFilter(double falsePositiveProbability, int initialCapacity) {
+        this(falsePositiveProbability, initialCapacity, HashStrategies.MURMUR3_128);
+    }
+
+    /**
+     * Appends a new, larger filter to the chain.
+     */
+    private void grow() {
+        int i = filters.size();
+        double p = falsePositiveProbability * (1 - tighteningRatio) * Math.pow(tighteningRatio, i);
+        double bitsPerElement = Math.ceil(-(Math.log(p) / Math.log(2))) / Math.log(2);
+        double capacity = initialCapacity * Math.pow(growthFactor, i);
+        // a BloomFilter holds at most Integer.MAX_VALUE bits
+        capacity = Math.min(capacity, Math.floor(Integer.MAX_VALUE / bitsPerElement));
+        filters.add(new BloomFilter<E>(p, (int) capacity, hashStrategy, funnel));
+    }
+
+    private BloomFilter<E> newest() {
+        return filters.get(filters.size() - 1);
+    }
+
+    /**
+     * Returns the hash values of the current element in an array that is
+     * long enough for every filter. The newest filter has the highest k.
+     */
+    private long[] hashes(HashBuffer buffer) {
+        return buffer.hashes(newest().getK());
+    }
+
+    /**
+     * Adds an object to the Bloom filter. See {@link BloomFilter#add(Object)}.
+     *
+     * @param element is an element to register in the Bloom filter.
+     */
+    public void add(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        add(buffer, sink.bytes, 0, sink.length);
+    }
+
+    /**
+     * Adds an array of bytes to the Bloom filter.
+     *
+     * @param bytes array of bytes to add to the Bloom filter.
+     */
+    public void add(byte[] bytes) {
+        add(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private void add(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        prepareAdd();
+        BloomFilter<E> filter = newest();
+        long[] hashes = buffer.hashes(filter.getK());
+        hashStrategy.createHashes(bytes, offset, length, hashes, filter.getK());
+        filter.addHashes(hashes);
+    }
+
+    /**
+     * Adds a long to the Bloom filter. See {@link BloomFilter#addLong(long)}.
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addLong(long value) {
+        prepareAdd();
+        BloomFilter<E> filter = newest();
+        long[] hashes = HashBuffer.get().hashes(filter.getK());
+        hashStrategy.createHashes(value, hashes, filter.getK());
+        filter.addHashes(hashes);
+    }
+
+    /**
+     * Adds an int to the Bloom filter. See {@link BloomFilter#addInt(int)}.
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addInt(int value) {
+        prepareAdd();
+        BloomFilter<E> filter = newest();
+        long[] hashes = HashBuffer.get().hashes(filter.getK());
+        hashStrategy.createHashes(value, hashes, filter.getK());
+        filter.addHashes(hashes);
+    }
+
+    /**
+     * Adds a 128-bit value, such as a UUID, to the Bloom filter. See {@link BloomFilter#add(long, long)}.
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     */
+    public void add(long first, long second) {
+        prepareAdd();
+        BloomFilter<E> filter = newest();
+        long[] hashes = HashBuffer.get().hashes(filter.getK());
+        hashStrategy.createHashes(first, second, hashes, filter.getK());
+        filter.addHashes(hashes);
+    }
+
+    /**
+     * Adds a new filter if the newest filter holds its expected number of elements.
+     */
+    private void prepareAdd() {
+        BloomFilter<E> filter = newest();
+        if (filter.count() >= filter.getExpectedNumberOfElements())
+            grow();
+    }
+
+    /**
+     * Adds all elements from a Collection to the Bloom filter.
+     * @param c Collection of elements.
+     */
+    public void addAll(Collection<? extends E> c) {
+        for (E element : c)
+            add(element);
+    }
+
+    /**
+     * Returns true if the element could have been inserted into the Bloom filter.
+     *
+     * @param element element to check.
+     * @return true if the element could have been inserted into the Bloom filter.
+     */
+    public boolean contains(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return contains(buffer, sink.bytes, 0, sink.length);
+    }
+
+    /**
+     * Returns true if the array of bytes could have been inserted into the Bloom filter.
+     *
+     * @param bytes array of bytes to check.
+     * @return true if the array could have been inserted into the Bloom filter.
+     */
+    public boolean contains(byte[] bytes) {
+        return contains(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private boolean contains(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = hashes(buffer);
+        hashStrategy.createHashes(bytes, offset, length, hashes, newest().getK());
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the long could have been inserted into the Bloom filter
+     * with addLong(long).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsLong(long value) {
+        long[] hashes = hashes(HashBuffer.get());
+        hashStrategy.createHashes(value, hashes, newest().getK());
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the int could have been inserted into the Bloom filter
+     * with addInt(int).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsInt(int value) {
+        long[] hashes = hashes(HashBuffer.get());
+        hashStrategy.createHashes(value, hashes, newest().getK());
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the 128-bit value could have been inserted into the Bloom
+     * filter with add(long, long).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean contains(long first, long second) {
+        long[] hashes = hashes(HashBuffer.get());
+        hashStrategy.createHashes(first, second, hashes, newest().getK());
+        return containsHashes(hashes);
+    }
+
+    private boolean containsHashes(long[] hashes) {
+        for (int i = filters.size() - 1; i >= 0; i--)
+            if (filters.get(i).containsHashes(hashes))
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns true if all the elements of a Collection could have been inserted
+     * into the Bloom filter.
+     * @param c elements to check.
+     * @return true if all the elements in c could have been inserted into the Bloom filter.
+     */
+    public boolean containsAll(Collection<? extends E> c) {
+        for (E element : c)
+            if (!contains(element))
+                return false;
+        return true;
+    }
+
+    /**
+     * Removes all elements and filters, leaving a single empty filter of the initial size.
+     */
+    public void clear() {
+        filters.clear();
+        grow();
+    }
+
+    /**
+     * Returns the upper bound of the false positive probability, as passed to the constructor.
+     *
+     * @return upper bound of the false positive probability.
+     */
+    public double expectedFalsePositiveProbability() {
+        return falsePositiveProbability;
+    }
+
+    /**
+     * Get the current probability of a false positive, calculated from the
+     * number of elements in each filter. An element not in the set is a false
+     * positive if it is a false positive in any of the filters.
+     *
+     * @return probability of false positives.
+     */
+    public double getFalsePositiveProbability() {
+        double none = 1;
+        for (BloomFilter<E> filter : filters)
+            none *= 1 - filter.getFalsePositiveProbability();
+        return 1 - none;
+    }
+
+    /**
+     * Returns the number of filters in the chain. Starts at 1, and increases
+     * each time the newest filter is full.
+     *
+     * @return number of filters.
+     */
+    public int getNumberOfFilters() {
+        return filters.size();
+    }
+
+    /**
+     * Returns the total number of bits in all the filters.
+     *
+     * @return number of bits.
+     */
+    public long size() {
+        long size = 0;
+        for (BloomFilter<E> filter : filters)
+            size += filter.size();
+        return size;
+    }
+
+    /**
+     * Returns the number of elements added to the Bloom filter after it
+     * was constructed or after clear() was called.
+     *
+     * @return number of elements added to the Bloom filter.
+     */
+    public long count() {
+        long count = 0;
+        for (BloomFilter<E> filter : filters)
+            count += filter.count();
+        return count;
+    }
+
+    /**
+     * Returns the expected number of elements in the first filter.
+     *
+     * @return initial capacity.
+     */
+    public int getInitialCapacity() {
+        return initialCapacity;
+    }
+
+    /**
+     * Returns the factor by which each new filter is larger than the previous one.
+     *
+     * @return growth factor.
+     */
+    public int getGrowthFactor() {
+        return growthFactor;
+    }
+
+    /**
+     * Returns the factor by which the false positive probability of each new
+     * filter is lower than the previous one.
+     *
+     * @return tightening ratio.
+     */
+    public double getTighteningRatio() {
+        return tighteningRatio;
+    }
+
+    /**
+     * Returns the hash strategy used to select bits in the Bloom filter.
+     *
+     * @return hash strategy.
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Returns the funnel used to hash elements, or null if the output of
+     * toString() is hashed.
+     *
+     * @return funnel or null.
+     */
+    public Funnel<? super E> getFunnel() {
+        return funnel;
+    }
+}
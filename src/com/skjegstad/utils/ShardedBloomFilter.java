@@ -0,0 +1,450 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A thread-safe Bloom filter divided into independent shards, for many
+ * threads adding elements at the same time.
+ * <br /><br />
+ * Each element is routed to one shard by the high bits of its hash, and all
+ * k bits of the element are set within that shard. The shards are separate
+ * regions of the same array, each a whole number of 64-byte cache lines and
+ * separated by a cache line of padding, so writers working in different
+ * shards never write to the same cache line. Each shard keeps its own
+ * element count, also on a cache line of its own.
+ * <br /><br />
+ * Like {@link ConcurrentBloomFilter}, bits are set with compare-and-set and
+ * bits that are already set are not written again. The false positive
+ * probability is close to that of a BloomFilter of the same total size, as
+ * long as each shard holds many elements.
+ *
+ * @param <E> Object type that is to be inserted into the Bloom filter, e.g. String or Integer.
+ */
+public class ShardedBloomFilter<E> implements Serializable {
+    private static final int LINE_WORDS = 8; // longs in a 64-byte cache line
+
+    private final AtomicLongArray words; // shards, each followed by a cache line of padding
+    private final AtomicLongArray counts; // number of elements added to each shard, one per cache line
+    private final int shardCount; // power of two
+    private final int shardSize; // bits in a shard, a multiple of 512
+    private final int shardStride; // words from the start of one shard to the next
+    private final int expectedNumberOfFilterElements; // expected (maximum) number of elements to be added
+    private final int k; // number of hash functions
+    private final HashStrategy hashStrategy; // hash function used to select shards and bits
+    private final Funnel<? super E> funnel; // writes elements into the hash function, null to use toString()
+
+    /**
+      * Constructs an empty sharded Bloom filter with c*n bits in total, rounded up to whole cache lines per shard.
+      *
+      * @param c is the number of bits used per element.
+      * @param n is the expected number of elements the filter will contain.
+      * @param k is the number of hash functions used.
+      * @param shards is the number of shards. Must be a power of two.
+      * @param hashStrategy is the hash strategy used to select shards and bits.
+      * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+      * @throws IllegalArgumentException if a shard would hold more than Integer.MAX_VALUE bits, or the
+      * whole filter more than Integer.MAX_VALUE words.
+      */
+    public ShardedBloomFilter(double c, int n, int k, int shards, HashStrategy hashStrategy, Funnel<? super E> funnel) {
+        if (shards <= 0 || Integer.bitCount(shards) != 1)
+            throw new IllegalArgumentException("shards must be a power of two: " + shards);
+        if (hashStrategy == null)
+            throw new NullPointerException("hashStrategy");
+        this.expectedNumberOfFilterElements = n;
+        this.k = k;
+        this.shardCount = shards;
+        long lines = Math.max(1, (long) Math.ceil(Math.ceil(c * n) / shards / (LINE_WORDS * 64)));
+        if (lines * LINE_WORDS * 64 > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Shards of " + lines * LINE_WORDS * 64
+                    + " bits are too large, use more shards");
+        long totalWords = LINE_WORDS + shards * (lines + 1) * LINE_WORDS;
+        if (totalWords > Integer.MAX_VALUE - LINE_WORDS)
+            throw new IllegalArgumentException("Filter is too large: " + totalWords * 64 + " bits");
+        this.shardSize = (int) (lines * LINE_WORDS * 64);
+        this.shardStride = (int) ((lines + 1) * LINE_WORDS);
+        this.hashStrategy = hashStrategy;
+        this.funnel = funnel;
+        this.words = new AtomicLongArray((int) totalWords);
+        this.counts = new AtomicLongArray((shards + 1) * LINE_WORDS);
+    }
+
+    /**
+     * Constructs an empty sharded Bloom filter with a given false positive probability.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param shards is the number of shards. Must be a power of two.
+     * @param hashStrategy is the hash strategy used to select shards and bits.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     */
+    public ShardedBloomFilter(double falsePositiveProbability, int expectedNumberOfElements, int shards,
+            HashStrategy hashStrategy, Funnel<? super E> funnel) {
+        this(Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))) / Math.log(2), // c = k / ln(2)
+             expectedNumberOfElements,
+             (int)Math.ceil(-(Math.log(falsePositiveProbability) / Math.log(2))), // k = ceil(-log_2(false prob.))
+             shards,
+             hashStrategy,
+             funnel);
+    }
+
+    /**
+     * Constructs an empty sharded Bloom filter with a given false positive probability.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     * @param shards is the number of shards. Must be a power of two.
+     * @param hashStrategy is the hash strategy used to select shards and bits.
+     */
+    public ShardedBloomFilter(double falsePositiveProbability, int expectedNumberOfElements, int shards,
+            HashStrategy hashStrategy) {
+        this(falsePositiveProbability, expectedNumberOfElements, shards, hashStrategy, null);
+    }
+
+    /**
+     * Constructs an empty sharded Bloom filter with a given false positive probability, using
+     * {@link HashStrategies#MURMUR3_128} and four shards per available processor.
+     *
+     * @param falsePositiveProbability is the desired false positive probability.
+     * @param expectedNumberOfElements is the expected number of elements in the Bloom filter.
+     */
+    public ShardedBloomFilter(double falsePositiveProbability, int expectedNumberOfElements) {
+        this(falsePositiveProbability, expectedNumberOfElements, defaultShards(), HashStrategies.MURMUR3_128);
+    }
+
+    private static int defaultShards() {
+        int shards = 4 * Runtime.getRuntime().availableProcessors();
+        return Integer.highestOneBit(shards) < shards ? Integer.highestOneBit(shards) << 1 : shards;
+    }
+
+    /**
+     * Calculates the expected probability of false positives when the filter
+     * holds the expected number of elements, spread evenly over the shards.
+     *
+     * @return expected probability of false positives.
+     */
+    public double expectedFalsePositiveProbability() {
+        return shardFalsePositiveProbability(expectedNumberOfFilterElements / (double) shardCount);
+    }
+
+    /**
+     * Get the current probability of a false positive. A lookup is routed to
+     * a random shard, so this is the average of the probabilities of the
+     * shards, each calculated from the number of elements in the shard.
+     *
+     * @return probability of false positives.
+     */
+    public double getFalsePositiveProbability() {
+        double sum = 0;
+        for (int shard = 0; shard < shardCount; shard++)
+            sum += shardFalsePositiveProbability(count(shard));
+        return sum / shardCount;
+    }
+
+    private double shardFalsePositiveProbability(double numberOfElements) {
+        // (1 - e^(-k * n / m)) ^ k
+        return Math.pow((1 - Math.exp(-k * numberOfElements / (double) shardSize)), k);
+    }
+
+    /**
+     * Returns the number of hash functions used by the filter.
+     *
+     * @return k.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the hash strategy used to select shards and bits.
+     *
+     * @return hash strategy.
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Returns the funnel used to hash elements, or null if the output of
+     * toString() is hashed.
+     *
+     * @return funnel or null.
+     */
+    public Funnel<? super E> getFunnel() {
+        return funnel;
+    }
+
+    /**
+     * Sets all bits to false in the Bloom filter. Not atomic with respect to
+     * concurrent calls to add().
+     */
+    public void clear() {
+        for (int i = 0; i < words.length(); i++)
+            words.set(i, 0);
+        for (int shard = 0; shard < shardCount; shard++)
+            counts.set((shard + 1) * LINE_WORDS, 0);
+    }
+
+    /**
+     * Adds an object to the Bloom filter. If the filter was created with a
+     * {@link Funnel}, the bytes written by the funnel are used as input to the
+     * hash functions. Otherwise the output from the object's toString() method
+     * is used.
+     *
+     * @param element is an element to register in the Bloom filter.
+     */
+    public void add(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        add(buffer, sink.bytes, 0, sink.length);
+    }
+
+    /**
+     * Adds an array of bytes to the Bloom filter.
+     *
+     * @param bytes array of bytes to add to the Bloom filter.
+     */
+    public void add(byte[] bytes) {
+        add(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private void add(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(bytes, offset, length, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds a long to the Bloom filter. See {@link BloomFilter#addLong(long)}.
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds an int to the Bloom filter. See {@link BloomFilter#addInt(int)}.
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        addHashes(hashes);
+    }
+
+    /**
+     * Adds a 128-bit value, such as a UUID, to the Bloom filter. See {@link BloomFilter#add(long, long)}.
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     */
+    public void add(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        addHashes(hashes);
+    }
+
+    private void addHashes(long[] hashes) {
+        int shard = shard(hashes[0]);
+        int base = LINE_WORDS + shard * shardStride;
+        for (int i = 0; i < k; i++) {
+            int bit = (int) Math.abs(hashes[i] % shardSize);
+            setBit(base + (bit >>> 6), 1L << bit);
+        }
+        counts.incrementAndGet((shard + 1) * LINE_WORDS);
+    }
+
+    /**
+     * Returns the shard of an element, taken from the high bits of its first
+     * hash value after mixing. MD5 hash values are sign-extended ints, so the
+     * unmixed high bits would only select two shards.
+     */
+    private int shard(long hash) {
+        return (int) (Murmur3.fmix64(hash) >>> 32) & (shardCount - 1);
+    }
+
+    private void setBit(int i, long mask) {
+        long word;
+        do {
+            word = words.get(i);
+            if ((word & mask) != 0)
+                return; // already set, avoid writing to a shared cache line
+        } while (!words.compareAndSet(i, word, word | mask));
+    }
+
+    /**
+     * Adds all elements from a Collection to the Bloom filter.
+     * @param c Collection of elements.
+     */
+    public void addAll(Collection<? extends E> c) {
+        for (E element : c)
+            add(element);
+    }
+
+    /**
+     * Returns true if the element could have been inserted into the Bloom filter.
+     *
+     * @param element element to check.
+     * @return true if the element could have been inserted into the Bloom filter.
+     */
+    public boolean contains(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return contains(buffer, sink.bytes, 0, sink.length);
+    }
+
+    /**
+     * Returns true if the array of bytes could have been inserted into the Bloom filter.
+     *
+     * @param bytes array of bytes to check.
+     * @return true if the array could have been inserted into the Bloom filter.
+     */
+    public boolean contains(byte[] bytes) {
+        return contains(HashBuffer.get(), bytes, 0, bytes.length);
+    }
+
+    private boolean contains(HashBuffer buffer, byte[] bytes, int offset, int length) {
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(bytes, offset, length, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the long could have been inserted into the Bloom filter
+     * with addLong(long).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the int could have been inserted into the Bloom filter
+     * with addInt(int).
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the 128-bit value could have been inserted into the Bloom
+     * filter with add(long, long).
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean contains(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        return containsHashes(hashes);
+    }
+
+    private boolean containsHashes(long[] hashes) {
+        int base = LINE_WORDS + shard(hashes[0]) * shardStride;
+        for (int i = 0; i < k; i++) {
+            int bit = (int) Math.abs(hashes[i] % shardSize);
+            if ((words.get(base + (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if all the elements of a Collection could have been inserted
+     * into the Bloom filter.
+     * @param c elements to check.
+     * @return true if all the elements in c could have been inserted into the Bloom filter.
+     */
+    public boolean containsAll(Collection<? extends E> c) {
+        for (E element : c)
+            if (!contains(element))
+                return false;
+        return true;
+    }
+
+    /**
+     * Returns the number of shards.
+     *
+     * @return number of shards.
+     */
+    public int getNumberOfShards() {
+        return shardCount;
+    }
+
+    /**
+     * Returns the number of bits in the Bloom filter, not counting the
+     * padding between shards. Use count() to retrieve the number of inserted
+     * elements.
+     *
+     * @return the number of bits in all the shards.
+     */
+    public long size() {
+        return (long) shardSize * shardCount;
+    }
+
+    /**
+     * Returns the number of elements added to the Bloom filter after it
+     * was constructed or after clear() was called.
+     *
+     * @return number of elements added to the Bloom filter.
+     */
+    public long count() {
+        long count = 0;
+        for (int shard = 0; shard < shardCount; shard++)
+            count += count(shard);
+        return count;
+    }
+
+    /**
+     * Returns the number of elements added to one shard.
+     *
+     * @param shard shard number, from 0 to getNumberOfShards() - 1.
+     * @return number of elements added to the shard.
+     */
+    public long count(int shard) {
+        if (shard < 0 || shard >= shardCount)
+            throw new IndexOutOfBoundsException("shard: " + shard);
+        return counts.get((shard + 1) * LINE_WORDS);
+    }
+
+    /**
+     * Returns the expected number of elements to be inserted into the filter.
+     * This value is the same value as the one passed to the constructor.
+     *
+     * @return expected number of elements.
+     */
+    public int getExpectedNumberOfElements() {
+        return expectedNumberOfFilterElements;
+    }
+}
@@ -0,0 +1,550 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A Bloom filter that only remembers the elements added within a window,
+ * either a period of time or a number of additions. It can be used to drop
+ * duplicates from a stream of events without the filter filling up.
+ * <br /><br />
+ * The filter is a ring of equally sized {@link BloomFilter}s, called
+ * generations. Elements are added to the current generation, and lookups
+ * check all of them. When the current generation ends, the oldest
+ * generation is cleared and becomes the current one, so expiring elements
+ * does not allocate memory, and the elements of the newer generations stay
+ * in the filter. Clearing a single filter on a timer instead would forget
+ * everything at once.
+ * <br /><br />
+ * With g generations, the window is divided into g - 1 generations, and the
+ * extra generation is the one being filled. A time-windowed filter therefore
+ * remembers each element for at least the window and at most g / (g - 1)
+ * times the window. A count-windowed filter starts a new generation each
+ * time the current one holds its expected number of elements, and remembers
+ * each element for at least the next (g - 1) * expectedElementsPerGeneration
+ * additions.
+ * <br /><br />
+ * Each element is hashed once. The false positive probability is at most
+ * 1 - (1 - p)^g, where p is the false positive probability of a full
+ * generation. A time-windowed filter must be sized for the number of elements
+ * that arrive during one generation, window / (g - 1). The filter is not
+ * thread-safe.
+ *
+ * @param <E> Object type that is to be inserted into the Bloom filter, e.g. String or Integer.
+ */
+public class SlidingWindowBloomFilter<E> implements Serializable {
+    private final List<BloomFilter<E>> generations; // ring of generations, all with the same size and k
+    private final int k; // number of hash functions
+    private final double falsePositiveProbability; // of a single full generation
+    private final int expectedElementsPerGeneration;
+    private final long generationNanos; // length of a generation, 0 if the window is a number of additions
+    private final HashStrategy hashStrategy; // hash function used to select bits
+    private final Funnel<? super E> funnel; // writes elements into the hash function, null to use toString()
+    private int current; // index of the generation elements are added to
+    private transient long generationStart; // System.nanoTime() when the current generation started
+
+    /**
+     * Constructs an empty filter that remembers elements for a number of additions.
+     *
+     * @param falsePositiveProbability is the false positive probability of each generation when full.
+     * @param expectedElementsPerGeneration is the number of elements added to a generation before the next one starts.
+     * @param generations is the number of generations, at least 2.
+     * @param hashStrategy is the hash strategy used to select bits.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     */
+    public SlidingWindowBloomFilter(double falsePositiveProbability, int expectedElementsPerGeneration,
+            int generations, HashStrategy hashStrategy, Funnel<? super E> funnel) {
+        this(falsePositiveProbability, expectedElementsPerGeneration, generations, 0, hashStrategy, funnel);
+    }
+
+    /**
+     * Constructs an empty filter that remembers elements for a number of
+     * additions, using {@link HashStrategies#MURMUR3_128}.
+     *
+     * @param falsePositiveProbability is the false positive probability of each generation when full.
+     * @param expectedElementsPerGeneration is the number of elements added to a generation before the next one starts.
+     * @param generations is the number of generations, at least 2.
+     */
+    public SlidingWindowBloomFilter(double falsePositiveProbability, int expectedElementsPerGeneration,
+            int generations) {
+        this(falsePositiveProbability, expectedElementsPerGeneration, generations, HashStrategies.MURMUR3_128, null);
+    }
+
+    /**
+     * Constructs an empty filter that remembers elements for a period of time.
+     *
+     * @param falsePositiveProbability is the false positive probability of each generation when full.
+     * @param expectedElementsPerGeneration is the number of elements expected during window / (generations - 1).
+     * @param generations is the number of generations, at least 2.
+     * @param window is the minimum time an element is remembered.
+     * @param unit is the unit of <code>window</code>.
+     * @param hashStrategy is the hash strategy used to select bits.
+     * @param funnel writes elements into the hash function. If null, the output of toString() is hashed.
+     */
+    public SlidingWindowBloomFilter(double falsePositiveProbability, int expectedElementsPerGeneration,
+            int generations, long window, TimeUnit unit, HashStrategy hashStrategy, Funnel<? super E> funnel) {
+        this(falsePositiveProbability, expectedElementsPerGeneration, generations,
+                generationNanos(window, unit, generations), hashStrategy, funnel);
+    }
+
+    /**
+     * Constructs an empty filter that remembers elements for a period of
+     * time, using {@link HashStrategies#MURMUR3_128}.
+     *
+     * @param falsePositiveProbability is the false positive probability of each generation when full.
+     * @param expectedElementsPerGeneration is the number of elements expected during window / (generations - 1).
+     * @param generations is the number of generations, at least 2.
+     * @param window is the minimum time an element is remembered.
+     * @param unit is the unit of <code>window</code>.
+     */
+    public SlidingWindowBloomFilter(double falsePositiveProbability, int expectedElementsPerGeneration,
+            int generations, long window, TimeUnit unit) {
+        this(falsePositiveProbability, expectedElementsPerGeneration, generations, window, unit,
+                HashStrategies.MURMUR3_128, null);
+    }
+
+    private SlidingWindowBloomFilter(double falsePositiveProbability, int expectedElementsPerGeneration,
+            int generations, long generationNanos, HashStrategy hashStrategy, Funnel<? super E> funnel) {
+        if (!(falsePositiveProbability > 0 && falsePositiveProbability < 1))
+            throw new IllegalArgumentException("falsePositiveProbability must be between 0 and 1: " + falsePositiveProbability);
+        if (expectedElementsPerGeneration < 1)
+            throw new IllegalArgumentException("expectedElementsPerGeneration must be positive: " + expectedElementsPerGeneration);
+        if (generations < 2)
+            throw new IllegalArgumentException("generations must be at least 2: " + generations);
+        if (hashStrategy == null)
+            throw new NullPointerException("hashStrategy");
+        this.falsePositiveProbability = falsePositiveProbability;
+        this.expectedElementsPerGeneration = expectedElementsPerGeneration;
+        this.generationNanos = generationNanos;
+        this.hashStrategy = hashStrategy;
+        this.funnel = funnel;
+        this.generations = new ArrayList<BloomFilter<E>>(generations);
+        for (int i = 0; i < generations; i++)
+            this.generations.add(new BloomFilter<E>(falsePositiveProbability, expectedElementsPerGeneration,
+                    hashStrategy, funnel));
+        this.k = this.generations.get(0).getK();
+        this.generationStart = nanoTime();
+    }
+
+    private static long generationNanos(long window, TimeUnit unit, int generations) {
+        if (window <= 0)
+            throw new IllegalArgumentException("window must be positive: " + window);
+        if (generations < 2)
+            throw new IllegalArgumentException("generations must be at least 2: " + generations);
+        return Math.max(1, unit.toNanos(window) / (generations - 1));
+    }
+
+    /**
+     * Returns the current value of System.nanoTime(). Tests override it to
+     * control time.
+     */
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        generationStart = nanoTime(); // nanoTime() values are not comparable between JVMs
+    }
+
+    /**
+     * Starts a new generation, by clearing the oldest generation and adding
+     * elements to it from now on. Elements added to the oldest generation are
+     * forgotten. Time-windowed filters do this automatically, but the
+     * method may be called to drive the window from an external clock.
+     */
+    public void rotate() {
+        next();
+        generationStart = nanoTime();
+    }
+
+    private void next() {
+        current = current + 1 == generations.size() ? 0 : current + 1;
+        generations.get(current).clear();
+    }
+
+    /**
+     * Expires the generations that have ended, in time-windowed filters.
+     */
+    private void expire() {
+        if (generationNanos == 0)
+            return;
+        long ended = (nanoTime() - generationStart) / generationNanos;
+        if (ended <= 0)
+            return;
+        for (long i = Math.min(ended, generations.size()); i > 0; i--)
+            next();
+        generationStart += ended * generationNanos;
+    }
+
+    /**
+     * Returns the generation to add an element to, after starting a new
+     * generation if the window has moved.
+     */
+    private BloomFilter<E> prepareAdd() {
+        expire();
+        BloomFilter<E> filter = generations.get(current);
+        if (generationNanos == 0 && filter.count() >= expectedElementsPerGeneration) {
+            next();
+            filter = generations.get(current);
+        }
+        return filter;
+    }
+
+    /**
+     * Adds an object to the Bloom filter. See {@link BloomFilter#add(Object)}.
+     *
+     * @param element is an element to register in the Bloom filter.
+     */
+    public void add(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        prepareAdd().addHashes(hashes(buffer, sink.bytes, sink.length));
+    }
+
+    private long[] hashes(HashBuffer buffer, byte[] bytes, int length) {
+        long[] hashes = buffer.hashes(k);
+        hashStrategy.createHashes(bytes, 0, length, hashes, k);
+        return hashes;
+    }
+
+    /**
+     * Adds an array of bytes to the Bloom filter.
+     *
+     * @param bytes array of bytes to add to the Bloom filter.
+     */
+    public void add(byte[] bytes) {
+        prepareAdd().addHashes(hashes(HashBuffer.get(), bytes, bytes.length));
+    }
+
+    /**
+     * Adds a long to the Bloom filter. See {@link BloomFilter#addLong(long)}.
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        prepareAdd().addHashes(hashes);
+    }
+
+    /**
+     * Adds an int to the Bloom filter. See {@link BloomFilter#addInt(int)}.
+     *
+     * @param value value to add to the Bloom filter.
+     */
+    public void addInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        prepareAdd().addHashes(hashes);
+    }
+
+    /**
+     * Adds a 128-bit value, such as a UUID, to the Bloom filter. See {@link BloomFilter#add(long, long)}.
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     */
+    public void add(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        prepareAdd().addHashes(hashes);
+    }
+
+    /**
+     * Adds all elements from a Collection to the Bloom filter.
+     * @param c Collection of elements.
+     */
+    public void addAll(Collection<? extends E> c) {
+        for (E element : c)
+            add(element);
+    }
+
+    /**
+     * Adds an object to the Bloom filter unless it is already there, hashing
+     * it only once. An element found in an older generation is not added
+     * again, so it is forgotten one window after it was first added. This is
+     * the test to use for dropping duplicates from a stream.
+     *
+     * @param element is an element to register in the Bloom filter.
+     * @return true if the element was added, false if it could have been added before.
+     */
+    public boolean addIfAbsent(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        return addIfAbsent(hashes(buffer, sink.bytes, sink.length));
+    }
+
+    /**
+     * Adds an array of bytes to the Bloom filter unless it is already there.
+     * See addIfAbsent(Object).
+     *
+     * @param bytes array of bytes to add to the Bloom filter.
+     * @return true if the array was added, false if it could have been added before.
+     */
+    public boolean addIfAbsent(byte[] bytes) {
+        return addIfAbsent(hashes(HashBuffer.get(), bytes, bytes.length));
+    }
+
+    /**
+     * Adds a long to the Bloom filter unless it is already there. See
+     * addIfAbsent(Object).
+     *
+     * @param value value to add to the Bloom filter.
+     * @return true if the value was added, false if it could have been added before.
+     */
+    public boolean addLongIfAbsent(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return addIfAbsent(hashes);
+    }
+
+    /**
+     * Adds an int to the Bloom filter unless it is already there. See
+     * addIfAbsent(Object).
+     *
+     * @param value value to add to the Bloom filter.
+     * @return true if the value was added, false if it could have been added before.
+     */
+    public boolean addIntIfAbsent(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        return addIfAbsent(hashes);
+    }
+
+    private boolean addIfAbsent(long[] hashes) {
+        BloomFilter<E> filter = prepareAdd();
+        if (containsHashes(hashes))
+            return false;
+        filter.addHashes(hashes);
+        return true;
+    }
+
+    /**
+     * Returns true if the element could have been inserted into the Bloom
+     * filter within the window.
+     *
+     * @param element element to check.
+     * @return true if the element could have been inserted into the Bloom filter.
+     */
+    public boolean contains(E element) {
+        HashBuffer buffer = HashBuffer.get();
+        ByteSink sink = buffer.sink(funnel, element);
+        long[] hashes = hashes(buffer, sink.bytes, sink.length);
+        expire();
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the array of bytes could have been inserted into the
+     * Bloom filter within the window.
+     *
+     * @param bytes array of bytes to check.
+     * @return true if the array could have been inserted into the Bloom filter.
+     */
+    public boolean contains(byte[] bytes) {
+        long[] hashes = hashes(HashBuffer.get(), bytes, bytes.length);
+        expire();
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the long could have been inserted into the Bloom filter
+     * with addLong(long) within the window.
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsLong(long value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        expire();
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the int could have been inserted into the Bloom filter
+     * with addInt(int) within the window.
+     *
+     * @param value value to check.
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean containsInt(int value) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(value, hashes, k);
+        expire();
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Returns true if the 128-bit value could have been inserted into the Bloom
+     * filter with add(long, long) within the window.
+     *
+     * @param first first half of the value, e.g. UUID.getMostSignificantBits().
+     * @param second second half of the value, e.g. UUID.getLeastSignificantBits().
+     * @return true if the value could have been inserted into the Bloom filter.
+     */
+    public boolean contains(long first, long second) {
+        long[] hashes = HashBuffer.get().hashes(k);
+        hashStrategy.createHashes(first, second, hashes, k);
+        expire();
+        return containsHashes(hashes);
+    }
+
+    /**
+     * Checks the generations from the newest to the oldest, since recent
+     * elements are the most likely to be looked up again.
+     */
+    private boolean containsHashes(long[] hashes) {
+        int n = generations.size();
+        for (int i = 0, g = current; i < n; i++, g = g == 0 ? n - 1 : g - 1)
+            if (generations.get(g).containsHashes(hashes))
+                return true;
+        return false;
+    }
+
+    /**
+     * Returns true if all the elements of a Collection could have been inserted
+     * into the Bloom filter within the window.
+     * @param c elements to check.
+     * @return true if all the elements in c could have been inserted into the Bloom filter.
+     */
+    public boolean containsAll(Collection<? extends E> c) {
+        for (E element : c)
+            if (!contains(element))
+                return false;
+        return true;
+    }
+
+    /**
+     * Removes all elements, and starts a new generation.
+     */
+    public void clear() {
+        for (BloomFilter<E> filter : generations)
+            filter.clear();
+        current = 0;
+        generationStart = nanoTime();
+    }
+
+    /**
+     * Returns the upper bound of the false positive probability when every
+     * generation holds its expected number of elements.
+     *
+     * @return upper bound of the false positive probability.
+     */
+    public double expectedFalsePositiveProbability() {
+        return 1 - Math.pow(1 - falsePositiveProbability, generations.size());
+    }
+
+    /**
+     * Get the current probability of a false positive, calculated from the
+     * number of elements in each generation. An element not in the set is a
+     * false positive if it is a false positive in any of the generations.
+     *
+     * @return probability of false positives.
+     */
+    public double getFalsePositiveProbability() {
+        double none = 1;
+        for (BloomFilter<E> filter : generations)
+            none *= 1 - filter.getFalsePositiveProbability();
+        return 1 - none;
+    }
+
+    /**
+     * Returns the number of generations.
+     *
+     * @return number of generations.
+     */
+    public int getNumberOfGenerations() {
+        return generations.size();
+    }
+
+    /**
+     * Returns the expected number of elements in each generation.
+     *
+     * @return expected number of elements per generation.
+     */
+    public int getExpectedElementsPerGeneration() {
+        return expectedElementsPerGeneration;
+    }
+
+    /**
+     * Returns the length of a generation in nanoseconds, or 0 if the window
+     * is a number of additions.
+     *
+     * @return length of a generation.
+     */
+    public long getGenerationNanos() {
+        return generationNanos;
+    }
+
+    /**
+     * Returns the total number of bits in all the generations.
+     *
+     * @return number of bits.
+     */
+    public long size() {
+        return (long) generations.size() * generations.get(0).size();
+    }
+
+    /**
+     * Returns the number of elements added to the generations that have not
+     * expired yet.
+     *
+     * @return number of elements in the window.
+     */
+    public long count() {
+        long count = 0;
+        for (BloomFilter<E> filter : generations)
+            count += filter.count();
+        return count;
+    }
+
+    /**
+     * Returns the number of hash functions used by each generation.
+     *
+     * @return k.
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * Returns the hash strategy used to select bits in the Bloom filter.
+     *
+     * @return hash strategy.
+     */
+    public HashStrategy getHashStrategy() {
+        return hashStrategy;
+    }
+
+    /**
+     * Returns the funnel used to hash elements, or null if the output of
+     * toString() is hashed.
+     *
+     * @return funnel or null.
+     */
+    public Funnel<? super E> getFunnel() {
+        return funnel;
+    }
+}
@@ -0,0 +1,106 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+/**
+ * Bulk operations on the words of bit storage: counting the bits set, and
+ * OR-ing words into storage when merging. Storage on the heap is processed
+ * as a plain long array, in simple counted loops that the JIT compiler
+ * unrolls and compiles to POPCNT and, where the CPU has them, vector OR
+ * instructions. Other storage is processed a word at a time through the
+ * BitStorage interface.
+ * <br /><br />
+ * There is no AND: no filter intersects word arrays. BloomFilter.intersect()
+ * works on a BitSet, whose and() is already a word loop.
+ * <br /><br />
+ * Bit positions for add() and contains() are not computed here in batches.
+ * Hashing the element takes most of the time of a lookup, and the ways of
+ * reducing a hash to a position differ by a few nanoseconds (see
+ * IndexReductionBenchmark), so there is little left to gain.
+ */
+final class WordOps {
+
+    private WordOps() {
+    }
+
+    private static long[] words(BitStorage storage) {
+        return storage instanceof HeapBitStorage ? ((HeapBitStorage) storage).words() : null;
+    }
+
+    /**
+     * Returns the number of bits set in the storage.
+     */
+    static long bitCount(BitStorage storage) {
+        long[] words = words(storage);
+        if (words != null)
+            return bitCount(words);
+        long n = 0;
+        for (long i = 0, count = storage.wordCount(); i < count; i++)
+            n += Long.bitCount(storage.getWord(i));
+        return n;
+    }
+
+    static long bitCount(long[] words) {
+        long n = 0;
+        for (int i = 0; i < words.length; i++)
+            n += Long.bitCount(words[i]);
+        return n;
+    }
+
+    /**
+     * Returns the number of bits set in either of two storages of the same size.
+     */
+    static long orBitCount(BitStorage a, BitStorage b) {
+        long[] x = words(a);
+        long[] y = words(b);
+        if (x != null && y != null)
+            return orBitCount(x, y);
+        long n = 0;
+        for (long i = 0, count = a.wordCount(); i < count; i++)
+            n += Long.bitCount(a.getWord(i) | b.getWord(i));
+        return n;
+    }
+
+    static long orBitCount(long[] a, long[] b) {
+        long n = 0;
+        for (int i = 0; i < a.length; i++)
+            n += Long.bitCount(a[i] | b[i]);
+        return n;
+    }
+
+    /**
+     * Sets the bits of <code>length</code> words of <code>into</code>, starting
+     * at word <code>intoIndex</code>, that are set in the words of
+     * <code>from</code> starting at <code>fromIndex</code>.
+     */
+    static void or(BitStorage into, long intoIndex, long[] from, int fromIndex, int length) {
+        long[] words = words(into);
+        if (words != null) {
+            or(words, (int) intoIndex, from, fromIndex, length);
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            long word = from[fromIndex + i];
+            if (word != 0)
+                into.setWord(intoIndex + i, into.getWord(intoIndex + i) | word);
+        }
+    }
+
+    static void or(long[] into, int intoIndex, long[] from, int fromIndex, int length) {
+        for (int i = 0; i < length; i++)
+            into[intoIndex + i] |= from[fromIndex + i];
+    }
+}
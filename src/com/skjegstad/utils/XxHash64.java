@@ -0,0 +1,178 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+/**
+ * Yann Collet's 64-bit xxHash, as described here:
+ * https://github.com/Cyan4973/xxHash
+ *
+ * The output is identical to the reference implementation, so hashes can be
+ * reproduced in other languages.
+ */
+final class XxHash64 {
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private XxHash64() {
+    }
+
+    /**
+     * Hashes a range of an array of bytes.
+     *
+     * @param data input data.
+     * @param offset offset of the first byte to hash.
+     * @param length number of bytes to hash.
+     * @param seed hash seed.
+     * @return 64-bit hash.
+     */
+    static long hash(byte[] data, int offset, int length, long seed) {
+        int pos = offset;
+        int end = offset + length;
+        long h;
+
+        if (length >= 32) {
+            long v1 = seed + P1 + P2;
+            long v2 = seed + P2;
+            long v3 = seed;
+            long v4 = seed - P1;
+            int limit = end - 32;
+            do {
+                v1 = round(v1, getLong(data, pos));
+                v2 = round(v2, getLong(data, pos + 8));
+                v3 = round(v3, getLong(data, pos + 16));
+                v4 = round(v4, getLong(data, pos + 24));
+                pos += 32;
+            } while (pos <= limit);
+
+            h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                    + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            h = mergeRound(h, v1);
+            h = mergeRound(h, v2);
+            h = mergeRound(h, v3);
+            h = mergeRound(h, v4);
+        } else {
+            h = seed + P5;
+        }
+
+        h += length;
+
+        while (pos + 8 <= end) {
+            h ^= round(0, getLong(data, pos));
+            h = Long.rotateLeft(h, 27) * P1 + P4;
+            pos += 8;
+        }
+        if (pos + 4 <= end) {
+            h ^= (getInt(data, pos) & 0xffffffffL) * P1;
+            h = Long.rotateLeft(h, 23) * P2 + P3;
+            pos += 4;
+        }
+        while (pos < end) {
+            h ^= (data[pos] & 0xff) * P5;
+            h = Long.rotateLeft(h, 11) * P1;
+            pos++;
+        }
+
+        return avalanche(h);
+    }
+
+    /**
+     * Hashes a long. Same result as hash() of its 8 little-endian bytes.
+     *
+     * @param value value to hash.
+     * @param seed hash seed.
+     * @return 64-bit hash.
+     */
+    static long hash(long value, long seed) {
+        long h = seed + P5 + 8;
+        h ^= round(0, value);
+        h = Long.rotateLeft(h, 27) * P1 + P4;
+        return avalanche(h);
+    }
+
+    /**
+     * Hashes an int. Same result as hash() of its 4 little-endian bytes.
+     *
+     * @param value value to hash.
+     * @param seed hash seed.
+     * @return 64-bit hash.
+     */
+    static long hash(int value, long seed) {
+        long h = seed + P5 + 4;
+        h ^= (value & 0xffffffffL) * P1;
+        h = Long.rotateLeft(h, 23) * P2 + P3;
+        return avalanche(h);
+    }
+
+    /**
+     * Hashes two longs. Same result as hash() of the 8 little-endian bytes
+     * of <code>first</code> followed by those of <code>second</code>.
+     *
+     * @param first first value to hash.
+     * @param second second value to hash.
+     * @param seed hash seed.
+     * @return 64-bit hash.
+     */
+    static long hash(long first, long second, long seed) {
+        long h = seed + P5 + 16;
+        h ^= round(0, first);
+        h = Long.rotateLeft(h, 27) * P1 + P4;
+        h ^= round(0, second);
+        h = Long.rotateLeft(h, 27) * P1 + P4;
+        return avalanche(h);
+    }
+
+    private static long round(long acc, long input) {
+        acc += input * P2;
+        acc = Long.rotateLeft(acc, 31);
+        acc *= P1;
+        return acc;
+    }
+
+    private static long mergeRound(long acc, long val) {
+        acc ^= round(0, val);
+        return acc * P1 + P4;
+    }
+
+    private static long avalanche(long h) {
+        h ^= h >>> 33;
+        h *= P2;
+        h ^= h >>> 29;
+        h *= P3;
+        h ^= h >>> 32;
+        return h;
+    }
+
+    private static long getLong(byte[] data, int pos) {
+        return ((long) data[pos] & 0xff)
+                | (((long) data[pos + 1] & 0xff) << 8)
+                | (((long) data[pos + 2] & 0xff) << 16)
+                | (((long) data[pos + 3] & 0xff) << 24)
+                | (((long) data[pos + 4] & 0xff) << 32)
+                | (((long) data[pos + 5] & 0xff) << 40)
+                | (((long) data[pos + 6] & 0xff) << 48)
+                | (((long) data[pos + 7] & 0xff) << 56);
+    }
+
+    private static int getInt(byte[] data, int pos) {
+        return (data[pos] & 0xff)
+                | ((data[pos + 1] & 0xff) << 8)
+                | ((data[pos + 2] & 0xff) << 16)
+                | ((data[pos + 3] & 0xff) << 24);
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for BinaryFuseFilter.java
+ */
+public class BinaryFuseFilterTest {
+    static Random r = new Random();
+
+    @Test
+    public void testContains() {
+        System.out.println("contains");
+        int[] sizes = { 0, 1, 2, 10, 1000, 100000 };
+        HashStrategy[] strategies = { HashStrategies.MD5, HashStrategies.MURMUR3_128, HashStrategies.XXHASH64 };
+        for (int size : sizes) {
+            for (HashStrategy strategy : strategies) {
+                List<String> values = new ArrayList<String>();
+                for (int i = 0; i < size; i++)
+                    values.add(UUID.randomUUID().toString());
+                BinaryFuseFilter<String> instance = new BinaryFuseFilter<String>(values, strategy, null);
+                assertEquals(size, instance.count());
+                for (String value : values)
+                    assertTrue(instance.contains(value));
+                assertTrue(instance.containsAll(values));
+            }
+        }
+    }
+
+    @Test
+    public void testFalsePositiveProbability() {
+        System.out.println("false positive probability");
+        long[] values = new long[1000000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = r.nextLong();
+        BinaryFuseFilter<Long> instance = new BinaryFuseFilter<Long>(values);
+        for (long value : values)
+            assertTrue(instance.containsLong(value));
+        assertTrue(instance.getBitsPerElement() < 9.1);
+
+        int falsePositives = 0;
+        for (int i = 0; i < 1000000; i++)
+            if (instance.containsLong(r.nextLong()))
+                falsePositives++;
+        assertEquals(1.0 / 256, falsePositives / 1000000.0, 0.0005);
+    }
+
+    @Test
+    public void testDuplicates() {
+        System.out.println("duplicates");
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++)
+            values[i] = i % 1000;
+        BinaryFuseFilter<Long> instance = new BinaryFuseFilter<Long>(values, HashStrategies.XXHASH64);
+        assertEquals(1000, instance.count());
+        for (long i = 0; i < 1000; i++)
+            assertTrue(instance.containsLong(i));
+    }
+
+    @Test
+    public void testWriteToReadFrom() throws Exception {
+        System.out.println("writeTo/readFrom");
+        long[] values = new long[12345];
+        for (int i = 0; i < values.length; i++)
+            values[i] = r.nextLong();
+        BinaryFuseFilter<Long> instance = new BinaryFuseFilter<Long>(values, HashStrategies.XXHASH64);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        instance.writeTo(out);
+
+        BinaryFuseFilter<Long> copy = BinaryFuseFilter.readFrom(new ByteArrayInputStream(out.toByteArray()), null);
+        assertEquals(instance, copy);
+        assertEquals(instance.count(), copy.count());
+        assertSame(HashStrategies.XXHASH64, copy.getHashStrategy());
+        for (long value : values)
+            assertTrue(copy.containsLong(value));
+
+        try {
+            BloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()));
+            fail("binary fuse filter read as a Bloom filter");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for BlockedBloomFilter.java
+ */
+public class BlockedBloomFilterTest {
+    static Random r = new Random();
+
+    @Test
+    public void testSize() {
+        System.out.println("size");
+        for (int i = 1; i < 2000; i += 37) {
+            BlockedBloomFilter instance = new BlockedBloomFilter(i, 10, HashStrategies.MURMUR3_128);
+            assertEquals(0, instance.size() % BlockedBloomFilter.BLOCK_BITS);
+            assertTrue(instance.size() >= i);
+            assertTrue(instance.size() < i + BlockedBloomFilter.BLOCK_BITS);
+        }
+    }
+
+    @Test
+    public void testTooLarge() {
+        System.out.println("too large");
+        int maxBlocks = Integer.MAX_VALUE / BlockedBloomFilter.BLOCK_BITS;
+        double[][] sizes = { { 1.0, (maxBlocks + 1L) * BlockedBloomFilter.BLOCK_BITS - 511 }, // one bit into the next block
+            { 10.0, 220000000 }, { 1e9, Integer.MAX_VALUE } };
+        for (double[] size : sizes) {
+            try {
+                new BlockedBloomFilter<String>(size[0], (int) size[1], 7, HashStrategies.MURMUR3_128);
+                fail("created a filter with " + size[0] * size[1] + " bits");
+            } catch (IllegalArgumentException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Test of add and contains methods.
+     */
+    @Test
+    public void testAdd() {
+        System.out.println("add");
+        for (HashStrategies s : HashStrategies.values()) {
+            BlockedBloomFilter<String> instance = new BlockedBloomFilter<String>(0.01, 500, s);
+            List<String> v = new ArrayList<String>();
+            for (int i = 0; i < 100; i++) {
+                String val = UUID.randomUUID().toString();
+                v.add(val);
+                instance.add(val);
+                instance.add(val.getBytes());
+                instance.addLong((long) i);
+                instance.addInt(i);
+                instance.add(i, (long) i);
+            }
+            assertTrue(instance.containsAll(v));
+            for (int i = 0; i < 100; i++) {
+                assertTrue(instance.contains(v.get(i).getBytes()));
+                assertTrue(instance.containsLong((long) i));
+                assertTrue(instance.containsInt(i));
+                assertTrue(instance.contains(i, (long) i));
+            }
+            assertEquals(500, instance.count());
+
+            // all bits of an element are within one block
+            BlockedBloomFilter<String> single = new BlockedBloomFilter<String>(0.01, 500, s);
+            single.add("foo");
+            java.util.BitSet bits = single.getBitSet();
+            assertTrue(bits.cardinality() > 0);
+            assertEquals(bits.nextSetBit(0) / BlockedBloomFilter.BLOCK_BITS,
+                         bits.previousSetBit(bits.length()) / BlockedBloomFilter.BLOCK_BITS);
+
+            instance.clear();
+            assertTrue(instance.getBitSet().isEmpty());
+        }
+    }
+
+    /**
+     * The measured false positive rate must match the math, and be higher than
+     * for a standard Bloom filter.
+     */
+    @Test
+    public void testFalsePositiveRate() {
+        System.out.println("falsePositiveRate");
+        for (int c = 6; c <= 16; c += 5) {
+            int n = 20000;
+            BlockedBloomFilter instance = new BlockedBloomFilter(c * n, n, HashStrategies.MURMUR3_128);
+            BloomFilter standard = new BloomFilter(c * n, n, HashStrategies.MURMUR3_128);
+            for (int i = 0; i < n; i++)
+                instance.addLong(r.nextLong());
+
+            long f = 0;
+            double tests = 500000;
+            for (int i = 0; i < tests; i++)
+                if (instance.containsLong(r.nextLong()))
+                    f++;
+            double ratio = f / tests;
+            double expected = instance.getFalsePositiveProbability();
+            System.out.println("c=" + c + " - got " + ratio + ", math says " + expected
+                    + ", standard Bloom filter " + standard.getFalsePositiveProbability(n));
+            assertEquals(expected, ratio, expected * 0.15 + 0.0001);
+            assertTrue(expected > standard.getFalsePositiveProbability(n));
+        }
+    }
+
+    @Test
+    public void testEquals() {
+        System.out.println("equals");
+        BlockedBloomFilter<String> instance1 = new BlockedBloomFilter<String>(0.01, 100);
+        BlockedBloomFilter<String> instance2 = new BlockedBloomFilter<String>(0.01, 100);
+        for (int i = 0; i < 100; i++) {
+            String val = UUID.randomUUID().toString();
+            instance1.add(val);
+            instance2.add(val);
+        }
+        assertEquals(instance1, instance2);
+        assertEquals(instance1.hashCode(), instance2.hashCode());
+        // an element that is not a false positive sets at least one new bit
+        int i = 0;
+        while (instance1.contains("Another entry " + i))
+            i++;
+        instance1.add("Another entry " + i);
+        assertFalse(instance1.equals(instance2));
+    }
+}
@@ -0,0 +1,145 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for BloomFilterSpec.java
+ */
+public class BloomFilterSpecTest {
+
+    /**
+     * Test that plans meet the target with fewer bits than the constructors.
+     */
+    @Test
+    public void testPlan() {
+        System.out.println("plan");
+        double[] targets = {0.5, 0.1, 0.01, 0.001, 0.0001, 1e-9};
+        long[] sizes = {1, 100, 10000, 1000000};
+        for (double p : targets) {
+            for (long n : sizes) {
+                BloomFilterSpec spec = BloomFilterSpec.plan(p, n);
+                assertTrue(spec.toString(), spec.getFalsePositiveProbability() <= p);
+                if (spec.getVariant() == BloomFilterSpec.Variant.STANDARD) {
+                    assertNotSame(IndexReduction.MODULO, spec.getIndexReduction());
+                    assertTrue(spec.getIndexReduction().supports(spec.getBits()));
+                } else {
+                    assertEquals(BloomFilterSpec.Variant.BLOCKED, spec.getVariant());
+                    assertTrue(spec.getBits() > BloomFilterSpec.BLOCKED_MIN_BITS);
+                }
+
+                // Never more bits than the rule used by the constructors
+                int k = (int) Math.ceil(-(Math.log(p) / Math.log(2)));
+                assertTrue(spec.toString(), spec.getBits() <= Math.ceil(k / Math.log(2) * n) * 9 / 8 + 1);
+            }
+        }
+        BloomFilterSpec spec = BloomFilterSpec.plan(0.01, 1000);
+        assertEquals(7, spec.getK());
+        assertEquals(1000, spec.getExpectedElements());
+        assertSame(HashStrategies.MURMUR3_128, spec.getHashStrategy());
+    }
+
+    /**
+     * Test that a limit on the number of bits is honored.
+     */
+    @Test
+    public void testPlan_Budget() {
+        System.out.println("plan budget");
+        BloomFilterSpec spec = BloomFilterSpec.plan(0.001, 10000, 50000);
+        assertEquals(50000, spec.getBits());
+        assertEquals(3, spec.getK());
+        assertTrue(spec.getFalsePositiveProbability() > 0.001);
+        assertSame(IndexReduction.MULTIPLY_SHIFT, spec.getIndexReduction());
+
+        // Rounding up to a power of two may not exceed the limit
+        BloomFilterSpec unlimited = BloomFilterSpec.plan(0.01, 1000);
+        spec = BloomFilterSpec.plan(0.01, 1000, unlimited.getBits() - 1);
+        assertTrue(spec.getBits() <= unlimited.getBits() - 1);
+    }
+
+    /**
+     * Test that MD5 gets MODULO.
+     */
+    @Test
+    public void testPlan_MD5() {
+        System.out.println("plan MD5");
+        BloomFilterSpec spec = BloomFilterSpec.plan(0.01, 1000, Long.MAX_VALUE, HashStrategies.MD5);
+        assertSame(IndexReduction.MODULO, spec.getIndexReduction());
+        assertTrue(spec.getFalsePositiveProbability() <= 0.01);
+
+        spec = BloomFilterSpec.plan(0.01, 1000000000L, Long.MAX_VALUE, HashStrategies.MD5);
+        assertTrue(spec.getBits() <= Integer.MAX_VALUE);
+    }
+
+    /**
+     * Test of variant selection.
+     */
+    @Test
+    public void testPlan_Variant() {
+        System.out.println("plan variant");
+        assertEquals(BloomFilterSpec.Variant.STANDARD, BloomFilterSpec.plan(0.01, 100000).getVariant());
+        assertEquals(BloomFilterSpec.Variant.LARGE, BloomFilterSpec.plan(0.01, 1000000000L).getVariant());
+
+        BloomFilterSpec blocked = BloomFilterSpec.plan(0.01, 10000000);
+        assertEquals(BloomFilterSpec.Variant.BLOCKED, blocked.getVariant());
+        assertTrue(blocked.getFalsePositiveProbability() <= 0.01);
+        assertEquals(0, blocked.getBits() % BlockedBloomFilter.BLOCK_BITS);
+
+        // No blocked filter within 1/4 more bits for low probabilities
+        assertEquals(BloomFilterSpec.Variant.STANDARD, BloomFilterSpec.plan(1e-6, 2000000).getVariant());
+    }
+
+    /**
+     * Test that filters created from specs have the planned parameters and work.
+     */
+    @Test
+    public void testCreateFilters() {
+        System.out.println("create filters");
+        BloomFilterSpec spec = BloomFilterSpec.plan(0.01, 10000);
+        BloomFilter<String> filter = new BloomFilter<String>(spec, null);
+        assertEquals(spec.getBits(), filter.size());
+        assertEquals(spec.getK(), filter.getK());
+        assertSame(spec.getIndexReduction(), filter.getIndexReduction());
+
+        LargeBloomFilter<String> large = new LargeBloomFilter<String>(spec, new HeapBitStorage(spec.getBits()), null);
+        BlockedBloomFilter<String> blocked = new BlockedBloomFilter<String>(
+                BloomFilterSpec.plan(0.01, 10000000), null);
+        for (int i = 0; i < 10000; i++) {
+            filter.add("element" + i);
+            large.add("element" + i);
+            blocked.add("element" + i);
+        }
+        int falsePositives = 0;
+        for (int i = 0; i < 10000; i++) {
+            assertTrue(filter.contains("element" + i));
+            assertTrue(large.contains("element" + i));
+            assertTrue(blocked.contains("element" + i));
+            if (filter.contains("other" + i))
+                falsePositives++;
+        }
+        assertTrue(falsePositives < 200);
+        assertEquals(filter.getBitSet().cardinality(), large.bitCount());
+
+        try {
+            new LargeBloomFilter<String>(spec, new HeapBitStorage(spec.getBits() + 64), null);
+            fail("Storage of the wrong size accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -15,6 +15,12 @@
 
 package com.skjegstad.utils;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.Charset;
 import java.util.BitSet;
 import java.util.List;
@@ -296,6 +302,232 @@ public class BloomFilterTest {
         assert(instance.containsAll(v));
     }
 
+    /**
+     * Batches must give the same result as one call per element, also when
+     * the number of elements is not a multiple of the batch size.
+     */
+    @Test
+    public void testAddAllContainsEach() throws Exception {
+        System.out.println("addAll/containsEach");
+        HashStrategy[] strategies = { HashStrategies.MD5, HashStrategies.MURMUR3_128 };
+        for (HashStrategy strategy : strategies) {
+            BloomFilter<String> batched = new BloomFilter<String>(0.05, 1000, strategy);
+            BloomFilter<String> single = new BloomFilter<String>(0.05, 1000, strategy);
+            List<String> added = new ArrayList<String>();
+            long[] addedValues = new long[BloomFilter.BATCH_SIZE + 3];
+            for (int i = 0; i < 700; i++)
+                added.add(UUID.randomUUID().toString());
+            for (int i = 0; i < addedValues.length; i++)
+                addedValues[i] = r.nextLong();
+
+            batched.addAll(added);
+            batched.addAll(addedValues);
+            for (String s : added)
+                single.add(s);
+            for (long value : addedValues)
+                single.addLong(value);
+            assertEquals(single, batched);
+            assertEquals(single.count(), batched.count());
+
+            List<String> checked = new ArrayList<String>(added.subList(0, 300));
+            long[] checkedValues = new long[2 * BloomFilter.BATCH_SIZE + 1];
+            for (int i = 0; i < 400; i++)
+                checked.add(UUID.randomUUID().toString());
+            for (int i = 0; i < checkedValues.length; i++)
+                checkedValues[i] = i % 2 == 0 ? addedValues[i % addedValues.length] : r.nextLong();
+
+            boolean[] result = batched.containsEach(checked);
+            assertEquals(checked.size(), result.length);
+            for (int i = 0; i < result.length; i++)
+                assertEquals(batched.contains(checked.get(i)), result[i]);
+            result = batched.containsEach(checkedValues);
+            for (int i = 0; i < result.length; i++)
+                assertEquals(batched.containsLong(checkedValues[i]), result[i]);
+
+            assertTrue(batched.containsAll(added));
+            boolean all = true;
+            for (String s : checked)
+                all &= batched.contains(s);
+            assertEquals(all, batched.containsAll(checked));
+        }
+        assertEquals(0, new BloomFilter<String>(0.05, 10).containsEach(new ArrayList<String>()).length);
+    }
+
+    @Test
+    public void testAddAllParallel() throws Exception {
+        System.out.println("addAllParallel");
+        List<String> v = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++)
+            v.add(UUID.randomUUID().toString());
+
+        HashStrategy[] strategies = { HashStrategies.MD5, HashStrategies.XXHASH64 };
+        for (HashStrategy strategy : strategies) {
+            BloomFilter<String> expected = new BloomFilter<String>(0.01, v.size(), strategy);
+            expected.add("foo");
+            expected.addAll(v);
+
+            BloomFilter<String> instance = new BloomFilter<String>(0.01, v.size(), strategy);
+            instance.add("foo");
+            instance.addAllParallel(v);
+            assertEquals(expected, instance);
+            assertEquals(v.size() + 1, instance.count());
+
+            java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(3);
+            try {
+                instance = new BloomFilter<String>(0.01, v.size(), strategy);
+                instance.add("foo");
+                instance.addAllParallel(v.stream().spliterator(), pool);
+                assertEquals(expected, instance);
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    @Test
+    public void testAddAllParallel_CountOverflow() {
+        System.out.println("addAllParallel count overflow");
+        BloomFilter<String> instance = new BloomFilter<String>(1000, 100, Integer.MAX_VALUE - 1, new BitSet(1000));
+        List<String> v = new ArrayList<String>();
+        for (int i = 0; i < 5; i++)
+            v.add("value " + i);
+        try {
+            instance.addAllParallel(v);
+            fail("count overflowed");
+        } catch (ArithmeticException e) {
+            // expected
+        }
+        assertEquals(Integer.MAX_VALUE - 1, instance.count());
+        assertTrue(instance.getBitSet().isEmpty());
+    }
+
+    @Test
+    public void testUnionIntersect() throws Exception {
+        System.out.println("union/intersect");
+        BloomFilter<String> a = new BloomFilter<String>(0.01, 2000, HashStrategies.MURMUR3_128);
+        BloomFilter<String> b = new BloomFilter<String>(0.01, 2000, HashStrategies.MURMUR3_128);
+        BloomFilter<String> all = new BloomFilter<String>(0.01, 2000, HashStrategies.MURMUR3_128);
+        for (int i = 0; i < 1000; i++) {
+            a.add("value " + i);
+            all.add("value " + i);
+        }
+        for (int i = 500; i < 1500; i++) {
+            b.add("value " + i);
+            all.add("value " + i);
+        }
+
+        BloomFilter<String> union = BloomFilter.unionOf(a, b);
+        assertEquals(all.getBitSet(), union.getBitSet());
+        assertEquals(1500, union.count(), 30);
+        assertEquals(1000, a.count());
+
+        BloomFilter<String> intersection = BloomFilter.intersectionOf(a, b);
+        for (int i = 500; i < 1000; i++)
+            assertTrue(intersection.contains("value " + i));
+        assertEquals(500, intersection.count(), 30);
+        BitSet expected = (BitSet) a.getBitSet().clone();
+        expected.and(b.getBitSet());
+        assertEquals(expected, intersection.getBitSet());
+
+        a.union(b);
+        assertEquals(union, a);
+        assertEquals(union.count(), a.count());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnion_Incompatible() throws Exception {
+        BloomFilter<String> a = new BloomFilter<String>(0.01, 2000, HashStrategies.MURMUR3_128);
+        a.union(new BloomFilter<String>(0.01, 2000, HashStrategies.XXHASH64));
+    }
+
+    /**
+     * Test of approximateElementCount and bitCount methods, of class BloomFilter.
+     */
+    @Test
+    public void testApproximateElementCount() {
+        System.out.println("approximateElementCount");
+        BloomFilter<String> instance = new BloomFilter<String>(0.01, 10000, HashStrategies.MURMUR3_128);
+        assertEquals(0, instance.approximateElementCount());
+        for (int round = 0; round < 3; round++)
+            for (long i = 0; i < 5000; i++)
+                instance.addLong(i);
+        assertEquals(15000, instance.count());
+        assertEquals(5000, instance.approximateElementCount(), 5000 * 0.03);
+
+        // the cached bit count follows every kind of change
+        assertEquals(instance.getBitSet().cardinality(), instance.bitCount());
+        instance.setBit(instance.getBitSet().nextClearBit(0), true);
+        assertEquals(instance.getBitSet().cardinality(), instance.bitCount());
+        instance.getBitSet().clear(instance.getBitSet().nextSetBit(0));
+        assertEquals(instance.getBitSet().cardinality(), instance.bitCount());
+        instance.addAll(new long[] {-1, -2, -3});
+        assertEquals(instance.getBitSet().cardinality(), instance.bitCount());
+        instance.clear();
+        assertEquals(0, instance.bitCount());
+
+        // filters created from a BitSet have a count of 0, but the estimate still works
+        BloomFilter<String> filled = new BloomFilter<String>(0.01, 10000, HashStrategies.MURMUR3_128);
+        for (long i = 0; i < 8000; i++)
+            filled.addLong(i);
+        BloomFilter<String> restored = new BloomFilter<String>(filled.size(), 10000, 0, filled.getBitSet(),
+                HashStrategies.MURMUR3_128);
+        assertEquals(0, restored.count());
+        assertEquals(8000, restored.approximateElementCount(), 8000 * 0.03);
+
+        for (int i = 0; i < filled.size(); i++)
+            filled.setBit(i, true);
+        assertEquals(Long.MAX_VALUE, filled.approximateElementCount());
+    }
+
+    /**
+     * A caller keeping the BitSet from getBitSet() or passed to a constructor
+     * may change it at any time, so bitCount() must not use a stale count.
+     */
+    @Test
+    public void testBitCount_RetainedBitSet() {
+        System.out.println("bitCount retained BitSet");
+        BloomFilter<String> instance = new BloomFilter<String>(0.01, 1000, HashStrategies.MURMUR3_128);
+        BitSet bits = instance.getBitSet();
+        assertEquals(0, instance.bitCount());
+        bits.set(0, 500);
+        assertEquals(500, instance.bitCount());
+        assertEquals(instance.approximateElementCount(), instance.copy().approximateElementCount());
+        assertTrue(instance.approximateElementCount() > 0);
+
+        BitSet data = new BitSet();
+        BloomFilter<String> restored = new BloomFilter<String>(instance.size(), 1000, 0, data,
+                HashStrategies.MURMUR3_128);
+        assertEquals(0, restored.bitCount());
+        data.set(0, 500);
+        assertEquals(500, restored.bitCount());
+    }
+
+    /**
+     * Test of approximateUnionCount, approximateIntersectionCount and
+     * approximateJaccardSimilarity methods, of class BloomFilter.
+     */
+    @Test
+    public void testApproximateSimilarity() {
+        System.out.println("approximateJaccardSimilarity");
+        BloomFilter<String> a = new BloomFilter<String>(0.01, 20000, HashStrategies.MURMUR3_128);
+        BloomFilter<String> b = new BloomFilter<String>(0.01, 20000, HashStrategies.MURMUR3_128);
+        for (long i = 0; i < 6000; i++)
+            a.addLong(i);
+        for (long i = 4000; i < 10000; i++)
+            b.addLong(i);
+
+        assertEquals(10000, a.approximateUnionCount(b), 10000 * 0.03);
+        assertEquals(BloomFilter.unionOf(a, b).approximateElementCount(), a.approximateUnionCount(b), 1e-9);
+        assertEquals(2000, a.approximateIntersectionCount(b), 2000 * 0.1);
+        assertEquals(0.2, a.approximateJaccardSimilarity(b), 0.02);
+        assertEquals(a.approximateJaccardSimilarity(b), b.approximateJaccardSimilarity(a), 1e-12);
+        assertEquals(1.0, a.approximateJaccardSimilarity(a.copy()), 1e-9);
+
+        BloomFilter<String> empty = new BloomFilter<String>(0.01, 20000, HashStrategies.MURMUR3_128);
+        assertEquals(0, a.approximateIntersectionCount(empty));
+        assertEquals(0, empty.approximateJaccardSimilarity(empty), 0);
+    }
+
     /**
      * Test of getBit method, of class BloomFilter.
      */
@@ -483,5 +715,524 @@ public class BloomFilterTest {
         assertEquals(expResult, result);
     }
 
+    /**
+     * add() and contains() must not allocate once the per-thread buffers have grown.
+     */
+    @Test
+    public void testAllocationFree() {
+        System.out.println("allocationFree");
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return; // allocation can not be measured on this JVM
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        long thread = Thread.currentThread().getId();
+
+        String[] strings = new String[1000];
+        byte[][] bytes = new byte[1000][];
+        for (int i = 0; i < strings.length; i++) {
+            strings[i] = UUID.randomUUID().toString() + "\u00e6\u4e2d";
+            bytes[i] = strings[i].getBytes(Charset.forName("UTF-8"));
+        }
+
+        for (HashStrategies s : HashStrategies.values()) {
+            BloomFilter<String> instance = new BloomFilter<String>(0.001, 1000, s);
+            for (int i = 0; i < strings.length; i++) { // grow buffers
+                instance.add(strings[i]);
+                instance.contains(bytes[i]);
+            }
+
+            long before = threadBean.getThreadAllocatedBytes(thread);
+            for (int round = 0; round < 10; round++) {
+                for (int i = 0; i < strings.length; i++) {
+                    instance.add(strings[i]);
+                    instance.add(bytes[i]);
+                    instance.contains(strings[i]);
+                    instance.contains(bytes[i]);
+                }
+            }
+            long allocated = threadBean.getThreadAllocatedBytes(thread) - before;
+            System.out.println(s + " - " + allocated + " bytes allocated by 40000 calls");
+            assertTrue(allocated < 40000);
+        }
+    }
+
+    /**
+     * Adding a String must set the same bits as adding its UTF-8 encoding.
+     */
+    @Test
+    public void testAdd_StringEncoding() throws Exception {
+        System.out.println("add, string encoding");
+        String[] values = { "", "foo", "\u00e6\u00f8\u00e5", "\u4e2d\u6587", "\ud83d\ude00", "a\ud800b", "\udc00" };
+        for (String val : values) {
+            BloomFilter<String> instance1 = new BloomFilter<String>(1000, 10, HashStrategies.MURMUR3_128);
+            BloomFilter<String> instance2 = new BloomFilter<String>(1000, 10, HashStrategies.MURMUR3_128);
+            instance1.add(val);
+            instance2.add(val.getBytes("UTF-8"));
+            assertEquals(instance1, instance2);
+        }
+    }
+
+    /**
+     * Test that boxed numbers are hashed through toString(), as in earlier
+     * versions, whether they are passed one at a time or in a collection.
+     */
+    @Test
+    public void testAdd_boxed() {
+        System.out.println("add, boxed");
+        BloomFilter<Integer> instance = new BloomFilter<Integer>(0.001, 300);
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < 100; i++)
+            values.add(i);
+        instance.addAll(values);
+        for (int i = 0; i < 100; i++)
+            assertTrue(instance.contains(i));
+        assertTrue(instance.containsAll(values));
+
+        Integer x = 700;
+        instance.add(x);
+        assertTrue(instance.contains(700));
+        assertTrue(instance.contains("700".getBytes(Charset.forName("UTF-8"))));
+    }
+
+    /**
+     * Test of add and contains methods for primitives.
+     */
+    @Test
+    public void testAdd_primitives() {
+        System.out.println("add, primitives");
+        for (HashStrategies s : HashStrategies.values()) {
+            BloomFilter<Long> instance = new BloomFilter<Long>(0.001, 300, s);
+            long[] values = new long[100];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = r.nextLong();
+                instance.addLong(values[i]);
+                instance.addInt((int) values[i]);
+                instance.add(values[i], ~values[i]);
+            }
+            for (int i = 0; i < values.length; i++) {
+                assertTrue(instance.containsLong(values[i]));
+                assertTrue(instance.containsInt((int) values[i]));
+                assertTrue(instance.contains(values[i], ~values[i]));
+            }
+
+            BloomFilter<Long> expected = new BloomFilter<Long>(0.001, 300, s);
+            for (int i = 0; i < values.length; i++) {
+                byte[] bytes = new byte[16];
+                HashBuffer.putLong(bytes, 0, values[i]);
+                HashBuffer.putLong(bytes, 8, ~values[i]);
+                expected.add(java.util.Arrays.copyOf(bytes, 8));
+                expected.add(java.util.Arrays.copyOf(bytes, 4));
+                expected.add(bytes);
+            }
+            assertEquals(expected, instance);
+            assertEquals(300, instance.count());
+        }
+    }
 
-}
\ No newline at end of file
+    static class Visit {
+        final long tenantId;
+        final long userId;
+        final int day;
+
+        Visit(long tenantId, long userId, int day) {
+            this.tenantId = tenantId;
+            this.userId = userId;
+            this.day = day;
+        }
+    }
+
+    static final Funnel<Visit> visitFunnel = new Funnel<Visit>() {
+        public void funnel(Visit from, PrimitiveSink into) {
+            into.putLong(from.tenantId).putLong(from.userId).putInt(from.day);
+        }
+    };
+
+    /**
+     * Test of add and contains methods with a funnel.
+     */
+    @Test
+    public void testFunnel() {
+        System.out.println("funnel");
+        BloomFilter<Visit> instance = new BloomFilter<Visit>(0.001, 1000, HashStrategies.MURMUR3_128, visitFunnel);
+        BloomFilter<Visit> expected = new BloomFilter<Visit>(0.001, 1000, HashStrategies.MURMUR3_128);
+        Visit[] visits = new Visit[1000];
+        for (int i = 0; i < visits.length; i++) {
+            visits[i] = new Visit(r.nextInt(10), r.nextLong(), r.nextInt(365));
+            instance.add(visits[i]);
+
+            byte[] bytes = new byte[20];
+            HashBuffer.putLong(bytes, 0, visits[i].tenantId);
+            HashBuffer.putLong(bytes, 8, visits[i].userId);
+            HashBuffer.putInt(bytes, 16, visits[i].day);
+            expected.add(bytes);
+        }
+        assertEquals(expected, instance);
+        for (Visit v : visits)
+            assertTrue(instance.contains(v));
+        byte[] absent = new byte[20]; // Visit(11, 0, 0); may be a false positive, but the same one in both
+        HashBuffer.putLong(absent, 0, 11);
+        assertEquals(expected.contains(absent), instance.contains(new Visit(11, 0, 0)));
+
+        java.lang.management.ThreadMXBean bean = java.lang.management.ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+            long before = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+            for (int round = 0; round < 10; round++)
+                for (Visit v : visits)
+                    instance.contains(v);
+            long allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+            assertTrue(allocated < 10000);
+        }
+    }
+
+    /**
+     * Test that filters serialized by version 1.0 can be deserialized. The
+     * stream holds new BloomFilter&lt;String&gt;(0.1, 20) with "foo" and "bar" added.
+     * @throws Exception
+     */
+    @Test
+    public void testDeserialize_Version10() throws Exception {
+        System.out.println("deserialize 1.0");
+        String stream = "rO0ABXNyAB9jb20uc2tqZWdzdGFkLnV0aWxzLkJsb29tRmlsdGVy1EM29wfAGlkCAAZJAApiaXRTZXRTaXplRAAOYml0c1Bl"
+                + "ckVsZW1lbnRJAB5leHBlY3RlZE51bWJlck9mRmlsdGVyRWxlbWVudHNJAAFrSQAVbnVtYmVyT2ZBZGRlZEVsZW1lbnRzTAAGYml0"
+                + "c2V0dAASTGphdmEvdXRpbC9CaXRTZXQ7eHAAAAB0QBcVR2Urgv4AAAAUAAAABAAAAAJzcgAQamF2YS51dGlsLkJpdFNldG79iH45"
+                + "NKshAwABWwAEYml0c3QAAltKeHB1cgACW0p4IAS1ErF1kwIAAHhwAAAAAgAAAEAABgMQAAAAAJAAAAB4";
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(
+                java.util.Base64.getDecoder().decode(stream)));
+        @SuppressWarnings("unchecked")
+        BloomFilter<String> instance = (BloomFilter<String>) in.readObject();
+
+        BloomFilter<String> expected = new BloomFilter<String>(0.1, 20);
+        expected.add("foo");
+        expected.add("bar");
+        assertSame(HashStrategies.MD5, instance.getHashStrategy());
+        assertEquals(2, instance.count());
+        assertEquals(expected.getBitSet(), instance.getBitSet());
+        assertEquals(expected.bitCount(), instance.bitCount());
+        assertSame(IndexReduction.MODULO, instance.getIndexReduction());
+        assertEquals(expected, instance);
+        assertTrue(instance.contains("foo"));
+        assertTrue(instance.contains("bar"));
+        instance.add("baz");
+        assertTrue(instance.contains("baz"));
+    }
+
+    @Test
+    public void testWriteToReadFrom() throws Exception {
+        System.out.println("writeTo/readFrom");
+        HashStrategy[] strategies = { HashStrategies.MD5, HashStrategies.MURMUR3_128 };
+        for (HashStrategy strategy : strategies) {
+            BloomFilter<String> instance = new BloomFilter<String>(10.3, 1000, 7, strategy);
+            for (int i = 0; i < 500; i++)
+                instance.add(UUID.randomUUID().toString());
+            instance.add("foo");
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            instance.writeTo(out);
+            assertEquals(64 + 8 * ((instance.size() + 63) / 64), out.size());
+
+            BloomFilter<String> copy = BloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()));
+            assertEquals(instance, copy);
+            assertEquals(instance.size(), copy.size());
+            assertEquals(instance.getK(), copy.getK());
+            assertEquals(instance.count(), copy.count());
+            assertEquals(instance.getExpectedNumberOfElements(), copy.getExpectedNumberOfElements());
+            assertSame(strategy, copy.getHashStrategy());
+            assertTrue(copy.contains("foo"));
+        }
+    }
+
+    @Test
+    public void testWriteToReadFrom_IndexReduction() throws Exception {
+        System.out.println("writeTo/readFrom index reduction");
+        BloomFilterSpec[] specs = { BloomFilterSpec.plan(0.01, 1000),
+                BloomFilterSpec.of(10000, 7, 1000, HashStrategies.XXHASH64, IndexReduction.MULTIPLY_SHIFT) };
+        for (BloomFilterSpec spec : specs) {
+            BloomFilter<String> instance = new BloomFilter<String>(spec, null);
+            for (int i = 0; i < 500; i++)
+                instance.add("element" + i);
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            instance.writeTo(out);
+            byte[] data = out.toByteArray();
+            assertEquals(FilterHeader.VERSION_INDEX_REDUCTION, data[4]);
+
+            BloomFilter<String> copy = BloomFilter.readFrom(new ByteArrayInputStream(data));
+            assertEquals(instance, copy);
+            assertSame(spec.getIndexReduction(), copy.getIndexReduction());
+
+            LargeBloomFilter<String> large = LargeBloomFilter.readFrom(new ByteArrayInputStream(data), null);
+            CompressedBloomFilter<String> compressed = CompressedBloomFilter.readFrom(
+                    new ByteArrayInputStream(data), null);
+            assertSame(spec.getIndexReduction(), large.getIndexReduction());
+            assertSame(spec.getIndexReduction(), compressed.getIndexReduction());
+            for (int i = 0; i < 500; i++) {
+                assertTrue(large.contains("element" + i));
+                assertTrue(compressed.contains("element" + i));
+            }
+
+            out = new ByteArrayOutputStream();
+            compressed.writeTo(out);
+            assertEquals(instance, BloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray())));
+        }
+
+        // Filters using MODULO are still written as version 1
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BloomFilter<String>(0.01, 1000, HashStrategies.MURMUR3_128).writeTo(out);
+        assertEquals(FilterHeader.VERSION, out.toByteArray()[4]);
+    }
+
+    @Test
+    public void testUnion_DifferentIndexReduction() {
+        System.out.println("union different index reduction");
+        BloomFilter<String> a = new BloomFilter<String>(
+                BloomFilterSpec.of(1024, 5, 100, HashStrategies.MURMUR3_128, IndexReduction.MASK), null);
+        BloomFilter<String> b = new BloomFilter<String>(
+                BloomFilterSpec.of(1024, 5, 100, HashStrategies.MURMUR3_128, IndexReduction.MULTIPLY_SHIFT), null);
+        assertFalse(a.equals(b));
+        try {
+            a.union(b);
+            fail("Filters with different index reductions merged");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test of writeCompressedTo method, of class BloomFilter.
+     * @throws Exception
+     */
+    @Test
+    public void testWriteCompressedTo() throws Exception {
+        System.out.println("writeCompressedTo");
+        int[] elements = { 0, 1, 50, 2000, 100000 };
+        int[] encodings = { FilterHeader.ENCODING_RUNS, FilterHeader.ENCODING_GOLOMB, FilterHeader.ENCODING_GOLOMB,
+                FilterHeader.ENCODING_GOLOMB, FilterHeader.ENCODING_RAW };
+        for (int e = 0; e < elements.length; e++) {
+            BloomFilter<String> instance = new BloomFilter<String>(0.01, 100000, HashStrategies.MURMUR3_128);
+            for (long i = 0; i < elements[e]; i++)
+                instance.addLong(i);
+            assertCompressedRoundTrip(instance, encodings[e]);
+        }
+
+        // runs of empty words are run-length encoded
+        BloomFilter<String> clustered = new BloomFilter<String>(0.01, 100000, HashStrategies.MURMUR3_128);
+        for (int i = 0; i < 20000; i++)
+            clustered.setBit(i, true);
+        assertCompressedRoundTrip(clustered, FilterHeader.ENCODING_RUNS);
+    }
+
+    private static void assertCompressedRoundTrip(BloomFilter<String> instance, int encoding) throws Exception {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        instance.writeTo(raw);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        instance.writeCompressedTo(out);
+        out.write(42); // data after the filter must not be read
+        byte[] data = out.toByteArray();
+        assertTrue(data.length <= raw.size() + 1);
+
+        ByteArrayInputStream in = new ByteArrayInputStream(data);
+        FilterHeader header = FilterIO.readHeader(java.nio.channels.Channels.newChannel(
+                new ByteArrayInputStream(data)));
+        assertEquals(encoding, header.encoding);
+        BloomFilter<String> copy = BloomFilter.readFrom(in);
+        assertEquals(42, in.read());
+        assertEquals(instance.getBitSet(), copy.getBitSet());
+        assertEquals(instance.count(), copy.count());
+        assertEquals(instance.getK(), copy.getK());
+
+        LargeBloomFilter<String> large = LargeBloomFilter.readFrom(new ByteArrayInputStream(data), null);
+        for (int i = 0; i < instance.size(); i++)
+            assertEquals(instance.getBit(i), large.getBit(i));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadFrom_CorruptCompressed() throws Exception {
+        BloomFilter<String> instance = new BloomFilter<String>(0.01, 100000, HashStrategies.MURMUR3_128);
+        for (long i = 0; i < 100; i++)
+            instance.addLong(i);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        instance.writeCompressedTo(out);
+        byte[] data = out.toByteArray();
+        data[64 + 8] = (byte) 0xff; // number of bits set
+        BloomFilter.readFrom(new ByteArrayInputStream(data));
+    }
+
+    /**
+     * The words are written a chunk at a time; bits next to the chunk
+     * boundaries and in the last, partial word must survive.
+     */
+    @Test
+    public void testWriteTo_Chunks() throws Exception {
+        System.out.println("writeTo chunks");
+        BloomFilter<String> instance = new BloomFilter<String>(3 * BloomFilter.CHUNK_BITS + 100, 1000);
+        int[] bits = { 0, 63, 64, BloomFilter.CHUNK_BITS - 1, BloomFilter.CHUNK_BITS, 2 * BloomFilter.CHUNK_BITS + 1,
+            instance.size() - 1 };
+        for (int bit : bits)
+            instance.setBit(bit, true);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        instance.writeTo(out);
+        assertEquals(64 + 8 * ((instance.size() + 63) / 64), out.size());
+        BloomFilter<String> copy = BloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(instance.getBitSet(), copy.getBitSet());
+        assertEquals(bits.length, copy.bitCount());
+    }
+
+    @Test
+    public void testReadFrom_CorruptHeader() throws Exception {
+        System.out.println("readFrom corrupt header");
+        BloomFilter<String> instance = new BloomFilter<String>(0.01, 1000, HashStrategies.MURMUR3_128);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        instance.writeTo(out);
+        int[][] corruptions = { { 16, 0 }, { 16, -1 }, { 16, FilterHeader.MAX_K + 1 }, { 16, Integer.MAX_VALUE },
+            { 12, 12345 } }; // offset, value: k, then the hash strategy id
+        for (int[] corruption : corruptions) {
+            byte[] data = out.toByteArray();
+            ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).putInt(corruption[0], corruption[1]);
+            try {
+                BloomFilter.readFrom(new ByteArrayInputStream(data));
+                fail("read a header with " + corruption[1] + " at offset " + corruption[0]);
+            } catch (IOException e) {
+                // expected
+            }
+            try {
+                LargeBloomFilter.readFrom(new ByteArrayInputStream(data), null);
+                fail("read a header with " + corruption[1] + " at offset " + corruption[0]);
+            } catch (IOException e) {
+                // expected
+            }
+            try {
+                CompressedBloomFilter.readFrom(new ByteArrayInputStream(data), null);
+                fail("read a header with " + corruption[1] + " at offset " + corruption[0]);
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadFrom_NotAFilter() throws Exception {
+        BloomFilter.readFrom(new ByteArrayInputStream(new byte[1000]));
+    }
+
+    @Test(expected = java.io.EOFException.class)
+    public void testReadFrom_Truncated() throws Exception {
+        BloomFilter<String> instance = new BloomFilter<String>(0.01, 1000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        instance.writeTo(out);
+        byte[] data = out.toByteArray();
+        BloomFilter.readFrom(new ByteArrayInputStream(data, 0, data.length - 1));
+    }
+
+    @Test
+    public void testExportApplyDelta() throws Exception {
+        System.out.println("exportDelta/applyDelta");
+        BloomFilter<String> instance = new BloomFilter<String>(0.01, 100000, HashStrategies.MURMUR3_128);
+        for (long i = 0; i < 50000; i++)
+            instance.addLong(i);
+        assertFalse(instance.isTrackingChanges());
+        instance.trackChanges();
+        assertTrue(instance.isTrackingChanges());
+        long version = instance.checkpoint();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        instance.writeTo(out);
+        BloomFilter<String> replica = BloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()));
+
+        for (int round = 0; round < 3; round++) {
+            for (long i = 0; i < 10; i++)
+                instance.addLong(100000L + round * 10 + i);
+            instance.setBit(7, true);
+            FilterDelta delta = instance.exportDelta(version);
+            assertEquals(version, delta.getFromVersion());
+            assertTrue(delta.getToVersion() > version);
+            assertTrue(delta.getNumberOfPages() > 0);
+            assertTrue(delta.getNumberOfPages() <= 10 * instance.getK() + 1);
+            assertTrue(delta.getSerializedSize() < out.size() / 10);
+
+            ByteArrayOutputStream deltaOut = new ByteArrayOutputStream();
+            delta.writeTo(deltaOut);
+            assertEquals(delta.getSerializedSize(), deltaOut.size());
+            FilterDelta copy = FilterDelta.readFrom(new ByteArrayInputStream(deltaOut.toByteArray()));
+            assertEquals(delta.getToVersion(), copy.getToVersion());
+
+            replica.applyDelta(copy);
+            replica.applyDelta(copy); // deltas are idempotent
+            assertEquals(instance.getBitSet(), replica.getBitSet());
+            assertEquals(instance.count(), replica.count());
+            assertEquals(instance.bitCount(), replica.bitCount());
+            version = delta.getToVersion();
+        }
+
+        FilterDelta empty = instance.exportDelta(version);
+        assertEquals(0, empty.getNumberOfPages());
+        replica.applyDelta(empty);
+        assertEquals(instance.getBitSet(), replica.getBitSet());
+    }
+
+    @Test
+    public void testExportDelta_Union() {
+        System.out.println("exportDelta after union");
+        BloomFilter<String> instance = new BloomFilter<String>(0.01, 10000, HashStrategies.MURMUR3_128);
+        BloomFilter<String> other = new BloomFilter<String>(0.01, 10000, HashStrategies.MURMUR3_128);
+        BloomFilter<String> replica = new BloomFilter<String>(0.01, 10000, HashStrategies.MURMUR3_128);
+        instance.trackChanges();
+        long version = instance.checkpoint();
+        for (long i = 0; i < 1000; i++)
+            other.addLong(i);
+        instance.union(other);
+        replica.applyDelta(instance.exportDelta(version));
+        assertEquals(instance.getBitSet(), replica.getBitSet());
+
+        // only the pages holding bits of the other filter are marked
+        BloomFilter<String> sparse = new BloomFilter<String>(0.01, 10000, HashStrategies.MURMUR3_128);
+        int last = sparse.size() - 1;
+        int[] bits = { 1023, 1024, 1025, 5000, last };
+        for (int bit : bits)
+            sparse.setBit(bit, true);
+        version = instance.checkpoint();
+        instance.union(sparse);
+        FilterDelta delta = instance.exportDelta(version);
+        assertEquals(4, delta.getNumberOfPages());
+        assertEquals(0, delta.page(0));
+        assertEquals(1, delta.page(1));
+        assertEquals(5000 >>> 10, delta.page(2));
+        assertEquals(last >>> 10, delta.page(3));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExportDelta_AfterClear() {
+        BloomFilter<String> instance = new BloomFilter<String>(0.01, 1000, HashStrategies.MURMUR3_128);
+        instance.trackChanges();
+        long version = instance.checkpoint();
+        instance.add("foo");
+        instance.setBit(3, false);
+        instance.exportDelta(version);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testExportDelta_NotTracking() {
+        new BloomFilter<String>(0.01, 1000).exportDelta(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testApplyDelta_Incompatible() {
+        BloomFilter<String> instance = new BloomFilter<String>(0.01, 1000, HashStrategies.MURMUR3_128);
+        instance.trackChanges();
+        FilterDelta delta = instance.exportDelta(instance.checkpoint());
+        new BloomFilter<String>(0.01, 1000, HashStrategies.XXHASH64).applyDelta(delta);
+    }
+
+    @Test(expected = IOException.class)
+    public void testDeltaReadFrom_Corrupt() throws Exception {
+        BloomFilter<String> instance = new BloomFilter<String>(0.01, 1000, HashStrategies.MURMUR3_128);
+        instance.trackChanges();
+        long version = instance.checkpoint();
+        instance.add("foo");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        instance.exportDelta(version).writeTo(out);
+        byte[] data = out.toByteArray();
+        data[64 + 7] = 1; // page index far beyond the filter
+        FilterDelta.readFrom(new ByteArrayInputStream(data));
+    }
+}
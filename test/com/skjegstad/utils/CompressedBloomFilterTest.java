@@ -0,0 +1,96 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.skjegstad.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for CompressedBloomFilter.java
+ */
+public class CompressedBloomFilterTest {
+
+    /**
+     * Test of contains and getBit methods, of class CompressedBloomFilter.
+     */
+    @Test
+    public void testContains() {
+        System.out.println("contains");
+        int[] elements = { 0, 1, 100, 5000, 100000 };
+        for (int n : elements) {
+            BloomFilter<String> filter = new BloomFilter<String>(0.01, 100000, HashStrategies.MURMUR3_128);
+            for (int i = 0; i < n; i++)
+                filter.add("element" + i);
+            filter.addLong(42L);
+            filter.add(new byte[] {1, 2, 3});
+            CompressedBloomFilter<String> instance = new CompressedBloomFilter<String>(filter);
+
+            assertEquals(filter.size(), instance.size());
+            assertEquals(filter.count(), instance.count());
+            assertEquals(filter.bitCount(), instance.bitCount());
+            for (int i = 0; i < filter.size(); i++)
+                assertEquals(filter.getBit(i), instance.getBit(i));
+            for (int i = 0; i < n; i++)
+                assertTrue(instance.contains("element" + i));
+            for (int i = n; i < n + 1000; i++)
+                assertEquals(filter.contains("element" + i), instance.contains("element" + i));
+            assertTrue(instance.containsLong(42L));
+            assertTrue(instance.contains(new byte[] {1, 2, 3}));
+
+            assertEquals(filter.getBitSet(), instance.toBloomFilter().getBitSet());
+            if (n <= 5000)
+                assertTrue(instance.getCompressedSize() < filter.size() / 8 / 2);
+        }
+    }
+
+    /**
+     * Test of writeTo and readFrom methods, of class CompressedBloomFilter.
+     * @throws Exception
+     */
+    @Test
+    public void testWriteToReadFrom() throws Exception {
+        System.out.println("writeTo/readFrom");
+        BloomFilter<String> filter = new BloomFilter<String>(0.01, 100000, HashStrategies.XXHASH64);
+        for (int i = 0; i < 3000; i++)
+            filter.add("element" + i);
+
+        // read from the compressed form
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter.writeCompressedTo(out);
+        CompressedBloomFilter<String> instance = CompressedBloomFilter.readFrom(
+                new ByteArrayInputStream(out.toByteArray()), null);
+        assertEquals(filter.getBitSet(), instance.toBloomFilter().getBitSet());
+        assertSame(HashStrategies.XXHASH64, instance.getHashStrategy());
+        assertEquals(filter.getExpectedNumberOfElements(), instance.getExpectedNumberOfElements());
+
+        // written in the same form
+        ByteArrayOutputStream again = new ByteArrayOutputStream();
+        instance.writeTo(again);
+        assertArrayEquals(out.toByteArray(), again.toByteArray());
+
+        // read from the raw form
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        filter.writeTo(raw);
+        CompressedBloomFilter<String> fromRaw = CompressedBloomFilter.readFrom(
+                new ByteArrayInputStream(raw.toByteArray()), null);
+        for (int i = 0; i < 3000; i++)
+            assertTrue(fromRaw.contains("element" + i));
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ConcurrentBloomFilter.java
+ */
+public class ConcurrentBloomFilterTest {
+
+    /**
+     * Test of add method from several threads.
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        System.out.println("concurrent add");
+        final int threads = 8;
+        final int perThread = 5000;
+        final ConcurrentBloomFilter<String> instance = new ConcurrentBloomFilter<String>(0.01, threads * perThread);
+        final List<List<String>> values = new ArrayList<List<String>>();
+        for (int t = 0; t < threads; t++) {
+            List<String> v = new ArrayList<String>();
+            for (int i = 0; i < perThread; i++)
+                v.add(UUID.randomUUID().toString());
+            values.add(v);
+        }
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final List<String> v = values.get(t);
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    instance.addAll(v);
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread w : workers)
+            w.join();
+
+        assertEquals(threads * perThread, instance.count());
+        for (List<String> v : values)
+            assertTrue(instance.containsAll(v));
+    }
+
+    /**
+     * The concurrent filter must set the same bits as BloomFilter.
+     */
+    @Test
+    public void testSameBitsAsBloomFilter() {
+        System.out.println("same bits as BloomFilter");
+        for (HashStrategies s : HashStrategies.values()) {
+            BloomFilter<String> expected = new BloomFilter<String>(0.01, 1000, s);
+            ConcurrentBloomFilter<String> instance = new ConcurrentBloomFilter<String>(0.01, 1000, s);
+            for (int i = 0; i < 1000; i++) {
+                String val = UUID.randomUUID().toString();
+                expected.add(val);
+                instance.add(val);
+            }
+            assertEquals(expected.getBitSet(), instance.getBitSet());
+
+            BloomFilter<String> copy = new BloomFilter<String>(instance.size(), instance.getExpectedNumberOfElements(),
+                    instance.count(), instance.getBitSet(), s);
+            assertEquals(expected, copy);
+        }
+    }
+
+    /**
+     * Test of getBit and setBit methods.
+     */
+    @Test
+    public void testSetBit() {
+        System.out.println("setBit");
+        ConcurrentBloomFilter<String> instance = new ConcurrentBloomFilter<String>(1000, 100, HashStrategies.MURMUR3_128);
+        for (int i = 0; i < instance.size(); i++) {
+            instance.setBit(i, true);
+            assertTrue(instance.getBit(i));
+        }
+        for (int i = 0; i < instance.size(); i += 2) {
+            instance.setBit(i, false);
+            assertFalse(instance.getBit(i));
+            assertTrue(instance.getBit(i + 1));
+        }
+        instance.clear();
+        assertTrue(instance.getBitSet().isEmpty());
+        assertEquals(0, instance.count());
+    }
+}
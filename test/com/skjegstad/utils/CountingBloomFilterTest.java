@@ -0,0 +1,105 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for CountingBloomFilter.java
+ */
+public class CountingBloomFilterTest {
+
+    @Test
+    public void testAddRemove() {
+        System.out.println("add/remove");
+        CountingBloomFilter<String> instance = new CountingBloomFilter<String>(0.01, 1000);
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++)
+            values.add(UUID.randomUUID().toString());
+        instance.addAll(values);
+        assertEquals(1000, instance.count());
+        assertTrue(instance.containsAll(values));
+
+        assertTrue(instance.removeAll(values.subList(0, 500)));
+        assertEquals(500, instance.count());
+        assertTrue(instance.containsAll(values.subList(500, 1000)));
+        int present = 0;
+        for (String value : values.subList(0, 500))
+            if (instance.contains(value))
+                present++;
+        assertTrue(present < 20);
+
+        assertTrue(instance.removeAll(values.subList(500, 1000)));
+        assertEquals(0, instance.count());
+        assertTrue(instance.getBitSet().isEmpty());
+        assertEquals(0, instance.getOverflowCount());
+        assertEquals(new CountingBloomFilter<String>(0.01, 1000), instance);
+    }
+
+    /**
+     * Removing an element that is not in the filter must not change it.
+     */
+    @Test
+    public void testRemoveMissing() {
+        System.out.println("remove missing");
+        CountingBloomFilter<String> instance = new CountingBloomFilter<String>(0.01, 100);
+        instance.add("foo");
+        CountingBloomFilter<String> expected = new CountingBloomFilter<String>(0.01, 100);
+        expected.add("foo");
+        assertFalse(instance.remove("bar"));
+        assertEquals(expected, instance);
+        assertEquals(1, instance.count());
+    }
+
+    @Test
+    public void testSaturation() {
+        System.out.println("saturation");
+        CountingBloomFilter<String> instance = new CountingBloomFilter<String>(10, 1, 3, HashStrategies.MURMUR3_128);
+        for (int i = 0; i < 20; i++)
+            instance.addLong(42L);
+        int max = 0;
+        for (int i = 0; i < instance.size(); i++)
+            max = Math.max(max, instance.getCount(i));
+        assertEquals(CountingBloomFilter.MAX_COUNT, max);
+        assertTrue(instance.getOverflowCount() >= 5 * 3);
+
+        // saturated counters are never decremented, so the element is never lost
+        for (int i = 0; i < 20; i++)
+            assertTrue(instance.removeLong(42L));
+        assertTrue(instance.containsLong(42L));
+    }
+
+    @Test
+    public void testBitSetMatchesBloomFilter() {
+        System.out.println("getBitSet");
+        CountingBloomFilter<String> instance = new CountingBloomFilter<String>(0.01, 1000, HashStrategies.MD5);
+        BloomFilter<String> expected = new BloomFilter<String>(instance.size(), 1000, 0, new java.util.BitSet(),
+                HashStrategies.MD5);
+        assertEquals(instance.getK(), expected.getK());
+        for (int i = 0; i < 1000; i++) {
+            instance.addInt(i);
+            expected.addInt(i);
+            instance.add("value " + i);
+            expected.add("value " + i);
+        }
+        assertEquals(expected.getBitSet(), instance.getBitSet());
+    }
+}
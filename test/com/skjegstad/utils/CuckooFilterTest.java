@@ -0,0 +1,119 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for CuckooFilter.java
+ */
+public class CuckooFilterTest {
+
+    @Test
+    public void testAddContainsRemove() {
+        System.out.println("add/contains/remove");
+        CuckooFilter<String> instance = new CuckooFilter<String>(0.001, 10000);
+        assertEquals(13, instance.getFingerprintBits());
+        List<String> values = new ArrayList<String>();
+        for (int i = 0; i < 10000; i++)
+            values.add(UUID.randomUUID().toString());
+        assertTrue(instance.addAll(values));
+        assertEquals(10000, instance.count());
+        assertTrue(instance.containsAll(values));
+
+        for (String value : values.subList(0, 5000))
+            assertTrue(instance.remove(value));
+        assertEquals(5000, instance.count());
+        assertTrue(instance.containsAll(values.subList(5000, 10000)));
+        int present = 0;
+        for (String value : values.subList(0, 5000))
+            if (instance.contains(value))
+                present++;
+        assertTrue(present < 20);
+
+        for (String value : values.subList(5000, 10000))
+            assertTrue(instance.remove(value));
+        assertEquals(new CuckooFilter<String>(0.001, 10000), instance);
+    }
+
+    @Test
+    public void testFalsePositiveProbability() {
+        System.out.println("false positive probability");
+        int[] bits = { 8, 12, 13, 16 };
+        for (int f : bits) {
+            CuckooFilter<String> instance = new CuckooFilter<String>(100000, f, HashStrategies.XXHASH64, null);
+            for (long i = 0; i < 100000; i++)
+                assertTrue(instance.addLong(i));
+            for (long i = 0; i < 100000; i++)
+                assertTrue(instance.containsLong(i));
+            int falsePositives = 0;
+            for (long i = 100000; i < 1100000; i++)
+                if (instance.containsLong(i))
+                    falsePositives++;
+            double expected = instance.getFalsePositiveProbability();
+            assertTrue(f + ": " + falsePositives, falsePositives / 1000000.0 < 1.2 * expected + 1e-5);
+            assertTrue(expected < 8.0 / (1 << f));
+        }
+    }
+
+    /**
+     * A full filter must keep every element it accepted, and accept new
+     * elements again when one is removed.
+     */
+    @Test
+    public void testFull() {
+        System.out.println("full");
+        CuckooFilter<String> instance = new CuckooFilter<String>(1000, 12, HashStrategies.MURMUR3_128, null);
+        int added = 0;
+        while (instance.addLong((long) added))
+            added++;
+        assertTrue(instance.isFull());
+        assertEquals(added, instance.count());
+        assertTrue(added > 0.9 * instance.getBucketCount() * CuckooFilter.BUCKET_SIZE);
+        for (long i = 0; i < added; i++)
+            assertTrue(instance.containsLong(i));
+
+        for (long i = 0; i < 100; i++)
+            assertTrue(instance.removeLong(i));
+        assertFalse(instance.isFull());
+        assertEquals(added - 100, instance.count());
+        for (long i = 100; i < added; i++)
+            assertTrue(instance.containsLong(i));
+        assertTrue(instance.addLong((long) added));
+    }
+
+    @Test
+    public void testPrimitives() {
+        System.out.println("primitives");
+        CuckooFilter<String> instance = new CuckooFilter<String>(0.001, 1000, HashStrategies.MD5);
+        for (int i = 0; i < 100; i++) {
+            instance.addInt(i);
+            instance.add((long) i << 32, i);
+            instance.add(new byte[] { (byte) i, 1 });
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(instance.containsInt(i));
+            assertTrue(instance.contains((long) i << 32, i));
+            assertTrue(instance.contains(new byte[] { (byte) i, 1 }));
+        }
+        assertEquals(300, instance.count());
+    }
+}
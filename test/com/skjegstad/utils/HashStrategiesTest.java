@@ -0,0 +1,171 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for HashStrategies.java
+ */
+public class HashStrategiesTest {
+    static Random r = new Random();
+
+    /**
+     * MD5 must produce the same values as the original createHashes.
+     */
+    @Test
+    public void testMD5Compatible() throws Exception {
+        System.out.println("MD5 compatible");
+        for (int i = 0; i < 100; i++) {
+            byte[] data = UUID.randomUUID().toString().getBytes("UTF-8");
+            int[] expected = BloomFilter.createHashes(data, 10);
+            long[] result = new long[10];
+            HashStrategies.MD5.createHashes(data, 0, data.length, result, 10);
+            for (int j = 0; j < expected.length; j++)
+                assertEquals(expected[j], result[j]);
+        }
+    }
+
+    /**
+     * Reference values from the MurmurHash3 test suite.
+     */
+    @Test
+    public void testMurmur3() throws Exception {
+        System.out.println("murmur3");
+        long[] out = new long[2];
+        Murmur3.hash128(new byte[0], 0, 0, 0, out);
+        assertEquals(0L, out[0]);
+        assertEquals(0L, out[1]);
+
+        byte[] hell = "hell".getBytes("UTF-8");
+        Murmur3.hash128(hell, 0, hell.length, 0, out);
+        assertEquals(0x629942693e10f867L, out[0]);
+        assertEquals(0x92db0b82baeb5347L, out[1]);
+
+        byte[] fox = "The quick brown fox jumps over the lazy dog".getBytes("UTF-8");
+        Murmur3.hash128(fox, 0, fox.length, 0, out);
+        assertEquals(0xe34bbc7bbc071b6cL, out[0]);
+        assertEquals(0x7a433ca9c49a9347L, out[1]);
+    }
+
+    /**
+     * Reference values from the xxHash test suite.
+     */
+    @Test
+    public void testXxHash64() throws Exception {
+        System.out.println("xxhash64");
+        assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(new byte[0], 0, 0, 0));
+        byte[] abc = "abc".getBytes("UTF-8");
+        assertEquals(0x44BC2CF5AD770999L, XxHash64.hash(abc, 0, abc.length, 0));
+    }
+
+    /**
+     * Hashing a range must give the same result as hashing a copy of the range.
+     */
+    @Test
+    public void testOffset() {
+        System.out.println("offset");
+        for (HashStrategies s : HashStrategies.values()) {
+            for (int len = 0; len < 70; len++) {
+                byte[] data = new byte[len + 10];
+                r.nextBytes(data);
+                byte[] copy = new byte[len];
+                System.arraycopy(data, 5, copy, 0, len);
+
+                long[] result1 = new long[7];
+                long[] result2 = new long[7];
+                s.createHashes(data, 5, len, result1, 7);
+                s.createHashes(copy, 0, len, result2, 7);
+                assertArrayEquals(result1, result2);
+            }
+        }
+    }
+
+    /**
+     * Primitives must hash like their little-endian bytes.
+     */
+    @Test
+    public void testPrimitives() {
+        System.out.println("primitives");
+        for (HashStrategies s : HashStrategies.values()) {
+            for (int k = 1; k < 12; k++) {
+                long a = r.nextLong();
+                long b = r.nextLong();
+                byte[] bytes = new byte[16];
+                long[] expected = new long[k];
+                long[] result = new long[k];
+
+                HashBuffer.putLong(bytes, 0, a);
+                HashBuffer.putLong(bytes, 8, b);
+                s.createHashes(bytes, 0, 8, expected, k);
+                s.createHashes(a, result, k);
+                assertArrayEquals(expected, result);
+
+                s.createHashes(bytes, 0, 16, expected, k);
+                s.createHashes(a, b, result, k);
+                assertArrayEquals(expected, result);
+
+                s.createHashes(bytes, 0, 4, expected, k);
+                s.createHashes((int) a, result, k);
+                assertArrayEquals(expected, result);
+            }
+        }
+    }
+
+    @Test
+    public void testForId() {
+        System.out.println("forId");
+        for (HashStrategies s : HashStrategies.values())
+            assertSame(s, HashStrategies.forId(s.getId()));
+    }
+
+    /**
+     * The fast strategies must give the same false positive rate as MD5.
+     */
+    @Test
+    public void testFalsePositiveRate() {
+        System.out.println("falsePositiveRate");
+        for (HashStrategies s : HashStrategies.values()) {
+            List<byte[]> v = new ArrayList<byte[]>();
+            BloomFilter instance = new BloomFilter(1000, 100, s);
+            for (int i = 0; i < 100; i++) {
+                byte[] bytes = new byte[100];
+                r.nextBytes(bytes);
+                v.add(bytes);
+                instance.add(bytes);
+            }
+            for (byte[] bytes : v)
+                assertTrue(instance.contains(bytes));
+
+            long f = 0;
+            double tests = 100000;
+            for (int i = 0; i < tests; i++) {
+                byte[] bytes = new byte[100];
+                r.nextBytes(bytes);
+                if (instance.contains(bytes))
+                    f++;
+            }
+            double ratio = f / tests;
+            System.out.println(s + " - got " + ratio + ", math says " + instance.expectedFalsePositiveProbability());
+            assertEquals(instance.expectedFalsePositiveProbability(), ratio, 0.01);
+        }
+    }
+}
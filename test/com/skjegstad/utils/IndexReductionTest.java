@@ -0,0 +1,119 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.math.BigInteger;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for IndexReduction.java
+ */
+public class IndexReductionTest {
+
+    /**
+     * Test of multiplyShift method against BigInteger arithmetic.
+     */
+    @Test
+    public void testMultiplyShift() {
+        System.out.println("multiplyShift");
+        Random r = new Random(42);
+        long[] sizes = {1, 2, 1000, 0xFFFFFFFFL, 0x100000000L, 1L << 40, Long.MAX_VALUE};
+        BigInteger mask = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        for (long m : sizes) {
+            for (int i = 0; i < 1000; i++) {
+                long hash = i == 0 ? -1L : r.nextLong();
+                long expected = BigInteger.valueOf(hash).and(mask).multiply(BigInteger.valueOf(m))
+                        .shiftRight(64).longValue();
+                assertEquals(expected, IndexReduction.multiplyShift(hash, m));
+            }
+        }
+    }
+
+    /**
+     * Test that every reduction maps hash values into range.
+     */
+    @Test
+    public void testReduceRange() {
+        System.out.println("reduce range");
+        Random r = new Random(7);
+        long[] sizes = {1, 64, 1000, 1L << 20, 3000000001L, 1L << 33};
+        for (IndexReduction reduction : IndexReduction.values()) {
+            for (long m : sizes) {
+                if (!reduction.supports(m))
+                    continue;
+                for (int i = 0; i < 1000; i++) {
+                    long position = reduction.reduce(r.nextLong(), m);
+                    assertTrue(position >= 0 && position < m);
+                }
+            }
+        }
+        assertEquals(1023, IndexReduction.MASK.reduce(-1L, 1024));
+        assertEquals(1023, IndexReduction.MULTIPLY_SHIFT.reduce(-1L, 1024));
+        assertEquals(0, IndexReduction.MULTIPLY_SHIFT.reduce(12345, 1024));
+    }
+
+    /**
+     * Test of supports method.
+     */
+    @Test
+    public void testSupports() {
+        System.out.println("supports");
+        assertTrue(IndexReduction.MASK.supports(1024));
+        assertFalse(IndexReduction.MASK.supports(1000));
+        assertTrue(IndexReduction.MULTIPLY_SHIFT.supports(1000));
+        assertTrue(IndexReduction.MODULO.supports(1000));
+    }
+
+    /**
+     * Test of forId method.
+     */
+    @Test
+    public void testForId() {
+        System.out.println("forId");
+        for (IndexReduction reduction : IndexReduction.values())
+            assertSame(reduction, IndexReduction.forId(reduction.getId()));
+        try {
+            IndexReduction.forId(99);
+            fail("Unknown id accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    /**
+     * Test that MD5 can only be used with MODULO.
+     */
+    @Test
+    public void testCheck_MD5() {
+        System.out.println("check MD5");
+        IndexReduction.check(IndexReduction.MODULO, 1000, HashStrategies.MD5);
+        IndexReduction.check(IndexReduction.MULTIPLY_SHIFT, 1000, HashStrategies.MURMUR3_128);
+        try {
+            BloomFilterSpec.of(1024, 7, 100, HashStrategies.MD5, IndexReduction.MASK);
+            fail("MASK accepted for MD5");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            BloomFilterSpec.of(1000, 7, 100, HashStrategies.MURMUR3_128, IndexReduction.MASK);
+            fail("MASK accepted for a size that is not a power of two");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
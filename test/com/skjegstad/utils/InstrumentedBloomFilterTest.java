@@ -0,0 +1,162 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+package com.skjegstad.utils;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for InstrumentedBloomFilter.java
+ */
+public class InstrumentedBloomFilterTest {
+
+    /**
+     * Test of the counters and the snapshot.
+     */
+    @Test
+    public void testSnapshot() {
+        System.out.println("snapshot");
+        InstrumentedBloomFilter<String> instance = new InstrumentedBloomFilter<String>(
+                new BloomFilter<String>(0.01, 1000, HashStrategies.MURMUR3_128));
+        for (int i = 0; i < 500; i++)
+            instance.add("element" + i);
+        instance.addLong(42L);
+        instance.add(new byte[] {1, 2, 3});
+        instance.addAll(new long[] {1, 2, 3});
+
+        int positives = 0;
+        for (int i = 0; i < 1000; i++)
+            if (instance.contains("element" + i))
+                positives++;
+        assertTrue(instance.containsLong(42L));
+        boolean[] each = instance.containsEach(new long[] {1, 2, 3, 4});
+
+        FilterMetricsSnapshot snapshot = instance.snapshot();
+        assertEquals(505, snapshot.getAdds());
+        assertEquals(505, snapshot.getCount());
+        assertEquals(1005, snapshot.getQueries());
+        assertEquals(positives + 1 + (each[3] ? 4 : 3), snapshot.getPositives());
+        assertEquals(1000, snapshot.getExpectedNumberOfElements());
+        assertFalse(snapshot.isOverCapacity());
+        assertEquals(instance.getFilter().getBitSet().cardinality(), snapshot.getBitsSet());
+        assertEquals(snapshot.getBitsSet() / (double) snapshot.getSize(), snapshot.getFillRatio(), 1e-12);
+        assertEquals(instance.getFilter().expectedFalsePositiveProbability(),
+                snapshot.getConfiguredFalsePositiveProbability(), 0);
+        // half full, so the estimate is far below the configured probability
+        assertTrue(snapshot.getEstimatedFalsePositiveProbability() < snapshot.getConfiguredFalsePositiveProbability());
+        assertTrue(snapshot.getAverageHashNanos() > 0);
+    }
+
+    /**
+     * Test that primitives hash the same bytes as in the wrapped filter.
+     */
+    @Test
+    public void testPrimitives() {
+        System.out.println("primitives");
+        BloomFilter<Integer> filter = new BloomFilter<Integer>(0.01, 1000, HashStrategies.MURMUR3_128);
+        InstrumentedBloomFilter<Integer> instance = new InstrumentedBloomFilter<Integer>(filter);
+        for (int i = 0; i < 100; i++) {
+            filter.addInt(i);
+            instance.addLong(1000 + i);
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(instance.containsInt(i));
+            assertTrue(filter.containsLong(1000 + i));
+        }
+        instance.addInt(-1);
+        assertTrue(filter.containsInt(-1));
+        FilterMetricsSnapshot snapshot = instance.snapshot();
+        assertEquals(101, snapshot.getAdds());
+        assertEquals(100, snapshot.getQueries());
+    }
+
+    /**
+     * Test of the listeners.
+     */
+    @Test
+    public void testListener() {
+        System.out.println("listener");
+        final List<FilterMetricsSnapshot> published = new ArrayList<FilterMetricsSnapshot>();
+        final List<FilterMetricsSnapshot> exceeded = new ArrayList<FilterMetricsSnapshot>();
+        InstrumentedBloomFilter<String> instance = new InstrumentedBloomFilter<String>(
+                new BloomFilter<String>(0.01, 100, HashStrategies.MURMUR3_128));
+        instance.addListener(new FilterMetricsListener() {
+            public void metricsPublished(FilterMetricsSnapshot snapshot) {
+                published.add(snapshot);
+            }
+
+            @Override
+            public void capacityExceeded(FilterMetricsSnapshot snapshot) {
+                exceeded.add(snapshot);
+            }
+        });
+
+        for (long i = 0; i < 100; i++)
+            instance.addLong(i);
+        assertTrue(exceeded.isEmpty());
+        for (long i = 100; i < 300; i++)
+            instance.addLong(i);
+        assertEquals(1, exceeded.size());
+        assertEquals(101, exceeded.get(0).getCount());
+        assertTrue(exceeded.get(0).isOverCapacity());
+
+        instance.clear();
+        for (long i = 0; i < 101; i++)
+            instance.addLong(i);
+        assertEquals(2, exceeded.size());
+
+        FilterMetricsSnapshot snapshot = instance.publish();
+        assertEquals(1, published.size());
+        assertSame(snapshot, published.get(0));
+        assertEquals(401, snapshot.getAdds());
+    }
+
+    /**
+     * Test of registerMBean method.
+     * @throws Exception
+     */
+    @Test
+    public void testMBean() throws Exception {
+        System.out.println("registerMBean");
+        InstrumentedBloomFilter<String> instance = new InstrumentedBloomFilter<String>(
+                new BloomFilter<String>(0.01, 1000, HashStrategies.MURMUR3_128));
+        instance.add("foo");
+        instance.contains("foo");
+        instance.contains("bar");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = instance.registerMBean("test");
+        try {
+            assertEquals(1L, server.getAttribute(name, "Adds"));
+            assertEquals(2L, server.getAttribute(name, "Queries"));
+            assertEquals(1000, server.getAttribute(name, "ExpectedNumberOfElements"));
+            assertEquals(Boolean.FALSE, server.getAttribute(name, "OverCapacity"));
+            assertEquals(instance.getFilter().getK(), server.getAttribute(name, "BitsSet"));
+            assertEquals(instance.getFilter().getK() / (double) instance.getFilter().size(),
+                    (Double) server.getAttribute(name, "FillRatio"), 1e-12);
+            assertEquals(0.5, (Double) server.getAttribute(name, "PositiveRate"), 1e-12);
+        } finally {
+            server.unregisterMBean(name);
+        }
+    }
+}
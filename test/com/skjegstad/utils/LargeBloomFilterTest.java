@@ -0,0 +1,294 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for LargeBloomFilter.java and the BitStorage implementations.
+ */
+public class LargeBloomFilterTest {
+    static Random r = new Random();
+
+    /**
+     * Storage that only remembers the set bits, so that very large filters can be tested.
+     */
+    static class SparseBitStorage implements BitStorage {
+        final Set<Long> bits = new HashSet<Long>();
+        final long size;
+
+        SparseBitStorage(long size) {
+            this.size = size;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public boolean get(long bit) {
+            return bits.contains(bit);
+        }
+
+        public void set(long bit) {
+            assertTrue(bit >= 0 && bit < size);
+            bits.add(bit);
+        }
+
+        public void clear(long bit) {
+            bits.remove(bit);
+        }
+
+        public void clear() {
+            bits.clear();
+        }
+
+        public long wordCount() {
+            return (size + 63) >>> 6;
+        }
+
+        public long getWord(long index) {
+            throw new UnsupportedOperationException();
+        }
+
+        public void setWord(long index, long word) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    /**
+     * A LargeBloomFilter must set the same bits as BloomFilter.
+     */
+    @Test
+    public void testSameBitsAsBloomFilter() {
+        System.out.println("same bits as BloomFilter");
+        for (HashStrategies s : HashStrategies.values()) {
+            BloomFilter<String> expected = new BloomFilter<String>(0.01, 1000, s);
+            BitStorage[] storages = { new HeapBitStorage(expected.size()), new OffHeapBitStorage(expected.size()),
+                                      new OffHeapBitStorage(expected.size(), 3) };
+            for (BitStorage storage : storages) {
+                expected.clear();
+                LargeBloomFilter<String> instance = new LargeBloomFilter<String>(storage, 1000, expected.getK(), s, null);
+                for (int i = 0; i < 1000; i++) {
+                    String val = UUID.randomUUID().toString();
+                    expected.add(val);
+                    instance.add(val);
+                    assertTrue(instance.contains(val));
+                }
+
+                long[] words = expected.getBitSet().toLongArray();
+                for (int i = 0; i < storage.wordCount(); i++)
+                    assertEquals(i < words.length ? words[i] : 0, storage.getWord(i));
+                assertEquals(1000, instance.count());
+            }
+        }
+    }
+
+    @Test
+    public void testOffHeapBitStorage() {
+        System.out.println("OffHeapBitStorage");
+        BitStorage storage = new OffHeapBitStorage(10000, 2); // 4 words per chunk
+        BitSet expected = new BitSet();
+        for (int i = 0; i < 2000; i++) {
+            int bit = r.nextInt(10000);
+            storage.set(bit);
+            expected.set(bit);
+        }
+        for (int i = 0; i < 10000; i++)
+            assertEquals(expected.get(i), storage.get(i));
+        for (int i = 0; i < 10000; i += 3) {
+            storage.clear(i);
+            expected.clear(i);
+        }
+        for (int i = 0; i < 10000; i++)
+            assertEquals(expected.get(i), storage.get(i));
+        assertEquals(157, storage.wordCount());
+        storage.clear();
+        for (int i = 0; i < 10000; i++)
+            assertFalse(storage.get(i));
+    }
+
+    /**
+     * Filters with more than 2^31 bits must use the whole range.
+     */
+    @Test
+    public void testLongIndices() {
+        System.out.println("long indices");
+        SparseBitStorage storage = new SparseBitStorage(1L << 40);
+        LargeBloomFilter<String> instance = new LargeBloomFilter<String>(storage, 1L << 36, 10,
+                HashStrategies.MURMUR3_128, null);
+        for (long i = 0; i < 1000; i++) {
+            instance.addLong(i);
+            assertTrue(instance.containsLong(i));
+        }
+        long high = 0;
+        for (long bit : storage.bits)
+            if (bit > Integer.MAX_VALUE)
+                high++;
+        assertTrue(high > 9000);
+        assertFalse(instance.containsLong(-1L));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMD5TooLarge() {
+        new LargeBloomFilter<String>(new SparseBitStorage(1L << 32), 1000, 10, HashStrategies.MD5, null);
+    }
+
+    /**
+     * A header is checked before storage is allocated for it, so a header
+     * that can not be used fails with an IOException.
+     */
+    @Test
+    public void testReadFrom_CorruptHeader() throws Exception {
+        System.out.println("readFrom corrupt header");
+        FilterHeader[] headers = { new FilterHeader(), new FilterHeader() };
+        for (FilterHeader header : headers) {
+            header.hashStrategyId = HashStrategies.MURMUR3_128.getId();
+            header.k = 7;
+            header.bits = 1L << 40;
+            header.expectedElements = 1000;
+        }
+        headers[0].hashStrategyId = HashStrategies.MD5.getId(); // MD5 addresses at most 2^31 bits
+        headers[1].parameter = IndexReduction.MASK.getId(); // needs a power of two
+        headers[1].bits = (1L << 40) + 1;
+        for (FilterHeader header : headers) {
+            ByteBuffer buffer = ByteBuffer.allocate(FilterHeader.SIZE);
+            header.write(buffer);
+            try {
+                LargeBloomFilter.readFrom(new ByteArrayInputStream(buffer.array()), null);
+                fail("read a filter of " + header.bits + " bits");
+            } catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    @Test
+    public void testWriteToReadFrom() throws Exception {
+        System.out.println("writeTo/readFrom");
+        LargeBloomFilter<String> instance = new LargeBloomFilter<String>(0.01, 1000, HashStrategies.XXHASH64);
+        for (int i = 0; i < 1000; i++)
+            instance.add("value " + i);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        instance.writeTo(out);
+        LargeBloomFilter<String> copy = LargeBloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()), null);
+        assertEquals(instance.size(), copy.size());
+        assertEquals(instance.getK(), copy.getK());
+        assertEquals(1000, copy.count());
+        assertSame(HashStrategies.XXHASH64, copy.getHashStrategy());
+        for (long i = 0; i < instance.size(); i++)
+            assertEquals(instance.getBit(i), copy.getBit(i));
+
+        // the format is shared with BloomFilter
+        BloomFilter<String> heap = BloomFilter.readFrom(new ByteArrayInputStream(out.toByteArray()));
+        for (int i = 0; i < 1000; i++)
+            assertTrue(heap.contains("value " + i));
+    }
+
+    @Test
+    public void testApproximateCounts() {
+        System.out.println("approximateElementCount");
+        LargeBloomFilter<String> a = new LargeBloomFilter<String>(0.01, 20000, HashStrategies.MURMUR3_128);
+        LargeBloomFilter<String> b = new LargeBloomFilter<String>(0.01, 20000, HashStrategies.MURMUR3_128);
+        for (long i = 0; i < 6000; i++) {
+            a.addLong(i);
+            a.addLong(i);
+        }
+        for (long i = 4000; i < 10000; i++)
+            b.addLong(i);
+
+        assertEquals(12000, a.count());
+        assertEquals(6000, a.approximateElementCount(), 6000 * 0.03);
+        assertEquals(10000, a.approximateUnionCount(b), 10000 * 0.03);
+        assertEquals(2000, a.approximateIntersectionCount(b), 2000 * 0.1);
+        assertEquals(0.2, a.approximateJaccardSimilarity(b), 0.02);
+
+        // same estimates as BloomFilter with the same bits
+        BloomFilter<String> heap = new BloomFilter<String>(0.01, 20000, HashStrategies.MURMUR3_128);
+        for (long i = 0; i < 6000; i++)
+            heap.addLong(i);
+        assertEquals(heap.bitCount(), a.bitCount());
+        assertEquals(heap.approximateElementCount(), a.approximateElementCount());
+
+        a.setBit(0, !a.getBit(0));
+        assertEquals(heap.bitCount() + (a.getBit(0) ? 1 : -1), a.bitCount());
+    }
+
+    @Test
+    public void testExportApplyDelta() {
+        System.out.println("exportDelta/applyDelta");
+        BloomFilter<String> replica = new BloomFilter<String>(0.01, 1000, HashStrategies.MURMUR3_128);
+        long bits = replica.size(); // not a multiple of a page or a word
+        LargeBloomFilter<String> instance = new LargeBloomFilter<String>(new HeapBitStorage(bits), 1000,
+                replica.getK(), HashStrategies.MURMUR3_128, null);
+        instance.trackChanges();
+        long version = instance.checkpoint();
+        for (long i = 0; i < 1000; i++)
+            instance.addLong(i);
+        instance.setBit(bits - 1, true);
+        FilterDelta delta = instance.exportDelta(version);
+        replica.applyDelta(delta);
+        for (long i = 0; i < bits; i++)
+            assertEquals(instance.getBit(i), replica.getBit((int) i));
+        assertEquals(instance.count(), replica.count());
+
+        LargeBloomFilter<String> copy = new LargeBloomFilter<String>(new HeapBitStorage(bits), 1000,
+                replica.getK(), HashStrategies.MURMUR3_128, null);
+        replica.trackChanges();
+        replica.setBit(0, true);
+        copy.applyDelta(replica.exportDelta(replica.checkpoint() - 1));
+        for (long i = 0; i < 1024; i++) // the page holding bit 0 is sent whole
+            assertEquals(replica.getBit((int) i), copy.getBit(i));
+        for (long i = 1024; i < bits; i++)
+            assertFalse(copy.getBit(i));
+    }
+
+    /**
+     * Delta words are OR-ed into the storage a page at a time; bits of the
+     * delta past the end of the filter must not end up in the last word.
+     */
+    @Test
+    public void testApplyDelta_LastPage() {
+        System.out.println("applyDelta last page");
+        long bits = 3 * 1024 + 100;
+        int[] pages = { 0, 3 };
+        long[] words = new long[pages.length * ChangeTracker.PAGE_WORDS];
+        Arrays.fill(words, -1L);
+        BitStorage[] storages = { new HeapBitStorage(bits), new OffHeapBitStorage(bits) };
+        for (BitStorage storage : storages) {
+            LargeBloomFilter<String> instance = new LargeBloomFilter<String>(storage, 100, 3,
+                    HashStrategies.MURMUR3_128, null);
+            FilterDelta delta = new FilterDelta(HashStrategies.MURMUR3_128.getId(), IndexReduction.MODULO.getId(), 3,
+                    bits, 0, 1, 10, pages, words);
+            instance.applyDelta(delta);
+            assertEquals(1024 + 100, instance.bitCount());
+            assertEquals((1L << 36) - 1, storage.getWord(storage.wordCount() - 1));
+            for (long i = 0; i < bits; i++)
+                assertEquals(i < 1024 || i >= 3 * 1024, instance.getBit(i));
+        }
+    }
+}
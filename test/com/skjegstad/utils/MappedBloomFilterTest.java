@@ -0,0 +1,184 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ReadOnlyBufferException;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.UUID;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for MappedBloomFilter.java and MappedBitStorage.java
+ */
+public class MappedBloomFilterTest {
+
+    @Test
+    public void testCreateAndOpen() throws Exception {
+        System.out.println("create and open");
+        File file = File.createTempFile("bloomfilter", ".bin");
+        file.deleteOnExit();
+
+        MappedBloomFilter<String> instance = MappedBloomFilter.create(file, 0.01, 1000, HashStrategies.MURMUR3_128, null);
+        String[] values = new String[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = UUID.randomUUID().toString();
+            instance.add(values[i]);
+        }
+        instance.force();
+
+        MappedBloomFilter<String> reader = MappedBloomFilter.open(file, MapMode.READ_ONLY);
+        assertEquals(1000, reader.count());
+        assertEquals(instance.size(), reader.size());
+        assertEquals(instance.getK(), reader.getK());
+        assertEquals(1000, reader.getExpectedNumberOfElements());
+        assertSame(HashStrategies.MURMUR3_128, reader.getHashStrategy());
+        for (String val : values)
+            assertTrue(reader.contains(val));
+
+        // writes through the shared mapping are visible before force()
+        instance.add("foo");
+        assertTrue(reader.contains("foo"));
+
+        try {
+            reader.add("bar");
+            fail("read-only filter was modified");
+        } catch (ReadOnlyBufferException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCreate_Spec() throws Exception {
+        System.out.println("create spec");
+        File file = File.createTempFile("bloomfilter", ".bin");
+        file.deleteOnExit();
+
+        BloomFilterSpec spec = BloomFilterSpec.plan(0.01, 1000);
+        MappedBloomFilter<String> instance = MappedBloomFilter.create(file, spec, null);
+        assertEquals(spec.getBits(), instance.size());
+        assertEquals(spec.getK(), instance.getK());
+        for (int i = 0; i < 1000; i++)
+            instance.add("element" + i);
+        instance.force();
+
+        MappedBloomFilter<String> reader = MappedBloomFilter.open(file, MapMode.READ_ONLY);
+        assertSame(spec.getIndexReduction(), reader.getIndexReduction());
+        for (int i = 0; i < 1000; i++)
+            assertTrue(reader.contains("element" + i));
+
+        BloomFilter<String> copy = BloomFilter.readFrom(new java.io.FileInputStream(file));
+        assertEquals(spec.getIndexReduction(), copy.getIndexReduction());
+        assertTrue(copy.contains("element0"));
+    }
+
+    @Test
+    public void testPrivate() throws Exception {
+        System.out.println("private");
+        File file = File.createTempFile("bloomfilter", ".bin");
+        file.deleteOnExit();
+
+        MappedBloomFilter<String> instance = MappedBloomFilter.create(file, 0.01, 100, HashStrategies.XXHASH64, null);
+        instance.add("foo");
+        instance.force();
+
+        MappedBloomFilter<String> copy = MappedBloomFilter.open(file, MapMode.PRIVATE);
+        copy.add("bar");
+        assertTrue(copy.contains("bar"));
+        assertEquals(2, copy.count());
+        copy.force();
+
+        MappedBloomFilter<String> reader = MappedBloomFilter.open(file, MapMode.READ_ONLY);
+        assertTrue(reader.contains("foo"));
+        assertFalse(reader.contains("bar"));
+        assertEquals(1, reader.count());
+    }
+
+    @Test
+    public void testChunks() throws Exception {
+        System.out.println("chunks");
+        File file = File.createTempFile("bloomfilter", ".bin");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength(8 + 8 * 100);
+            MappedBitStorage storage = new MappedBitStorage(raf.getChannel(), MapMode.READ_WRITE, 8, 6400, 3);
+            for (long i = 0; i < 6400; i += 7)
+                storage.set(i);
+            for (long i = 0; i < 6400; i++)
+                assertEquals(i % 7 == 0, storage.get(i));
+            storage.force();
+            raf.seek(8 + 8 * 99);
+            assertEquals(Long.reverseBytes(storage.getWord(99)), raf.readLong());
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testNotAFilter() throws Exception {
+        File file = File.createTempFile("bloomfilter", ".bin");
+        file.deleteOnExit();
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.setLength(1000);
+        raf.close();
+        MappedBloomFilter.open(file, MapMode.READ_ONLY);
+    }
+
+    @Test
+    public void testOpenWrittenFilter() throws Exception {
+        System.out.println("open written filter");
+        File file = File.createTempFile("bloomfilter", ".bin");
+        file.deleteOnExit();
+
+        BloomFilter<String> instance = new BloomFilter<String>(0.01, 1000, HashStrategies.MURMUR3_128);
+        for (int i = 0; i < 1000; i++)
+            instance.add("value " + i);
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            instance.writeTo(out);
+        } finally {
+            out.close();
+        }
+
+        MappedBloomFilter<String> reader = MappedBloomFilter.open(file, MapMode.READ_ONLY);
+        assertEquals(instance.size(), reader.size());
+        assertEquals(instance.getK(), reader.getK());
+        assertEquals(1000, reader.count());
+        for (int i = 0; i < 1000; i++)
+            assertTrue(reader.contains("value " + i));
+        for (int i = 0; i < instance.size(); i++)
+            assertEquals(instance.getBit(i), reader.getBit(i));
+    }
+
+    @Test(expected = java.io.IOException.class)
+    public void testOpenCompressedFilter() throws Exception {
+        File file = File.createTempFile("bloomfilter", ".bin");
+        file.deleteOnExit();
+        BloomFilter<String> instance = new BloomFilter<String>(0.01, 1000, HashStrategies.MURMUR3_128);
+        instance.add("foo");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            instance.writeCompressedTo(out);
+        } finally {
+            out.close();
+        }
+        MappedBloomFilter.open(file, MapMode.READ_ONLY);
+    }
+}
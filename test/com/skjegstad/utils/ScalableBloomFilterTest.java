@@ -0,0 +1,99 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.util.UUID;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ScalableBloomFilter.java
+ */
+public class ScalableBloomFilterTest {
+
+    @Test
+    public void testGrow() {
+        System.out.println("grow");
+        ScalableBloomFilter<String> instance = new ScalableBloomFilter<String>(0.01, 1000);
+        assertEquals(1, instance.getNumberOfFilters());
+        long size = instance.size();
+
+        for (int i = 0; i < 1000; i++)
+            instance.add("value " + i);
+        assertEquals(1, instance.getNumberOfFilters());
+        instance.add("value 1000");
+        assertEquals(2, instance.getNumberOfFilters());
+        assertTrue(instance.size() > 2.5 * size); // the second filter is twice as large
+
+        for (int i = 1001; i < 31000; i++)
+            instance.add("value " + i);
+        assertEquals(31000, instance.count());
+        assertEquals(5, instance.getNumberOfFilters()); // 1000 + 2000 + 4000 + 8000 + 16000 < 31000 + 1
+        for (int i = 0; i < 31000; i++)
+            assertTrue(instance.contains("value " + i));
+        assertTrue(instance.getFalsePositiveProbability() < 0.01);
+
+        instance.clear();
+        assertEquals(1, instance.getNumberOfFilters());
+        assertEquals(0, instance.count());
+        assertEquals(size, instance.size());
+    }
+
+    /**
+     * The false positive probability must stay below the bound, also after the
+     * filter has grown far beyond its initial capacity.
+     */
+    @Test
+    public void testFalsePositiveProbability() {
+        System.out.println("false positive probability");
+        HashStrategy[] strategies = { HashStrategies.MD5, HashStrategies.MURMUR3_128, HashStrategies.XXHASH64 };
+        for (HashStrategy strategy : strategies) {
+            ScalableBloomFilter<String> instance = new ScalableBloomFilter<String>(0.01, 100, strategy);
+            for (long i = 0; i < 50000; i++)
+                instance.addLong(i);
+            for (long i = 0; i < 50000; i++)
+                assertTrue(instance.containsLong(i));
+
+            int falsePositives = 0;
+            for (int i = 0; i < 100000; i++)
+                if (instance.contains(UUID.randomUUID().toString()))
+                    falsePositives++;
+            assertTrue(strategy + ": " + falsePositives, falsePositives / 100000.0 < 0.01);
+        }
+    }
+
+    @Test
+    public void testPrimitives() {
+        System.out.println("primitives");
+        ScalableBloomFilter<String> instance = new ScalableBloomFilter<String>(0.001, 10);
+        for (int i = 0; i < 100; i++) {
+            instance.addInt(i);
+            instance.add((long) i << 32, i);
+            instance.add(new byte[] { (byte) i, 1 });
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(instance.containsInt(i));
+            assertTrue(instance.contains((long) i << 32, i));
+            assertTrue(instance.contains(new byte[] { (byte) i, 1 }));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTighteningRatio() {
+        new ScalableBloomFilter<String>(0.01, 100, 2, 1.0, HashStrategies.MURMUR3_128, null);
+    }
+}
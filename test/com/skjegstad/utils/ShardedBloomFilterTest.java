@@ -0,0 +1,113 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package com.skjegstad.utils;
+
+import java.util.UUID;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ShardedBloomFilter.java
+ */
+public class ShardedBloomFilterTest {
+
+    /**
+     * Test of add method from several threads.
+     * @throws Exception
+     */
+    @Test
+    public void testConcurrentAdd() throws Exception {
+        System.out.println("concurrent add");
+        final int threads = 8;
+        final int perThread = 10000;
+        final ShardedBloomFilter<String> instance = new ShardedBloomFilter<String>(0.01, threads * perThread, 16,
+                HashStrategies.MURMUR3_128);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final long first = t * perThread;
+            workers[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (long i = first; i < first + perThread; i++)
+                        instance.addLong(i);
+                }
+            };
+            workers[t].start();
+        }
+        for (Thread w : workers)
+            w.join();
+
+        assertEquals(threads * perThread, instance.count());
+        for (long i = 0; i < threads * perThread; i++)
+            assertTrue(instance.containsLong(i));
+
+        // every shard gets its share of the elements
+        for (int shard = 0; shard < instance.getNumberOfShards(); shard++)
+            assertEquals(threads * perThread / 16.0, instance.count(shard), threads * perThread / 16.0 * 0.1);
+
+        instance.clear();
+        assertEquals(0, instance.count());
+        assertFalse(instance.containsLong(0L));
+    }
+
+    @Test
+    public void testFalsePositiveProbability() {
+        System.out.println("false positive probability");
+        for (HashStrategies s : HashStrategies.values()) {
+            ShardedBloomFilter<String> instance = new ShardedBloomFilter<String>(0.01, 20000, 8, s);
+            assertTrue(instance.size() >= new BloomFilter<String>(0.01, 20000).size());
+            for (int i = 0; i < 20000; i++)
+                instance.add("value " + i);
+            for (int i = 0; i < 20000; i++)
+                assertTrue(instance.contains("value " + i));
+
+            int falsePositives = 0;
+            for (int i = 0; i < 100000; i++)
+                if (instance.contains(UUID.randomUUID().toString()))
+                    falsePositives++;
+            double expected = instance.getFalsePositiveProbability();
+            assertTrue(s + ": " + falsePositives, falsePositives / 100000.0 < 1.5 * expected);
+            assertTrue(expected < 0.01);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShardsPowerOfTwo() {
+        new ShardedBloomFilter<String>(0.01, 1000, 3, HashStrategies.MURMUR3_128);
+    }
+
+    /**
+     * Test that filters too large for their shards are refused rather than
+     * truncated.
+     */
+    @Test
+    public void testTooLarge() {
+        System.out.println("too large");
+        try {
+            new ShardedBloomFilter<String>(0.0001, 250000000, 1, HashStrategies.MURMUR3_128, null);
+            fail("Shard of more than 2^31 bits accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        try {
+            new ShardedBloomFilter<String>(100.0, Integer.MAX_VALUE, 7, 1024, HashStrategies.MURMUR3_128, null);
+            fail("Filter of more than 2^31 words accepted");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
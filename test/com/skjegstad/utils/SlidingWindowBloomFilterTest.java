@@ -0,0 +1,157 @@
+/**
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.skjegstad.utils;
+
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for SlidingWindowBloomFilter.java
+ */
+public class SlidingWindowBloomFilterTest {
+
+    /**
+     * A time-windowed filter with a clock controlled by the test.
+     */
+    static class ManualClockFilter extends SlidingWindowBloomFilter<String> {
+        long now;
+
+        ManualClockFilter(int generations, long windowSeconds) {
+            super(0.01, 1000, generations, windowSeconds, TimeUnit.SECONDS, HashStrategies.MURMUR3_128, null);
+        }
+
+        @Override
+        long nanoTime() {
+            return now;
+        }
+
+        void setSeconds(double seconds) {
+            now = (long) (seconds * 1e9);
+        }
+    }
+
+    @Test
+    public void testCountWindow() {
+        System.out.println("count window");
+        SlidingWindowBloomFilter<String> instance = new SlidingWindowBloomFilter<String>(0.01, 1000, 3);
+        for (long i = 0; i < 3000; i++)
+            instance.addLong(i);
+        assertEquals(3000, instance.count());
+        for (long i = 0; i < 3000; i++)
+            assertTrue(instance.containsLong(i));
+
+        // starts a new generation, forgetting the first 1000 elements
+        instance.addLong(3000L);
+        assertEquals(2001, instance.count());
+        for (long i = 1000; i <= 3000; i++)
+            assertTrue(instance.containsLong(i));
+        int falsePositives = 0;
+        for (long i = 0; i < 1000; i++)
+            if (instance.containsLong(i))
+                falsePositives++;
+        assertTrue(falsePositives < 50);
+        assertTrue(instance.getFalsePositiveProbability() <= instance.expectedFalsePositiveProbability());
+    }
+
+    @Test
+    public void testTimeWindow() {
+        System.out.println("time window");
+        ManualClockFilter instance = new ManualClockFilter(3, 10); // generations of 5 seconds
+        assertEquals(TimeUnit.SECONDS.toNanos(5), instance.getGenerationNanos());
+        instance.add("foo");
+        instance.setSeconds(4.9);
+        instance.add("bar");
+        instance.setSeconds(12);
+        instance.add("baz");
+        assertTrue(instance.contains("foo"));
+        instance.setSeconds(14.9); // "bar" was added 10 seconds ago
+        assertTrue(instance.contains("foo"));
+        assertTrue(instance.contains("bar"));
+        instance.setSeconds(15);
+        assertFalse(instance.contains("foo"));
+        assertFalse(instance.contains("bar"));
+        assertTrue(instance.contains("baz"));
+        assertEquals(1, instance.count());
+
+        instance.setSeconds(1000); // all generations have ended
+        assertFalse(instance.contains("baz"));
+        assertEquals(0, instance.count());
+        instance.add("foo");
+        instance.setSeconds(1009.9);
+        assertTrue(instance.contains("foo"));
+    }
+
+    @Test
+    public void testRotate() {
+        System.out.println("rotate");
+        SlidingWindowBloomFilter<String> instance = new SlidingWindowBloomFilter<String>(0.01, 1000, 2);
+        instance.add("foo");
+        instance.rotate();
+        instance.add("bar");
+        assertTrue(instance.contains("foo"));
+        instance.rotate();
+        assertFalse(instance.contains("foo"));
+        assertTrue(instance.contains("bar"));
+        instance.clear();
+        assertFalse(instance.contains("bar"));
+        assertEquals(0, instance.count());
+    }
+
+    @Test
+    public void testAddIfAbsent() {
+        System.out.println("addIfAbsent");
+        SlidingWindowBloomFilter<String> instance = new SlidingWindowBloomFilter<String>(0.01, 1000, 4);
+        assertTrue(instance.addIfAbsent("foo"));
+        assertFalse(instance.addIfAbsent("foo"));
+        instance.rotate();
+        assertFalse(instance.addIfAbsent("foo")); // found in an older generation
+        assertTrue(instance.addLongIfAbsent(42L));
+        assertFalse(instance.addLongIfAbsent(42L));
+        assertTrue(instance.addIfAbsent(new byte[] { 1, 2, 3 }));
+        assertTrue(instance.contains(new byte[] { 1, 2, 3 }));
+        assertEquals(3, instance.count());
+    }
+
+    @Test
+    public void testInt() {
+        System.out.println("addInt/containsInt");
+        SlidingWindowBloomFilter<String> instance = new SlidingWindowBloomFilter<String>(0.01, 1000, 4);
+        instance.addInt(7);
+        assertTrue(instance.containsInt(7));
+        assertTrue(instance.contains(new byte[] { 7, 0, 0, 0 })); // same bits as the little-endian bytes
+        assertTrue(instance.addIntIfAbsent(-1));
+        assertFalse(instance.addIntIfAbsent(-1));
+        instance.rotate();
+        assertTrue(instance.containsInt(-1));
+        assertFalse(instance.addIntIfAbsent(7)); // found in an older generation
+        assertEquals(2, instance.count());
+    }
+
+    @Test
+    public void testSize() {
+        SlidingWindowBloomFilter<String> instance = new SlidingWindowBloomFilter<String>(0.01, 1000, 5);
+        BloomFilter<String> generation = new BloomFilter<String>(0.01, 1000, HashStrategies.MURMUR3_128);
+        assertEquals(5 * generation.size(), instance.size());
+        assertEquals(generation.getK(), instance.getK());
+        assertEquals(1 - Math.pow(0.99, 5), instance.expectedFalsePositiveProbability(), 1e-12);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testOneGeneration() {
+        new SlidingWindowBloomFilter<String>(0.01, 1000, 1);
+    }
+}